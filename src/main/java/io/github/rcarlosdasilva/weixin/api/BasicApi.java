@@ -3,27 +3,67 @@ package io.github.rcarlosdasilva.weixin.api;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
 import io.github.rcarlosdasilva.weixin.core.OpenPlatform;
 import io.github.rcarlosdasilva.weixin.core.Registry;
 import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.cache.ResponseCache;
+import io.github.rcarlosdasilva.weixin.core.concurrent.SingleFlight;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.exception.CircuitOpenException;
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
+import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
+import io.github.rcarlosdasilva.weixin.core.exception.HttpException;
 import io.github.rcarlosdasilva.weixin.core.exception.MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException;
+import io.github.rcarlosdasilva.weixin.core.exception.QuotaExhaustedException;
 import io.github.rcarlosdasilva.weixin.core.http.ContentType;
 import io.github.rcarlosdasilva.weixin.core.http.FormData;
 import io.github.rcarlosdasilva.weixin.core.http.Http;
 import io.github.rcarlosdasilva.weixin.core.http.HttpMethod;
 import io.github.rcarlosdasilva.weixin.core.http.MultiFile;
+import io.github.rcarlosdasilva.weixin.core.http.Priority;
+import io.github.rcarlosdasilva.weixin.core.http.PriorityLanes;
+import io.github.rcarlosdasilva.weixin.core.http.StreamResponse;
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
+import io.github.rcarlosdasilva.weixin.core.interceptor.ApiInterceptor;
+import io.github.rcarlosdasilva.weixin.core.interceptor.InterceptedCall;
+import io.github.rcarlosdasilva.weixin.core.json.Json;
+import io.github.rcarlosdasilva.weixin.core.limit.Backoff;
+import io.github.rcarlosdasilva.weixin.core.limit.CircuitBreaker;
+import io.github.rcarlosdasilva.weixin.core.limit.QuotaLimiter;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
 import io.github.rcarlosdasilva.weixin.core.parser.ResponseParser;
+import io.github.rcarlosdasilva.weixin.core.setting.RetrySetting;
+import io.github.rcarlosdasilva.weixin.model.request.base.BasicRequest;
 import io.github.rcarlosdasilva.weixin.model.request.base.Request;
 import io.github.rcarlosdasilva.weixin.model.request.certificate.AccessTokenRequest;
 import io.github.rcarlosdasilva.weixin.model.request.open.auth.OpenPlatformAuthAccessTokenRequest;
+import io.github.rcarlosdasilva.weixin.model.response.SimplestResponse;
 
 /**
  * API访问基础类
@@ -32,6 +72,53 @@ import io.github.rcarlosdasilva.weixin.model.request.open.auth.OpenPlatformAuthA
  */
 public class BasicApi {
 
+  /**
+   * 可合并执行的只读接口，同一公众号同时发出的相同请求只会真正请求一次.
+   */
+  private static final Set<String> COALESCABLE_URLS = ImmutableSet.of(
+      ApiAddress.URL_CERTIFICATE_SERVER_IP, ApiAddress.URL_USER_INFO,
+      ApiAddress.URL_USER_INFO_LIST, ApiAddress.URL_USER_ALL_OPENID_LIST,
+      ApiAddress.URL_USER_OPENID_LIST_WITH_TAG, ApiAddress.URL_USER_TAG_LIST,
+      ApiAddress.URL_USER_TAG_LIST_BASE_USER, ApiAddress.URL_USER_GROUP_LIST,
+      ApiAddress.URL_BLACK_LIST_QUERY, ApiAddress.URL_MENU_QUERY,
+      ApiAddress.URL_MENU_QUERY_COMPLETE, ApiAddress.URL_TEMPLATE_INDUSTRY_GET,
+      ApiAddress.URL_TEMPLATE_QUERY, ApiAddress.URL_CUSTOM_ACCOUNT_LIST,
+      ApiAddress.URL_CUSTOM_ACCOUNT_LIST_ONLINE, ApiAddress.URL_MESSAGE_QUERY_AUTO_REPLY_STATUS,
+      ApiAddress.URL_MEDIA_TIMELESS_COUNT, ApiAddress.URL_MEDIA_TIMELESS_LIST);
+  /**
+   * 可对冲的幂等只读GET接口，同一请求发出两次不会产生副作用.
+   * <p>
+   * access_token、jsapi_ticket与网页授权等凭证接口每请求一次就生成新的凭证并使旧的失效，还消耗每日额度，不能对冲
+   */
+  private static final Set<String> HEDGEABLE_URLS = ImmutableSet.of(
+      ApiAddress.URL_CERTIFICATE_SERVER_IP, ApiAddress.URL_USER_INFO,
+      ApiAddress.URL_USER_ALL_OPENID_LIST, ApiAddress.URL_USER_TAG_LIST,
+      ApiAddress.URL_USER_GROUP_LIST, ApiAddress.URL_MENU_QUERY,
+      ApiAddress.URL_MENU_QUERY_COMPLETE, ApiAddress.URL_TEMPLATE_INDUSTRY_GET,
+      ApiAddress.URL_TEMPLATE_QUERY, ApiAddress.URL_CUSTOM_ACCOUNT_LIST,
+      ApiAddress.URL_CUSTOM_ACCOUNT_LIST_ONLINE, ApiAddress.URL_MESSAGE_QUERY_AUTO_REPLY_STATUS,
+      ApiAddress.URL_MEDIA_TIMELESS_COUNT);
+  private static final SingleFlight SINGLE_FLIGHT = new SingleFlight();
+  /**
+   * 异步请求获取与刷新access_token的线程，获取可能需要请求微信或等待锁，不能占用调用线程或OkHttp的回调线程.
+   */
+  private static final ListeningExecutorService TOKEN_EXECUTOR = MoreExecutors
+      .listeningDecorator(Executors.newCachedThreadPool(Threads.daemonFactory("weixin-async-token")));
+  /**
+   * 对冲请求中可直接采用的响应：不是微信的错误响应.
+   * <p>
+   * 如网页授权的code只能使用一次，两个请求中后到达微信的那个会返回错误，不能因为它先返回而采用
+   */
+  private static final Function<String, Boolean> SUCCESSFUL_RESPONSE =
+      new Function<String, Boolean>() {
+
+        @Override
+        public Boolean apply(String json) {
+          return !SimplestResponse.seemsLikeError(json) || Json.fromJson(json,
+              SimplestResponse.class).getErrorCode() == ResultCode.RESULT_0.getCode();
+        }
+      };
+
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   protected final String accountKey;
@@ -44,9 +131,13 @@ public class BasicApi {
     this.accountKey = accountKey;
   }
 
+  private static boolean usesAccessToken(Request requestModel) {
+    return !(requestModel instanceof AccessTokenRequest)
+        && !(requestModel instanceof OpenPlatformAuthAccessTokenRequest);
+  }
+
   private void updateAccessToken(Request requestModel) {
-    if (!(requestModel instanceof AccessTokenRequest)
-        && !(requestModel instanceof OpenPlatformAuthAccessTokenRequest)) {
+    if (usesAccessToken(requestModel)) {
       String accessToken = null;
       if (Strings.isNullOrEmpty(this.accountKey)) {
         accessToken = OpenPlatform.certificate().askAccessToken();
@@ -57,6 +148,57 @@ public class BasicApi {
     }
   }
 
+  /**
+   * 请求因access_token无效失败后，刷新access_token并更新到请求中.
+   * <p>
+   * 只在缓存中仍是请求所用的access_token时刷新，否则说明已被其它请求或节点刷新，直接使用新的
+   */
+  private void refreshAccessToken(Request requestModel) {
+    if (!usesAccessToken(requestModel)) {
+      return;
+    }
+
+    // 无法得知失效的access_token时，不论其它线程是否已刷新，都再刷新一次
+    String invalidAccessToken = requestModel instanceof BasicRequest
+        ? ((BasicRequest) requestModel).getAccessToken() : null;
+    if (Strings.isNullOrEmpty(this.accountKey)) {
+      OpenPlatform.certificate().refreshAccessToken(invalidAccessToken);
+    } else {
+      Weixin.with(this.accountKey).certificate().refreshAccessToken(invalidAccessToken);
+    }
+    updateAccessToken(requestModel);
+  }
+
+  /**
+   * 在 {@link #TOKEN_EXECUTOR} 中获取access_token并更新到请求中.
+   */
+  private ListenableFuture<?> updateAccessTokenAsync(final Request requestModel) {
+    if (!usesAccessToken(requestModel)) {
+      return Futures.immediateFuture(null);
+    }
+
+    return TOKEN_EXECUTOR.submit(new Runnable() {
+
+      @Override
+      public void run() {
+        updateAccessToken(requestModel);
+      }
+    });
+  }
+
+  /**
+   * 在 {@link #TOKEN_EXECUTOR} 中刷新access_token并更新到请求中，见 {@link #refreshAccessToken(Request)}.
+   */
+  private ListenableFuture<?> refreshAccessTokenAsync(final Request requestModel) {
+    return TOKEN_EXECUTOR.submit(new Runnable() {
+
+      @Override
+      public void run() {
+        refreshAccessToken(requestModel);
+      }
+    });
+  }
+
   /**
    * 发送post请求.
    * 
@@ -69,21 +211,47 @@ public class BasicApi {
    * @return 响应封装对象
    */
   protected <T> T post(final Class<T> target, final Request requestModel) {
-    updateAccessToken(requestModel);
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doPost(target, requestModel);
+    }
 
-    return new RetryableRunner<T>() {
+    return new InterceptedCall<T>(accountKey, requestModel, HttpMethod.POST, target,
+        interceptors) {
 
-      @SuppressWarnings("unchecked")
       @Override
-      <R> R pending() {
-        String responseText = Http.requestWithBodyContent(requestModel.toUrl(), HttpMethod.POST,
-            requestModel.toJson(), ContentType.JSON);
-        R response = (R) ResponseParser.parse(target, responseText);
-        return response;
+      protected T execute() {
+        return doPost(target, requestModel);
       }
+    }.proceed();
+  }
 
-    }.run();
+  private <T> T doPost(final Class<T> target, final Request requestModel) {
+    updateAccessToken(requestModel);
+
+    return execute(target, requestModel, HttpMethod.POST, requestModel.toJson());
+  }
 
+  /**
+   * 发送post请求，失败时总是抛出异常，不论是否配置了不抛出异常.
+   * <p>
+   * 用于需要根据失败原因决定如何处理的调用，处理不了的失败交给 {@link #giveUp(Class, RuntimeException)}
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型
+   * @param requestModel
+   *          请求模型
+   * @return 响应封装对象
+   */
+  protected <T> T postOrThrow(final Class<T> target, final Request requestModel) {
+    boolean previous = ResponseParser.enterThrowing();
+    try {
+      return post(target, requestModel);
+    } finally {
+      ResponseParser.exitThrowing(previous);
+    }
   }
 
   /**
@@ -94,9 +262,25 @@ public class BasicApi {
    * @return 二进制流
    */
   protected InputStream postStream(final Request requestModel) {
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doPostStream(requestModel);
+    }
+
+    return new InterceptedCall<InputStream>(accountKey, requestModel, HttpMethod.POST,
+        InputStream.class, interceptors) {
+
+      @Override
+      protected InputStream execute() {
+        return doPostStream(requestModel);
+      }
+    }.proceed();
+  }
+
+  private InputStream doPostStream(final Request requestModel) {
     updateAccessToken(requestModel);
 
-    return new RetryableRunner<InputStream>() {
+    return new RetryableRunner<InputStream>(requestModel) {
 
       @SuppressWarnings("unchecked")
       @Override
@@ -121,20 +305,144 @@ public class BasicApi {
    * @return 响应封装对象
    */
   protected <T> T get(final Class<T> target, final Request requestModel) {
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doGet(target, requestModel);
+    }
+
+    return new InterceptedCall<T>(accountKey, requestModel, HttpMethod.GET, target,
+        interceptors) {
+
+      @Override
+      protected T execute() {
+        return doGet(target, requestModel);
+      }
+    }.proceed();
+  }
+
+  private <T> T doGet(final Class<T> target, final Request requestModel) {
     updateAccessToken(requestModel);
 
-    return new RetryableRunner<T>() {
+    return execute(target, requestModel, HttpMethod.GET, null);
+  }
+
+  /**
+   * 执行json接口请求.
+   * <p>
+   * 配置了缓存的只读接口先查缓存，修改数据的接口执行后清除相关缓存，见 {@link ResponseCache}
+   */
+  private <T> T execute(final Class<T> target, final Request requestModel,
+      final HttpMethod method, final String body) {
+    String url = requestModel.toUrl();
+    try {
+      boolean cacheable = ResponseCache.isCacheable(url);
+      if (cacheable) {
+        String json = ResponseCache.get(accountKey, url, body);
+        if (json != null) {
+          return ResponseParser.parse(target, json);
+        }
+      }
+
+      if (cacheable || isCoalescable(url)) {
+        String responseText = coalesce(url, body,
+            textRunner(requestModel, method, body, cacheable));
+        return parseText(target, responseText);
+      }
+
+      return new RetryableRunner<T>(requestModel, target) {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        <R> R pending() {
+          if (isHedged(requestModel.toUrl(), method)) {
+            return (R) ResponseParser.parse(target, requestText(requestModel.toUrl(), method, body));
+          }
+
+          Reader responseReader = Http.requestReaderWithBodyContent(requestModel.toUrl(), method,
+              body, ContentType.JSON);
+          return (R) ResponseParser.parse(target, responseReader);
+        }
+
+      }.run();
+    } finally {
+      ResponseCache.invalidate(accountKey, url);
+    }
+  }
+
+  private static boolean isHedged(String url, HttpMethod method) {
+    return method == HttpMethod.GET && Registry.setting().getHttpSetting().isHedging()
+        && HEDGEABLE_URLS.contains(Utils.urlPath(url));
+  }
+
+  /**
+   * 发送请求并读取响应字符串，开启对冲时 {@link #HEDGEABLE_URLS} 中的接口以对冲方式发送，见
+   * {@link Http#requestWithHedging}.
+   */
+  private static String requestText(String url, HttpMethod method, String body) {
+    if (isHedged(url, method)) {
+      return Http.requestWithHedging(url, ContentType.JSON, SUCCESSFUL_RESPONSE);
+    }
+    return Http.requestWithBodyContent(url, method, body, ContentType.JSON);
+  }
+
+  /**
+   * 请求并检查响应，返回响应字符串.
+   * <p>
+   * 用于合并执行与响应缓存：共享的是字符串，每个调用方各自解析出自己的响应对象
+   * 
+   * @param cache
+   *          是否将成功的响应写入 {@link ResponseCache}
+   * @return 响应字符串，失败且不抛出异常时为null
+   */
+  private RetryableRunner<String> textRunner(final Request requestModel,
+      final HttpMethod method, final String body, final boolean cache) {
+    return new RetryableRunner<String>(requestModel) {
 
       @SuppressWarnings("unchecked")
       @Override
       <R> R pending() {
-        String responseText = Http.requestWithBodyContent(requestModel.toUrl(), HttpMethod.GET,
-            null, ContentType.JSON);
-        return (R) ResponseParser.parse(target, responseText);
+        long generation = cache ? ResponseCache.generation(accountKey, requestModel.toUrl()) : 0;
+        String responseText = requestText(requestModel.toUrl(), method, body);
+        // 只检查errcode，不构建响应对象
+        if (!ResponseParser.parse(Boolean.class, responseText)) {
+          return null;
+        }
+        if (cache) {
+          ResponseCache.put(accountKey, requestModel.toUrl(), body, responseText, generation);
+        }
+        return (R) responseText;
       }
 
-    }.run();
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T parseText(Class<T> target, String responseText) {
+    if (responseText == null) {
+      return target == Boolean.class ? (T) Boolean.FALSE : null;
+    }
+    return ResponseParser.parse(target, responseText);
+  }
 
+  private boolean isCoalescable(String url) {
+    return Registry.setting().isSingleFlight() && COALESCABLE_URLS.contains(Utils.urlPath(url));
+  }
+
+  /**
+   * 只读接口的相同请求合并执行，参与合并的调用共享同一个响应字符串.
+   */
+  private String coalesce(String url, String body, final RetryableRunner<String> runner) {
+    if (!isCoalescable(url)) {
+      return runner.run();
+    }
+
+    return SINGLE_FLIGHT.execute(Utils.fingerprint(accountKey, url, body), new Callable<String>() {
+
+      @Override
+      public String call() {
+        return runner.run();
+      }
+    });
   }
 
   /**
@@ -145,9 +453,25 @@ public class BasicApi {
    * @return 二进制流
    */
   protected InputStream getStream(final Request requestModel) {
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doGetStream(requestModel);
+    }
+
+    return new InterceptedCall<InputStream>(accountKey, requestModel, HttpMethod.GET,
+        InputStream.class, interceptors) {
+
+      @Override
+      protected InputStream execute() {
+        return doGetStream(requestModel);
+      }
+    }.proceed();
+  }
+
+  private InputStream doGetStream(final Request requestModel) {
     updateAccessToken(requestModel);
 
-    return new RetryableRunner<InputStream>() {
+    return new RetryableRunner<InputStream>(requestModel) {
 
       @SuppressWarnings("unchecked")
       @Override
@@ -181,20 +505,254 @@ public class BasicApi {
    */
   protected <T> T upload(final Class<T> target, final Request requestModel, final String key,
       final String fileName, final File file, final List<FormData> additionalData) {
+    return upload(target, requestModel, key, fileName, UploadSource.of(file), additionalData);
+  }
+
+  /**
+   * 上传一段内容作为文件（post）.
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型
+   * @param requestModel
+   *          请求模型
+   * @param key
+   *          文件标识
+   * @param fileName
+   *          文件名
+   * @param source
+   *          文件内容来源
+   * @param additionalData
+   *          附加数据，可当做参数传递出去
+   * @return 响应封装对象
+   */
+  protected <T> T upload(final Class<T> target, final Request requestModel, final String key,
+      final String fileName, final UploadSource source, final List<FormData> additionalData) {
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doUpload(target, requestModel, key, fileName, source, additionalData);
+    }
+
+    return new InterceptedCall<T>(accountKey, requestModel, HttpMethod.POST, target,
+        interceptors) {
+
+      @Override
+      protected T execute() {
+        return doUpload(target, requestModel, key, fileName, source, additionalData);
+      }
+    }.proceed();
+  }
+
+  private <T> T doUpload(final Class<T> target, final Request requestModel, final String key,
+      final String fileName, final UploadSource source, final List<FormData> additionalData) {
+    updateAccessToken(requestModel);
+
+    try {
+      return new RetryableRunner<T>(requestModel, target) {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        <R> R pending() {
+          String responseText = Http.requestWithFile(requestModel.toUrl(),
+              new MultiFile(key, fileName, source), additionalData);
+          return (R) ResponseParser.parse(target, responseText);
+        }
+
+      }.run();
+    } finally {
+      ResponseCache.invalidate(accountKey, requestModel.toUrl());
+    }
+  }
+
+  /**
+   * 异步发送post请求.
+   * <p>
+   * 不经过拦截器链，见 {@link ApiInterceptor}
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型
+   * @param requestModel
+   *          请求模型
+   * @return 响应封装对象的Future
+   */
+  protected <T> ListenableFuture<T> postAsync(final Class<T> target, final Request requestModel) {
+    return new AsyncRetryableRunner<T>(target, requestModel) {
+
+      @Override
+      ListenableFuture<T> pending() {
+        return parseAsync(target, Http.requestWithBodyContentAsync(requestModel.toUrl(),
+            HttpMethod.POST, requestModel.toJson(), ContentType.JSON));
+      }
+
+    }.run();
+  }
+
+  /**
+   * 异步发送get请求.
+   * <p>
+   * 不经过拦截器链，见 {@link ApiInterceptor}
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型
+   * @param requestModel
+   *          请求模型
+   * @return 响应封装对象的Future
+   */
+  protected <T> ListenableFuture<T> getAsync(final Class<T> target, final Request requestModel) {
+    return new AsyncRetryableRunner<T>(target, requestModel) {
+
+      @Override
+      ListenableFuture<T> pending() {
+        return parseAsync(target, Http.requestWithBodyContentAsync(requestModel.toUrl(),
+            HttpMethod.GET, null, ContentType.JSON));
+      }
+
+    }.run();
+  }
+
+  /**
+   * 异步上传一个文件（post）.
+   * <p>
+   * 不经过拦截器链，见 {@link ApiInterceptor}
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型
+   * @param requestModel
+   *          请求模型
+   * @param key
+   *          文件标识
+   * @param fileName
+   *          文件名
+   * @param file
+   *          文件路径
+   * @param additionalData
+   *          附加数据，可当做参数传递出去
+   * @return 响应封装对象的Future
+   */
+  protected <T> ListenableFuture<T> uploadAsync(final Class<T> target, final Request requestModel,
+      final String key, final String fileName, final File file,
+      final List<FormData> additionalData) {
+    return new AsyncRetryableRunner<T>(target, requestModel) {
+
+      @Override
+      ListenableFuture<T> pending() {
+        return parseAsync(target, Http.requestWithFileAsync(requestModel.toUrl(),
+            new MultiFile(key, fileName, file), additionalData));
+      }
+
+    }.run();
+  }
+
+  private <T> ListenableFuture<T> parseAsync(final Class<T> target,
+      ListenableFuture<String> responseText) {
+    // 在回调线程中解析，恢复发起请求时的接口，以便记录错误码
+    final Meter.Scope scope = Meter.current();
+    return Futures.transform(responseText, new Function<String, T>() {
+
+      @Override
+      public T apply(String input) {
+        Meter.Scope previous = Meter.enter(scope);
+        try {
+          return ResponseParser.parse(target, input);
+        } finally {
+          Meter.exit(previous);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * 下载内容：响应为JSON时解析为指定类型，否则将响应体直接写入输出流.
+   * <p>
+   * 根据响应的Content-Type判断，只发送一次请求，响应体不会被整体读入内存。<br>
+   * 写出响应体时中断，无论是否配置抛出异常，都抛出 {@link HttpException}：已写出的部分无法撤回，也不能重试，
+   * 由调用方决定如何处理不完整的内容
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应为JSON时的封装类型
+   * @param requestModel
+   *          请求模型
+   * @param method
+   *          请求方法，GET或POST
+   * @param out
+   *          响应为二进制时的输出流，不会被关闭
+   * @return 响应为JSON时的封装对象，为二进制或请求失败时为null
+   * @throws HttpException
+   *           写出响应体时中断
+   */
+  protected <T> T download(final Class<T> target, final Request requestModel,
+      final HttpMethod method, final OutputStream out) {
+    List<ApiInterceptor> interceptors = Registry.setting().getInterceptors();
+    if (interceptors.isEmpty()) {
+      return doDownload(target, requestModel, method, out);
+    }
+
+    return new InterceptedCall<T>(accountKey, requestModel, method, target, interceptors) {
+
+      @Override
+      protected T execute() {
+        return doDownload(target, requestModel, method, out);
+      }
+    }.proceed();
+  }
+
+  private <T> T doDownload(final Class<T> target, final Request requestModel,
+      final HttpMethod method, final OutputStream out) {
     updateAccessToken(requestModel);
 
-    return new RetryableRunner<T>() {
+    // 请求与JSON响应按接口规则重试；二进制响应在重试之外写出，写出一部分后不能再重新请求
+    final StreamResponse[] binary = new StreamResponse[1];
+    T result = new RetryableRunner<T>(requestModel, target) {
 
       @SuppressWarnings("unchecked")
       @Override
       <R> R pending() {
-        String responseText = Http.requestWithFile(requestModel.toUrl(),
-            new MultiFile(key, fileName, file), additionalData);
-        return (R) ResponseParser.parse(target, responseText);
+        String content = method == HttpMethod.POST ? requestModel.toJson() : null;
+        StreamResponse response = Http.requestStreamResponseWithBodyContent(requestModel.toUrl(),
+            method, content, ContentType.JSON);
+
+        boolean json;
+        try {
+          json = response.isJson();
+        } catch (IOException ex) {
+          response.close();
+          throw new HttpException(ex.getMessage(), ex);
+        }
+        if (!json) {
+          binary[0] = response;
+          return null;
+        }
+
+        try {
+          return (R) ResponseParser.parse(target, response.getReader());
+        } finally {
+          response.close();
+        }
       }
 
     }.run();
 
+    if (binary[0] == null) {
+      return result;
+    }
+    try {
+      binary[0].transferTo(out);
+      return null;
+    } catch (IOException ex) {
+      logger.error("weixin basic api", ex);
+      throw new HttpException(ex.getMessage(), ex);
+    } finally {
+      binary[0].close();
+    }
   }
 
   protected byte[] readStream(InputStream is) {
@@ -212,6 +770,37 @@ public class BasicApi {
     }
   }
 
+  /**
+   * 放弃执行.
+   * <p>
+   * 网络异常与系统繁忙，在不抛出异常的配置下与以往一样返回空结果，其他失败原样抛出
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          响应的封装类型，Boolean类型返回false，其他返回null
+   * @param ex
+   *          失败的异常
+   * @return 空结果
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> T giveUp(Class<T> target, RuntimeException ex) {
+    if (ResponseParser.isThrowing() || !isQuiet(ex)) {
+      throw ex;
+    }
+
+    logger.error("For:{} >> 失败！", accountKey, ex);
+    return target == Boolean.class ? (T) Boolean.FALSE : null;
+  }
+
+  /**
+   * 放弃执行时，在不抛出异常的配置下可以返回空结果的失败：微信返回的错误、网络异常，以及熔断、额度不足等未发出请求的本地拒绝.
+   */
+  private static boolean isQuiet(RuntimeException ex) {
+    return ex instanceof ExecuteException || ex.getCause() instanceof IOException
+        || ex instanceof CircuitOpenException || ex instanceof QuotaExhaustedException;
+  }
+
   /**
    * 接口请求执行器
    * 
@@ -223,15 +812,38 @@ public class BasicApi {
 
     private final Logger logger = LoggerFactory.getLogger(RetryableRunner.class);
 
-    private int getRetryTimes() {
-      return Registry.setting().getRetries();
+    private final Request requestModel;
+    private final String url;
+    private final Class<?> target;
+
+    /**
+     * 构造函数.
+     * 
+     * @param requestModel
+     *          请求模型，access_token无效时更新其中的access_token；接口地址用于按接口限流与熔断，见
+     *          {@link QuotaLimiter}、{@link CircuitBreaker}
+     */
+    RetryableRunner(Request requestModel) {
+      this(requestModel, null);
     }
 
     /**
-     * 刷新access_token.
+     * 构造函数.
+     * 
+     * @param requestModel
+     *          请求模型，access_token无效时更新其中的access_token；接口地址用于按接口限流与熔断，见
+     *          {@link QuotaLimiter}、{@link CircuitBreaker}
+     * @param target
+     *          响应的封装类型，放弃重试且不抛出异常时，Boolean类型返回false，其他返回null
      */
-    private void refreshAccessToken() {
-      Weixin.with(accountKey).certificate().refreshAccessToken();
+    RetryableRunner(Request requestModel, Class<?> target) {
+      this.requestModel = requestModel;
+      this.url = requestModel.toUrl();
+      this.target = target;
+    }
+
+    private int getRetryTimes() {
+      return Registry.setting().getRetries();
     }
 
     /**
@@ -242,15 +854,43 @@ public class BasicApi {
      * 
      * 重试次数：在使用WeixinRegistry.registry()注册时可用setRetryTimes方法设置，默认2次，表示当 pending
      * 方法因 access_token 执行失败时的重试次数
+     * 
+     * 每次执行 pending 前获取接口调用额度，见 {@link QuotaLimiter}
+     * 
+     * 暂时性失败（系统繁忙、连接失败，见 {@link ResponseParser#classify(Throwable)}）按 {@link RetrySetting}
+     * 退避后重试，同时记录到 {@link CircuitBreaker}，接口熔断中时直接失败
+     * 
+     * 执行期间当前线程的接口记录在 {@link Meter} 中，用于按公众号、接口收集指标
      */
     R run() {
+      Meter.Scope previous = Meter.enter(accountKey, url);
+      try {
+        return runInScope();
+      } finally {
+        Meter.exit(previous);
+      }
+    }
+
+    private R runInScope() {
+      RetrySetting retrySetting = Registry.setting().getRetrySetting();
       int times = 0;
+      int attempts = 0;
       R result = null;
       while (true) {
+        try {
+          CircuitBreaker.check(accountKey, url);
+          QuotaLimiter.acquire(accountKey, url);
+        } catch (CircuitOpenException | QuotaExhaustedException ex) {
+          // 本地拒绝，请求未发出，不计入熔断
+          return giveUp(ex);
+        }
+
         try {
           result = pending();
+          CircuitBreaker.success(accountKey, url);
           break;
         } catch (MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException ex) {
+          CircuitBreaker.success(accountKey, url);
           logger.debug("weixin basic api", ex);
 
           if (times++ >= getRetryTimes()) {
@@ -259,13 +899,49 @@ public class BasicApi {
           }
           logger.error("For:{} >> 失败！第{}次尝试重新执行", accountKey, times);
 
-          refreshAccessToken();
+          Meter.retry(accountKey, url, ErrorKind.TOKEN);
+          refreshAccessToken(requestModel);
+        } catch (RuntimeException ex) {
+          ErrorKind kind = ResponseParser.classify(ex);
+          if (kind == ErrorKind.QUOTA) {
+            QuotaLimiter.exhausted(accountKey, url);
+          }
+          if (ex instanceof ConcurrencyLimitException) {
+            // 本地并发已满，请求未发出，不计入熔断
+          } else if (kind == ErrorKind.RETRYABLE || ex instanceof HttpException) {
+            CircuitBreaker.failure(accountKey, url);
+          } else {
+            CircuitBreaker.success(accountKey, url);
+          }
+
+          if (kind != ErrorKind.RETRYABLE || attempts >= retrySetting.getRetries()
+              || CircuitBreaker.isOpen(accountKey, url)) {
+            return giveUp(ex);
+          }
+
+          Meter.retry(accountKey, url, kind);
+          long delay = Backoff.delay(retrySetting, ++attempts);
+          logger.warn("For:{} >> 暂时性失败，{}毫秒后第{}次尝试重新执行", accountKey, delay, attempts);
+          try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return giveUp(ex);
+          }
         }
       }
 
       return result;
     }
 
+    /**
+     * 放弃执行，见 {@link BasicApi#giveUp(Class, RuntimeException)}.
+     */
+    @SuppressWarnings("unchecked")
+    private R giveUp(RuntimeException ex) {
+      return (R) BasicApi.this.giveUp(target, ex);
+    }
+
     /**
      * 具体接口请求执行内容.
      */
@@ -274,4 +950,147 @@ public class BasicApi {
 
   }
 
+  /**
+   * 异步接口请求执行器
+   * <p>
+   * 与 {@link RetryableRunner} 的重试规则一致，只是将循环重试改写为Future的组合：先异步获取access_token再执行
+   * pending，当 pending 返回的Future因 access_token 无效失败时，异步刷新access_token并重新执行 pending，
+   * 整个过程不占用调用线程与回调线程。
+   * 暂时性失败只记录到 {@link CircuitBreaker}，不做退避重试，以免占用回调线程等待。
+   * 
+   * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+   * @param <R>
+   *          返回类型
+   */
+  abstract class AsyncRetryableRunner<R> {
+
+    private final Logger logger = LoggerFactory.getLogger(AsyncRetryableRunner.class);
+
+    private final Class<?> target;
+    private final Request requestModel;
+    private final Priority priority = PriorityLanes.current();
+
+    AsyncRetryableRunner(Class<?> target, Request requestModel) {
+      this.target = target;
+      this.requestModel = requestModel;
+    }
+
+    /**
+     * 执行.
+     * 
+     * @return 执行结果的Future，重试次数用尽后结果为null
+     */
+    ListenableFuture<R> run() {
+      return attempt(0, updateAccessTokenAsync(requestModel));
+    }
+
+    /**
+     * access_token准备好后执行一次.
+     */
+    private ListenableFuture<R> attempt(final int times, ListenableFuture<?> ready) {
+      return Futures.transformAsync(ready, new AsyncFunction<Object, R>() {
+
+        @Override
+        public ListenableFuture<R> apply(Object input) {
+          return send(times);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<R> send(final int times) {
+      final String url = requestModel.toUrl();
+      try {
+        CircuitBreaker.check(accountKey, url);
+        QuotaLimiter.tryAcquire(accountKey, url);
+      } catch (CircuitOpenException | QuotaExhaustedException ex) {
+        return giveUp(ex);
+      }
+      // 重新执行时在回调线程中，恢复发起请求时的优先级
+      Meter.Scope previous = Meter.enter(accountKey, url);
+      Priority previousPriority = PriorityLanes.enter(priority);
+      ListenableFuture<R> response;
+      try {
+        response = pending();
+      } finally {
+        PriorityLanes.exit(previousPriority);
+        Meter.exit(previous);
+      }
+      Futures.addCallback(response, new FutureCallback<R>() {
+
+        @Override
+        public void onSuccess(R result) {
+          CircuitBreaker.success(accountKey, url);
+        }
+
+        @Override
+        public void onFailure(Throwable ex) {
+          if (ex instanceof ConcurrencyLimitException) {
+            return;
+          }
+          if (ex instanceof HttpException
+              || ResponseParser.classify(ex) == ErrorKind.RETRYABLE) {
+            CircuitBreaker.failure(accountKey, url);
+          } else {
+            CircuitBreaker.success(accountKey, url);
+          }
+        }
+      }, MoreExecutors.directExecutor());
+
+      ListenableFuture<R> future = Futures.catchingAsync(response, ExecuteException.class,
+          new AsyncFunction<ExecuteException, R>() {
+
+            @Override
+            public ListenableFuture<R> apply(ExecuteException ex) {
+              ErrorKind kind = ResponseParser.classify(ex);
+              if (kind == ErrorKind.QUOTA) {
+                QuotaLimiter.exhausted(accountKey, url);
+              }
+              if (kind == ErrorKind.RETRYABLE) {
+                return giveUp(ex);
+              }
+              return Futures.immediateFailedFuture(ex);
+            }
+          }, MoreExecutors.directExecutor());
+      return Futures.catchingAsync(future,
+          MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException.class,
+          new AsyncFunction<MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException, R>() {
+
+            @Override
+            public ListenableFuture<R> apply(
+                MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException ex) {
+              logger.debug("weixin basic api", ex);
+
+              if (times >= Registry.setting().getRetries()) {
+                logger.error("For:{} >> 失败！已尝试重新执行{}次", accountKey, times);
+                return Futures.immediateFuture(null);
+              }
+              logger.error("For:{} >> 失败！第{}次尝试重新执行", accountKey, times + 1);
+
+              // 刷新可能请求微信或等待锁，交给获取access_token的线程，完成后以新的access_token重新发起
+              Meter.retry(accountKey, url, ErrorKind.TOKEN);
+              return attempt(times + 1, refreshAccessTokenAsync(requestModel));
+            }
+          }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 放弃执行，与 {@link RetryableRunner} 一致：不抛出异常的配置下返回空结果，否则以失败的Future返回.
+     */
+    @SuppressWarnings("unchecked")
+    private ListenableFuture<R> giveUp(RuntimeException ex) {
+      if (Registry.setting().isThrowException() || !isQuiet(ex)) {
+        return Futures.immediateFailedFuture(ex);
+      }
+
+      logger.error("For:{} >> 失败！", accountKey, ex);
+      return Futures.immediateFuture(target == Boolean.class ? (R) Boolean.FALSE : (R) null);
+    }
+
+    /**
+     * 具体接口请求执行内容.
+     */
+    abstract ListenableFuture<R> pending();
+
+  }
+
 }
@@ -21,6 +21,19 @@ public interface OpCertificateApi {
    */
   String askAccessToken();
 
+  /**
+   * 强制刷新微信开放平台服务凭证(component_access_token).
+   */
+  void refreshAccessToken();
+
+  /**
+   * 刷新微信开放平台服务凭证(component_access_token)，只在缓存中仍是失效的凭证时刷新.
+   * 
+   * @param invalidAccessToken
+   *          失效的component_access_token
+   */
+  void refreshAccessToken(String invalidAccessToken);
+
   /**
    * 获取预授权码pre_auth_code.
    * <p>
@@ -1,5 +1,8 @@
 package io.github.rcarlosdasilva.weixin.api.op.impl;
 
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,14 +17,20 @@ import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
 import io.github.rcarlosdasilva.weixin.core.OpenPlatform;
 import io.github.rcarlosdasilva.weixin.core.Registry;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
+import io.github.rcarlosdasilva.weixin.core.cache.CacheStorage;
 import io.github.rcarlosdasilva.weixin.core.cache.GeneralCacheableObject;
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformAccessTokenException;
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformPreAuthCodeException;
 import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
 import io.github.rcarlosdasilva.weixin.core.exception.OpenPlatformNotFoundException;
 import io.github.rcarlosdasilva.weixin.core.exception.OpenPlatformTicketNotFoundException;
+import io.github.rcarlosdasilva.weixin.core.http.Priority;
+import io.github.rcarlosdasilva.weixin.core.http.PriorityLanes;
 import io.github.rcarlosdasilva.weixin.core.listener.OpenPlatformAccessTokenUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.OpenPlatformLisensorAccessTokenUpdatedListener;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.refresh.Credential;
+import io.github.rcarlosdasilva.weixin.core.refresh.RefreshAhead;
 import io.github.rcarlosdasilva.weixin.model.AccessToken;
 import io.github.rcarlosdasilva.weixin.model.OpAccount;
 import io.github.rcarlosdasilva.weixin.model.request.open.auth.OpenPlatformAuthAccessTokenRequest;
@@ -41,6 +50,7 @@ import io.github.rcarlosdasilva.weixin.model.response.open.auth.bean.LicensedAcc
 public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
 
   private final Logger logger = LoggerFactory.getLogger(OpCertificateApiImpl.class);
+  private final Lock refreshLock = new ReentrantLock();
 
   public OpCertificateApiImpl() {
     super();
@@ -60,6 +70,7 @@ public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
     AccessToken token = CacheHandler.of(AccessToken.class)
         .get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
     if (token != null && !token.isExpired()) {
+      RefreshAhead.track(Credential.COMPONENT_ACCESS_TOKEN, null, token.getExpireAt());
       return token.getAccessToken();
     }
 
@@ -70,6 +81,17 @@ public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
           token.getAccessToken());
     }
 
+    // 与refreshAccessToken的加锁顺序一致：先本进程，再其它节点
+    refreshLock.lock();
+    try {
+      return askAccessTokenLocked();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private String askAccessTokenLocked() {
+    AccessToken token;
     while (true) {
       token = CacheHandler.of(AccessToken.class)
           .get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
@@ -78,19 +100,24 @@ public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
       }
 
       String identifier = CacheHandler.of(AccessToken.class)
-          .lock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, 2000, true);
+          .lock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, 2000, false);
       if (Strings.isNullOrEmpty(identifier)) {
-        try {
-          Thread.sleep(100);
-          continue;
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+        if (Thread.currentThread().isInterrupted()) {
+          throw new CanNotFetchOpenPlatformAccessTokenException();
         }
+        continue;
       }
 
-      token = requestAccessToken();
-      CacheHandler.of(AccessToken.class)
-          .unlock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, identifier);
+      try {
+        token = CacheHandler.of(AccessToken.class)
+            .get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
+        if (token == null || token.isExpired()) {
+          token = requestAccessToken(identifier);
+        }
+      } finally {
+        CacheHandler.of(AccessToken.class)
+            .unlock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, identifier);
+      }
     }
 
     if (token == null) {
@@ -101,7 +128,64 @@ public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
     return token.getAccessToken();
   }
 
-  private synchronized AccessToken requestAccessToken() {
+  @Override
+  public void refreshAccessToken() {
+    requestAccessToken(null);
+  }
+
+  @Override
+  public void refreshAccessToken(String invalidAccessToken) {
+    // 与askAccessToken的加锁顺序一致：先本进程，再其它节点
+    refreshLock.lock();
+    try {
+      if (refreshed(invalidAccessToken)) {
+        return;
+      }
+
+      String identifier = CacheHandler.of(AccessToken.class)
+          .lock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, 2000, false);
+      try {
+        // 等锁期间其它节点可能已经刷新过了；等待超时仍未刷新时，不再等待持有者
+        if (!refreshed(invalidAccessToken)) {
+          requestAccessToken(identifier);
+        }
+      } finally {
+        if (!Strings.isNullOrEmpty(identifier)) {
+          CacheHandler.of(AccessToken.class)
+              .unlock(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, identifier);
+        }
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * 缓存中是否已有不同于失效凭证的有效component_access_token.
+   */
+  private boolean refreshed(String invalidAccessToken) {
+    AccessToken token = CacheHandler.of(AccessToken.class)
+        .get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
+    return token != null && !token.isExpired() && invalidAccessToken != null
+        && !invalidAccessToken.equals(token.getAccessToken());
+  }
+
+  private AccessToken requestAccessToken(String identifier) {
+    Priority previous = PriorityLanes.enter(Priority.INTERACTIVE);
+    refreshLock.lock();
+    long start = System.nanoTime();
+    AccessToken accessToken = null;
+    try {
+      accessToken = requestAccessTokenLocked(identifier);
+      return accessToken;
+    } finally {
+      refreshLock.unlock();
+      PriorityLanes.exit(previous);
+      Meter.tokenRefresh(null, System.nanoTime() - start, accessToken != null);
+    }
+  }
+
+  private AccessToken requestAccessTokenLocked(String identifier) {
     logger.debug("For: >> 正在获取component_access_token");
     GeneralCacheableObject cacheableObject = CacheHandler.of(GeneralCacheableObject.class)
         .get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_TICKET);
@@ -124,8 +208,17 @@ public class OpCertificateApiImpl extends BasicApi implements OpCertificateApi {
 
     if (accessToken != null) {
       accessToken.setAccountMark(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
-      CacheHandler.of(AccessToken.class)
-          .put(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, accessToken);
+      CacheStorage<AccessToken> cache = CacheHandler.of(AccessToken.class);
+      if (Strings.isNullOrEmpty(identifier)) {
+        cache.put(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, accessToken);
+      } else if (cache.put(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN, accessToken,
+          identifier) == null) {
+        // 锁已在获取期间过期，之后获得锁的人已写入更新的component_access_token
+        logger.warn("For: >> 获取component_access_token期间锁已过期，其他人已更新，放弃本次获取的凭证");
+        AccessToken current = cache.get(Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN);
+        return current == null ? accessToken : current;
+      }
+      RefreshAhead.track(Credential.COMPONENT_ACCESS_TOKEN, null, accessToken.getExpireAt());
       logger.debug("For: >> 获取到access_token：[{}]", accessToken.getAccessToken());
 
       final OpenPlatformAccessTokenUpdatedListener listener = Registry
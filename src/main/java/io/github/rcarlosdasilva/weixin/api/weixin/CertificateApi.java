@@ -29,6 +29,17 @@ public interface CertificateApi {
    */
   void refreshAccessToken();
 
+  /**
+   * 刷新微信服务凭证(access_token)，只在缓存中仍是失效的access_token时刷新.
+   * <p>
+   * 微信返回access_token无效时使用：同时失败的请求（包括其它节点上的）只有一个真正刷新，其余直接使用刷新后的access_token，
+   * 避免每次刷新都使其它请求刚获取的access_token失效
+   * 
+   * @param invalidAccessToken
+   *          失效的access_token
+   */
+  void refreshAccessToken(String invalidAccessToken);
+
   /**
    * 更新微信服务凭证(access_token)为指定的token.
    * 
@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.Date;
 import java.util.List;
 
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
 import io.github.rcarlosdasilva.weixin.model.response.custom.CustomMessageRecordsResponse;
 import io.github.rcarlosdasilva.weixin.model.response.custom.CustomSessionWaitingsResponse;
 import io.github.rcarlosdasilva.weixin.model.response.custom.bean.CustomAccount;
@@ -111,6 +112,20 @@ public interface CustomerServiceApi {
    */
   boolean accountUploadAvatar(String accountPrefix, String fileName, File file);
 
+  /**
+   * 上传客服头像，内容直接从内存或流中发送，无需先写入文件.
+   * 
+   * @param accountPrefix
+   *          帐号前缀
+   * @param fileName
+   *          文件名
+   * @param source
+   *          头像内容，see {@link UploadSource}
+   * @return 是否上传
+   * @see #accountUploadAvatar(String, String, File)
+   */
+  boolean accountUploadAvatar(String accountPrefix, String fileName, UploadSource source);
+
   /**
    * 创建会话
    * 
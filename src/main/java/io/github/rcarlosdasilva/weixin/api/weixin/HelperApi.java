@@ -1,5 +1,9 @@
 package io.github.rcarlosdasilva.weixin.api.weixin;
 
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.core.limit.QuotaLimiter;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+
 /**
  * 公众号相关工具
  * 
@@ -12,12 +16,23 @@ public interface HelperApi {
    * <p>
    * 请注意：<br>
    * 1、每个公众号每个月有10次清零机会，包括在微信公众平台上的清零以及调用API进行清零<br>
-   * 2、第三方代公众号调用，实际上消耗的是公众号的清零quota
+   * 2、第三方代公众号调用，实际上消耗的是公众号的清零quota<br>
+   * 3、清零成功后，本地限流的额度也会恢复，见 {@link QuotaLimiter}
    * 
    * @return 如果是超出清零的请求次数限制返回false
    */
   boolean resetQuota();
 
+  /**
+   * 接口当天剩余的调用额度（本地限流统计，非微信实际剩余次数）.
+   * 
+   * @param url
+   *          接口地址，见 {@link ApiAddress}
+   * @return 北京时间0点恢复前还可调用的次数，未开启限流或接口未设置额度时返回-1
+   * @see Setting#setQuotaMode(io.github.rcarlosdasilva.weixin.core.limit.QuotaMode)
+   */
+  long remainingQuota(String url);
+
   /**
    * 判断ip是否是可信任的微信ip.
    * 
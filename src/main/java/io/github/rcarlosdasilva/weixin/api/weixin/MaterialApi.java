@@ -1,9 +1,13 @@
 package io.github.rcarlosdasilva.weixin.api.weixin;
 
 import java.io.File;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
 
 import io.github.rcarlosdasilva.weixin.common.dictionary.MediaType;
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
 import io.github.rcarlosdasilva.weixin.model.request.media.bean.Article;
 import io.github.rcarlosdasilva.weixin.model.response.media.MediaAddMassResponse;
 import io.github.rcarlosdasilva.weixin.model.response.media.MediaAddTemporaryResponse;
@@ -50,6 +54,21 @@ public interface MaterialApi {
    */
   MediaAddTemporaryResponse addTemporaryMedia(MediaType type, String fileName, File file);
 
+  /**
+   * 新增临时素材，内容直接从内存或流中发送，无需先写入文件.
+   * 
+   * @param type
+   *          素材类型，不包含图文
+   * @param fileName
+   *          文件名
+   * @param source
+   *          素材内容，see {@link UploadSource}
+   * @return see {@link MediaAddTemporaryResponse}
+   * @see #addTemporaryMedia(MediaType, String, File)
+   */
+  MediaAddTemporaryResponse addTemporaryMedia(MediaType type, String fileName,
+      UploadSource source);
+
   /**
    * 获取临时素材.
    * 
@@ -66,6 +85,48 @@ public interface MaterialApi {
    */
   byte[] getTemporaryMedia(String mediaId);
 
+  /**
+   * 获取临时素材.
+   * <p>
+   * 素材内容直接写入输出流，不在内存中缓存。视频素材会再从接口返回的下载地址获取
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param out
+   *          输出流，不会被关闭
+   * @return 写入的字节数，获取失败时为0（中途失败时输出流中可能已写入部分内容）
+   * @see #getTemporaryMedia(String)
+   */
+  long getTemporaryMedia(String mediaId, OutputStream out);
+
+  /**
+   * 获取临时素材.
+   * <p>
+   * 素材内容直接写入输出通道，不在内存中缓存。视频素材会再从接口返回的下载地址获取
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param channel
+   *          输出通道，不会被关闭
+   * @return 写入的字节数，获取失败时为0（中途失败时输出通道中可能已写入部分内容）
+   * @see #getTemporaryMedia(String)
+   */
+  long getTemporaryMedia(String mediaId, WritableByteChannel channel);
+
+  /**
+   * 获取临时素材.
+   * <p>
+   * 素材内容直接写入文件，不在内存中缓存。视频素材会再从接口返回的下载地址获取
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param path
+   *          保存的文件路径，已存在时覆盖
+   * @return 写入的字节数，获取失败时为0，并删除不完整的文件
+   * @see #getTemporaryMedia(String)
+   */
+  long getTemporaryMedia(String mediaId, Path path);
+
   /**
    * 获取临时素材（高清语音素材获取接口）.
    * 
@@ -82,6 +143,48 @@ public interface MaterialApi {
    */
   byte[] getTemporaryMediaWithHqAudio(String mediaId);
 
+  /**
+   * 获取临时素材（高清语音素材获取接口）.
+   * <p>
+   * 素材内容直接写入输出流，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param out
+   *          输出流，不会被关闭
+   * @return 写入的字节数，获取失败时为0（中途失败时输出流中可能已写入部分内容）
+   * @see #getTemporaryMediaWithHqAudio(String)
+   */
+  long getTemporaryMediaWithHqAudio(String mediaId, OutputStream out);
+
+  /**
+   * 获取临时素材（高清语音素材获取接口）.
+   * <p>
+   * 素材内容直接写入输出通道，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param channel
+   *          输出通道，不会被关闭
+   * @return 写入的字节数，获取失败时为0（中途失败时输出通道中可能已写入部分内容）
+   * @see #getTemporaryMediaWithHqAudio(String)
+   */
+  long getTemporaryMediaWithHqAudio(String mediaId, WritableByteChannel channel);
+
+  /**
+   * 获取临时素材（高清语音素材获取接口）.
+   * <p>
+   * 素材内容直接写入文件，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          媒体文件ID
+   * @param path
+   *          保存的文件路径，已存在时覆盖
+   * @return 写入的字节数，获取失败时为0，并删除不完整的文件
+   * @see #getTemporaryMediaWithHqAudio(String)
+   */
+  long getTemporaryMediaWithHqAudio(String mediaId, Path path);
+
   /**
    * 新增其他类型永久素材（不包括视频）.
    * <p>
@@ -102,6 +205,21 @@ public interface MaterialApi {
    */
   MediaAddTimelessResponse addTimelessMedia(MediaType type, String fileName, File file);
 
+  /**
+   * 新增其他类型永久素材（不包括视频），内容直接从内存或流中发送，无需先写入文件.
+   * 
+   * @param type
+   *          素材类型
+   * @param fileName
+   *          文件名
+   * @param source
+   *          素材内容，see {@link UploadSource}
+   * @return see {@link MediaAddTimelessResponse}
+   * @see #addTimelessMedia(MediaType, String, File)
+   */
+  MediaAddTimelessResponse addTimelessMedia(MediaType type, String fileName,
+      UploadSource source);
+
   /**
    * 新增其他类型永久素材（视频）.
    * <p>
@@ -124,6 +242,23 @@ public interface MaterialApi {
   MediaAddTimelessResponse addTimelessMediaVideo(String fileName, File file, String title,
       String description);
 
+  /**
+   * 新增其他类型永久素材（视频），内容直接从内存或流中发送，无需先写入文件.
+   * 
+   * @param fileName
+   *          文件名
+   * @param source
+   *          素材内容，see {@link UploadSource}
+   * @param title
+   *          视频素材的标题
+   * @param description
+   *          视频素材的描述
+   * @return see {@link MediaAddTimelessResponse}
+   * @see #addTimelessMediaVideo(String, File, String, String)
+   */
+  MediaAddTimelessResponse addTimelessMediaVideo(String fileName, UploadSource source,
+      String title, String description);
+
   /**
    * 新增永久图文素材.
    * <p>
@@ -158,6 +293,51 @@ public interface MaterialApi {
    */
   MediaGetTimelessResponse getTimelessMedia(String mediaId);
 
+  /**
+   * 获取永久素材.
+   * <p>
+   * 素材内容直接写入输出流，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          要获取的素材的media_id
+   * @param out
+   *          输出流，不会被关闭
+   * @return see {@link MediaGetTimelessResponse}，图文与视频素材返回其信息；其他素材内容已写出，
+   *         返回的getStream为null；获取失败时为null（中途失败时输出流中可能已写入部分内容）
+   * @see #getTimelessMedia(String)
+   */
+  MediaGetTimelessResponse getTimelessMedia(String mediaId, OutputStream out);
+
+  /**
+   * 获取永久素材.
+   * <p>
+   * 素材内容直接写入输出通道，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          要获取的素材的media_id
+   * @param channel
+   *          输出通道，不会被关闭
+   * @return see {@link MediaGetTimelessResponse}，图文与视频素材返回其信息；其他素材内容已写出，
+   *         返回的getStream为null；获取失败时为null（中途失败时输出通道中可能已写入部分内容）
+   * @see #getTimelessMedia(String)
+   */
+  MediaGetTimelessResponse getTimelessMedia(String mediaId, WritableByteChannel channel);
+
+  /**
+   * 获取永久素材.
+   * <p>
+   * 素材内容直接写入文件，不在内存中缓存，只发送一次请求
+   * 
+   * @param mediaId
+   *          要获取的素材的media_id
+   * @param path
+   *          保存的文件路径，已存在时覆盖
+   * @return see {@link MediaGetTimelessResponse}，图文与视频素材返回其信息；其他素材内容已写出，
+   *         返回的getStream为null；获取失败时为null，并删除不完整的文件
+   * @see #getTimelessMedia(String)
+   */
+  MediaGetTimelessResponse getTimelessMedia(String mediaId, Path path);
+
   /**
    * 删除永久素材.
    * <p>
@@ -253,6 +433,18 @@ public interface MaterialApi {
    */
   String addMassMediaImage(String fileName, File file);
 
+  /**
+   * 上传图文消息内的图片获取URL，内容直接从内存或流中发送，无需先写入文件.
+   * 
+   * @param fileName
+   *          文件名
+   * @param source
+   *          图片内容，see {@link UploadSource}
+   * @return 上传图片的URL，可用于后续群发中，放置到图文消息中
+   * @see #addMassMediaImage(String, File)
+   */
+  String addMassMediaImage(String fileName, UploadSource source);
+
   /**
    * 上传图文消息素材（群发）.
    * 
@@ -0,0 +1,72 @@
+package io.github.rcarlosdasilva.weixin.api.weixin;
+
+import java.util.Map;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.github.rcarlosdasilva.weixin.model.builder.Builder;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.MessageContainer;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.Template;
+
+/**
+ * 公众号消息推送异步API
+ * <p>
+ * 与 {@link MessageApi} 对应，调用不会阻塞当前线程，适合大批量推送消息
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public interface MessageAsyncApi {
+
+  /**
+   * 发送模板消息.
+   * 
+   * @param to
+   *          发送给（open_id）
+   * @param templateId
+   *          模板id
+   * @param url
+   *          消息跳转页面
+   * @param data
+   *          消息内容，请使用{@code Builder.buildTemplate()}创建。
+   * @return 消息编号
+   * @see MessageApi#sendWithTemplate(String, String, String, Map)
+   * @see Builder#buildTemplateMessage()
+   */
+  ListenableFuture<Long> sendWithTemplate(String to, String templateId, String url,
+      Map<String, Template> data);
+
+  /**
+   * 发送模板消息（支持小程序）.
+   * 
+   * @param to
+   *          发送给（open_id）
+   * @param templateId
+   *          模板id
+   * @param url
+   *          消息跳转页面
+   * @param data
+   *          消息内容，请使用{@code Builder.buildTemplate()}创建。
+   * @param appid
+   *          所需跳转到的小程序appid（该小程序appid必须与发模板消息的公众号是绑定关联关系）
+   * @param route
+   *          所需跳转到小程序的具体页面路径，支持带参数,（示例index?foo=bar）
+   * @return 消息编号
+   * @see MessageApi#sendWithTemplate(String, String, String, Map, String, String)
+   */
+  ListenableFuture<Long> sendWithTemplate(String to, String templateId, String url,
+      Map<String, Template> data, String appid, String route);
+
+  /**
+   * 发送客服消息.
+   * 
+   * @param to
+   *          普通用户openid
+   * @param messageContainer
+   *          客服消息内容，see
+   *          {@link MessageContainer}，使用{@link Builder#buildMessage()}构建
+   * @return 发送成功
+   * @see MessageApi#sendWithCustom(String, MessageContainer)
+   */
+  ListenableFuture<Boolean> sendWithCustom(String to, MessageContainer messageContainer);
+
+}
@@ -0,0 +1,82 @@
+package io.github.rcarlosdasilva.weixin.api.weixin;
+
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.github.rcarlosdasilva.weixin.common.dictionary.Language;
+import io.github.rcarlosdasilva.weixin.model.response.user.UserOpenIdListResponse;
+import io.github.rcarlosdasilva.weixin.model.response.user.bean.User;
+
+/**
+ * 公众号用户异步API
+ * <p>
+ * 与 {@link UserApi} 对应，调用不会阻塞当前线程
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public interface UserAsyncApi {
+
+  /**
+   * 获取用户信息.
+   * 
+   * @param openId
+   *          OpenId
+   * @return 用户信息
+   * @see UserApi#getUserInfo(String)
+   */
+  ListenableFuture<User> getUserInfo(String openId);
+
+  /**
+   * 获取用户信息.
+   * 
+   * @param openId
+   *          OpenId
+   * @param language
+   *          国家地区语言版本
+   * @return 用户信息
+   * @see UserApi#getUserInfo(String, Language)
+   */
+  ListenableFuture<User> getUserInfo(String openId, Language language);
+
+  /**
+   * 批量获取用户信息.
+   * 
+   * @param openIds
+   *          OpenId列表
+   * @return 用户信息列表
+   * @see UserApi#getUsersInfo(List)
+   */
+  ListenableFuture<List<User>> getUsersInfo(List<String> openIds);
+
+  /**
+   * 批量获取用户信息.
+   * 
+   * @param openIds
+   *          OpenId列表
+   * @param language
+   *          国家地区语言版本
+   * @return 用户信息列表
+   * @see UserApi#getUsersInfo(List, Language)
+   */
+  ListenableFuture<List<User>> getUsersInfo(List<String> openIds, Language language);
+
+  /**
+   * 获取用户列表.
+   * 
+   * @return 用户OpenId列表
+   * @see UserApi#listAllUsersOpenId()
+   */
+  ListenableFuture<UserOpenIdListResponse> listAllUsersOpenId();
+
+  /**
+   * 获取用户列表.
+   * 
+   * @param nextOpenId
+   *          第一个拉取的OPENID，不填默认从头开始拉取
+   * @return 用户OpenId列表
+   * @see UserApi#listAllUsersOpenId(String)
+   */
+  ListenableFuture<UserOpenIdListResponse> listAllUsersOpenId(String nextOpenId);
+
+}
@@ -1,6 +1,8 @@
 package io.github.rcarlosdasilva.weixin.api.weixin.impl;
 
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
@@ -18,13 +20,20 @@ import io.github.rcarlosdasilva.weixin.core.OpenPlatform;
 import io.github.rcarlosdasilva.weixin.core.Registry;
 import io.github.rcarlosdasilva.weixin.core.Weixin;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
+import io.github.rcarlosdasilva.weixin.core.cache.CacheStorage;
+import io.github.rcarlosdasilva.weixin.core.cache.Cacheable;
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchAccessTokenException;
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformLicensorAccessTokenException;
 import io.github.rcarlosdasilva.weixin.core.exception.InvalidAccountException;
 import io.github.rcarlosdasilva.weixin.core.exception.LostWeixinLicensedRefreshTokenException;
+import io.github.rcarlosdasilva.weixin.core.http.Priority;
+import io.github.rcarlosdasilva.weixin.core.http.PriorityLanes;
 import io.github.rcarlosdasilva.weixin.core.json.Json;
 import io.github.rcarlosdasilva.weixin.core.listener.AccessTokenUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.JsTicketUpdatedListener;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.refresh.Credential;
+import io.github.rcarlosdasilva.weixin.core.refresh.RefreshAhead;
 import io.github.rcarlosdasilva.weixin.model.AccessToken;
 import io.github.rcarlosdasilva.weixin.model.JsTicket;
 import io.github.rcarlosdasilva.weixin.model.JsapiSignature;
@@ -46,19 +55,51 @@ import io.github.rcarlosdasilva.weixin.model.response.open.auth.OpenPlatformAuth
  */
 public class CertificateApiImpl extends BasicApi implements CertificateApi {
 
+  /**
+   * 本地快照最长使用时间。微信刷新access_token后，旧的仍有5分钟有效期.
+   */
+  private static final long SNAPSHOT_RECHECK_TIME = 60000;
+
   private final Logger logger = LoggerFactory.getLogger(CertificateApiImpl.class);
+  /**
+   * 串行化本进程内的凭证刷新，使用显式锁而不是synchronized，避免阻塞请求时固定虚拟线程的载体线程.
+   */
+  private final Lock refreshLock = new ReentrantLock();
+  /**
+   * 本进程内access_token的快照，有效期内的读取只有一次volatile读，不加锁也不访问缓存.
+   */
+  private volatile Snapshot snapshot = null;
 
   public CertificateApiImpl(String accountKey) {
     super(accountKey);
   }
 
   @Override
-  public synchronized String askAccessToken() {
+  public String askAccessToken() {
+    Snapshot current = snapshot;
+    if (current != null && System.currentTimeMillis() < current.validUntil) {
+      return current.accessToken;
+    }
+
     AccessToken token = CacheHandler.of(AccessToken.class).get(this.accountKey);
     if (token != null && !token.isExpired()) {
+      remember(token);
       return token.getAccessToken();
     }
 
+    // 所有请求都在等待access_token，不论由哪个通道的请求触发，都按交互请求获取
+    Priority previous = PriorityLanes.enter(Priority.INTERACTIVE);
+    refreshLock.lock();
+    try {
+      return askAccessTokenLocked(token);
+    } finally {
+      refreshLock.unlock();
+      PriorityLanes.exit(previous);
+    }
+  }
+
+  private String askAccessTokenLocked(AccessToken expiredToken) {
+    AccessToken token = expiredToken;
     if (null == token) {
       logger.debug("For:{} >> 无缓存过的access_token，请求access_token", this.accountKey);
     } else {
@@ -76,26 +117,33 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
         break;
       }
 
-      String identifier = CacheHandler.of(AccessToken.class).lock(this.accountKey, 2000, true);
+      // 其它进程正在获取时，等待其释放锁，释放后多半已有新的access_token
+      String identifier = CacheHandler.of(AccessToken.class).lock(this.accountKey, 2000, false);
       if (Strings.isNullOrEmpty(identifier)) {
-        try {
-          Thread.sleep(100);
-          continue;
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+        if (Thread.currentThread().isInterrupted()) {
+          throw new CanNotFetchAccessTokenException();
         }
+        continue;
       }
 
-      if (account.isWithOpenPlatform()) {
-        // 使用微信开放平台获取access_token。在公众号授权后，会自动获取第一次授权方的access_token
-        final String refreshToken = null == token ? account.getRefreshToken()
-            : token.getRefreshToken();
-        token = refreshLicensedAccessToken(account.getAppId(), refreshToken);
-      } else {
-        // 使用公众号appid和appsecret获取access_token
-        token = requestAccessToken();
+      try {
+        token = CacheHandler.of(AccessToken.class).get(this.accountKey);
+        if (token != null && !token.isExpired()) {
+          break;
+        }
+
+        if (account.isWithOpenPlatform()) {
+          // 使用微信开放平台获取access_token。在公众号授权后，会自动获取第一次授权方的access_token
+          final String refreshToken = null == token ? account.getRefreshToken()
+              : token.getRefreshToken();
+          token = refreshLicensedAccessToken(account.getAppId(), refreshToken, identifier);
+        } else {
+          // 使用公众号appid和appsecret获取access_token
+          token = requestAccessToken(identifier);
+        }
+      } finally {
+        CacheHandler.of(AccessToken.class).unlock(this.accountKey, identifier);
       }
-      CacheHandler.of(AccessToken.class).unlock(this.accountKey, identifier);
     }
 
     if (token == null) {
@@ -103,12 +151,95 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
       throw new CanNotFetchAccessTokenException();
     }
 
+    remember(token);
     return token.getAccessToken();
   }
 
+  /**
+   * 记录本地快照，并交给 {@link RefreshAhead} 跟踪过期时间.
+   * <p>
+   * 快照最长只用 {@link #SNAPSHOT_RECHECK_TIME} ，之后重新读取一次缓存，
+   * 以便其它进程刷新或通过{@link Registry#update(WeixinAccount)}更新的access_token能及时生效
+   */
+  private void remember(AccessToken token) {
+    long validUntil = Math.min(token.getExpireAt(),
+        System.currentTimeMillis() + SNAPSHOT_RECHECK_TIME);
+    snapshot = new Snapshot(token.getAccessToken(), validUntil);
+    RefreshAhead.track(Credential.ACCESS_TOKEN, this.accountKey, token.getExpireAt());
+  }
+
   @Override
   public void refreshAccessToken() {
-    requestAccessToken();
+    refresh(null);
+  }
+
+  /**
+   * 刷新access_token.
+   * 
+   * @param identifier
+   *          持有的锁标识，未持有时为null
+   */
+  private void refresh(String identifier) {
+    // 要求刷新时当前的access_token可能已被微信判为无效，刷新失败也不能继续使用
+    snapshot = null;
+    final WeixinAccount account = Registry.lookup(this.accountKey);
+    if (account != null && account.isWithOpenPlatform()) {
+      // 开放平台授权方只能使用刷新令牌获取
+      refreshLock.lock();
+      try {
+        AccessToken token = CacheHandler.of(AccessToken.class).get(this.accountKey);
+        String refreshToken = token == null || Strings.isNullOrEmpty(token.getRefreshToken())
+            ? account.getRefreshToken() : token.getRefreshToken();
+        refreshLicensedAccessToken(account.getAppId(), refreshToken, identifier);
+      } finally {
+        refreshLock.unlock();
+      }
+      return;
+    }
+    requestAccessToken(identifier);
+  }
+
+  @Override
+  public void refreshAccessToken(String invalidAccessToken) {
+    Snapshot current = snapshot;
+    if (current != null && current.accessToken.equals(invalidAccessToken)) {
+      snapshot = null;
+    }
+
+    // 与askAccessToken的加锁顺序一致：先本进程，再其它节点
+    refreshLock.lock();
+    try {
+      if (refreshed(invalidAccessToken)) {
+        return;
+      }
+
+      String identifier = CacheHandler.of(AccessToken.class).lock(this.accountKey, 2000, false);
+      try {
+        // 等锁期间其它节点可能已经刷新过了；等待超时仍未刷新时，不再等待持有者
+        if (!refreshed(invalidAccessToken)) {
+          refresh(identifier);
+        }
+      } finally {
+        if (!Strings.isNullOrEmpty(identifier)) {
+          CacheHandler.of(AccessToken.class).unlock(this.accountKey, identifier);
+        }
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * 缓存中是否已有不同于失效凭证的有效access_token.
+   */
+  private boolean refreshed(String invalidAccessToken) {
+    AccessToken token = CacheHandler.of(AccessToken.class).get(this.accountKey);
+    if (token == null || token.isExpired() || invalidAccessToken == null
+        || invalidAccessToken.equals(token.getAccessToken())) {
+      return false;
+    }
+    remember(token);
+    return true;
   }
 
   @Override
@@ -127,6 +258,7 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
     AccessToken accessToken = Json.fromJson(responseMock, AccessTokenResponse.class);
     accessToken.setAccountMark(this.accountKey);
     CacheHandler.of(AccessToken.class).put(this.accountKey, accessToken);
+    remember(accessToken);
   }
 
   /**
@@ -134,8 +266,8 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
    * 
    * @return 请求结果
    */
-  private synchronized AccessToken refreshLicensedAccessToken(String licensorAppId,
-      String refreshToken) {
+  private AccessToken refreshLicensedAccessToken(String licensorAppId, String refreshToken,
+      String identifier) {
     Preconditions.checkNotNull(licensorAppId);
 
     if (Strings.isNullOrEmpty(refreshToken)) {
@@ -143,8 +275,14 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
       throw new LostWeixinLicensedRefreshTokenException();
     }
 
-    OpenPlatformAuthGetLicenseInformationResponse response = OpenPlatform.certificate()
-        .refreshLicensorAccessToken(licensorAppId, refreshToken);
+    long start = System.nanoTime();
+    OpenPlatformAuthGetLicenseInformationResponse response = null;
+    try {
+      response = OpenPlatform.certificate().refreshLicensorAccessToken(licensorAppId,
+          refreshToken);
+    } finally {
+      Meter.tokenRefresh(this.accountKey, System.nanoTime() - start, response != null);
+    }
     if (response == null
         || Strings.isNullOrEmpty(response.getLicensedAccessToken().getAccessToken())) {
       logger.error("获取不到授权方的access_token");
@@ -153,7 +291,8 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
 
     AccessToken accessToken = response.getLicensedAccessToken();
     accessToken.setAccountMark(this.accountKey);
-    CacheHandler.of(AccessToken.class).put(this.accountKey, accessToken);
+    accessToken = store(AccessToken.class, accessToken, identifier);
+    remember(accessToken);
     logger.debug("For:{} >> 开放平台更新授权方access_token：[{}]", this.accountKey,
         accessToken.getAccessToken());
 
@@ -165,7 +304,22 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
    *
    * @return 请求结果
    */
-  private synchronized AccessToken requestAccessToken() {
+  private AccessToken requestAccessToken(String identifier) {
+    Priority previous = PriorityLanes.enter(Priority.INTERACTIVE);
+    refreshLock.lock();
+    long start = System.nanoTime();
+    AccessToken accessToken = null;
+    try {
+      accessToken = requestAccessTokenLocked(identifier);
+      return accessToken;
+    } finally {
+      refreshLock.unlock();
+      PriorityLanes.exit(previous);
+      Meter.tokenRefresh(this.accountKey, System.nanoTime() - start, accessToken != null);
+    }
+  }
+
+  private AccessToken requestAccessTokenLocked(String identifier) {
     logger.debug("For:{} >> 正在获取access_token", this.accountKey);
     WeixinAccount account = Registry.lookup(this.accountKey);
     AccessTokenRequest requestModel = new AccessTokenRequest();
@@ -176,7 +330,11 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
 
     if (accessToken != null) {
       accessToken.setAccountMark(this.accountKey);
-      CacheHandler.of(AccessToken.class).put(this.accountKey, accessToken);
+      AccessToken stored = store(AccessToken.class, accessToken, identifier);
+      remember(stored);
+      if (stored != accessToken) {
+        return stored;
+      }
       logger.debug("For:{} >> 获取到access_token：[{}]", this.accountKey, accessToken.getAccessToken());
 
       final AccessTokenUpdatedListener listener = Registry
@@ -197,6 +355,7 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
   public final String askJsTicket() {
     JsTicket ticket = CacheHandler.of(JsTicket.class).get(this.accountKey);
     if (ticket != null && !ticket.isExpired()) {
+      RefreshAhead.track(Credential.JS_TICKET, this.accountKey, ticket.getExpireAt());
       return ticket.getJsTicket();
     }
 
@@ -212,18 +371,22 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
         break;
       }
 
-      String identifier = CacheHandler.of(JsTicket.class).lock(this.accountKey, 2000, true);
+      String identifier = CacheHandler.of(JsTicket.class).lock(this.accountKey, 2000, false);
       if (Strings.isNullOrEmpty(identifier)) {
-        try {
-          Thread.sleep(100);
-          continue;
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+        if (Thread.currentThread().isInterrupted()) {
+          return null;
         }
+        continue;
       }
 
-      ticket = requestJsTicket();
-      CacheHandler.of(AccessToken.class).unlock(this.accountKey, identifier);
+      try {
+        ticket = CacheHandler.of(JsTicket.class).get(this.accountKey);
+        if (ticket == null || ticket.isExpired()) {
+          ticket = requestJsTicket(identifier);
+        }
+      } finally {
+        CacheHandler.of(JsTicket.class).unlock(this.accountKey, identifier);
+      }
     }
 
     return null == ticket ? null : ticket.getJsTicket();
@@ -231,7 +394,7 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
 
   @Override
   public void refreshJsTicket() {
-    requestJsTicket();
+    requestJsTicket(null);
   }
 
   @Override
@@ -250,6 +413,7 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
     JsTicketResponse responseModel = Json.fromJson(responseMock, JsTicketResponse.class);
     responseModel.updateExpireAt();
     CacheHandler.of(JsTicket.class).put(this.accountKey, responseModel);
+    RefreshAhead.track(Credential.JS_TICKET, this.accountKey, responseModel.getExpireAt());
   }
 
   /**
@@ -257,7 +421,16 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
    *
    * @return 请求结果
    */
-  private synchronized JsTicketResponse requestJsTicket() {
+  private JsTicket requestJsTicket(String identifier) {
+    refreshLock.lock();
+    try {
+      return requestJsTicketLocked(identifier);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private JsTicket requestJsTicketLocked(String identifier) {
     logger.debug("For:{} >> 正在获取jsapi_ticket", this.accountKey);
     JsTicketRequest requestModel = new JsTicketRequest();
 
@@ -265,7 +438,11 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
 
     if (responseModel != null) {
       responseModel.updateExpireAt();
-      CacheHandler.of(JsTicket.class).put(this.accountKey, responseModel);
+      JsTicket stored = store(JsTicket.class, responseModel, identifier);
+      RefreshAhead.track(Credential.JS_TICKET, this.accountKey, stored.getExpireAt());
+      if (stored != responseModel) {
+        return stored;
+      }
       logger.debug("For:{} >> 获取jsapi_ticket：[{}]", this.accountKey, responseModel.getJsTicket());
 
       final JsTicketUpdatedListener listener = Registry.listener(JsTicketUpdatedListener.class);
@@ -282,6 +459,26 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
     return null;
   }
 
+  /**
+   * 保存新获取的凭证.
+   * <p>
+   * 持有锁时按锁标识写入：锁已在获取期间过期，且之后获得锁的人已写入更新的凭证时，不再覆盖，改用缓存中的凭证
+   */
+  private <T extends Cacheable> T store(Class<T> type, T value, String identifier) {
+    CacheStorage<T> cache = CacheHandler.of(type);
+    if (Strings.isNullOrEmpty(identifier)) {
+      cache.put(this.accountKey, value);
+      return value;
+    }
+    if (cache.put(this.accountKey, value, identifier) != null) {
+      return value;
+    }
+
+    T current = cache.get(this.accountKey);
+    logger.warn("For:{} >> 获取凭证期间锁已过期，其他人已更新，放弃本次获取的凭证", this.accountKey);
+    return current == null ? value : current;
+  }
+
   @Override
   public WaAccessTokenResponse askWebAuthorizeAccessToken(String code) {
     WeixinAccount account = Registry.lookup(this.accountKey);
@@ -345,4 +542,16 @@ public class CertificateApiImpl extends BasicApi implements CertificateApi {
     return new JsapiSignature(account.getAppId(), ticket, signature, url, timestamp, nonce);
   }
 
+  private static final class Snapshot {
+
+    private final String accessToken;
+    private final long validUntil;
+
+    private Snapshot(String accessToken, long validUntil) {
+      this.accessToken = accessToken;
+      this.validUntil = validUntil;
+    }
+
+  }
+
 }
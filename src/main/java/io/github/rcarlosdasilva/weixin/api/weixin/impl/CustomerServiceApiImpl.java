@@ -8,6 +8,7 @@ import io.github.rcarlosdasilva.weixin.api.BasicApi;
 import io.github.rcarlosdasilva.weixin.api.weixin.CustomerServiceApi;
 import io.github.rcarlosdasilva.weixin.common.Convention;
 import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
 import io.github.rcarlosdasilva.weixin.model.WeixinAccount;
 import io.github.rcarlosdasilva.weixin.model.request.custom.CustomAccountAppendRequest;
 import io.github.rcarlosdasilva.weixin.model.request.custom.CustomAccountBindingRequest;
@@ -100,12 +101,17 @@ public class CustomerServiceApiImpl extends BasicApi implements CustomerServiceA
 
   @Override
   public boolean accountUploadAvatar(String accountPrefix, String fileName, File file) {
+    return accountUploadAvatar(accountPrefix, fileName, UploadSource.of(file));
+  }
+
+  @Override
+  public boolean accountUploadAvatar(String accountPrefix, String fileName, UploadSource source) {
     WeixinAccount account = Registry.lookup(this.accountKey);
     CustomAccountUploadAvatarRequest requestModel = new CustomAccountUploadAvatarRequest();
     requestModel.setAccount(accountPrefix + "@" + account.getMpId());
 
-    return upload(Boolean.class, requestModel, Convention.CUSTOM_AVATAR_UPLOAD_KEY, fileName, file,
-        null);
+    return upload(Boolean.class, requestModel, Convention.CUSTOM_AVATAR_UPLOAD_KEY, fileName,
+        source, null);
   }
 
   @Override
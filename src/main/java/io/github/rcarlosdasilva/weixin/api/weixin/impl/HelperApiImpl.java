@@ -14,6 +14,7 @@ import io.github.rcarlosdasilva.weixin.core.Weixin;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
 import io.github.rcarlosdasilva.weixin.core.cache.GeneralCacheableObject;
 import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
+import io.github.rcarlosdasilva.weixin.core.limit.QuotaLimiter;
 import io.github.rcarlosdasilva.weixin.model.request.helper.HelperResetQuotaRequest;
 
 /**
@@ -35,7 +36,11 @@ public class HelperApiImpl extends BasicApi implements HelperApi {
     requestModel.setAppId(Registry.lookup(accountKey).getAppId());
 
     try {
-      return post(Boolean.class, requestModel);
+      boolean reset = post(Boolean.class, requestModel);
+      if (reset) {
+        QuotaLimiter.reset(accountKey);
+      }
+      return reset;
     } catch (ExecuteException ex) {
       if (ex.getCode() != null && ex.getCode() == ResultCode.RESULT_48006) {
         return false;
@@ -44,6 +49,11 @@ public class HelperApiImpl extends BasicApi implements HelperApi {
     }
   }
 
+  @Override
+  public long remainingQuota(String url) {
+    return QuotaLimiter.remaining(accountKey, url);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public boolean isLegalRequestIp(String ip) {
@@ -1,7 +1,13 @@
 package io.github.rcarlosdasilva.weixin.api.weixin.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -9,18 +15,21 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 
 import io.github.rcarlosdasilva.weixin.api.BasicApi;
 import io.github.rcarlosdasilva.weixin.api.weixin.MaterialApi;
 import io.github.rcarlosdasilva.weixin.common.Convention;
 import io.github.rcarlosdasilva.weixin.common.dictionary.MediaType;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.exception.HttpException;
 import io.github.rcarlosdasilva.weixin.core.http.ContentType;
 import io.github.rcarlosdasilva.weixin.core.http.FormData;
 import io.github.rcarlosdasilva.weixin.core.http.Http;
 import io.github.rcarlosdasilva.weixin.core.http.HttpMethod;
-import io.github.rcarlosdasilva.weixin.core.parser.ResponseParser;
+import io.github.rcarlosdasilva.weixin.core.http.StreamResponse;
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
 import io.github.rcarlosdasilva.weixin.model.request.media.MediaAddMassImageRequest;
 import io.github.rcarlosdasilva.weixin.model.request.media.MediaAddMassNewsRequest;
 import io.github.rcarlosdasilva.weixin.model.request.media.MediaAddTemporaryRequest;
@@ -59,68 +68,138 @@ public class MaterialApiImpl extends BasicApi implements MaterialApi {
 
   @Override
   public MediaAddTemporaryResponse addTemporaryMedia(MediaType type, String fileName, File file) {
+    return addTemporaryMedia(type, fileName, UploadSource.of(file));
+  }
+
+  @Override
+  public MediaAddTemporaryResponse addTemporaryMedia(MediaType type, String fileName,
+      UploadSource source) {
     Preconditions.checkArgument(MediaType.NEWS != type,
         "Not supported media type of News when add temporary");
     MediaAddTemporaryRequest requestModel = new MediaAddTemporaryRequest();
     requestModel.setType(type.getText());
 
     return upload(MediaAddTemporaryResponse.class, requestModel, Convention.MEDIA_FILE_UPLOAD_KEY,
-        fileName, file, null);
+        fileName, source, null);
   }
 
   @Override
   public byte[] getTemporaryMedia(String mediaId) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    return getTemporaryMedia(mediaId, out) > 0 ? out.toByteArray() : null;
+  }
+
+  @Override
+  public long getTemporaryMedia(String mediaId, OutputStream out) {
     MediaGetTemporaryRequest requestModel = new MediaGetTemporaryRequest();
     requestModel.setMediaId(mediaId);
 
-    // 该接口如果是图片，则返回文件流，如是视频则返回json字符串
-    InputStream is = getStream(requestModel);
-
-    byte[] result = readStream(is);
-    // 假设返回的是json字符串
-    String text = new String(result);
-
+    CountingOutputStream counter = new CountingOutputStream(out);
     try {
-      is.close();
+      // 该接口如果是图片，则返回文件流，如是视频则返回json字符串
+      MediaGetTemporaryWithVideoResponse vedioResponse = download(
+          MediaGetTemporaryWithVideoResponse.class, requestModel, HttpMethod.GET, counter);
+
+      if (vedioResponse != null && vedioResponse.getVideoUrl() != null) {
+        transfer(vedioResponse.getVideoUrl(), counter);
+      }
+    } catch (HttpException ex) {
+      interrupted(ex);
+      return 0;
+    }
 
-      // 尝试解析前面请求返回的json字符串
-      MediaGetTemporaryWithVideoResponse vedioResponse = ResponseParser
-          .parse(MediaGetTemporaryWithVideoResponse.class, text);
+    return counter.getCount();
+  }
 
-      // 如果能执行到这里，代表是视频，否则上边会解析出错，直接返回前面请求的文件流
-      is = Http.requestStreamWithBodyContent(vedioResponse.getVideoUrl(), HttpMethod.GET, null,
-          ContentType.JSON);
-      result = readStream(is);
-      is.close();
-    } catch (Exception ex) {
-      logger.debug("media api get temporary media", ex);
+  @Override
+  public long getTemporaryMedia(String mediaId, WritableByteChannel channel) {
+    return getTemporaryMedia(mediaId, Channels.newOutputStream(channel));
+  }
+
+  @Override
+  public long getTemporaryMedia(String mediaId, Path path) {
+    OutputStream out = openFile(path);
+    if (out == null) {
+      return 0;
     }
 
-    return result;
+    long count = 0;
+    try {
+      count = getTemporaryMedia(mediaId, out);
+      return count;
+    } finally {
+      closeFile(path, out, count > 0);
+    }
   }
 
   @Override
   public byte[] getTemporaryMediaWithHqAudio(String mediaId) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    return getTemporaryMediaWithHqAudio(mediaId, out) > 0 ? out.toByteArray() : null;
+  }
+
+  @Override
+  public long getTemporaryMediaWithHqAudio(String mediaId, OutputStream out) {
     MediaGetTemporaryWithHqAudioRequest requestModel = new MediaGetTemporaryWithHqAudioRequest();
     requestModel.setMediaId(mediaId);
 
-    return readStream(getStream(requestModel));
+    CountingOutputStream counter = new CountingOutputStream(out);
+    try {
+      download(Boolean.class, requestModel, HttpMethod.GET, counter);
+    } catch (HttpException ex) {
+      interrupted(ex);
+      return 0;
+    }
+    return counter.getCount();
+  }
+
+  @Override
+  public long getTemporaryMediaWithHqAudio(String mediaId, WritableByteChannel channel) {
+    return getTemporaryMediaWithHqAudio(mediaId, Channels.newOutputStream(channel));
+  }
+
+  @Override
+  public long getTemporaryMediaWithHqAudio(String mediaId, Path path) {
+    OutputStream out = openFile(path);
+    if (out == null) {
+      return 0;
+    }
+
+    long count = 0;
+    try {
+      count = getTemporaryMediaWithHqAudio(mediaId, out);
+      return count;
+    } finally {
+      closeFile(path, out, count > 0);
+    }
   }
 
   @Override
   public MediaAddTimelessResponse addTimelessMedia(MediaType type, String fileName, File file) {
+    return addTimelessMedia(type, fileName, UploadSource.of(file));
+  }
+
+  @Override
+  public MediaAddTimelessResponse addTimelessMedia(MediaType type, String fileName,
+      UploadSource source) {
     Preconditions.checkArgument(MediaType.VIDEO != type,
         "Please invoke addTimelessMediaVideo for upload vedio");
     MediaAddTimelessRequest requestModel = new MediaAddTimelessRequest();
     requestModel.setType(type.getText());
 
     return upload(MediaAddTimelessResponse.class, requestModel, Convention.MEDIA_FILE_UPLOAD_KEY,
-        fileName, file, null);
+        fileName, source, null);
   }
 
   @Override
   public MediaAddTimelessResponse addTimelessMediaVideo(String fileName, File file, String title,
       String description) {
+    return addTimelessMediaVideo(fileName, UploadSource.of(file), title, description);
+  }
+
+  @Override
+  public MediaAddTimelessResponse addTimelessMediaVideo(String fileName, UploadSource source,
+      String title, String description) {
     MediaAddTimelessRequest requestModel = new MediaAddTimelessRequest();
     requestModel.setType(MediaType.VIDEO.getText());
 
@@ -131,7 +210,7 @@ public class MaterialApiImpl extends BasicApi implements MaterialApi {
     FormData data = new FormData(Convention.MEDIA_VIDEO_FORM_KEY, obj.toString());
 
     return upload(MediaAddTimelessResponse.class, requestModel, Convention.MEDIA_FILE_UPLOAD_KEY,
-        fileName, file, Lists.newArrayList(data));
+        fileName, source, Lists.newArrayList(data));
   }
 
   @Override
@@ -145,21 +224,58 @@ public class MaterialApiImpl extends BasicApi implements MaterialApi {
 
   @Override
   public MediaGetTimelessResponse getTimelessMedia(String mediaId) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MediaGetTimelessResponse responseModel = getTimelessMedia(mediaId, out);
+    if (responseModel != null && out.size() > 0) {
+      responseModel.setStream(out.toByteArray());
+    }
+
+    return responseModel;
+  }
+
+  @Override
+  public MediaGetTimelessResponse getTimelessMedia(String mediaId, OutputStream out) {
     MediaGetTimelessRequest requestModel = new MediaGetTimelessRequest();
     requestModel.setMediaId(mediaId);
 
-    MediaGetTimelessResponse responseModel = null;
+    CountingOutputStream counter = new CountingOutputStream(out);
+    // 图文与视频素材返回json，其他素材直接返回文件流
+    MediaGetTimelessResponse responseModel;
     try {
-      responseModel = post(MediaGetTimelessResponse.class, requestModel);
-    } catch (JsonSyntaxException ex) {
-      logger.info("Json字符串解析错误，尝试获取二进制流（文件），可能是在获取永久图片、音频素材");
+      responseModel = download(MediaGetTimelessResponse.class, requestModel, HttpMethod.POST,
+          counter);
+    } catch (HttpException ex) {
+      interrupted(ex);
+      return null;
+    }
+    if (responseModel == null && counter.getCount() > 0) {
       responseModel = new MediaGetTimelessResponse();
-      responseModel.setStream(readStream(postStream(requestModel)));
     }
 
     return responseModel;
   }
 
+  @Override
+  public MediaGetTimelessResponse getTimelessMedia(String mediaId, WritableByteChannel channel) {
+    return getTimelessMedia(mediaId, Channels.newOutputStream(channel));
+  }
+
+  @Override
+  public MediaGetTimelessResponse getTimelessMedia(String mediaId, Path path) {
+    OutputStream out = openFile(path);
+    if (out == null) {
+      return null;
+    }
+
+    MediaGetTimelessResponse responseModel = null;
+    try {
+      responseModel = getTimelessMedia(mediaId, out);
+      return responseModel;
+    } finally {
+      closeFile(path, out, responseModel != null);
+    }
+  }
+
   @Override
   public boolean deleteTimelessMedia(String mediaId) {
     MediaDeleteTimelessRequest requestModel = new MediaDeleteTimelessRequest();
@@ -206,10 +322,15 @@ public class MaterialApiImpl extends BasicApi implements MaterialApi {
 
   @Override
   public String addMassMediaImage(String fileName, File file) {
+    return addMassMediaImage(fileName, UploadSource.of(file));
+  }
+
+  @Override
+  public String addMassMediaImage(String fileName, UploadSource source) {
     MediaAddMassImageRequest requestModel = new MediaAddMassImageRequest();
 
     MediaAddMassResponse responseModel = upload(MediaAddMassResponse.class, requestModel,
-        Convention.MEDIA_FILE_UPLOAD_KEY, fileName, file, null);
+        Convention.MEDIA_FILE_UPLOAD_KEY, fileName, source, null);
     return null == responseModel ? null : responseModel.getUrl();
   }
 
@@ -232,4 +353,58 @@ public class MaterialApiImpl extends BasicApi implements MaterialApi {
     return post(MediaTransformMassVideoResponse.class, requestModel);
   }
 
+  private OutputStream openFile(Path path) {
+    try {
+      return Files.newOutputStream(path);
+    } catch (IOException ex) {
+      logger.error("media api open file", ex);
+      return null;
+    }
+  }
+
+  /**
+   * 关闭文件，获取失败时删除不完整的文件.
+   */
+  private void closeFile(Path path, OutputStream out, boolean completed) {
+    try {
+      out.close();
+    } catch (IOException ex) {
+      logger.error("media api close file", ex);
+      completed = false;
+    }
+
+    if (!completed) {
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException ex) {
+        logger.error("media api delete file", ex);
+      }
+    }
+  }
+
+  /**
+   * 从下载地址获取内容并写入输出流.
+   */
+  private void transfer(String url, OutputStream out) {
+    StreamResponse response = Http.requestStreamResponseWithBodyContent(url, HttpMethod.GET,
+        null, ContentType.JSON);
+    try {
+      response.transferTo(out);
+    } catch (IOException ex) {
+      throw new HttpException(ex.getMessage(), ex);
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * 下载失败，输出流中可能已写入了部分内容：配置了抛出异常时抛出，否则按获取失败返回.
+   */
+  private void interrupted(HttpException ex) {
+    if (Registry.setting().isThrowException()) {
+      throw ex;
+    }
+    logger.error("media api download", ex);
+  }
+
 }
@@ -8,6 +8,8 @@ import com.google.common.base.Strings;
 import io.github.rcarlosdasilva.weixin.api.BasicApi;
 import io.github.rcarlosdasilva.weixin.api.weixin.MessageApi;
 import io.github.rcarlosdasilva.weixin.common.Convention;
+import io.github.rcarlosdasilva.weixin.core.outbox.Outbox;
+import io.github.rcarlosdasilva.weixin.model.request.base.Request;
 import io.github.rcarlosdasilva.weixin.model.request.message.MessageDeleteMassRequest;
 import io.github.rcarlosdasilva.weixin.model.request.message.MessageQueryAutoReplyRequest;
 import io.github.rcarlosdasilva.weixin.model.request.message.MessageQueryMassStatusRequest;
@@ -44,47 +46,30 @@ public class MessageApiImpl extends BasicApi implements MessageApi {
   @Override
   public long sendWithTemplate(String to, String templateId, String url,
       Map<String, Template> data) {
-    MessageSendWithTemplateRequest requestModel = new MessageSendWithTemplateRequest();
-    requestModel.setTo(to);
-    requestModel.setTemplateId(templateId);
-    requestModel.setUrl(url);
-    requestModel.setData(data);
+    MessageSendWithTemplateRequest requestModel = templateRequest(to, templateId, url, data, null,
+        null);
 
-    MessageSendWithTemplateResponse responseModel = post(MessageSendWithTemplateResponse.class,
-        requestModel);
+    MessageSendWithTemplateResponse responseModel = postOrDefer(
+        MessageSendWithTemplateResponse.class, to, requestModel);
     return responseModel == null ? Convention.GLOBAL_FAIL_ID : responseModel.getMessageId();
   }
 
   @Override
   public long sendWithTemplate(String to, String templateId, String url, Map<String, Template> data,
       String appid, String route) {
-    MessageSendWithTemplateRequest requestModel = new MessageSendWithTemplateRequest();
-    requestModel.setTo(to);
-    requestModel.setTemplateId(templateId);
-    requestModel.setUrl(url);
-    requestModel.setData(data);
-    requestModel.setAppid(appid);
-    requestModel.setRoute(route);
+    MessageSendWithTemplateRequest requestModel = templateRequest(to, templateId, url, data, appid,
+        route);
 
-    MessageSendWithTemplateResponse responseModel = post(MessageSendWithTemplateResponse.class,
-        requestModel);
+    MessageSendWithTemplateResponse responseModel = postOrDefer(
+        MessageSendWithTemplateResponse.class, to, requestModel);
     return responseModel == null ? Convention.GLOBAL_FAIL_ID : responseModel.getMessageId();
   }
 
   @Override
   public boolean sendWithCustom(String to, MessageContainer messageContainer) {
-    MessageSendWithCustomRequest requestModel = new MessageSendWithCustomRequest();
-    requestModel.setTo(to);
-    requestModel.setType(messageContainer.getType());
-    injectMessageContent(messageContainer, requestModel);
-
-    if (Strings.isNullOrEmpty(messageContainer.getCustomServiceAccount())) {
-      CustomService customService = new CustomService();
-      customService.setAccount(messageContainer.getCustomServiceAccount());
-      requestModel.setCustomService(customService);
-    }
+    MessageSendWithCustomRequest requestModel = customRequest(to, messageContainer);
 
-    return post(Boolean.class, requestModel);
+    return postOrDefer(Boolean.class, to, requestModel);
   }
 
   @Override
@@ -174,6 +159,62 @@ public class MessageApiImpl extends BasicApi implements MessageApi {
     return post(Boolean.class, requestModel);
   }
 
+  /**
+   * 生成模板消息请求模型.
+   */
+  public static MessageSendWithTemplateRequest templateRequest(String to, String templateId,
+      String url, Map<String, Template> data, String appid, String route) {
+    MessageSendWithTemplateRequest requestModel = new MessageSendWithTemplateRequest();
+    requestModel.setTo(to);
+    requestModel.setTemplateId(templateId);
+    requestModel.setUrl(url);
+    requestModel.setData(data);
+    requestModel.setAppid(appid);
+    requestModel.setRoute(route);
+    return requestModel;
+  }
+
+  /**
+   * 生成客服消息请求模型.
+   */
+  public static MessageSendWithCustomRequest customRequest(String to,
+      MessageContainer messageContainer) {
+    MessageSendWithCustomRequest requestModel = new MessageSendWithCustomRequest();
+    requestModel.setTo(to);
+    requestModel.setType(messageContainer.getType());
+    injectMessageContent(messageContainer, requestModel);
+
+    if (Strings.isNullOrEmpty(messageContainer.getCustomServiceAccount())) {
+      CustomService customService = new CustomService();
+      customService.setAccount(messageContainer.getCustomServiceAccount());
+      requestModel.setCustomService(customService);
+    }
+    return requestModel;
+  }
+
+  /**
+   * 发送消息，暂时失败时写入发件箱并返回发送失败的结果，见
+   * {@link Outbox#defer(String, String, Request, RuntimeException)}.
+   * <p>
+   * 接收人在发件箱中还有未发送的消息时不直接发送，写入发件箱排在后面，同样返回发送失败的结果，见
+   * {@link Outbox#queueBehind(String, String, Request)}
+   */
+  private <T> T postOrDefer(Class<T> target, String to, Request requestModel) {
+    if (Outbox.queueBehind(accountKey, to, requestModel)) {
+      return target == Boolean.class ? target.cast(Boolean.FALSE) : null;
+    }
+
+    try {
+      // 总是抛出异常，按错误代码区分暂时失败与永久失败
+      return postOrThrow(target, requestModel);
+    } catch (RuntimeException ex) {
+      if (Outbox.defer(accountKey, to, requestModel, ex)) {
+        return target == Boolean.class ? target.cast(Boolean.FALSE) : null;
+      }
+      return giveUp(target, ex);
+    }
+  }
+
   /**
    * 根据 {@link MessageContainer} 中的type，将对应的消息内容注入到 {@link MessageRequest} 中.
    * 
@@ -182,7 +223,7 @@ public class MessageApiImpl extends BasicApi implements MessageApi {
    * @param requestModel
    *          {@link MessageRequest}
    */
-  private void injectMessageContent(MessageContainer messageContainer,
+  private static void injectMessageContent(MessageContainer messageContainer,
       MessageRequest requestModel) {
     switch (messageContainer.getType()) {
       case TEXT: {
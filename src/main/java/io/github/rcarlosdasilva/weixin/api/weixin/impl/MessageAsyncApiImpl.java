@@ -0,0 +1,56 @@
+package io.github.rcarlosdasilva.weixin.api.weixin.impl;
+
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.github.rcarlosdasilva.weixin.api.BasicApi;
+import io.github.rcarlosdasilva.weixin.api.weixin.MessageAsyncApi;
+import io.github.rcarlosdasilva.weixin.common.Convention;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.MessageContainer;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.Template;
+import io.github.rcarlosdasilva.weixin.model.response.message.MessageSendWithTemplateResponse;
+
+/**
+ * 消息推送异步API实现
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class MessageAsyncApiImpl extends BasicApi implements MessageAsyncApi {
+
+  private static final Function<MessageSendWithTemplateResponse, Long> TO_MESSAGE_ID = new Function<MessageSendWithTemplateResponse, Long>() {
+
+    @Override
+    public Long apply(MessageSendWithTemplateResponse input) {
+      return input == null ? Convention.GLOBAL_FAIL_ID : input.getMessageId();
+    }
+  };
+
+  public MessageAsyncApiImpl(String accountKey) {
+    super(accountKey);
+  }
+
+  @Override
+  public ListenableFuture<Long> sendWithTemplate(String to, String templateId, String url,
+      Map<String, Template> data) {
+    return sendWithTemplate(to, templateId, url, data, null, null);
+  }
+
+  @Override
+  public ListenableFuture<Long> sendWithTemplate(String to, String templateId, String url,
+      Map<String, Template> data, String appid, String route) {
+    ListenableFuture<MessageSendWithTemplateResponse> future = postAsync(
+        MessageSendWithTemplateResponse.class,
+        MessageApiImpl.templateRequest(to, templateId, url, data, appid, route));
+    return Futures.transform(future, TO_MESSAGE_ID, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<Boolean> sendWithCustom(String to, MessageContainer messageContainer) {
+    return postAsync(Boolean.class, MessageApiImpl.customRequest(to, messageContainer));
+  }
+
+}
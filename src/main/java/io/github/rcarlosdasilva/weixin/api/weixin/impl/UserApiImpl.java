@@ -52,19 +52,14 @@ public class UserApiImpl extends BasicApi implements UserApi {
 
   @Override
   public User getUserInfo(String openId, Language language) {
-    UserInfoRequest requestModel = new UserInfoRequest();
-    requestModel.setLanguage(language);
-    requestModel.setOpenId(openId);
+    UserInfoRequest requestModel = userInfoRequest(openId, language);
 
     return get(UserResponse.class, requestModel);
   }
 
   @Override
   public List<User> getUsersInfo(List<String> openIds, Language language) {
-    UserInfoListRequest requestModel = new UserInfoListRequest();
-    for (String openId : openIds) {
-      requestModel.addUserOpenId(openId, language);
-    }
+    UserInfoListRequest requestModel = usersInfoRequest(openIds, language);
 
     UserListResponse responseModel = post(UserListResponse.class, requestModel);
 
@@ -78,8 +73,7 @@ public class UserApiImpl extends BasicApi implements UserApi {
 
   @Override
   public UserOpenIdListResponse listAllUsersOpenId(String nextOpenId) {
-    UserOpenIdListRequest requestModel = new UserOpenIdListRequest();
-    requestModel.setNextOpenId(nextOpenId);
+    UserOpenIdListRequest requestModel = openIdListRequest(nextOpenId);
 
     return get(UserOpenIdListResponse.class, requestModel);
   }
@@ -156,4 +150,35 @@ public class UserApiImpl extends BasicApi implements UserApi {
     return post(Boolean.class, requestModel);
   }
 
+
+  /**
+   * 生成获取用户信息请求模型.
+   */
+  static UserInfoRequest userInfoRequest(String openId, Language language) {
+    UserInfoRequest requestModel = new UserInfoRequest();
+    requestModel.setLanguage(language);
+    requestModel.setOpenId(openId);
+    return requestModel;
+  }
+
+  /**
+   * 生成批量获取用户信息请求模型.
+   */
+  static UserInfoListRequest usersInfoRequest(List<String> openIds, Language language) {
+    UserInfoListRequest requestModel = new UserInfoListRequest();
+    for (String openId : openIds) {
+      requestModel.addUserOpenId(openId, language);
+    }
+    return requestModel;
+  }
+
+  /**
+   * 生成获取用户列表请求模型.
+   */
+  static UserOpenIdListRequest openIdListRequest(String nextOpenId) {
+    UserOpenIdListRequest requestModel = new UserOpenIdListRequest();
+    requestModel.setNextOpenId(nextOpenId);
+    return requestModel;
+  }
+
 }
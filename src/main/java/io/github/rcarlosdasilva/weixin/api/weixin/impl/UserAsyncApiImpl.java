@@ -0,0 +1,79 @@
+package io.github.rcarlosdasilva.weixin.api.weixin.impl;
+
+import java.util.List;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.github.rcarlosdasilva.weixin.api.BasicApi;
+import io.github.rcarlosdasilva.weixin.api.weixin.UserAsyncApi;
+import io.github.rcarlosdasilva.weixin.common.dictionary.Language;
+import io.github.rcarlosdasilva.weixin.model.response.user.UserListResponse;
+import io.github.rcarlosdasilva.weixin.model.response.user.UserOpenIdListResponse;
+import io.github.rcarlosdasilva.weixin.model.response.user.UserResponse;
+import io.github.rcarlosdasilva.weixin.model.response.user.bean.User;
+
+/**
+ * 用户相关异步API实现
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class UserAsyncApiImpl extends BasicApi implements UserAsyncApi {
+
+  private static final Function<UserListResponse, List<User>> TO_USER_LIST = new Function<UserListResponse, List<User>>() {
+
+    @Override
+    public List<User> apply(UserListResponse input) {
+      return input == null ? null : input.getUserList();
+    }
+  };
+
+  private static final Function<UserResponse, User> TO_USER = new Function<UserResponse, User>() {
+
+    @Override
+    public User apply(UserResponse input) {
+      return input;
+    }
+  };
+
+  public UserAsyncApiImpl(String accountKey) {
+    super(accountKey);
+  }
+
+  @Override
+  public ListenableFuture<User> getUserInfo(String openId) {
+    return getUserInfo(openId, Language.ZH_CN);
+  }
+
+  @Override
+  public ListenableFuture<User> getUserInfo(String openId, Language language) {
+    ListenableFuture<UserResponse> future = getAsync(UserResponse.class,
+        UserApiImpl.userInfoRequest(openId, language));
+    return Futures.transform(future, TO_USER, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<List<User>> getUsersInfo(List<String> openIds) {
+    return getUsersInfo(openIds, Language.ZH_CN);
+  }
+
+  @Override
+  public ListenableFuture<List<User>> getUsersInfo(List<String> openIds, Language language) {
+    ListenableFuture<UserListResponse> future = postAsync(UserListResponse.class,
+        UserApiImpl.usersInfoRequest(openIds, language));
+    return Futures.transform(future, TO_USER_LIST, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<UserOpenIdListResponse> listAllUsersOpenId() {
+    return listAllUsersOpenId(null);
+  }
+
+  @Override
+  public ListenableFuture<UserOpenIdListResponse> listAllUsersOpenId(String nextOpenId) {
+    return getAsync(UserOpenIdListResponse.class, UserApiImpl.openIdListRequest(nextOpenId));
+  }
+
+}
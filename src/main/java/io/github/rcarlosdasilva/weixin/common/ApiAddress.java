@@ -11,7 +11,26 @@ public class ApiAddress {
     throw new IllegalStateException("ApiAddress class");
   }
 
-  private static final String URL_API_DOMAIN = "https://api.weixin.qq.com/";
+  /**
+   * 默认API域名，请求发送前会替换为域名池中当前最快的可用域名，见 {@code DomainPool}.
+   */
+  public static final String URL_API_DOMAIN = "https://api.weixin.qq.com/";
+  /**
+   * 备用API域名.
+   */
+  public static final String URL_API_DOMAIN_BACKUP = "https://api2.weixin.qq.com/";
+  /**
+   * 上海地区API域名.
+   */
+  public static final String URL_API_DOMAIN_SHANGHAI = "https://sh.api.weixin.qq.com/";
+  /**
+   * 深圳地区API域名.
+   */
+  public static final String URL_API_DOMAIN_SHENZHEN = "https://sz.api.weixin.qq.com/";
+  /**
+   * 香港地区API域名.
+   */
+  public static final String URL_API_DOMAIN_HONGKONG = "https://hk.api.weixin.qq.com/";
   private static final String URL_MP_DOMAIN = "https://mp.weixin.qq.com/";
   private static final String URL_OPEN_DOMAIN = "https://open.weixin.qq.com/";
   @SuppressWarnings("unused")
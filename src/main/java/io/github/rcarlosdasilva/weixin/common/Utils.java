@@ -7,10 +7,15 @@ import java.io.ObjectOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Formatter;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
 /**
  * 简单工具
  * 
@@ -19,6 +24,8 @@ import org.slf4j.LoggerFactory;
 public class Utils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Utils.class);
+  private static final Pattern ACCESS_TOKEN_PARAM = Pattern
+      .compile("(?<=[?&])(component_)?access_token=[^&]*&?");
 
   private Utils() {
   }
@@ -56,6 +63,44 @@ public class Utils {
     return result;
   }
 
+  /**
+   * 去掉URL中的参数部分.
+   * 
+   * @param url
+   *          url
+   * @return 不含参数的url
+   */
+  public static String urlPath(String url) {
+    int index = url.indexOf('?');
+    return index < 0 ? url : url.substring(0, index);
+  }
+
+  /**
+   * 请求指纹，相同公众号对相同地址发送相同内容的请求，指纹相同.
+   * <p>
+   * URL中的access_token（或component_access_token）不参与计算，刷新access_token前后的相同请求指纹一致
+   * 
+   * @param account
+   *          公众号key，开放平台为null
+   * @param url
+   *          请求地址
+   * @param body
+   *          请求内容，可为null
+   * @return 指纹
+   */
+  public static String fingerprint(String account, String url, String body) {
+    String stripped = ACCESS_TOKEN_PARAM.matcher(url).replaceAll("");
+    if (stripped.endsWith("?") || stripped.endsWith("&")) {
+      stripped = stripped.substring(0, stripped.length() - 1);
+    }
+
+    StringBuilder sb = new StringBuilder(Strings.nullToEmpty(account)).append('|').append(stripped);
+    if (!Strings.isNullOrEmpty(body)) {
+      sb.append('|').append(Hashing.sha1().hashString(body, Charsets.UTF_8));
+    }
+    return sb.toString();
+  }
+
   public static <T> byte[] serialize(T object) {
     if (object == null) {
       return null;
@@ -0,0 +1,27 @@
+package io.github.rcarlosdasilva.weixin.common.dictionary;
+
+/**
+ * 请求失败的类别，决定失败后的处理方式
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum ErrorKind {
+
+  /**
+   * 暂时性失败（系统繁忙、连接失败等），稍后重试可能成功.
+   */
+  RETRYABLE,
+  /**
+   * access_token无效，刷新后重试.
+   */
+  TOKEN,
+  /**
+   * 接口调用额度用尽，重试无意义.
+   */
+  QUOTA,
+  /**
+   * 请求本身有误或结果不确定，不重试.
+   */
+  PERMANENT;
+
+}
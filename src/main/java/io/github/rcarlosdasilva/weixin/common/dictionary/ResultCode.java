@@ -235,6 +235,26 @@ public enum ResultCode {
     return text;
   }
 
+  /**
+   * 错误类别.
+   * 
+   * @return {@link ErrorKind}
+   */
+  public ErrorKind getKind() {
+    switch (this) {
+      case RESULT_n1:
+        return ErrorKind.RETRYABLE;
+      case RESULT_40001:
+      case RESULT_40014:
+      case RESULT_42001:
+        return ErrorKind.TOKEN;
+      case RESULT_45009:
+        return ErrorKind.QUOTA;
+      default:
+        return ErrorKind.PERMANENT;
+    }
+  }
+
   /**
    * 根据code获取枚举对象.
    * 
@@ -12,11 +12,13 @@ import com.google.common.collect.Maps;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
 import io.github.rcarlosdasilva.weixin.core.cache.Lookup;
 import io.github.rcarlosdasilva.weixin.core.exception.InvalidAccountException;
+import io.github.rcarlosdasilva.weixin.core.http.Http;
 import io.github.rcarlosdasilva.weixin.core.listener.AccessTokenUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.JsTicketUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.OpenPlatformAccessTokenUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.OpenPlatformLisensorAccessTokenUpdatedListener;
 import io.github.rcarlosdasilva.weixin.core.listener.WeixinListener;
+import io.github.rcarlosdasilva.weixin.core.outbox.Outbox;
 import io.github.rcarlosdasilva.weixin.core.setting.Setting;
 import io.github.rcarlosdasilva.weixin.model.AccessToken;
 import io.github.rcarlosdasilva.weixin.model.OpAccount;
@@ -49,6 +51,10 @@ public class Registry {
     Preconditions.checkNotNull(setting);
 
     registryHandler.setSetting(setting);
+    Http.reload(setting.getHttpSetting());
+    if (setting.getOutboxSetting() != null) {
+      Outbox.start(setting.getOutboxSetting());
+    }
   }
 
   public static Setting setting() {
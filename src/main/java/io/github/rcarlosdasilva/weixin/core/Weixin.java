@@ -1,6 +1,6 @@
 package io.github.rcarlosdasilva.weixin.core;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,7 +52,7 @@ import io.github.rcarlosdasilva.weixin.api.weixin.impl.UserTagApiImpl;
 public class Weixin {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Weixin.class);
-  private static final Map<String, Weixin> HOLDER = Maps.newHashMap();
+  private static final ConcurrentMap<String, Weixin> HOLDER = Maps.newConcurrentMap();
 
   private final CertificateApi certificate;
   private final CommonApi common;
@@ -66,6 +66,7 @@ public class Weixin {
   private final MessageApi message;
   private final StatisticsApi statistics;
   private final TemplateApi template;
+  private final WeixinAsync async;
 
   private Weixin(String key) {
     this.certificate = new CertificateApiImpl(key);
@@ -80,6 +81,7 @@ public class Weixin {
     this.message = new MessageApiImpl(key);
     this.statistics = new StatisticsApiImpl(key);
     this.template = new TemplateApiImpl(key);
+    this.async = new WeixinAsync(key);
   }
 
   /**
@@ -93,14 +95,16 @@ public class Weixin {
     Weixin weixin = HOLDER.get(key);
     if (weixin == null) {
       if (Registry.exists(key)) {
-        synchronized (HOLDER) {
-          HOLDER.put(key, new Weixin(key));
+        weixin = new Weixin(key);
+        Weixin exists = HOLDER.putIfAbsent(key, weixin);
+        if (exists != null) {
+          weixin = exists;
         }
       } else {
         LOGGER.warn("尝试获取一个未注册的公众号API入口：{}", key);
       }
     }
-    return HOLDER.get(key);
+    return weixin;
   }
 
   /**
@@ -211,4 +215,13 @@ public class Weixin {
     return template;
   }
 
+  /**
+   * 异步API功能.
+   * 
+   * @return 异步API入口
+   */
+  public WeixinAsync async() {
+    return async;
+  }
+
 }
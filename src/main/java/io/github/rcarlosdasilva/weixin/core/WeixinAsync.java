@@ -0,0 +1,46 @@
+package io.github.rcarlosdasilva.weixin.core;
+
+import io.github.rcarlosdasilva.weixin.api.weixin.MessageAsyncApi;
+import io.github.rcarlosdasilva.weixin.api.weixin.UserAsyncApi;
+import io.github.rcarlosdasilva.weixin.api.weixin.impl.MessageAsyncApiImpl;
+import io.github.rcarlosdasilva.weixin.api.weixin.impl.UserAsyncApiImpl;
+
+/**
+ * 微信公众号异步API入口
+ * 
+ * <p>
+ * 通过 {@code Weixin.with(key).async()} 获取，返回的Future在请求完成后回调，不占用调用线程。<br>
+ * 示例：<br>
+ * 异步发送模板消息： {@code Weixin.with(key).async().message().sendWithTemplate(...)}<br>
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class WeixinAsync {
+
+  private final MessageAsyncApi message;
+  private final UserAsyncApi user;
+
+  WeixinAsync(String key) {
+    this.message = new MessageAsyncApiImpl(key);
+    this.user = new UserAsyncApiImpl(key);
+  }
+
+  /**
+   * 消息推送相关异步API功能.
+   * 
+   * @return 消息推送入口
+   */
+  public MessageAsyncApi message() {
+    return message;
+  }
+
+  /**
+   * 用户相关异步API功能.
+   * 
+   * @return 用户入口
+   */
+  public UserAsyncApi user() {
+    return user;
+  }
+
+}
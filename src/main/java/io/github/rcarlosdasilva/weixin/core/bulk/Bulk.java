@@ -0,0 +1,173 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.exception.InvalidAccountException;
+import io.github.rcarlosdasilva.weixin.core.http.Priority;
+import io.github.rcarlosdasilva.weixin.core.http.PriorityLanes;
+
+/**
+ * 批量调用同一公众号的API（如按openid列表获取用户信息、给大量用户发送模板消息）
+ * <p>
+ * 输入逐个读取，不会一次性全部载入；并发数同时受本次执行的并发数、
+ * {@code Setting.setBulkMaxConcurrencyPerAccount}（同一公众号所有批量执行共享）与
+ * {@code Setting.setBulkMaxConcurrency}（所有批量执行共享）限制。单个输入失败不影响其他输入。
+ * 
+ * <pre>
+ * BulkJob&lt;String, User&gt; job = Bulk.with(key).concurrency(8).ordered(true).submit(openIds,
+ *     new BulkCall&lt;String, User&gt;() {
+ * 
+ *       public User call(Weixin weixin, String openId) {
+ *         return weixin.user().getUserInfo(openId);
+ *       }
+ *     });
+ * List&lt;BulkItem&lt;String, User&gt;&gt; users = job.await();
+ * </pre>
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class Bulk {
+
+  private static final int DEFAULT_REORDER_WINDOW = 1000;
+
+  private final String key;
+  private final Weixin weixin;
+  private int concurrency;
+  private boolean ordered = false;
+  private boolean collect = true;
+  private Priority priority = Priority.BULK;
+  private int reorderWindow = DEFAULT_REORDER_WINDOW;
+
+  private Bulk(String key, Weixin weixin) {
+    this.key = key;
+    this.weixin = weixin;
+    this.concurrency = Registry.setting().getBulkMaxConcurrencyPerAccount();
+  }
+
+  /**
+   * 指定公众号.
+   * 
+   * @param key
+   *          公众号配置注册键
+   * @return {@link Bulk}
+   */
+  public static Bulk with(String key) {
+    Weixin weixin = Weixin.with(key);
+    if (weixin == null) {
+      throw new InvalidAccountException();
+    }
+    return new Bulk(key, weixin);
+  }
+
+  /**
+   * 本次执行的并发数，默认为每个公众号的并发上限.
+   * 
+   * @param concurrency
+   *          并发数
+   * @return {@link Bulk}
+   */
+  public Bulk concurrency(int concurrency) {
+    Preconditions.checkArgument(concurrency > 0);
+    this.concurrency = concurrency;
+    return this;
+  }
+
+  /**
+   * 是否按输入顺序回调与返回结果，默认否（按完成顺序）.
+   * <p>
+   * 有序时，先完成的结果要等待之前的输入完成后才回调
+   * 
+   * @param ordered
+   *          boolean
+   * @return {@link Bulk}
+   */
+  public Bulk ordered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * 有序执行时最多等待的结果数，默认1000.
+   * <p>
+   * 前面的输入迟迟未完成时，之后完成的结果都要暂存，暂存数达到上限后不再读取新的输入，直到前面的输入完成
+   * 
+   * @param reorderWindow
+   *          结果数
+   * @return {@link Bulk}
+   */
+  public Bulk reorderWindow(int reorderWindow) {
+    Preconditions.checkArgument(reorderWindow > 0);
+    this.reorderWindow = reorderWindow;
+    return this;
+  }
+
+  /**
+   * 是否收集所有结果供 {@link BulkJob#await()} 返回，默认是.
+   * <p>
+   * 输入很多时建议关闭，在 {@link BulkListener#onItem(BulkItem)} 中逐个处理
+   * 
+   * @param collect
+   *          boolean
+   * @return {@link Bulk}
+   */
+  public Bulk collect(boolean collect) {
+    this.collect = collect;
+    return this;
+  }
+
+  /**
+   * 调用使用的请求优先级，默认 {@link Priority#BULK}，见 {@link PriorityLanes}.
+   * 
+   * @param priority
+   *          {@link Priority}
+   * @return {@link Bulk}
+   */
+  public Bulk priority(Priority priority) {
+    this.priority = Preconditions.checkNotNull(priority);
+    return this;
+  }
+
+  public <I, O> BulkJob<I, O> submit(Iterable<I> inputs, BulkCall<I, O> call) {
+    return submit(inputs.iterator(), call, null);
+  }
+
+  public <I, O> BulkJob<I, O> submit(Iterable<I> inputs, BulkCall<I, O> call,
+      BulkListener<I, O> listener) {
+    return submit(inputs.iterator(), call, listener);
+  }
+
+  public <I, O> BulkJob<I, O> submit(Iterator<I> inputs, BulkCall<I, O> call) {
+    return submit(inputs, call, null);
+  }
+
+  /**
+   * 开始批量执行，立即返回.
+   * 
+   * @param <I>
+   *          输入类型
+   * @param <O>
+   *          结果类型
+   * @param inputs
+   *          输入，在多个线程中加锁逐个读取
+   * @param call
+   *          对每个输入的调用
+   * @param listener
+   *          回调，可为null
+   * @return {@link BulkJob}
+   */
+  public <I, O> BulkJob<I, O> submit(Iterator<I> inputs, BulkCall<I, O> call,
+      BulkListener<I, O> listener) {
+    Preconditions.checkNotNull(inputs);
+    Preconditions.checkNotNull(call);
+
+    BulkJob<I, O> job = new BulkJob<I, O>(key, weixin, inputs, call, listener,
+        ordered ? reorderWindow : 0, collect, priority);
+    job.start(concurrency);
+    return job;
+  }
+
+}
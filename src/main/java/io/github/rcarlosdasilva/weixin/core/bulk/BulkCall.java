@@ -0,0 +1,29 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+import io.github.rcarlosdasilva.weixin.core.Weixin;
+
+/**
+ * 批量执行中对单个输入的API调用
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ * @param <I>
+ *          输入类型
+ * @param <O>
+ *          结果类型
+ */
+public interface BulkCall<I, O> {
+
+  /**
+   * 处理一个输入.
+   * 
+   * @param weixin
+   *          批量执行所属公众号的API入口
+   * @param input
+   *          输入
+   * @return 结果
+   * @throws Exception
+   *           异常只影响当前输入，记录在 {@link BulkItem#getError()}
+   */
+  O call(Weixin weixin, I input) throws Exception;
+
+}
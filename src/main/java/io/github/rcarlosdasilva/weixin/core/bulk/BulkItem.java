@@ -0,0 +1,61 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+/**
+ * 批量执行中单个输入的结果
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ * @param <I>
+ *          输入类型
+ * @param <O>
+ *          结果类型
+ */
+public class BulkItem<I, O> {
+
+  private final long index;
+  private final I input;
+  private final O output;
+  private final Throwable error;
+
+  BulkItem(long index, I input, O output, Throwable error) {
+    this.index = index;
+    this.input = input;
+    this.output = output;
+    this.error = error;
+  }
+
+  /**
+   * 输入的序号，从0开始.
+   * 
+   * @return long
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  public I getInput() {
+    return input;
+  }
+
+  /**
+   * 结果，失败时为null.
+   * 
+   * @return 结果
+   */
+  public O getOutput() {
+    return output;
+  }
+
+  /**
+   * 失败原因，成功时为null；因取消而未执行的输入为 {@link java.util.concurrent.CancellationException}.
+   * 
+   * @return Throwable
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+}
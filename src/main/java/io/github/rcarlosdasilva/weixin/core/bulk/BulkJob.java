@@ -0,0 +1,325 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.exception.BulkInputException;
+import io.github.rcarlosdasilva.weixin.core.http.Priority;
+import io.github.rcarlosdasilva.weixin.core.http.PriorityLanes;
+
+/**
+ * 正在执行的批量调用
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ * @param <I>
+ *          输入类型
+ * @param <O>
+ *          结果类型
+ */
+public class BulkJob<I, O> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkJob.class);
+  private static final long PERMIT_POLL_MILLIS = 100;
+
+  private final String key;
+  private final Weixin weixin;
+  private final Iterator<I> inputs;
+  private final BulkCall<I, O> call;
+  private final BulkListener<I, O> listener;
+  private final boolean ordered;
+  private final int reorderWindow;
+  private final boolean collect;
+  private final Priority priority;
+
+  private final Object inputLock = new Object();
+  private long nextIndex = 0;
+
+  private final Object emitLock = new Object();
+  private final Map<Long, BulkItem<I, O>> outOfOrder = Maps.newHashMap();
+  private final List<BulkItem<I, O>> results = Lists.newArrayList();
+  private long nextEmit = 0;
+  private volatile long completed = 0;
+  private volatile long failed = 0;
+
+  private final AtomicInteger runningWorkers = new AtomicInteger();
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile boolean cancelled = false;
+  private volatile boolean stopped = false;
+  private volatile RuntimeException inputError;
+
+  /**
+   * @param reorderWindow
+   *          有序执行时最多暂存的结果数，0表示无序执行
+   */
+  BulkJob(String key, Weixin weixin, Iterator<I> inputs, BulkCall<I, O> call,
+      BulkListener<I, O> listener, int reorderWindow, boolean collect, Priority priority) {
+    this.key = key;
+    this.weixin = weixin;
+    this.inputs = inputs;
+    this.call = call;
+    this.listener = listener;
+    this.ordered = reorderWindow > 0;
+    this.reorderWindow = reorderWindow;
+    this.collect = collect;
+    this.priority = priority;
+  }
+
+  void start(final int concurrency) {
+    runningWorkers.set(concurrency);
+    // 获取access_token可能请求微信或等待锁，不在提交的线程中执行
+    Threads.start("weixin-bulk-" + key, new Runnable() {
+
+      @Override
+      public void run() {
+        // 先取一次access_token，避免所有并发调用同时发现没有可用的access_token
+        try {
+          weixin.certificate().askAccessToken();
+        } catch (RuntimeException ex) {
+          LOGGER.warn("For:{} >> 批量执行前获取access_token失败", key, ex);
+        }
+
+        for (int i = 0; i < concurrency; i++) {
+          Threads.start("weixin-bulk-" + key + "-" + i, new Worker());
+        }
+      }
+    });
+  }
+
+  /**
+   * 取消：不再开始新的调用，正在执行的调用会执行完毕.
+   */
+  public void cancel() {
+    cancelled = true;
+    stopped = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * 已处理数（含失败）.
+   * 
+   * @return long
+   */
+  public long getCompleted() {
+    return completed;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * 读取输入时的异常，读取之后的输入被放弃.
+   * 
+   * @return 没有异常时为null
+   */
+  public RuntimeException getInputError() {
+    return inputError;
+  }
+
+  /**
+   * 等待全部处理完毕.
+   * 
+   * @return 所有结果，有序执行时按输入顺序；未收集结果时为空
+   * @throws BulkInputException
+   *           读取输入失败，之后的输入未处理，已处理的结果见 {@link BulkListener#onItem(BulkItem)}
+   */
+  public List<BulkItem<I, O>> await() {
+    try {
+      done.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a bulk job", ex);
+    }
+    if (inputError != null) {
+      throw new BulkInputException("Failed to read inputs of the bulk job for " + key,
+          inputError);
+    }
+    synchronized (emitLock) {
+      return Collections.unmodifiableList(Lists.newArrayList(results));
+    }
+  }
+
+  /**
+   * 等待全部处理完毕.
+   * 
+   * @param timeout
+   *          最长等待时间
+   * @param unit
+   *          时间单位
+   * @return 是否已全部处理完毕
+   */
+  public boolean await(long timeout, TimeUnit unit) {
+    try {
+      return done.await(timeout, unit);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private boolean acquire(Semaphore semaphore) {
+    while (!stopped) {
+      try {
+        if (semaphore.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private void emit(BulkItem<I, O> item) {
+    synchronized (emitLock) {
+      if (!ordered) {
+        deliver(item);
+        return;
+      }
+
+      outOfOrder.put(item.getIndex(), item);
+      BulkItem<I, O> next;
+      while ((next = outOfOrder.remove(nextEmit)) != null) {
+        nextEmit++;
+        deliver(next);
+      }
+      emitLock.notifyAll();
+    }
+  }
+
+  /**
+   * 有序执行时，等待暂存的结果数低于上限，调用时持有inputLock.
+   * 
+   * @return 是否可以继续读取输入
+   */
+  private boolean awaitReorderWindow() {
+    if (!ordered) {
+      return !stopped;
+    }
+    synchronized (emitLock) {
+      // 最前面的输入已被某个调用取走，它完成后窗口一定会前移
+      while (!stopped && nextIndex - nextEmit >= reorderWindow) {
+        try {
+          emitLock.wait(PERMIT_POLL_MILLIS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return !stopped;
+  }
+
+  private void deliver(BulkItem<I, O> item) {
+    completed++;
+    if (!item.isSuccess()) {
+      failed++;
+    }
+    if (collect) {
+      results.add(item);
+    }
+    if (listener == null) {
+      return;
+    }
+
+    try {
+      listener.onItem(item);
+      listener.onProgress(completed, failed);
+    } catch (RuntimeException ex) {
+      LOGGER.warn("For:{} >> 批量执行回调异常", key, ex);
+    }
+  }
+
+  private void finish() {
+    if (listener != null) {
+      try {
+        if (inputError != null) {
+          listener.onInputError(inputError);
+        }
+        listener.onComplete(cancelled);
+      } catch (RuntimeException ex) {
+        LOGGER.warn("For:{} >> 批量执行回调异常", key, ex);
+      }
+    }
+    done.countDown();
+  }
+
+  private final class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      Priority previous = PriorityLanes.enter(priority);
+      try {
+        while (!stopped) {
+          long index;
+          I input;
+          synchronized (inputLock) {
+            if (!awaitReorderWindow() || !inputs.hasNext()) {
+              break;
+            }
+            index = nextIndex++;
+            input = inputs.next();
+          }
+          emit(execute(index, input));
+        }
+      } catch (RuntimeException ex) {
+        // 输入迭代器异常，停止整个批量执行，结束时交给回调与await
+        LOGGER.error("For:{} >> 批量执行读取输入失败", key, ex);
+        inputError = ex;
+        stopped = true;
+      } finally {
+        PriorityLanes.exit(previous);
+        if (runningWorkers.decrementAndGet() == 0) {
+          finish();
+        }
+      }
+    }
+
+    private BulkItem<I, O> execute(long index, I input) {
+      Semaphore accountLimit = BulkLimits.account(key);
+      if (!acquire(accountLimit)) {
+        return new BulkItem<I, O>(index, input, null, new CancellationException());
+      }
+      try {
+        Semaphore globalLimit = BulkLimits.global();
+        if (!acquire(globalLimit)) {
+          return new BulkItem<I, O>(index, input, null, new CancellationException());
+        }
+        try {
+          return new BulkItem<I, O>(index, input, call.call(weixin, input), null);
+        } catch (Exception ex) {
+          return new BulkItem<I, O>(index, input, null, ex);
+        } finally {
+          globalLimit.release();
+        }
+      } finally {
+        accountLimit.release();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,67 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.core.Registry;
+
+/**
+ * 所有批量执行共享的并发上限：全局与每个公众号
+ * <p>
+ * 配置变化后新建信号量，已获取旧信号量的调用仍释放到旧信号量
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+final class BulkLimits {
+
+  private static final AtomicReference<Limit> GLOBAL = new AtomicReference<Limit>();
+  private static final ConcurrentMap<String, Limit> ACCOUNTS = Maps.newConcurrentMap();
+
+  private BulkLimits() {
+    throw new IllegalStateException("BulkLimits class");
+  }
+
+  static Semaphore global() {
+    int size = Registry.setting().getBulkMaxConcurrency();
+    Limit limit = GLOBAL.get();
+    while (limit == null || limit.size != size) {
+      Limit created = new Limit(size);
+      if (GLOBAL.compareAndSet(limit, created)) {
+        return created.semaphore;
+      }
+      limit = GLOBAL.get();
+    }
+    return limit.semaphore;
+  }
+
+  static Semaphore account(String key) {
+    int size = Registry.setting().getBulkMaxConcurrencyPerAccount();
+    Limit limit = ACCOUNTS.get(key);
+    while (limit == null || limit.size != size) {
+      Limit created = new Limit(size);
+      boolean replaced = limit == null ? ACCOUNTS.putIfAbsent(key, created) == null
+          : ACCOUNTS.replace(key, limit, created);
+      if (replaced) {
+        return created.semaphore;
+      }
+      limit = ACCOUNTS.get(key);
+    }
+    return limit.semaphore;
+  }
+
+  private static final class Limit {
+
+    private final int size;
+    private final Semaphore semaphore;
+
+    private Limit(int size) {
+      this.size = size;
+      this.semaphore = new Semaphore(Math.max(1, size));
+    }
+
+  }
+
+}
@@ -0,0 +1,54 @@
+package io.github.rcarlosdasilva.weixin.core.bulk;
+
+/**
+ * 批量执行的回调，按需覆盖
+ * <p>
+ * 同一批量执行的回调不会并发调用，但不在提交批量执行的线程中执行，回调中不要长时间阻塞
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ * @param <I>
+ *          输入类型
+ * @param <O>
+ *          结果类型
+ */
+public abstract class BulkListener<I, O> {
+
+  /**
+   * 一个输入处理完毕（成功或失败），有序执行时按输入顺序回调.
+   * 
+   * @param item
+   *          {@link BulkItem}
+   */
+  public void onItem(BulkItem<I, O> item) {
+  }
+
+  /**
+   * 进度，每处理完一个输入回调一次.
+   * 
+   * @param completed
+   *          已处理数（含失败）
+   * @param failed
+   *          失败数
+   */
+  public void onProgress(long completed, long failed) {
+  }
+
+  /**
+   * 读取输入失败，不再读取之后的输入，正在执行的调用结束后回调 {@link #onComplete(boolean)}.
+   * 
+   * @param ex
+   *          输入迭代器抛出的异常
+   */
+  public void onInputError(RuntimeException ex) {
+  }
+
+  /**
+   * 全部处理完毕，或取消后正在执行的调用全部结束.
+   * 
+   * @param cancelled
+   *          是否被取消
+   */
+  public void onComplete(boolean cancelled) {
+  }
+
+}
@@ -1,7 +1,7 @@
 package io.github.rcarlosdasilva.weixin.core.cache;
 
 import java.lang.reflect.Field;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.Maps;
 
@@ -10,12 +10,13 @@ import io.github.rcarlosdasilva.weixin.core.cache.storage.JdkMapStorage;
 import io.github.rcarlosdasilva.weixin.core.cache.storage.SimpleRedisStorage;
 import io.github.rcarlosdasilva.weixin.core.cache.storage.SpringRedisStorage;
 import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisHandler;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
 
 public class CacheHandler {
 
   public static final String CACHEABLE_CLASS_GROUP_MARK_FIELD_NAME = "GROUP_NAME";
-  private static final Map<Class<? extends Cacheable>, CacheStorage<? extends Cacheable>> STORAGES = Maps
-      .newHashMap();
+  private static final ConcurrentMap<Class<? extends Cacheable>, CacheStorage<? extends Cacheable>> STORAGES = Maps
+      .newConcurrentMap();
 
   private CacheHandler() {
     throw new IllegalStateException("CacheHandler class");
@@ -26,9 +27,11 @@ public class CacheHandler {
     CacheStorage<V> storage = (CacheStorage<V>) STORAGES.get(clazz);
 
     if (storage == null) {
-      synchronized (STORAGES) {
-        storage = newStorage(clazz);
-        STORAGES.put(clazz, storage);
+      storage = new MeteredCacheStorage<V>(newStorage(clazz));
+      @SuppressWarnings("unchecked")
+      CacheStorage<V> exists = (CacheStorage<V>) STORAGES.putIfAbsent(clazz, storage);
+      if (exists != null) {
+        storage = exists;
       }
     }
 
@@ -43,9 +46,9 @@ public class CacheHandler {
     }
     switch (cacheType) {
       case SPRING_REDIS:
-        return new SpringRedisStorage<>(group);
+        return nearCache(group, new SpringRedisStorage<V>(group));
       case SIMPLE_REDIS:
-        return new SimpleRedisStorage<>(group);
+        return nearCache(group, new SimpleRedisStorage<V>(group));
       case JDK_MAP:
         return new JdkMapStorage<>();
       default:
@@ -53,6 +56,16 @@ public class CacheHandler {
     }
   }
 
+  private static <V extends Cacheable> CacheStorage<V> nearCache(String group,
+      CacheStorage<V> storage) {
+    Setting setting = Registry.setting();
+    if (!setting.isNearCache()) {
+      return storage;
+    }
+    return new NearCacheStorage<V>(group, storage, setting.getNearCacheMaxSize(),
+        setting.getNearCacheTtlInMill());
+  }
+
   private static CacheType smartCacheType() {
     if (RedisHandler.getRedisTemplate() != null) {
       return CacheType.SPRING_REDIS;
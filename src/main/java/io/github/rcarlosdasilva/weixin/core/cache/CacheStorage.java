@@ -68,6 +68,22 @@ public interface CacheStorage<V extends Cacheable> {
    */
   V put(final String key, final V object, final int timeout);
 
+  /**
+   * 持有锁时放入受锁保护的值.
+   * <p>
+   * 锁可能在完成之前过期并被其他人获取，使用Redis时按锁标识（fencing token）检查，已有更大的标识写入过时不再写入，
+   * 避免过期的持有者用旧值覆盖新值
+   * 
+   * @param key
+   *          键，与加锁时的key一样
+   * @param object
+   *          值
+   * @param identifier
+   *          锁标识，见 {@link #lock(String, long, boolean)}
+   * @return 值，未写入时为null
+   */
+  V put(final String key, final V object, final String identifier);
+
   /**
    * 移除.
    * 
@@ -105,10 +121,10 @@ public interface CacheStorage<V extends Cacheable> {
    * @param key
    *          与 {@link #put(String, Cacheable)}、 {@link #get(String)}等方法的key一样
    * @param timeout
-   *          锁时效（单位：毫秒）
+   *          锁时效（单位：毫秒），使用Redis时同时是最长等待时间
    * @param noWait
-   *          不等待，为true时，获取不到锁，直接返回null。否则会不断去尝试获取锁，如果当前锁失效，但被其他线程获取到锁，则不再继续
-   * @return 锁标识，解锁用，获取失败返回null
+   *          不等待，为true时，获取不到锁，直接返回null。否则等待锁释放后再尝试，使用Redis时，锁释放会立即通知等待者，超过等待时间返回null
+   * @return 锁标识，解锁用，获取失败返回null。使用Redis时为递增的序号，可作为fencing token
    */
   String lock(final String key, final long timeout, final boolean noWait);
 
@@ -0,0 +1,101 @@
+package io.github.rcarlosdasilva.weixin.core.cache;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 缓存的接口响应
+ * <p>
+ * 一个公众号的一个接口对应一条缓存，其中按请求指纹保存不同参数的响应json。缓存后不再修改，更新时创建新的对象。
+ * <p>
+ * 代数（generation）在每次清除缓存时加一，请求前记下代数，写入时代数已变化说明请求期间数据被修改，响应不再写入。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class CachedResponse implements Serializable, Cacheable {
+
+  private static final long serialVersionUID = -3319843862315431927L;
+
+  private final Map<String, Item> items;
+  private final long generation;
+
+  public CachedResponse() {
+    this(0);
+  }
+
+  /**
+   * 没有任何响应的缓存，用于清除缓存后记录新的代数.
+   * 
+   * @param generation
+   *          代数
+   */
+  public CachedResponse(long generation) {
+    this.items = Maps.newHashMap();
+    this.generation = generation;
+  }
+
+  /**
+   * 复制未过期的响应与代数，并加入新的响应.
+   * 
+   * @param origin
+   *          原缓存，可为null
+   * @param fingerprint
+   *          请求指纹
+   * @param json
+   *          响应json
+   * @param expireAt
+   *          过期时间
+   * @param maxItems
+   *          最多保存的响应数，超出时丢弃原有响应
+   */
+  public CachedResponse(CachedResponse origin, String fingerprint, String json, long expireAt,
+      int maxItems) {
+    this.items = Maps.newHashMap();
+    this.generation = origin == null ? 0 : origin.generation;
+    if (origin != null) {
+      long now = System.currentTimeMillis();
+      for (Map.Entry<String, Item> entry : origin.items.entrySet()) {
+        if (entry.getValue().expireAt > now && this.items.size() < maxItems - 1) {
+          this.items.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    this.items.put(fingerprint, new Item(json, expireAt));
+  }
+
+  /**
+   * 获取未过期的响应.
+   * 
+   * @param fingerprint
+   *          请求指纹
+   * @return 响应json，不存在或已过期时为null
+   */
+  public String get(String fingerprint) {
+    Item item = items.get(fingerprint);
+    if (item == null || item.expireAt <= System.currentTimeMillis()) {
+      return null;
+    }
+    return item.json;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  private static class Item implements Serializable {
+
+    private static final long serialVersionUID = 2408151389735562263L;
+
+    private final String json;
+    private final long expireAt;
+
+    Item(String json, long expireAt) {
+      this.json = json;
+      this.expireAt = expireAt;
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+package io.github.rcarlosdasilva.weixin.core.cache;
+
+import java.util.Collection;
+import java.util.List;
+
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+
+/**
+ * 记录获取锁耗时的缓存包装，其他操作直接委托
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class MeteredCacheStorage<V extends Cacheable> implements CacheStorage<V> {
+
+  private final CacheStorage<V> storage;
+
+  MeteredCacheStorage(CacheStorage<V> storage) {
+    this.storage = storage;
+  }
+
+  @Override
+  public Collection<String> keys() {
+    return storage.keys();
+  }
+
+  @Override
+  public int size() {
+    return storage.size();
+  }
+
+  @Override
+  public void clear() {
+    storage.clear();
+  }
+
+  @Override
+  public boolean exists(String key) {
+    return storage.exists(key);
+  }
+
+  @Override
+  public V get(String key) {
+    return storage.get(key);
+  }
+
+  @Override
+  public V put(String key, V object) {
+    return storage.put(key, object);
+  }
+
+  @Override
+  public V put(String key, V object, int timeout) {
+    return storage.put(key, object, timeout);
+  }
+
+  @Override
+  public V put(String key, V object, String identifier) {
+    return storage.put(key, object, identifier);
+  }
+
+  @Override
+  public boolean remove(String key) {
+    return storage.remove(key);
+  }
+
+  @Override
+  public V lookup(Lookup<V> lookup) {
+    return storage.lookup(lookup);
+  }
+
+  @Override
+  public List<V> lookupAll(Lookup<V> lookup) {
+    return storage.lookupAll(lookup);
+  }
+
+  @Override
+  public String lock(String key, long timeout, boolean noWait) {
+    long start = System.nanoTime();
+    String identifier = null;
+    try {
+      identifier = storage.lock(key, timeout, noWait);
+      return identifier;
+    } finally {
+      Meter.lockWait(key, System.nanoTime() - start, identifier != null);
+    }
+  }
+
+  @Override
+  public boolean unlock(String key, String identifier) {
+    return storage.unlock(key, identifier);
+  }
+
+}
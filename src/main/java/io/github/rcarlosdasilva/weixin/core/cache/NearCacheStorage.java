@@ -0,0 +1,256 @@
+package io.github.rcarlosdasilva.weixin.core.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisKey;
+import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisPubSub;
+
+/**
+ * 两级缓存：进程内有界的本地缓存在前，Redis在后
+ * <p>
+ * 读取优先命中本地缓存，未命中时从Redis读取并放入本地。写入、删除直接操作Redis，并通过Redis发布订阅通知其它节点删除各自的本地缓存，
+ * 其它节点下次读取时再从Redis加载，集群仍共用同一份凭证。键的查找与加锁直接使用Redis。
+ * <p>
+ * 订阅断开期间收不到其它节点的通知，此时不使用本地缓存，重新订阅后清空；本地缓存另有最长保留时间，兜底丢失的通知
+ * <p>
+ * 本地缓存保存序列化后的内容，每次读取返回新的对象，调用方修改读取到的凭证不会影响其它线程
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class NearCacheStorage<V extends Cacheable> implements CacheStorage<V> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NearCacheStorage.class);
+
+  private static final String CHANNEL = RedisKey.fullKey("near_cache", "invalidate");
+  private static final String ALL = "*";
+  private static final Joiner JOINER = Joiner.on(' ');
+  private static final Splitter SPLITTER = Splitter.on(' ').limit(3);
+  private static final String NODE = UUID.randomUUID().toString();
+  private static final ConcurrentMap<String, NearCacheStorage<?>> STORAGES = Maps
+      .newConcurrentMap();
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+  private static volatile boolean subscribed = false;
+
+  private final String group;
+  private final CacheStorage<V> storage;
+  private final Cache<String, Entry> local;
+  /**
+   * 每次Redis中的值有变化后递增，从Redis加载期间有变化时，加载到的值不放入本地缓存
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  NearCacheStorage(String group, CacheStorage<V> storage, int maxSize, long ttl) {
+    this.group = group;
+    this.storage = storage;
+    this.local = CacheBuilder.newBuilder().maximumSize(maxSize)
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS).build();
+    STORAGES.put(group, this);
+    subscribe();
+  }
+
+  private static void subscribe() {
+    if (!STARTED.compareAndSet(false, true)) {
+      return;
+    }
+
+    RedisPubSub.subscribe(CHANNEL, new RedisPubSub.Subscriber() {
+
+      @Override
+      public void onSubscribed() {
+        // 未订阅期间的变化无从得知，全部重新加载
+        invalidateAll();
+        subscribed = true;
+        LOGGER.debug("本地缓存开始接收失效通知");
+      }
+
+      @Override
+      public void onMessage(String message) {
+        List<String> parts = SPLITTER.splitToList(message);
+        if (parts.size() != 3 || NODE.equals(parts.get(0))) {
+          return;
+        }
+        NearCacheStorage<?> storage = STORAGES.get(parts.get(1));
+        if (storage != null) {
+          storage.invalidate(parts.get(2));
+        }
+      }
+
+      @Override
+      public void onUnsubscribed() {
+        subscribed = false;
+        invalidateAll();
+      }
+    });
+  }
+
+  private static void invalidateAll() {
+    for (NearCacheStorage<?> storage : STORAGES.values()) {
+      storage.invalidate(ALL);
+    }
+  }
+
+  private void invalidate(String key) {
+    generation.incrementAndGet();
+    if (ALL.equals(key)) {
+      local.invalidateAll();
+    } else {
+      local.invalidate(key);
+    }
+  }
+
+  /**
+   * Redis中的值已变化，更新本地缓存并通知其它节点.
+   */
+  private void changed(String key, V object, int timeout) {
+    invalidate(key);
+    if (object != null && subscribed) {
+      cache(key, object, timeout);
+    }
+
+    try {
+      RedisPubSub.publish(CHANNEL, JOINER.join(NODE, group, key));
+    } catch (RuntimeException ex) {
+      LOGGER.warn("本地缓存失效通知发送失败：[{}] {}", group, key, ex);
+    }
+  }
+
+  @Override
+  public Collection<String> keys() {
+    return storage.keys();
+  }
+
+  @Override
+  public int size() {
+    return storage.size();
+  }
+
+  @Override
+  public void clear() {
+    storage.clear();
+    changed(ALL, null, 0);
+  }
+
+  @Override
+  public boolean exists(String key) {
+    return storage.exists(key);
+  }
+
+  @Override
+  public V get(String key) {
+    if (!subscribed || key == null) {
+      return storage.get(key);
+    }
+
+    Entry entry = local.getIfPresent(key);
+    if (entry != null) {
+      if (!entry.isExpired()) {
+        V value = Utils.unserialize(entry.value);
+        if (value != null) {
+          return value;
+        }
+      }
+      local.invalidate(key);
+    }
+
+    long current = generation.get();
+    V value = storage.get(key);
+    if (value != null) {
+      cache(key, value, 0);
+      if (generation.get() != current || !subscribed) {
+        // 加载期间Redis中的值有变化，加载到的可能是旧值
+        local.invalidate(key);
+      }
+    }
+    return value;
+  }
+
+  private void cache(String key, V value, int timeout) {
+    byte[] bytes = Utils.serialize(value);
+    if (bytes != null) {
+      local.put(key, new Entry(bytes, timeout));
+    }
+  }
+
+  @Override
+  public V put(String key, V object) {
+    V result = storage.put(key, object);
+    changed(key, result, 0);
+    return result;
+  }
+
+  @Override
+  public V put(String key, V object, int timeout) {
+    V result = storage.put(key, object, timeout);
+    changed(key, result, timeout);
+    return result;
+  }
+
+  @Override
+  public V put(String key, V object, String identifier) {
+    V result = storage.put(key, object, identifier);
+    if (result != null) {
+      changed(key, result, 0);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean remove(String key) {
+    boolean result = storage.remove(key);
+    changed(key, null, 0);
+    return result;
+  }
+
+  @Override
+  public V lookup(Lookup<V> lookup) {
+    return storage.lookup(lookup);
+  }
+
+  @Override
+  public List<V> lookupAll(Lookup<V> lookup) {
+    return storage.lookupAll(lookup);
+  }
+
+  @Override
+  public String lock(String key, long timeout, boolean noWait) {
+    return storage.lock(key, timeout, noWait);
+  }
+
+  @Override
+  public boolean unlock(String key, String identifier) {
+    return storage.unlock(key, identifier);
+  }
+
+  private static final class Entry {
+
+    private final byte[] value;
+    private final long expireAt;
+
+    private Entry(byte[] value, int timeout) {
+      this.value = value;
+      this.expireAt = timeout > 0 ? System.currentTimeMillis() + timeout * 1000L : 0;
+    }
+
+    private boolean isExpired() {
+      return expireAt > 0 && expireAt <= System.currentTimeMillis();
+    }
+
+  }
+
+}
@@ -0,0 +1,237 @@
+package io.github.rcarlosdasilva.weixin.core.cache;
+
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+
+/**
+ * 只读接口的响应缓存
+ * <p>
+ * 缓存成功响应的json，存放在 {@link CacheHandler} 中（与access_token使用同一种缓存方式），
+ * 每个接口的缓存时间在 {@link Setting#setResponseCacheTtl(String, int)} 中配置。
+ * 同一公众号调用会修改数据的接口后，相关接口的缓存会被清除，如创建菜单会清除查询菜单的缓存。
+ * 清除与写入都在缓存锁内完成：清除时代数加一，请求前取得的代数已变化时，响应不再写入，避免清除前发出的请求把旧数据写回缓存。
+ * <p>
+ * 缓存读写出错时只记录日志，接口照常请求微信。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class ResponseCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+  /**
+   * 一个接口最多缓存的不同参数的响应数.
+   */
+  private static final int MAX_ITEMS_PER_API = 32;
+  private static final long LOCK_TIMEOUT = 1000;
+
+  /**
+   * 修改数据的接口 -&gt; 受影响的只读接口.
+   */
+  private static final ImmutableMap<String, Set<String>> INVALIDATIONS;
+
+  static {
+    Set<String> menu = ImmutableSet.of(ApiAddress.URL_MENU_QUERY,
+        ApiAddress.URL_MENU_QUERY_COMPLETE);
+    Set<String> tag = ImmutableSet.of(ApiAddress.URL_USER_TAG_LIST);
+    Set<String> tagMember = ImmutableSet.of(ApiAddress.URL_USER_TAG_LIST,
+        ApiAddress.URL_USER_TAG_LIST_BASE_USER);
+    Set<String> template = ImmutableSet.of(ApiAddress.URL_TEMPLATE_QUERY);
+    Set<String> industry = ImmutableSet.of(ApiAddress.URL_TEMPLATE_INDUSTRY_GET,
+        ApiAddress.URL_TEMPLATE_QUERY);
+    Set<String> custom = ImmutableSet.of(ApiAddress.URL_CUSTOM_ACCOUNT_LIST,
+        ApiAddress.URL_CUSTOM_ACCOUNT_LIST_ONLINE);
+
+    INVALIDATIONS = ImmutableMap.<String, Set<String>> builder()
+        .put(ApiAddress.URL_MENU_CREATE, menu).put(ApiAddress.URL_MENU_DELETE, menu)
+        .put(ApiAddress.URL_MENU_CONDITIONAL_CREATE, menu)
+        .put(ApiAddress.URL_MENU_CONDITIONAL_DELETE, menu)
+        .put(ApiAddress.URL_USER_TAG_CREATE, tag).put(ApiAddress.URL_USER_TAG_UPDATE, tag)
+        .put(ApiAddress.URL_USER_TAG_DELETE, tagMember)
+        .put(ApiAddress.URL_USER_TAG_TAGGING_USER, tagMember)
+        .put(ApiAddress.URL_USER_TAG_UNTAGGING_FROM_USER, tagMember)
+        .put(ApiAddress.URL_TEMPLATE_APPEND, template)
+        .put(ApiAddress.URL_TEMPLATE_DELETE, template)
+        .put(ApiAddress.URL_TEMPLATE_INDUSTRY_SET, industry)
+        .put(ApiAddress.URL_CUSTOM_ACCOUNT_APPEND, custom)
+        .put(ApiAddress.URL_CUSTOM_ACCOUNT_UPDATE, custom)
+        .put(ApiAddress.URL_CUSTOM_ACCOUNT_DELETE, custom)
+        .put(ApiAddress.URL_CUSTOM_ACCOUNT_UPLOAD_AVATAR, custom)
+        .put(ApiAddress.URL_CUSTOM_ACCOUNT_INVITE_BINDING, custom).build();
+  }
+
+  private ResponseCache() {
+    throw new IllegalStateException("ResponseCache class");
+  }
+
+  /**
+   * 接口是否使用缓存.
+   * 
+   * @param url
+   *          请求地址
+   * @return boolean
+   */
+  public static boolean isCacheable(String url) {
+    return ttl(Utils.urlPath(url)) > 0;
+  }
+
+  /**
+   * 获取缓存的响应.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          请求地址
+   * @param body
+   *          请求内容
+   * @return 响应json，没有缓存时为null
+   */
+  public static String get(String account, String url, String body) {
+    try {
+      CachedResponse cached = CacheHandler.of(CachedResponse.class)
+          .get(key(account, Utils.urlPath(url)));
+      String json = cached == null ? null : cached.get(Utils.fingerprint(null, url, body));
+      Meter.cacheAccess(account, url, json != null);
+      return json;
+    } catch (RuntimeException ex) {
+      logger.warn("weixin response cache", ex);
+      return null;
+    }
+  }
+
+  /**
+   * 接口缓存当前的代数，在请求微信之前获取，写入缓存时传入 {@link #put}.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          请求地址
+   * @return 代数，没有缓存时为0
+   */
+  public static long generation(String account, String url) {
+    try {
+      CachedResponse cached = CacheHandler.of(CachedResponse.class)
+          .get(key(account, Utils.urlPath(url)));
+      return cached == null ? 0 : cached.getGeneration();
+    } catch (RuntimeException ex) {
+      logger.warn("weixin response cache", ex);
+      return -1;
+    }
+  }
+
+  /**
+   * 缓存响应，请求期间缓存被清除过时不写入.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          请求地址
+   * @param body
+   *          请求内容
+   * @param json
+   *          成功的响应json
+   * @param generation
+   *          请求之前由 {@link #generation} 获取的代数
+   */
+  public static void put(String account, String url, String body, String json,
+      long generation) {
+    String path = Utils.urlPath(url);
+    int ttl = ttl(path);
+    if (ttl <= 0 || Strings.isNullOrEmpty(json) || generation < 0) {
+      return;
+    }
+
+    try {
+      CacheStorage<CachedResponse> storage = CacheHandler.of(CachedResponse.class);
+      String key = key(account, path);
+      String lock = storage.lock(key, LOCK_TIMEOUT, false);
+      if (lock == null) {
+        return;
+      }
+      try {
+        CachedResponse origin = storage.get(key);
+        long current = origin == null ? 0 : origin.getGeneration();
+        if (current != generation) {
+          logger.debug("weixin response cache invalidated during request: {}", path);
+          return;
+        }
+        storage.put(key, new CachedResponse(origin, Utils.fingerprint(null, url, body), json,
+            System.currentTimeMillis() + ttl * 1000L, MAX_ITEMS_PER_API), ttl);
+      } finally {
+        storage.unlock(key, lock);
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("weixin response cache", ex);
+    }
+  }
+
+  /**
+   * 调用修改数据的接口后，清除相关只读接口的缓存；其他接口不做任何处理.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          调用的接口地址
+   */
+  public static void invalidate(String account, String url) {
+    Set<String> affected = INVALIDATIONS.get(Utils.urlPath(url));
+    if (affected == null || !Registry.setting().isResponseCache()) {
+      return;
+    }
+
+    try {
+      CacheStorage<CachedResponse> storage = CacheHandler.of(CachedResponse.class);
+      for (String path : affected) {
+        invalidate(storage, key(account, path), ttl(path));
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("weixin response cache", ex);
+    }
+  }
+
+  /**
+   * 清除缓存的响应，保留加一后的代数，直到接口的缓存时间过去.
+   */
+  private static void invalidate(CacheStorage<CachedResponse> storage, String key, int ttl) {
+    String lock = storage.lock(key, LOCK_TIMEOUT, false);
+    try {
+      CachedResponse origin = storage.get(key);
+      if (ttl <= 0) {
+        storage.remove(key);
+      } else {
+        storage.put(key,
+            new CachedResponse((origin == null ? 0 : origin.getGeneration()) + 1), ttl);
+      }
+    } finally {
+      if (lock != null) {
+        storage.unlock(key, lock);
+      }
+    }
+  }
+
+  private static int ttl(String path) {
+    Setting setting = Registry.setting();
+    if (!setting.isResponseCache()) {
+      return 0;
+    }
+    Integer ttl = setting.getResponseCacheTtls().get(path);
+    return ttl == null ? 0 : ttl;
+  }
+
+  private static String key(String account, String path) {
+    return Strings.nullToEmpty(account) + "|" + path;
+  }
+
+}
@@ -3,7 +3,10 @@ package io.github.rcarlosdasilva.weixin.core.cache.storage;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -15,9 +18,11 @@ import io.github.rcarlosdasilva.weixin.core.cache.Lookup;
 public final class JdkMapStorage<V extends Cacheable> implements CacheStorage<V> {
 
   private final Map<String, V> cache;
+  private final ConcurrentMap<String, Locker> lockers;
 
   public JdkMapStorage() {
     cache = Maps.newConcurrentMap();
+    lockers = Maps.newConcurrentMap();
   }
 
   @Override
@@ -61,6 +66,17 @@ public final class JdkMapStorage<V extends Cacheable> implements CacheStorage<V>
     return put(key, object);
   }
 
+  @Override
+  public V put(String key, V object, String identifier) {
+    Locker current = lockers.get(key + LOCKER_NAME_SUFFIX);
+    if (current != null && !current.identifier.equals(identifier)) {
+      // 锁已过期并被其他人获取
+      return null;
+    }
+    cache.put(key, object);
+    return object;
+  }
+
   @Override
   public boolean remove(String key) {
     cache.remove(key);
@@ -93,19 +109,69 @@ public final class JdkMapStorage<V extends Cacheable> implements CacheStorage<V>
   }
 
   /**
-   * 暂不支持.
+   * 进程内锁，仅在单个JVM内有效.
    */
   @Override
   public String lock(String key, long timeout, boolean noWait) {
-    return null;
+    Preconditions.checkNotNull(key);
+    Preconditions.checkArgument(timeout > 0);
+
+    String fullKey = key + LOCKER_NAME_SUFFIX;
+    Locker locker = new Locker(UUID.randomUUID().toString(), timeout);
+
+    while (true) {
+      Locker current = lockers.putIfAbsent(fullKey, locker);
+      if (current == null) {
+        // 正常获取锁
+        break;
+      }
+      if (current.isExpired() && lockers.replace(fullKey, current, locker)) {
+        // 上一个持有者超时未释放
+        break;
+      }
+
+      if (noWait) {
+        return null;
+      }
+
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+
+    return locker.identifier;
   }
 
-  /**
-   * 暂不支持.
-   */
   @Override
   public boolean unlock(String key, String identifier) {
-    return false;
+    Preconditions.checkNotNull(key);
+    Preconditions.checkNotNull(identifier);
+
+    String fullKey = key + LOCKER_NAME_SUFFIX;
+    Locker current = lockers.get(fullKey);
+    if (current == null || !identifier.equals(current.identifier)) {
+      return false;
+    }
+    return lockers.remove(fullKey, current);
+  }
+
+  private static final class Locker {
+
+    private final String identifier;
+    private final long expireAt;
+
+    private Locker(String identifier, long timeout) {
+      this.identifier = identifier;
+      this.expireAt = System.currentTimeMillis() + timeout;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() > expireAt;
+    }
+
   }
 
 }
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
@@ -17,9 +16,8 @@ import io.github.rcarlosdasilva.weixin.core.cache.Cacheable;
 import io.github.rcarlosdasilva.weixin.core.cache.Lookup;
 import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisHandler;
 import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisKey;
-import org.springframework.dao.DataAccessException;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.SessionCallback;
+import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisLock;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 @SuppressWarnings("unchecked")
@@ -83,6 +81,16 @@ public class SpringRedisStorage<V extends Cacheable> implements CacheStorage<V>
     return object;
   }
 
+  @Override
+  public V put(String key, V object, String identifier) {
+    String fullKey = RedisKey.fullKey(group, key);
+    RedisTemplate template = RedisHandler.getRedisTemplate();
+    boolean written = RedisLock.fencedSet(fullKey + LOCKER_NAME_SUFFIX,
+        template.getKeySerializer().serialize(fullKey),
+        template.getValueSerializer().serialize(object), 0, identifier);
+    return written ? object : null;
+  }
+
   @Override
   public boolean remove(String key) {
     if (Strings.isNullOrEmpty(key)) {
@@ -130,81 +138,15 @@ public class SpringRedisStorage<V extends Cacheable> implements CacheStorage<V>
   @Override
   public String lock(String key, long timeout, boolean noWait) {
     Preconditions.checkNotNull(key);
-    Preconditions.checkArgument(timeout > 0);
-
-    String fullKey = RedisKey.fullKey(group, key) + LOCKER_NAME_SUFFIX;
-    String identifier = UUID.randomUUID().toString();
-    long lastTtl = -1;
 
-    while (true) {
-      if (RedisHandler.getRedisTemplate().opsForValue().setIfAbsent(fullKey, identifier)) {
-        RedisHandler.getRedisTemplate().expire(fullKey, timeout, TimeUnit.MILLISECONDS);
-        // 正常获取锁
-        break;
-      }
-
-      long ttl = RedisHandler.getRedisTemplate().getExpire(fullKey, TimeUnit.MILLISECONDS);
-      if (ttl == -1) {
-        // 没设置过期时间
-        RedisHandler.getRedisTemplate().expire(fullKey, timeout, TimeUnit.MILLISECONDS);
-      } else if (ttl == -2) {
-        // 神奇，万一setnx之后到这里key过期了呢
-        continue;
-      } else {
-        // 每次获取ttl肯定是越来越小，如果突然变大了，只能说明，有另一个贱人比你提前获取到锁，那就不惜当等了
-        if (lastTtl > 0 && ttl > lastTtl) {
-          return null;
-        }
-        lastTtl = ttl;
-      }
-
-      if (noWait) {
-        return null;
-      }
-
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
-    }
-
-    return identifier;
+    return RedisLock.lock(RedisKey.fullKey(group, key) + LOCKER_NAME_SUFFIX, timeout, noWait);
   }
 
   @Override
   public boolean unlock(String key, String identifier) {
     Preconditions.checkNotNull(key);
-    Preconditions.checkNotNull(identifier);
-
-    final String fullKey = RedisKey.fullKey(group, key) + LOCKER_NAME_SUFFIX;
-
-    while (true) {
-      // 监视lock，准备开始事务
-      RedisHandler.getRedisTemplate().watch(fullKey);
-      // 看看是不是自己的锁
-      Object obj = RedisHandler.getRedisTemplate().opsForValue().get(fullKey);
-      if (obj != null && identifier.equals(obj)) {
-        SessionCallback<Object> sessionCallback = new SessionCallback<Object>() {
-          @Override
-          public Object execute(RedisOperations operations) throws DataAccessException {
-            operations.multi();
-            operations.delete(fullKey);
-            return operations.exec();
-          }
-        };
-        Object results = RedisHandler.getRedisTemplate().execute(sessionCallback);
-
-        if (results == null) {
-          continue;
-        }
-        return true;
-      }
-      RedisHandler.getRedisTemplate().unwatch();
-      break;
-    }
 
-    return false;
+    return RedisLock.unlock(RedisKey.fullKey(group, key) + LOCKER_NAME_SUFFIX, identifier);
   }
 
 }
@@ -12,7 +12,7 @@ import redis.clients.jedis.JedisPool;
 public class RedisHandler {
 
   private static RedisTemplate redisTemplate = null;
-  private static JedisPool pool = null;
+  private static volatile JedisPool pool = null;
 
   private RedisHandler() {
     throw new IllegalStateException("RedisHandler class");
@@ -26,22 +26,33 @@ public class RedisHandler {
     RedisHandler.redisTemplate = redisTemplate;
   }
 
-  private static synchronized void initSimpleRedis(RedisSetting redisSetting) {
-    pool = new JedisPool(redisSetting.getConfig(), redisSetting.getHost(), redisSetting.getPort(),
-        redisSetting.getTimeout(), redisSetting.getPassword(), redisSetting.getDatabase(),
-        redisSetting.isUseSsl());
-  }
-
-  public static synchronized Jedis getJedis() {
+  private static synchronized JedisPool initSimpleRedis() {
     if (pool == null) {
       RedisSetting redisSetting = Registry.setting().getRedisSetting();
       if (redisSetting == null) {
         throw new RedisCacheNotInitializeException("Simple Redis缓存未配置");
       }
-      initSimpleRedis(redisSetting);
+      pool = new JedisPool(redisSetting.getConfig(), redisSetting.getHost(),
+          redisSetting.getPort(), redisSetting.getTimeout(), redisSetting.getPassword(),
+          redisSetting.getDatabase(), redisSetting.isUseSsl());
+    }
+    return pool;
+  }
+
+  /**
+   * 从连接池获取连接.
+   * <p>
+   * 只在初始化连接池时加锁，等待连接时不持有锁
+   * 
+   * @return {@link Jedis}
+   */
+  public static Jedis getJedis() {
+    JedisPool current = pool;
+    if (current == null) {
+      current = initSimpleRedis();
     }
 
-    return pool.getResource();
+    return current.getResource();
   }
 
 }
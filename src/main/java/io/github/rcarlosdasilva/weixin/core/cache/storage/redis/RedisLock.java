@@ -0,0 +1,309 @@
+package io.github.rcarlosdasilva.weixin.core.cache.storage.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Redis分布式锁
+ * <p>
+ * 加锁与解锁各是一次Lua脚本调用。加锁成功时返回锁对应的递增序号，作为锁标识，同时可作为fencing token使用：
+ * 序号越大，获得锁的时间越晚。解锁时只删除标识一致的锁，并通过Redis发布订阅通知，所有进程中等待该锁的线程立即重新尝试，
+ * 不再定时轮询。每次解锁只唤醒每个进程中的一个等待者，避免同时涌向Redis。订阅未建立时，等待的线程退化为短间隔轮询
+ * <p>
+ * 锁可能在持有者完成之前过期（请求超时、GC停顿等），持有者写入受锁保护的值时使用
+ * {@link #fencedSet(String, byte[], byte[], int, String)}，比已写入的标识小的写入被拒绝，过期的持有者不会覆盖新值
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+@SuppressWarnings("unchecked")
+public class RedisLock {
+
+  private static final String CHANNEL = RedisKey.fullKey("lock", "released");
+  private static final String FENCE_SUFFIX = "__fence";
+  private static final String WRITTEN_SUFFIX = "__written";
+  private static final long POLL_INTERVAL = 100;
+
+  /**
+   * 锁不存在时，递增序号并以序号加锁，返回序号；锁存在时返回负的剩余毫秒数（锁没有过期时间时补上）
+   */
+  private static final String LOCK_SCRIPT = "local ttl = redis.call('pttl', KEYS[1]) "
+      + "if ttl == -2 then "
+      + "  local token = redis.call('incr', KEYS[2]) "
+      + "  redis.call('set', KEYS[1], token, 'PX', ARGV[1]) "
+      + "  return token "
+      + "end "
+      + "if ttl == -1 then "
+      + "  redis.call('pexpire', KEYS[1], ARGV[1]) "
+      + "  ttl = tonumber(ARGV[1]) "
+      + "end "
+      + "return -ttl";
+  /**
+   * 标识一致时删除锁并发布通知
+   */
+  private static final String UNLOCK_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then "
+      + "  redis.call('del', KEYS[1]) "
+      + "  redis.call('publish', ARGV[2], KEYS[1]) "
+      + "  return 1 "
+      + "end "
+      + "return 0";
+  /**
+   * 标识不小于上一次写入的标识时写入值（ARGV[3]大于0时为过期秒数）并记下标识，否则不写入
+   */
+  private static final String FENCED_SET_SCRIPT = "local last = redis.call('get', KEYS[2]) "
+      + "if last and tonumber(ARGV[1]) < tonumber(last) then "
+      + "  return 0 "
+      + "end "
+      + "redis.call('set', KEYS[2], ARGV[1]) "
+      + "if tonumber(ARGV[3]) > 0 then "
+      + "  redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3]) "
+      + "else "
+      + "  redis.call('set', KEYS[1], ARGV[2]) "
+      + "end "
+      + "return 1";
+
+  private static final ConcurrentMap<String, Signal> SIGNALS = Maps.newConcurrentMap();
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+  private static volatile boolean subscribed = false;
+
+  private RedisLock() {
+    throw new IllegalStateException("RedisLock class");
+  }
+
+  /**
+   * 加锁.
+   * 
+   * @param fullKey
+   *          锁的完整键
+   * @param timeout
+   *          锁时效，同时是最长等待时间（单位：毫秒）
+   * @param noWait
+   *          为true时，获取不到锁直接返回null
+   * @return 锁标识，获取失败返回null
+   */
+  public static String lock(String fullKey, long timeout, boolean noWait) {
+    Preconditions.checkNotNull(fullKey);
+    Preconditions.checkArgument(timeout > 0);
+    subscribe();
+
+    Signal signal = signal(fullKey);
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      // 先记下通知的版本再尝试，尝试失败后收到的解锁通知不会错过
+      long version = signal.version;
+      long result = eval(LOCK_SCRIPT, Arrays.asList(fullKey, fullKey + FENCE_SUFFIX),
+          Arrays.asList(Long.toString(timeout)));
+      if (result > 0) {
+        return Long.toString(result);
+      }
+
+      long remaining = deadline - System.currentTimeMillis();
+      if (noWait || remaining <= 0) {
+        return null;
+      }
+
+      long wait = Math.min(remaining, Math.max(-result, 1));
+      if (!subscribed) {
+        wait = Math.min(wait, POLL_INTERVAL);
+      }
+      try {
+        signal.await(version, wait);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+
+  /**
+   * 解锁.
+   * 
+   * @param fullKey
+   *          锁的完整键
+   * @param identifier
+   *          锁标识，加锁时获取
+   * @return 解锁是否成功，锁已过期或已被其他人获取时为false
+   */
+  public static boolean unlock(String fullKey, String identifier) {
+    Preconditions.checkNotNull(fullKey);
+    Preconditions.checkNotNull(identifier);
+
+    return eval(UNLOCK_SCRIPT, Arrays.asList(fullKey), Arrays.asList(identifier, CHANNEL)) == 1;
+  }
+
+  /**
+   * 持有锁时写入受锁保护的值.
+   * <p>
+   * 已有更大的锁标识写入过时放弃：锁已过期，之后获得锁的人写入了更新的值
+   * 
+   * @param fullKey
+   *          锁的完整键
+   * @param key
+   *          值的键
+   * @param value
+   *          值
+   * @param timeout
+   *          值的过期时间（单位：秒），0为不过期
+   * @param identifier
+   *          锁标识，加锁时获取
+   * @return 是否已写入
+   */
+  public static boolean fencedSet(String fullKey, byte[] key, byte[] value, int timeout,
+      String identifier) {
+    Preconditions.checkNotNull(fullKey);
+    Preconditions.checkNotNull(key);
+    Preconditions.checkNotNull(value);
+    Preconditions.checkNotNull(identifier);
+
+    return evalBytes(FENCED_SET_SCRIPT, Arrays.asList(key, bytes(fullKey + WRITTEN_SUFFIX)),
+        Arrays.asList(bytes(identifier), value, bytes(Integer.toString(timeout)))) == 1;
+  }
+
+  private static Signal signal(String fullKey) {
+    Signal signal = SIGNALS.get(fullKey);
+    if (signal == null) {
+      signal = new Signal();
+      Signal exists = SIGNALS.putIfAbsent(fullKey, signal);
+      if (exists != null) {
+        signal = exists;
+      }
+    }
+    return signal;
+  }
+
+  private static void subscribe() {
+    if (!STARTED.compareAndSet(false, true)) {
+      return;
+    }
+
+    RedisPubSub.subscribe(CHANNEL, new RedisPubSub.Subscriber() {
+
+      @Override
+      public void onSubscribed() {
+        subscribed = true;
+      }
+
+      @Override
+      public void onMessage(String message) {
+        Signal signal = SIGNALS.get(message);
+        if (signal != null) {
+          signal.signal(false);
+        }
+      }
+
+      @Override
+      public void onUnsubscribed() {
+        subscribed = false;
+        // 断开期间的通知会丢失，唤醒所有等待者改为轮询
+        for (Signal signal : SIGNALS.values()) {
+          signal.signal(true);
+        }
+      }
+    });
+  }
+
+  private static long eval(String script, List<String> keys, List<String> args) {
+    List<byte[]> rawKeys = Lists.newArrayListWithCapacity(keys.size());
+    for (String key : keys) {
+      rawKeys.add(bytes(key));
+    }
+    List<byte[]> rawArgs = Lists.newArrayListWithCapacity(args.size());
+    for (String arg : args) {
+      rawArgs.add(bytes(arg));
+    }
+    return evalBytes(script, rawKeys, rawArgs);
+  }
+
+  private static long evalBytes(final String script, final List<byte[]> keys,
+      final List<byte[]> args) {
+    if (RedisHandler.getRedisTemplate() != null) {
+      Object result = RedisHandler.getRedisTemplate().execute(new RedisCallback<Object>() {
+
+        @Override
+        public Object doInRedis(RedisConnection connection) throws DataAccessException {
+          byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+          int i = 0;
+          for (byte[] key : keys) {
+            keysAndArgs[i++] = key;
+          }
+          for (byte[] arg : args) {
+            keysAndArgs[i++] = arg;
+          }
+          return connection.eval(bytes(script), ReturnType.INTEGER, keys.size(), keysAndArgs);
+        }
+      });
+      return ((Number) result).longValue();
+    }
+
+    Jedis jedis = RedisHandler.getJedis();
+    try {
+      return ((Number) jedis.eval(bytes(script), keys, args)).longValue();
+    } finally {
+      jedis.close();
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 本进程内等待同一把锁的线程共用的通知.
+   */
+  private static final class Signal {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private volatile long version = 0;
+
+    private void await(long expected, long millis) throws InterruptedException {
+      lock.lock();
+      try {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        if (version == expected && nanos > 0) {
+          released.awaitNanos(nanos);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * 通知等待者.
+     * <p>
+     * 只唤醒一个时，其余等待者仍等到锁的剩余时效后再尝试，被唤醒的等待者获得锁后，解锁时再唤醒下一个
+     */
+    private void signal(boolean all) {
+      lock.lock();
+      try {
+        // 正在尝试、尚未等待的线程看到版本变化后不再等待，不会错过这次通知
+        version++;
+        if (all) {
+          released.signalAll();
+        } else {
+          released.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,213 @@
+package io.github.rcarlosdasilva.weixin.core.cache.storage.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Redis发布订阅
+ * <p>
+ * 按是否设置了 {@link RedisHandler#getRedisTemplate()} 选择Spring Data Redis或Jedis，与缓存使用同一个Redis。
+ * 订阅在后台线程中进行，连接断开后自动重新订阅
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class RedisPubSub {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RedisPubSub.class);
+  private static final long RESUBSCRIBE_DELAY = 1000;
+  private static final long PROBE_INTERVAL = 200;
+  /**
+   * 确认订阅成功的探测消息的前缀，不转给订阅方
+   */
+  private static final String PROBE = "\0probe ";
+
+  private RedisPubSub() {
+    throw new IllegalStateException("RedisPubSub class");
+  }
+
+  /**
+   * 发布消息.
+   * 
+   * @param channel
+   *          频道
+   * @param message
+   *          消息
+   */
+  @SuppressWarnings("unchecked")
+  public static void publish(final String channel, final String message) {
+    if (RedisHandler.getRedisTemplate() != null) {
+      RedisHandler.getRedisTemplate().execute(new RedisCallback<Object>() {
+
+        @Override
+        public Object doInRedis(RedisConnection connection) throws DataAccessException {
+          connection.publish(bytes(channel), bytes(message));
+          return null;
+        }
+      });
+      return;
+    }
+
+    Jedis jedis = RedisHandler.getJedis();
+    try {
+      jedis.publish(channel, message);
+    } finally {
+      jedis.close();
+    }
+  }
+
+  /**
+   * 在后台线程中订阅频道.
+   * 
+   * @param channel
+   *          频道
+   * @param subscriber
+   *          {@link Subscriber}
+   */
+  public static void subscribe(final String channel, final Subscriber subscriber) {
+    Threads.startDaemon("weixin-redis-subscriber-" + channel, new Runnable() {
+
+      @Override
+      public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+          try {
+            if (RedisHandler.getRedisTemplate() != null) {
+              subscribeWithTemplate(channel, subscriber);
+            } else {
+              subscribeWithJedis(channel, subscriber);
+            }
+          } catch (RuntimeException ex) {
+            LOGGER.warn("Redis订阅[{}]断开，稍后重新订阅", channel, ex);
+          } finally {
+            subscriber.onUnsubscribed();
+          }
+
+          try {
+            Thread.sleep(RESUBSCRIBE_DELAY);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    });
+  }
+
+  private static void subscribeWithJedis(String channel, final Subscriber subscriber) {
+    Jedis jedis = RedisHandler.getJedis();
+    try {
+      // 阻塞直到连接断开
+      jedis.subscribe(new JedisPubSub() {
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+          subscriber.onSubscribed();
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+          if (!message.startsWith(PROBE)) {
+            subscriber.onMessage(message);
+          }
+        }
+      }, channel);
+    } finally {
+      jedis.close();
+    }
+  }
+
+  private static void subscribeWithTemplate(final String channel, final Subscriber subscriber) {
+    RedisConnection connection = RedisHandler.getRedisTemplate().getConnectionFactory()
+        .getConnection();
+    // MessageListener没有订阅成功的回调：另起线程向频道发布探测消息，收到自己的探测消息时订阅已经生效
+    final String probe = PROBE + UUID.randomUUID();
+    final CountDownLatch confirmed = new CountDownLatch(1);
+    Thread prober = Threads.startDaemon("weixin-redis-subscriber-probe-" + channel,
+        new Runnable() {
+
+          @Override
+          public void run() {
+            try {
+              while (!confirmed.await(PROBE_INTERVAL, TimeUnit.MILLISECONDS)) {
+                try {
+                  publish(channel, probe);
+                } catch (RuntimeException ex) {
+                  LOGGER.debug("Redis订阅[{}]探测消息发送失败", channel, ex);
+                }
+              }
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+    try {
+      connection.subscribe(new MessageListener() {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+          String text = new String(message.getBody(), StandardCharsets.UTF_8);
+          if (!text.startsWith(PROBE)) {
+            subscriber.onMessage(text);
+          } else if (text.equals(probe) && confirmed.getCount() > 0) {
+            confirmed.countDown();
+            subscriber.onSubscribed();
+          }
+        }
+      }, bytes(channel));
+
+      // Jedis连接的subscribe会阻塞到断开，Lettuce连接则立即返回，需要等待订阅结束
+      while (connection.isSubscribed()) {
+        Thread.sleep(RESUBSCRIBE_DELAY);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      prober.interrupt();
+      connection.close();
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 订阅回调.
+   * <p>
+   * 在订阅线程中调用，不应阻塞
+   */
+  public interface Subscriber {
+
+    /**
+     * 订阅成功（包括重新订阅）.
+     */
+    void onSubscribed();
+
+    /**
+     * 收到消息.
+     * 
+     * @param message
+     *          消息
+     */
+    void onMessage(String message);
+
+    /**
+     * 订阅断开，断开期间的消息会丢失.
+     */
+    void onUnsubscribed();
+
+  }
+
+}
@@ -0,0 +1,79 @@
+package io.github.rcarlosdasilva.weixin.core.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 相同请求合并执行
+ * <p>
+ * 同一个key同时只有一个调用真正执行，期间到达的其他调用等待并共享它的结果（或异常）。
+ * 执行结束后立即移除，不做任何缓存，之后的调用会重新执行。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class SingleFlight {
+
+  private final ConcurrentMap<String, FutureTask<Object>> calls = Maps.newConcurrentMap();
+
+  /**
+   * 执行，或等待正在执行的相同调用.
+   * 
+   * @param <V>
+   *          The Type of element
+   * @param key
+   *          调用标识
+   * @param loader
+   *          实际执行内容
+   * @return 结果
+   */
+  @SuppressWarnings("unchecked")
+  public <V> V execute(String key, final Callable<V> loader) {
+    FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+
+      @Override
+      public Object call() throws Exception {
+        return loader.call();
+      }
+    });
+
+    FutureTask<Object> inFlight = calls.putIfAbsent(key, task);
+    if (inFlight == null) {
+      inFlight = task;
+      try {
+        task.run();
+      } finally {
+        calls.remove(key, task);
+      }
+    }
+
+    try {
+      return (V) inFlight.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for an in-flight call", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * 正在执行的调用数.
+   * 
+   * @return 数量
+   */
+  public int inFlight() {
+    return calls.size();
+  }
+
+}
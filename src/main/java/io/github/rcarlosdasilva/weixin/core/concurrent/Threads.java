@@ -0,0 +1,116 @@
+package io.github.rcarlosdasilva.weixin.core.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.rcarlosdasilva.weixin.core.Registry;
+
+/**
+ * 后台线程创建入口
+ * <p>
+ * 开启 {@code Setting.setVirtualThreads} 并运行在JDK 21及以上时使用虚拟线程，否则使用平台线程。
+ * 虚拟线程的实现只在多版本jar的 {@code META-INF/versions/21} 中，需使用 {@code mvn -Pjdk21} 构建；
+ * jdk21 profile不会按JDK版本自动开启，默认构建的jar保持1.7的字节码级别，只使用平台线程。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public final class Threads {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Threads.class);
+  private static final AtomicBoolean UNSUPPORTED_WARNED = new AtomicBoolean(false);
+
+  private Threads() {
+    throw new IllegalStateException("Threads class");
+  }
+
+  /**
+   * 当前是否使用虚拟线程.
+   * 
+   * @return boolean
+   */
+  public static boolean isVirtual() {
+    if (!Registry.setting().isVirtualThreads()) {
+      return false;
+    }
+    if (!VirtualThreads.isSupported()) {
+      if (UNSUPPORTED_WARNED.compareAndSet(false, true)) {
+        LOGGER.warn("当前运行环境不支持虚拟线程（需要JDK 21及以上，并使用 -Pjdk21 构建），继续使用平台线程");
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 创建并启动一个线程.
+   * 
+   * @param name
+   *          线程名
+   * @param task
+   *          执行内容
+   * @return 已启动的线程
+   */
+  public static Thread start(String name, Runnable task) {
+    Thread thread = newThread(name, task, false);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * 创建并启动一个后台线程，不阻止JVM退出.
+   * 
+   * @param name
+   *          线程名
+   * @param task
+   *          执行内容
+   * @return 已启动的线程
+   */
+  public static Thread startDaemon(String name, Runnable task) {
+    Thread thread = newThread(name, task, true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * 创建后台线程的工厂，用于线程池.
+   * 
+   * @param name
+   *          线程名
+   * @return {@link ThreadFactory}
+   */
+  public static ThreadFactory daemonFactory(final String name) {
+    return new ThreadFactory() {
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return Threads.newThread(name, runnable, true);
+      }
+    };
+  }
+
+  private static Thread newThread(String name, Runnable task, boolean daemon) {
+    if (isVirtual()) {
+      // 虚拟线程总是后台线程
+      return VirtualThreads.newThread(name, task);
+    }
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(daemon);
+    return thread;
+  }
+
+  /**
+   * 每个任务一个虚拟线程的执行器，不使用虚拟线程时返回null.
+   * 
+   * @param prefix
+   *          线程名前缀
+   * @return {@link ExecutorService}
+   */
+  public static ExecutorService newVirtualExecutor(String prefix) {
+    return isVirtual() ? VirtualThreads.newExecutor(prefix) : null;
+  }
+
+}
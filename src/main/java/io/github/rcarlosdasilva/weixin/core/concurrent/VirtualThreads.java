@@ -0,0 +1,44 @@
+package io.github.rcarlosdasilva.weixin.core.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程实现（JDK 21以下的占位版本）
+ * <p>
+ * JDK 21版本位于 src/main/java21，由jdk21 profile编译到多版本jar中，在JDK 21及以上运行时替换本类。
+ * 本类不支持虚拟线程，未经 {@link #isSupported()} 判断直接调用时退回平台线程。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {
+    throw new IllegalStateException("VirtualThreads class");
+  }
+
+  static boolean isSupported() {
+    return false;
+  }
+
+  static Thread newThread(String name, Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  static ExecutorService newExecutor(final String prefix) {
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+
+      private final AtomicInteger index = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return VirtualThreads.newThread(prefix + "-" + index.getAndIncrement(), runnable);
+      }
+    });
+  }
+
+}
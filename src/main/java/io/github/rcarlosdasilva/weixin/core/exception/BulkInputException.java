@@ -0,0 +1,11 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+public class BulkInputException extends RuntimeException {
+
+  private static final long serialVersionUID = 6048393524517360682L;
+
+  public BulkInputException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
@@ -0,0 +1,11 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+public class CircuitOpenException extends RuntimeException {
+
+  private static final long serialVersionUID = 5180482765025347751L;
+
+  public CircuitOpenException(String message) {
+    super(message);
+  }
+
+}
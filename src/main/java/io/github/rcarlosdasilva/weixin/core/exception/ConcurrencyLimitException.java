@@ -0,0 +1,11 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+public class ConcurrencyLimitException extends RuntimeException {
+
+  private static final long serialVersionUID = 2473098711052940735L;
+
+  public ConcurrencyLimitException(String message) {
+    super(message);
+  }
+
+}
@@ -4,8 +4,28 @@ public class HttpException extends RuntimeException {
 
   private static final long serialVersionUID = 4622790647531901448L;
 
+  private int statusCode;
+
   public HttpException(String message) {
     super(message);
   }
 
+  public HttpException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  public HttpException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  /**
+   * 响应的HTTP状态码.
+   * 
+   * @return 状态码，未收到响应（网络异常）时为0
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
 }
@@ -0,0 +1,15 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+public class OutboxException extends RuntimeException {
+
+  private static final long serialVersionUID = -3895426139478811201L;
+
+  public OutboxException(String message) {
+    super(message);
+  }
+
+  public OutboxException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
@@ -0,0 +1,11 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+public class QuotaExhaustedException extends RuntimeException {
+
+  private static final long serialVersionUID = -2716407329471850913L;
+
+  public QuotaExhaustedException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,13 @@
+package io.github.rcarlosdasilva.weixin.core.exception;
+
+import java.io.IOException;
+
+public class ResponseReadException extends HttpException {
+
+  private static final long serialVersionUID = -3271625398043361715L;
+
+  public ResponseReadException(String message, IOException cause) {
+    super(message, cause);
+  }
+
+}
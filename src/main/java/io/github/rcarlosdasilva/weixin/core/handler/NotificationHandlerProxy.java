@@ -20,6 +20,8 @@ import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformLic
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformLicensorAccessTokenException;
 import io.github.rcarlosdasilva.weixin.core.exception.CanNotFetchOpenPlatformTicketException;
 import io.github.rcarlosdasilva.weixin.core.exception.WeirdWeixinNotificationException;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.metrics.NotificationStage;
 import io.github.rcarlosdasilva.weixin.core.parser.NotificationParser;
 import io.github.rcarlosdasilva.weixin.model.AccessToken;
 import io.github.rcarlosdasilva.weixin.model.OpAccount;
@@ -128,7 +130,9 @@ public class NotificationHandlerProxy {
     logger.debug("正在处理微信通知: at {} --- {} || 签名[{}] || 随机码[{}]", timestamp, content, signature,
         nonce);
 
+    long start = System.nanoTime();
     Notification notification = NotificationParser.parse(content);
+    start = stage(NotificationStage.PARSE, start);
     if (notification == null) {
       logger.warn("无法解析推送内容: {}", content);
       return null;
@@ -149,6 +153,7 @@ public class NotificationHandlerProxy {
     }
 
     notification = decryptNotification(notification, recipient, signature, timestamp, nonce);
+    start = stage(NotificationStage.DECRYPT, start);
     if (notification == null) {
       return null;
     }
@@ -169,8 +174,20 @@ public class NotificationHandlerProxy {
     if (infoType != null) {
       processInfo(infoType, builder, notification);
     }
+    start = stage(NotificationStage.HANDLE, start);
 
-    return encryptNotification(builder, notification.getAccount());
+    String reply = encryptNotification(builder, notification.getAccount());
+    stage(NotificationStage.ENCRYPT, start);
+    return reply;
+  }
+
+  /**
+   * 记录一个处理阶段的耗时，返回下一阶段的开始时间.
+   */
+  private long stage(NotificationStage stage, long start) {
+    long now = System.nanoTime();
+    Meter.notificationStage(stage, now - start);
+    return now;
   }
 
   private Notification decryptNotification(final Notification originalNotification,
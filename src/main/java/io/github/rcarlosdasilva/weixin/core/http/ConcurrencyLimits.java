@@ -0,0 +1,149 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
+import io.github.rcarlosdasilva.weixin.core.limit.AdaptiveLimiter;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 按域名的自适应并发限制
+ * <p>
+ * 每个域名一个 {@link AdaptiveLimiter}，根据响应时间与超时、过载情况调整同时进行的请求数。同步请求在名额已满时排队等待，
+ * 超过等待时间抛出 {@link ConcurrencyLimitException}；异步请求不等待，直接拒绝。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class ConcurrencyLimits {
+
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  private static final ConcurrentMap<String, AdaptiveLimiter> LIMITERS = Maps
+      .newConcurrentMap();
+
+  private static volatile HttpSetting setting = new HttpSetting();
+
+  private ConcurrencyLimits() {
+    throw new IllegalStateException("ConcurrencyLimits class");
+  }
+
+  static void reload(HttpSetting setting) {
+    ConcurrencyLimits.setting = setting;
+    LIMITERS.clear();
+  }
+
+  /**
+   * 域名当前的并发上限.
+   * 
+   * @param domain
+   *          域名
+   * @return 上限，未启用或该域名还没有请求时返回-1
+   */
+  public static int limitOf(String domain) {
+    AdaptiveLimiter limiter = LIMITERS.get(domain);
+    return limiter == null ? -1 : limiter.getLimit();
+  }
+
+  /**
+   * 占用请求所在域名的一个名额，已满时等待.
+   * 
+   * @param request
+   *          已确定域名的请求
+   * @return 占用的限制器，未启用时返回null
+   */
+  static AdaptiveLimiter acquire(Request request) {
+    AdaptiveLimiter limiter = limiter(request);
+    if (limiter != null
+        && !limiter.acquire(setting.getConcurrencyMaxWait(), TimeUnit.MILLISECONDS)) {
+      throw rejected(request, limiter);
+    }
+    return limiter;
+  }
+
+  /**
+   * 占用请求所在域名的一个名额，不等待.
+   * 
+   * @param request
+   *          已确定域名的请求
+   * @return 占用的限制器，未启用时返回null
+   */
+  static AdaptiveLimiter tryAcquire(Request request) {
+    AdaptiveLimiter limiter = limiter(request);
+    if (limiter != null && !limiter.tryAcquire()) {
+      throw rejected(request, limiter);
+    }
+    return limiter;
+  }
+
+  /**
+   * 收到响应，释放名额.
+   */
+  static void release(AdaptiveLimiter limiter, Request request, long nanos, Response response) {
+    if (limiter != null) {
+      int code = response.code();
+      limiter.release(nanos, code == TOO_MANY_REQUESTS || code == SERVICE_UNAVAILABLE);
+      report(request, limiter);
+    }
+  }
+
+  /**
+   * 请求失败，释放名额；超时视为过载，其它网络异常不参与调整.
+   */
+  static void release(AdaptiveLimiter limiter, Request request, long nanos, Exception ex) {
+    if (limiter != null) {
+      if (ex instanceof InterruptedIOException) {
+        limiter.release(nanos, true);
+      } else {
+        limiter.release();
+      }
+      report(request, limiter);
+    }
+  }
+
+  /**
+   * 请求被取消，只释放名额.
+   */
+  static void release(AdaptiveLimiter limiter) {
+    if (limiter != null) {
+      limiter.release();
+    }
+  }
+
+  private static AdaptiveLimiter limiter(Request request) {
+    HttpSetting current = setting;
+    if (!current.isAdaptiveConcurrency()) {
+      return null;
+    }
+
+    String domain = request.url().host();
+    AdaptiveLimiter limiter = LIMITERS.get(domain);
+    if (limiter == null) {
+      AdaptiveLimiter created = new AdaptiveLimiter(current.getConcurrencyInitialLimit(),
+          current.getConcurrencyMinLimit(), current.getConcurrencyMaxLimit());
+      limiter = LIMITERS.putIfAbsent(domain, created);
+      if (limiter == null) {
+        limiter = created;
+      }
+    }
+    return limiter;
+  }
+
+  private static ConcurrencyLimitException rejected(Request request, AdaptiveLimiter limiter) {
+    report(request, limiter);
+    return new ConcurrencyLimitException("Too many concurrent requests to "
+        + request.url().host() + ", limit " + limiter.getLimit());
+  }
+
+  private static void report(Request request, AdaptiveLimiter limiter) {
+    Meter.concurrencyLimit(request.url().host(), limiter.getLimit(), limiter.getInFlight());
+  }
+
+}
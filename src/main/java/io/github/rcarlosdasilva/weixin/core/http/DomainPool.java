@@ -0,0 +1,223 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * API域名池
+ * <p>
+ * 微信提供多个等价的API域名（api、api2以及上海、深圳、香港的地区域名）。请求仍以 {@link ApiAddress#URL_API_DOMAIN}
+ * 构建，发送前替换为当前最快的可用域名：按响应时间的指数加权平均排序，连续失败的域名暂时剔除，由后台探测恢复。
+ * 默认只有一个域名，不切换也不探测，见 {@link HttpSetting#setApiDomains(java.util.List)}。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class DomainPool {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DomainPool.class);
+
+  private static final String PROBE_PATH = "cgi-bin/getcallbackip";
+  private static final int UNHEALTHY_THRESHOLD = 2;
+  private static final long UNHEALTHY_DURATION = TimeUnit.SECONDS.toNanos(30);
+  private static final double EWMA_WEIGHT = 0.3;
+
+  private static volatile List<Domain> domains = build(new HttpSetting());
+  private static ScheduledExecutorService prober;
+
+  private DomainPool() {
+    throw new IllegalStateException("DomainPool class");
+  }
+
+  /**
+   * 按照配置重建域名池，并重新开始探测.
+   * 
+   * @param setting
+   *          Http传输配置
+   */
+  static synchronized void reload(HttpSetting setting) {
+    domains = build(setting);
+
+    if (prober != null) {
+      prober.shutdownNow();
+      prober = null;
+    }
+    long interval = setting.getDomainProbeInterval();
+    if (domains.size() > 1 && interval > 0) {
+      prober = Executors
+          .newSingleThreadScheduledExecutor(Threads.daemonFactory("weixin-domain-prober"));
+      prober.scheduleWithFixedDelay(new Runnable() {
+
+        @Override
+        public void run() {
+          probe();
+        }
+      }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static List<Domain> build(HttpSetting setting) {
+    List<String> addresses = setting.getApiDomains();
+    if (addresses == null || addresses.isEmpty()) {
+      addresses = Lists.newArrayList(ApiAddress.URL_API_DOMAIN);
+    }
+
+    ImmutableList.Builder<Domain> builder = ImmutableList.builder();
+    for (int i = 0; i < addresses.size(); i++) {
+      builder.add(new Domain(addresses.get(i), i));
+    }
+    return builder.build();
+  }
+
+  /**
+   * 当前最快的可用域名.
+   * 
+   * @return 域名，以"/"结尾
+   */
+  public static String fastest() {
+    return candidates().get(0).address;
+  }
+
+  /**
+   * 按优先顺序排列的域名：可用的在前，按响应时间排序，尚未测量的按配置顺序排在最后；不可用的排在末尾，作为最后的尝试.
+   */
+  static List<Domain> candidates() {
+    List<Domain> sorted = Lists.newArrayList(domains);
+    final long now = System.nanoTime();
+    Collections.sort(sorted, new Comparator<Domain>() {
+
+      @Override
+      public int compare(Domain d1, Domain d2) {
+        boolean h1 = d1.isHealthy(now);
+        boolean h2 = d2.isHealthy(now);
+        if (h1 != h2) {
+          return h1 ? -1 : 1;
+        }
+        int byRtt = Long.compare(d1.rtt(), d2.rtt());
+        return byRtt != 0 ? byRtt : Integer.compare(d1.order, d2.order);
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * 是否为默认API域名的请求（其他域名，如mp、open，不参与切换）.
+   */
+  static boolean isPooled(Request request) {
+    return request.url().toString().startsWith(ApiAddress.URL_API_DOMAIN);
+  }
+
+  /**
+   * 将请求切换到指定域名.
+   */
+  static Request route(Request request, Domain domain) {
+    if (ApiAddress.URL_API_DOMAIN.equals(domain.address)) {
+      return request;
+    }
+    String url = request.url().toString();
+    return request.newBuilder()
+        .url(domain.address + url.substring(ApiAddress.URL_API_DOMAIN.length())).build();
+  }
+
+  /**
+   * 失败后能否换一个域名重新发送.
+   * <p>
+   * GET请求总是可以；其他请求只在连接未建立时可以，避免微信已处理的请求被重复发送
+   */
+  static boolean canFailover(Request request, IOException ex) {
+    return "GET".equals(request.method()) || ex instanceof ConnectException
+        || ex instanceof NoRouteToHostException || ex instanceof UnknownHostException;
+  }
+
+  private static void probe() {
+    for (Domain domain : domains) {
+      Request request = new Request.Builder().url(domain.address + PROBE_PATH).build();
+      long start = System.nanoTime();
+      Response response = null;
+      try {
+        response = Http.client().newCall(request).execute();
+        domain.success(System.nanoTime() - start);
+      } catch (IOException ex) {
+        LOGGER.debug("weixin domain probe failed: {}", domain.address, ex);
+        domain.failure();
+      } finally {
+        if (response != null) {
+          response.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * 单个域名的健康状况
+   */
+  static class Domain {
+
+    private final String address;
+    private final int order;
+    private long rtt = Long.MAX_VALUE;
+    private int failures;
+    private long unhealthyUntil;
+
+    Domain(String address, int order) {
+      this.address = address;
+      this.order = order;
+    }
+
+    String getAddress() {
+      return address;
+    }
+
+    synchronized long rtt() {
+      return rtt;
+    }
+
+    synchronized boolean isHealthy(long now) {
+      return failures < UNHEALTHY_THRESHOLD || now - unhealthyUntil >= 0;
+    }
+
+    /**
+     * 收到响应（不论业务是否成功）.
+     * 
+     * @param nanos
+     *          响应时间
+     */
+    synchronized void success(long nanos) {
+      rtt = rtt == Long.MAX_VALUE ? nanos : (long) (EWMA_WEIGHT * nanos + (1 - EWMA_WEIGHT) * rtt);
+      failures = 0;
+    }
+
+    /**
+     * 连接失败或超时.
+     */
+    synchronized void failure() {
+      if (++failures >= UNHEALTHY_THRESHOLD) {
+        unhealthyUntil = System.nanoTime() + UNHEALTHY_DURATION;
+      }
+      if (failures == UNHEALTHY_THRESHOLD) {
+        LOGGER.warn("weixin api domain {} is unhealthy", address);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,307 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+import okhttp3.Request;
+
+/**
+ * 按公众号的加权公平排队
+ * <p>
+ * 所有公众号共用一定数量的请求名额，名额已满时按开始时间公平排队（Start-time Fair Queuing）：每个请求的开始标签为
+ * max(虚拟时间, 该公众号上一个请求的结束标签)，结束标签再加上 1/权重，空出名额时交给开始标签最小的请求。发起大量请求的公众号，
+ * 标签会远远领先于虚拟时间，其它公众号新来的请求可以优先得到名额。
+ * <p>
+ * 每个优先级（见 {@link Priority}）分别排队、分别计算标签，空出名额时先交给交互请求，再交给批量请求：
+ * 一个公众号的交互请求不会排在它自己大量的批量请求之后。
+ * <p>
+ * 同步请求在当前线程等待；异步请求不占用线程，得到名额后在释放名额的线程中发出，每个公众号排队中的异步请求数有上限。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class FairQueue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FairQueue.class);
+
+  private static final String ANONYMOUS = "";
+  private static final int MAX_TRACKED_ACCOUNTS = 1024;
+
+  private static final Lock LOCK = new ReentrantLock();
+  private static final Map<Priority, Lane> LANES = new EnumMap<Priority, Lane>(Priority.class);
+  private static final Map<String, Integer> QUEUED = Maps.newHashMap();
+
+  private static volatile HttpSetting setting = new HttpSetting();
+  private static long sequence;
+  private static int inUse;
+
+  static {
+    for (Priority priority : Priority.values()) {
+      LANES.put(priority, new Lane());
+    }
+  }
+
+  private FairQueue() {
+    throw new IllegalStateException("FairQueue class");
+  }
+
+  static void reload(HttpSetting setting) {
+    List<Waiter> granted;
+    LOCK.lock();
+    try {
+      FairQueue.setting = setting;
+      granted = grant();
+    } finally {
+      LOCK.unlock();
+    }
+    start(granted);
+  }
+
+  static boolean isEnabled() {
+    return setting.isFairQueuing();
+  }
+
+  /**
+   * 同步请求按当前线程的优先级占用一个名额，已满时排队等待.
+   * 
+   * @param request
+   *          请求
+   * @return 是否占用了名额，未启用时为false
+   */
+  static boolean acquire(Request request) {
+    HttpSetting current = setting;
+    if (!current.isFairQueuing()) {
+      return false;
+    }
+
+    String account = account(request);
+    long remaining = TimeUnit.MILLISECONDS.toNanos(current.getFairMaxWait());
+    LOCK.lock();
+    try {
+      Waiter waiter = enqueue(account, PriorityLanes.current(), null);
+      grant();
+      while (!waiter.granted) {
+        if (remaining <= 0) {
+          waiter.lane.waiters.remove(waiter);
+          throw new ConcurrencyLimitException(
+              "Timed out waiting in the fair queue for account " + account);
+        }
+        try {
+          remaining = waiter.condition.awaitNanos(remaining);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          if (!waiter.granted) {
+            waiter.lane.waiters.remove(waiter);
+            throw new ConcurrencyLimitException(
+                "Interrupted waiting in the fair queue for account " + account);
+          }
+        }
+      }
+      return true;
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * 异步请求排队，得到名额后执行.
+   * <p>
+   * 有空闲名额时在当前线程立即执行，否则在释放名额的线程中执行，因此task不能阻塞
+   * 
+   * @param request
+   *          请求
+   * @param priority
+   *          发起请求时的优先级
+   * @param task
+   *          发出请求，完成后必须调用 {@link #release()}
+   * @throws ConcurrencyLimitException
+   *           该公众号排队中的异步请求已达上限，见 {@link HttpSetting#setFairMaxQueued(int)}
+   */
+  static void schedule(Request request, Priority priority, Runnable task) {
+    String account = account(request);
+    List<Waiter> granted;
+    LOCK.lock();
+    try {
+      Integer queued = QUEUED.get(account);
+      if (queued != null && queued >= setting.getFairMaxQueued()) {
+        throw new ConcurrencyLimitException(
+            "Too many requests queued in the fair queue for account " + account);
+      }
+      QUEUED.put(account, queued == null ? 1 : queued + 1);
+      enqueue(account, priority, task);
+      granted = grant();
+    } finally {
+      LOCK.unlock();
+    }
+    start(granted);
+  }
+
+  /**
+   * 释放名额，交给排在最前的请求.
+   */
+  static void release() {
+    List<Waiter> granted;
+    LOCK.lock();
+    try {
+      inUse--;
+      granted = grant();
+    } finally {
+      LOCK.unlock();
+    }
+    start(granted);
+  }
+
+  private static String account(Request request) {
+    Object tag = request.tag();
+    if (tag instanceof Meter.Scope) {
+      String account = ((Meter.Scope) tag).getAccount();
+      if (account != null) {
+        return account;
+      }
+    }
+    return ANONYMOUS;
+  }
+
+  private static Waiter enqueue(String account, Priority priority, Runnable task) {
+    Lane lane = LANES.get(priority == null ? Priority.INTERACTIVE : priority);
+    Double finish = lane.finishTags.get(account);
+    double start = finish == null ? lane.virtualTime : Math.max(lane.virtualTime, finish);
+    lane.finishTags.put(account, start + 1.0 / setting.getAccountWeight(account));
+
+    Waiter waiter = new Waiter(lane, account, start, sequence++, task);
+    lane.waiters.add(waiter);
+    return waiter;
+  }
+
+  /**
+   * 把空闲名额交给开始标签最小的请求，交互请求优先，返回需要在锁外执行的异步请求.
+   */
+  private static List<Waiter> grant() {
+    List<Waiter> granted = null;
+    while (inUse < setting.getFairCapacity()) {
+      Lane lane = next();
+      if (lane == null) {
+        break;
+      }
+      Waiter waiter = lane.waiters.poll();
+      lane.virtualTime = waiter.start;
+      waiter.granted = true;
+      inUse++;
+      if (waiter.task == null) {
+        waiter.condition.signal();
+      } else {
+        dequeued(waiter.account);
+        if (granted == null) {
+          granted = Lists.newArrayList();
+        }
+        granted.add(waiter);
+      }
+    }
+    for (Lane lane : LANES.values()) {
+      lane.prune();
+    }
+    return granted;
+  }
+
+  /**
+   * 按优先级顺序，第一个有请求排队的队列.
+   */
+  private static Lane next() {
+    for (Lane lane : LANES.values()) {
+      if (!lane.waiters.isEmpty()) {
+        return lane;
+      }
+    }
+    return null;
+  }
+
+  private static void dequeued(String account) {
+    Integer queued = QUEUED.get(account);
+    if (queued == null || queued <= 1) {
+      QUEUED.remove(account);
+    } else {
+      QUEUED.put(account, queued - 1);
+    }
+  }
+
+  private static void start(List<Waiter> granted) {
+    if (granted == null) {
+      return;
+    }
+    for (Waiter waiter : granted) {
+      try {
+        waiter.task.run();
+      } catch (RuntimeException ex) {
+        LOGGER.error("weixin fair queue", ex);
+        release();
+      }
+    }
+  }
+
+  /**
+   * 一个优先级的排队与标签
+   */
+  private static final class Lane {
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>();
+    private final Map<String, Double> finishTags = Maps.newHashMap();
+    private double virtualTime;
+
+    private void prune() {
+      if (finishTags.size() <= MAX_TRACKED_ACCOUNTS) {
+        return;
+      }
+      // 结束标签不超过虚拟时间的公众号，与没有记录时的排队结果相同
+      Iterator<Double> tags = finishTags.values().iterator();
+      while (tags.hasNext()) {
+        if (tags.next() <= virtualTime) {
+          tags.remove();
+        }
+      }
+    }
+
+  }
+
+  private static final class Waiter implements Comparable<Waiter> {
+
+    private final Lane lane;
+    private final String account;
+    private final double start;
+    private final long sequence;
+    private final Runnable task;
+    private final Condition condition;
+    private boolean granted = false;
+
+    private Waiter(Lane lane, String account, double start, long sequence, Runnable task) {
+      this.lane = lane;
+      this.account = account;
+      this.start = start;
+      this.sequence = sequence;
+      this.task = task;
+      this.condition = task == null ? LOCK.newCondition() : null;
+    }
+
+    @Override
+    public int compareTo(Waiter other) {
+      int result = Double.compare(start, other.start);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+
+  }
+
+}
@@ -0,0 +1,121 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+
+/**
+ * 对冲请求的延迟统计与预算
+ * <p>
+ * 按接口记录最近的响应时间，以P95作为发出对冲请求前的等待时间；每个请求积累一定比例的预算，发出对冲请求消耗一份，
+ * 保证对冲请求不超过总请求数的固定比例。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class Hedging {
+
+  private static final int WINDOW_SIZE = 128;
+  private static final int MIN_SAMPLES = 20;
+  private static final double PERCENTILE = 0.95;
+  private static final double MAX_CREDITS = 10;
+
+  private static final ConcurrentMap<String, LatencyWindow> WINDOWS = Maps.newConcurrentMap();
+
+  private static volatile HttpSetting setting = new HttpSetting();
+  private static double credits;
+
+  private Hedging() {
+    throw new IllegalStateException("Hedging class");
+  }
+
+  static synchronized void reload(HttpSetting setting) {
+    Hedging.setting = setting;
+    credits = 0;
+  }
+
+  /**
+   * 发出对冲请求前的等待时间.
+   * 
+   * @param path
+   *          接口地址，不含参数
+   * @return 纳秒，样本不足时使用配置的默认值
+   */
+  public static long delayNanos(String path) {
+    LatencyWindow window = WINDOWS.get(path);
+    long p95 = window == null ? -1 : window.percentile(PERCENTILE);
+    return p95 < 0 ? TimeUnit.MILLISECONDS.toNanos(setting.getHedgeDelay()) : p95;
+  }
+
+  /**
+   * 记录一次响应时间.
+   * 
+   * @param path
+   *          接口地址，不含参数
+   * @param nanos
+   *          响应时间
+   */
+  static void record(String path, long nanos) {
+    LatencyWindow window = WINDOWS.get(path);
+    if (window == null) {
+      LatencyWindow created = new LatencyWindow();
+      window = WINDOWS.putIfAbsent(path, created);
+      if (window == null) {
+        window = created;
+      }
+    }
+    window.add(nanos);
+  }
+
+  /**
+   * 每个可对冲的请求积累预算.
+   */
+  static synchronized void earn() {
+    credits = Math.min(MAX_CREDITS, credits + setting.getHedgeBudgetPercent() / 100.0);
+  }
+
+  /**
+   * 尝试消耗一份预算发出对冲请求.
+   * 
+   * @return 预算是否足够
+   */
+  static synchronized boolean trySpend() {
+    if (credits < 1) {
+      return false;
+    }
+    credits -= 1;
+    return true;
+  }
+
+  /**
+   * 最近若干次响应时间
+   */
+  private static class LatencyWindow {
+
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int count;
+    private int next;
+
+    synchronized void add(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % WINDOW_SIZE;
+      if (count < WINDOW_SIZE) {
+        count++;
+      }
+    }
+
+    synchronized long percentile(double percentile) {
+      if (count < MIN_SAMPLES) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(percentile * count) - 1];
+    }
+
+  }
+
+}
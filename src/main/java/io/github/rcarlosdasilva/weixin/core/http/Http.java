@@ -2,26 +2,55 @@ package io.github.rcarlosdasilva.weixin.core.http;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
 import io.github.rcarlosdasilva.weixin.core.exception.HttpException;
+import io.github.rcarlosdasilva.weixin.core.limit.AdaptiveLimiter;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.FormBody;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
 /**
  * Http请求工具
+ * <p>
+ * 请求失败（网络异常，或响应状态码非2xx）时抛出 {@link HttpException}，由调用方决定是否重试。
  * 
  * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
  */
@@ -29,21 +58,102 @@ public class Http {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Http.class);
 
-  private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
-      .connectTimeout(3, TimeUnit.SECONDS).readTimeout(10, TimeUnit.SECONDS).build();
   private static final MediaType JSON_TYPE = MediaType.parse("application/json; charset=utf-8");
   private static final MediaType XML_TYPE = MediaType.parse("application/xml; charset=utf-8");
   private static final MediaType MULTI_FORM_TYPE = MultipartBody.FORM;
 
+  private static final MeteringInterceptor METERING = new MeteringInterceptor();
+
+  private static volatile OkHttpClient client = build(new HttpSetting());
+  private static volatile Map<String, OkHttpClient> endpointClients = ImmutableMap.of();
+
   private Http() {
   }
 
+  /**
+   * 按照配置重新构建Http客户端.
+   * <p>
+   * 新的请求立即使用新客户端；旧客户端上正在执行的请求不受影响，其空闲连接会被释放。
+   * 
+   * @param setting
+   *          Http传输配置
+   */
+  public static void reload(HttpSetting setting) {
+    if (setting == null) {
+      return;
+    }
+
+    OkHttpClient old = client;
+    client = build(setting);
+    endpointClients = buildEndpointClients(client, setting);
+    old.connectionPool().evictAll();
+    DomainPool.reload(setting);
+    Hedging.reload(setting);
+    ConcurrencyLimits.reload(setting);
+    PriorityLanes.reload(setting);
+    FairQueue.reload(setting);
+    LOGGER.debug("weixin http client reloaded");
+  }
+
+  static OkHttpClient client() {
+    return client;
+  }
+
+  /**
+   * 请求使用的客户端，单独设置了超时时间的接口使用对应的客户端，见 {@link HttpSetting#setEndpointTimeout}.
+   * <p>
+   * 请求体只能写入一次（如基于输入流的 {@link UploadSource}）时，关闭OkHttp在连接失败后的自动重发
+   */
+  private static OkHttpClient client(Request request) {
+    OkHttpClient endpoint = endpointClients.get(request.url().encodedPath());
+    OkHttpClient selected = endpoint == null ? client : endpoint;
+    if (!UploadSource.isRepeatable(request.body())) {
+      return selected.newBuilder().retryOnConnectionFailure(false).build();
+    }
+    return selected;
+  }
+
+  /**
+   * 按接口路径构建只有超时时间不同的客户端，与基础客户端共用连接池与调度器.
+   */
+  private static Map<String, OkHttpClient> buildEndpointClients(OkHttpClient base,
+      HttpSetting setting) {
+    Map<String, OkHttpClient> clients = Maps.newHashMap();
+    for (Map.Entry<String, Long> entry : setting.getEndpointTimeouts().entrySet()) {
+      HttpUrl url = HttpUrl.parse(entry.getKey());
+      String path = url == null ? entry.getKey() : url.encodedPath();
+      clients.put(path, base.newBuilder()
+          .readTimeout(entry.getValue(), TimeUnit.MILLISECONDS)
+          .writeTimeout(entry.getValue(), TimeUnit.MILLISECONDS).build());
+    }
+    return ImmutableMap.copyOf(clients);
+  }
+
+  private static OkHttpClient build(HttpSetting setting) {
+    ExecutorService executor = Threads.newVirtualExecutor("weixin-http");
+    Dispatcher dispatcher = executor == null ? new Dispatcher() : new Dispatcher(executor);
+    dispatcher.setMaxRequests(setting.getMaxRequests());
+    dispatcher.setMaxRequestsPerHost(setting.getMaxRequestsPerHost());
+
+    List<Protocol> protocols = setting.isPreferHttp2()
+        ? Lists.newArrayList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+        : Lists.newArrayList(Protocol.HTTP_1_1);
+
+    return new OkHttpClient.Builder()
+        .connectTimeout(setting.getConnectTimeout(), TimeUnit.MILLISECONDS)
+        .readTimeout(setting.getReadTimeout(), TimeUnit.MILLISECONDS)
+        .writeTimeout(setting.getWriteTimeout(), TimeUnit.MILLISECONDS)
+        .connectionPool(new ConnectionPool(setting.getMaxIdleConnections(),
+            setting.getKeepAliveDuration(), TimeUnit.MILLISECONDS))
+        .dispatcher(dispatcher).protocols(protocols).addInterceptor(METERING).build();
+  }
+
   private static Request generatePlainRequest(String url, HttpMethod method, String content,
       ContentType type) {
     MediaType mediaType = type == ContentType.JSON ? JSON_TYPE : XML_TYPE;
     content = Strings.nullToEmpty(content);
 
-    okhttp3.Request.Builder builder = new Request.Builder().url(url);
+    okhttp3.Request.Builder builder = new Request.Builder().url(url).tag(Meter.current());
 
     Request request;
     switch (method) {
@@ -77,7 +187,7 @@ public class Http {
   }
 
   private static Request generateFormRequest(String url, HttpMethod method, List<FormData> form) {
-    okhttp3.Request.Builder builder = new Request.Builder().url(url);
+    okhttp3.Request.Builder builder = new Request.Builder().url(url).tag(Meter.current());
     okhttp3.FormBody.Builder formBuilder = new FormBody.Builder();
 
     if (form != null) {
@@ -129,19 +239,54 @@ public class Http {
     Request request = generatePlainRequest(url, method, content, type);
     Response response;
     try {
-      response = CLIENT.newCall(request).execute();
+      response = execute(request);
       if (!response.isSuccessful()) {
-        throw new HttpException(response.message());
+        response.close();
+        throw new HttpException(response.code(), response.message());
       }
       return response.body().string();
     } catch (IOException ex) {
       LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * 发送请求，并返回响应体的字符流.
+   * <p>
+   * 响应体不会被读入内存，调用方负责关闭返回的Reader，读完或关闭之前占用着并发名额
+   * 
+   * @param url
+   *          请求地址
+   * @param method
+   *          请求方法
+   * @param content
+   *          请求参数体
+   * @param type
+   *          指定请求内容格式，JSON或XML
+   * @return response字符流
+   */
+  public static Reader requestReaderWithBodyContent(String url, HttpMethod method,
+      String content, ContentType type) {
+    Request request = generatePlainRequest(url, method, content, type);
+    Response response;
+    try {
+      response = execute(request);
+      if (!response.isSuccessful()) {
+        response.close();
+        throw new HttpException(response.code(), response.message());
+      }
+      return response.body().charStream();
+    } catch (IOException ex) {
+      LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
     }
-    return "";
   }
 
   /**
    * 发送请求，并返回二进制流.
+   * <p>
+   * 调用方负责关闭返回的流，读完或关闭之前占用着并发名额
    * 
    * @param url
    *          请求地址
@@ -158,15 +303,48 @@ public class Http {
     Request request = generatePlainRequest(url, method, content, type);
     Response response;
     try {
-      response = CLIENT.newCall(request).execute();
+      response = execute(request, true);
       if (!response.isSuccessful()) {
-        throw new HttpException(response.message());
+        response.close();
+        throw new HttpException(response.code(), response.message());
       }
       return response.body().byteStream();
     } catch (IOException ex) {
       LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * 发送请求，返回未读取的响应.
+   * <p>
+   * 响应体不会被读入内存，调用方根据 {@link StreamResponse#isJson()} 决定如何读取，并负责关闭
+   * 
+   * @param url
+   *          请求地址
+   * @param method
+   *          请求方法
+   * @param content
+   *          请求参数体
+   * @param type
+   *          指定请求内容格式，JSON或XML
+   * @return 未读取的响应
+   */
+  public static StreamResponse requestStreamResponseWithBodyContent(String url,
+      HttpMethod method, String content, ContentType type) {
+    Request request = generatePlainRequest(url, method, content, type);
+    Response response;
+    try {
+      response = execute(request, true);
+      if (!response.isSuccessful()) {
+        response.close();
+        throw new HttpException(response.code(), response.message());
+      }
+      return new StreamResponse(response);
+    } catch (IOException ex) {
+      LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
     }
-    return null;
   }
 
   /**
@@ -187,19 +365,22 @@ public class Http {
     Request request = generateFormRequest(url, method, form);
     Response response;
     try {
-      response = CLIENT.newCall(request).execute();
+      response = execute(request);
       if (!response.isSuccessful()) {
-        throw new HttpException(response.message());
+        response.close();
+        throw new HttpException(response.code(), response.message());
       }
       return response.body().string();
     } catch (IOException ex) {
       LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
     }
-    return "";
   }
 
   /**
    * 发送请求，带Form表单数据，并返回二进制流.
+   * <p>
+   * 调用方负责关闭返回的流，读完或关闭之前占用着并发名额
    * 
    * <p>
    * 只支持POST，PUT，PATCH，DELETE方法
@@ -217,15 +398,16 @@ public class Http {
     Request request = generateFormRequest(url, method, form);
     Response response;
     try {
-      response = CLIENT.newCall(request).execute();
+      response = execute(request, true);
       if (!response.isSuccessful()) {
-        throw new HttpException(response.message());
+        response.close();
+        throw new HttpException(response.code(), response.message());
       }
       return response.body().byteStream();
     } catch (IOException ex) {
       LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
     }
-    return null;
   }
 
   /**
@@ -257,6 +439,181 @@ public class Http {
    */
   public static String requestWithFile(String url, List<MultiFile> multiFiles,
       List<FormData> additionalData) {
+    Request request = generateMultipartRequest(url, multiFiles, additionalData);
+    Response response;
+    try {
+      response = execute(request);
+      if (!response.isSuccessful()) {
+        response.close();
+        throw new HttpException(response.code(), response.message());
+      }
+      return response.body().string();
+    } catch (IOException ex) {
+      LOGGER.error("weixin http", ex);
+      throw new HttpException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * 异步发送请求.
+   * <p>
+   * 请求通过OkHttp的enqueue发出，不会阻塞调用线程，响应在OkHttp的调度线程中完成。
+   * 取消返回的Future会同时取消底层的HTTP请求。
+   * 
+   * @param url
+   *          请求地址
+   * @param method
+   *          请求方法
+   * @param content
+   *          请求参数体
+   * @param type
+   *          指定请求内容格式，JSON或XML
+   * @return response字符串的Future
+   */
+  public static ListenableFuture<String> requestWithBodyContentAsync(String url,
+      HttpMethod method, String content, ContentType type) {
+    return enqueue(generatePlainRequest(url, method, content, type));
+  }
+
+  /**
+   * 以POST方法异步上传一个Multipart数据.
+   * 
+   * @param url
+   *          请求地址
+   * @param multiFile
+   *          文件信息
+   * @param additionalData
+   *          附加表单数据
+   * @return response字符串的Future
+   */
+  public static ListenableFuture<String> requestWithFileAsync(String url, MultiFile multiFile,
+      List<FormData> additionalData) {
+    return enqueue(
+        generateMultipartRequest(url, Lists.newArrayList(multiFile), additionalData));
+  }
+
+  /**
+   * 发送GET请求，响应慢时发出对冲请求.
+   * <p>
+   * 在该接口响应时间的P95内未返回时，向下一个可用域名再发一次相同的请求（受 {@link Hedging} 预算限制），
+   * 采用先返回且可接受的结果，并取消另一个请求；两个结果都不可接受时，采用先返回的那个。
+   * 第一个请求与同步请求一样在调用线程中等待并发名额；两个请求的响应时间都会记录，被取消的请求按已等待的时间记录。
+   * 同一请求会被服务端处理两次，只能用于幂等的只读接口，获取凭证等每次调用都有副作用的请求不能使用
+   * 
+   * @param url
+   *          请求地址
+   * @param type
+   *          指定请求内容格式，JSON或XML
+   * @param acceptable
+   *          判断响应是否可接受，如不是微信的错误响应
+   * @return response字符串
+   */
+  public static String requestWithHedging(String url, ContentType type,
+      Function<String, Boolean> acceptable) {
+    final String path = Utils.urlPath(url);
+    Request request = generatePlainRequest(url, HttpMethod.GET, null, type);
+    List<DomainPool.Domain> domains = DomainPool.isPooled(request) ? DomainPool.candidates()
+        : null;
+
+    Hedging.earn();
+    long primaryStart = System.nanoTime();
+    ListenableFuture<String> primary = enqueueAcquired(request, domains);
+    record(path, primary, primaryStart);
+
+    ListenableFuture<String> hedge = null;
+    long hedgeStart = 0;
+    try {
+      try {
+        return primary.get(Hedging.delayNanos(path), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException ex) {
+        if (!Hedging.trySpend()) {
+          return primary.get();
+        }
+      }
+
+      List<DomainPool.Domain> alternates = domains == null || domains.size() < 2 ? domains
+          : domains.subList(1, domains.size());
+      LOGGER.debug("weixin http hedging {}", path);
+      hedgeStart = System.nanoTime();
+      hedge = enqueue(request, alternates);
+      record(path, hedge, hedgeStart);
+      return firstAcceptable(primary, hedge, acceptable).get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      throw cause instanceof HttpException ? (HttpException) cause
+          : new HttpException(cause.getMessage(), cause);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new HttpException(ex.getMessage(), ex);
+    } finally {
+      // 被取消的请求至少用了这么长时间，不记录的话慢的样本会越来越少，P95随之变小
+      if (primary.cancel(true)) {
+        Hedging.record(path, System.nanoTime() - primaryStart);
+      }
+      if (hedge != null && hedge.cancel(true)) {
+        Hedging.record(path, System.nanoTime() - hedgeStart);
+      }
+    }
+  }
+
+  private static void record(final String path, ListenableFuture<String> future,
+      final long start) {
+    Futures.addCallback(future, new FutureCallback<String>() {
+
+      @Override
+      public void onSuccess(String result) {
+        Hedging.record(path, System.nanoTime() - start);
+      }
+
+      @Override
+      public void onFailure(Throwable ex) {
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private static ListenableFuture<String> firstAcceptable(ListenableFuture<String> first,
+      ListenableFuture<String> second, final Function<String, Boolean> acceptable) {
+    final SettableFuture<String> winner = SettableFuture.create();
+    final AtomicInteger remaining = new AtomicInteger(2);
+    final AtomicReference<String> fallback = new AtomicReference<String>();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    FutureCallback<String> callback = new FutureCallback<String>() {
+
+      @Override
+      public void onSuccess(String result) {
+        if (acceptable.apply(result)) {
+          winner.set(result);
+        } else {
+          fallback.compareAndSet(null, result);
+        }
+        done();
+      }
+
+      @Override
+      public void onFailure(Throwable ex) {
+        error.compareAndSet(null, ex);
+        done();
+      }
+
+      private void done() {
+        if (remaining.decrementAndGet() > 0) {
+          return;
+        }
+        if (fallback.get() != null) {
+          winner.set(fallback.get());
+        } else {
+          winner.setException(error.get());
+        }
+      }
+    };
+    Futures.addCallback(first, callback, MoreExecutors.directExecutor());
+    Futures.addCallback(second, callback, MoreExecutors.directExecutor());
+    return winner;
+  }
+
+  private static Request generateMultipartRequest(String url, List<MultiFile> multiFiles,
+      List<FormData> additionalData) {
     okhttp3.MultipartBody.Builder builder = new MultipartBody.Builder();
     builder.setType(MULTI_FORM_TYPE);
     if (additionalData != null) {
@@ -268,22 +625,311 @@ public class Http {
     for (MultiFile multiFile : multiFiles) {
       MediaType mediaType = MediaType.parse(multiFile.getContentType().getText());
       builder.addFormDataPart(multiFile.getFileKey(), multiFile.getFileName(),
-          RequestBody.create(mediaType, multiFile.getFile()));
+          multiFile.getSource().toRequestBody(mediaType));
     }
 
     RequestBody body = builder.build();
-    Request request = new Request.Builder().url(url).post(body).build();
-    Response response;
-    try {
-      response = CLIENT.newCall(request).execute();
-      if (!response.isSuccessful()) {
-        throw new HttpException(response.message());
+    return new Request.Builder().url(url).tag(Meter.current()).post(body).build();
+  }
+
+  private static Response execute(Request request) throws IOException {
+    return execute(request, isUpload(request));
+  }
+
+  /**
+   * 同步执行请求.
+   * <p>
+   * 默认API域名的请求按 {@link DomainPool} 的顺序选择域名，失败时在允许的情况下换下一个域名重新发送。
+   * 返回的响应占用着并发名额，必须读完或关闭响应体
+   * 
+   * @param transfer
+   *          是否为上传或下载，耗时取决于内容大小，不作为自适应并发的响应时间样本
+   */
+  private static Response execute(Request request, boolean transfer) throws IOException {
+    if (!DomainPool.isPooled(request)) {
+      return call(request, transfer);
+    }
+
+    IOException last = null;
+    for (DomainPool.Domain domain : DomainPool.candidates()) {
+      long start = System.nanoTime();
+      try {
+        Response response = call(DomainPool.route(request, domain), transfer);
+        domain.success(System.nanoTime() - start);
+        return response;
+      } catch (IOException ex) {
+        domain.failure();
+        if (!DomainPool.canFailover(request, ex)) {
+          throw ex;
+        }
+        LOGGER.warn("weixin api domain {} failed, try next", domain.getAddress());
+        last = ex;
       }
-      return response.body().string();
+    }
+    throw last;
+  }
+
+  /**
+   * 在优先级通道、公平排队与域名的并发限制内执行请求.
+   * <p>
+   * 先占用优先级通道再公平排队，等待批量通道的请求不会占用公平排队的名额。
+   * 名额在响应体读完或关闭时才释放，流式读取的响应体也在并发限制之内
+   */
+  private static Response call(final Request routed, final boolean transfer)
+      throws IOException {
+    Priority lane = PriorityLanes.acquire();
+    boolean acquiredFair = false;
+    AdaptiveLimiter limiter;
+    try {
+      acquiredFair = FairQueue.acquire(routed);
+      limiter = ConcurrencyLimits.acquire(routed);
+    } catch (RuntimeException ex) {
+      PriorityLanes.release(lane);
+      releaseFair(acquiredFair);
+      throw ex;
+    }
+    final boolean fair = acquiredFair;
+
+    final long start = System.nanoTime();
+    final Response response;
+    try {
+      response = client(routed).newCall(routed).execute();
     } catch (IOException ex) {
-      LOGGER.error("weixin http", ex);
+      PriorityLanes.release(lane);
+      releaseFair(fair);
+      ConcurrencyLimits.release(limiter, routed, System.nanoTime() - start, ex);
+      throw ex;
+    } catch (RuntimeException ex) {
+      PriorityLanes.release(lane);
+      releaseFair(fair);
+      ConcurrencyLimits.release(limiter);
+      throw ex;
+    }
+
+    final Priority acquiredLane = lane;
+    final AdaptiveLimiter acquiredLimiter = limiter;
+    return TrackedResponseBody.wrap(response, new TrackedResponseBody.Listener() {
+
+      @Override
+      public void finished(long bytesRead) {
+        PriorityLanes.release(acquiredLane);
+        releaseFair(fair);
+        release(acquiredLimiter, routed, System.nanoTime() - start, response, transfer);
+      }
+    });
+  }
+
+  /**
+   * 响应结束，释放域名的并发名额；上传与下载不作为响应时间的样本，以免内容大小影响并发上限的调整.
+   */
+  private static void release(AdaptiveLimiter limiter, Request routed, long nanos,
+      Response response, boolean transfer) {
+    if (transfer) {
+      ConcurrencyLimits.release(limiter);
+    } else {
+      ConcurrencyLimits.release(limiter, routed, nanos, response);
+    }
+  }
+
+  private static boolean isUpload(Request request) {
+    return request.body() instanceof MultipartBody;
+  }
+
+  private static ListenableFuture<String> enqueue(Request request) {
+    return enqueue(request, DomainPool.isPooled(request) ? DomainPool.candidates() : null);
+  }
+
+  /**
+   * 异步执行请求.
+   * <p>
+   * 与同步执行一致，按顺序选择域名，失败时在允许的情况下换下一个域名重新发送
+   * 
+   * @param domains
+   *          依次尝试的域名，null时不切换域名
+   */
+  private static ListenableFuture<String> enqueue(Request request,
+      List<DomainPool.Domain> domains) {
+    SettableFuture<String> future = SettableFuture.create();
+    // 得到名额或切换域名时可能在其它请求的回调线程中，优先级在这里取出
+    enqueue(request, domains, PriorityLanes.current(), future);
+    return future;
+  }
+
+  private static void enqueue(final Request request, final List<DomainPool.Domain> domains,
+      final Priority priority, final SettableFuture<String> future) {
+    final Priority lane;
+    try {
+      lane = PriorityLanes.tryAcquire(priority);
+    } catch (ConcurrencyLimitException ex) {
+      future.setException(ex);
+      return;
+    }
+    if (!FairQueue.isEnabled()) {
+      dispatch(request, domains, priority, future, lane, false);
+      return;
+    }
+
+    try {
+      FairQueue.schedule(route(request, domains), priority, new Runnable() {
+
+        @Override
+        public void run() {
+          dispatch(request, domains, priority, future, lane, true);
+        }
+      });
+    } catch (ConcurrencyLimitException ex) {
+      PriorityLanes.release(lane);
+      future.setException(ex);
+    }
+  }
+
+  /**
+   * 异步执行请求，但与同步执行一样在调用线程中等待公平排队、优先级通道与域名的并发名额.
+   */
+  private static ListenableFuture<String> enqueueAcquired(Request request,
+      List<DomainPool.Domain> domains) {
+    Request routed = route(request, domains);
+    Priority lane = PriorityLanes.acquire();
+    boolean fair = false;
+    AdaptiveLimiter limiter;
+    try {
+      fair = FairQueue.acquire(routed);
+      limiter = ConcurrencyLimits.acquire(routed);
+    } catch (RuntimeException ex) {
+      PriorityLanes.release(lane);
+      releaseFair(fair);
+      throw ex;
+    }
+
+    SettableFuture<String> future = SettableFuture.create();
+    send(request, domains, PriorityLanes.current(), future, fair, lane, limiter);
+    return future;
+  }
+
+  private static Request route(Request request, List<DomainPool.Domain> domains) {
+    return domains == null ? request : DomainPool.route(request, domains.get(0));
+  }
+
+  /**
+   * 在域名的并发限制内发出异步请求.
+   * 
+   * @param domains
+   *          依次尝试的域名，使用第一个，失败时换下一个；null时不切换域名
+   * @param lane
+   *          已占用的优先级通道，请求结束时释放
+   * @param fair
+   *          是否占用了 {@link FairQueue} 的名额，请求结束时释放
+   */
+  private static void dispatch(final Request request, final List<DomainPool.Domain> domains,
+      final Priority priority, final SettableFuture<String> future, final Priority lane,
+      final boolean fair) {
+    if (future.isCancelled()) {
+      PriorityLanes.release(lane);
+      releaseFair(fair);
+      return;
+    }
+
+    Request routed = route(request, domains);
+    AdaptiveLimiter limiter;
+    try {
+      limiter = ConcurrencyLimits.tryAcquire(routed);
+    } catch (ConcurrencyLimitException ex) {
+      PriorityLanes.release(lane);
+      releaseFair(fair);
+      future.setException(ex);
+      return;
+    }
+    send(request, domains, priority, future, fair, lane, limiter);
+  }
+
+  /**
+   * 已占用名额，发出异步请求，结束时释放.
+   */
+  private static void send(final Request request, final List<DomainPool.Domain> domains,
+      final Priority priority, final SettableFuture<String> future, final boolean fair,
+      final Priority lane, final AdaptiveLimiter limiter) {
+    final DomainPool.Domain domain = domains == null ? null : domains.get(0);
+    final Request routed = route(request, domains);
+    final long start = System.nanoTime();
+    final Call call = client(routed).newCall(routed);
+
+    future.addListener(new Runnable() {
+
+      @Override
+      public void run() {
+        if (future.isCancelled()) {
+          call.cancel();
+        }
+      }
+    }, MoreExecutors.directExecutor());
+
+    call.enqueue(new Callback() {
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        if (domain != null) {
+          domain.success(System.nanoTime() - start);
+        }
+        // 读完响应体后再释放名额，并在结果交给回调之前释放，回调中可以立即发出新的请求
+        String body = null;
+        IOException failure = null;
+        try {
+          if (response.isSuccessful()) {
+            body = response.body().string();
+          }
+        } catch (IOException ex) {
+          failure = ex;
+        } finally {
+          response.close();
+        }
+
+        PriorityLanes.release(lane);
+        releaseFair(fair);
+        if (failure != null) {
+          ConcurrencyLimits.release(limiter, routed, System.nanoTime() - start, failure);
+          LOGGER.error("weixin http", failure);
+          future.setException(new HttpException(failure.getMessage(), failure));
+          return;
+        }
+        release(limiter, routed, System.nanoTime() - start, response, isUpload(routed));
+        if (!response.isSuccessful()) {
+          future.setException(new HttpException(response.code(), response.message()));
+          return;
+        }
+        future.set(body);
+      }
+
+      @Override
+      public void onFailure(Call call, IOException ex) {
+        if (call.isCanceled()) {
+          PriorityLanes.release(lane);
+          releaseFair(fair);
+          ConcurrencyLimits.release(limiter);
+          LOGGER.debug("weixin http canceled", ex);
+          future.cancel(false);
+          return;
+        }
+        PriorityLanes.release(lane);
+        releaseFair(fair);
+        ConcurrencyLimits.release(limiter, routed, System.nanoTime() - start, ex);
+        if (domain != null) {
+          domain.failure();
+          if (domains.size() > 1 && DomainPool.canFailover(request, ex)) {
+            LOGGER.warn("weixin api domain {} failed, try next", domain.getAddress());
+            enqueue(request, domains.subList(1, domains.size()), priority, future);
+            return;
+          }
+        }
+        LOGGER.error("weixin http", ex);
+        future.setException(new HttpException(ex.getMessage(), ex));
+      }
+    });
+  }
+
+  private static void releaseFair(boolean fair) {
+    if (fair) {
+      FairQueue.release();
     }
-    return "";
   }
 
 }
@@ -0,0 +1,59 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.IOException;
+
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * 记录每次HTTP请求的耗时与流量
+ * <p>
+ * 公众号与接口取自生成请求时放入的tag（{@link Meter.Scope}），没有时以实际请求地址作为接口。
+ * 耗时与下行流量在响应体读完或关闭时记录，包含响应体的传输，分块传输的响应也按实际读取的字节数统计
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class MeteringInterceptor implements Interceptor {
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (!Meter.isEnabled()) {
+      return chain.proceed(request);
+    }
+
+    Object tag = request.tag();
+    final Meter.Scope scope = tag instanceof Meter.Scope ? (Meter.Scope) tag : null;
+    final String endpoint = scope == null ? endpoint(request.url()) : null;
+    RequestBody body = request.body();
+    final long bytesOut = body == null ? 0 : body.contentLength();
+
+    final long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException ex) {
+      Meter.request(scope, endpoint, System.nanoTime() - start, bytesOut, -1, false);
+      throw ex;
+    }
+
+    final boolean successful = response.isSuccessful();
+    return TrackedResponseBody.wrap(response, new TrackedResponseBody.Listener() {
+
+      @Override
+      public void finished(long bytesRead) {
+        Meter.request(scope, endpoint, System.nanoTime() - start, bytesOut, bytesRead,
+            successful);
+      }
+    });
+  }
+
+  private static String endpoint(HttpUrl url) {
+    return url.scheme() + "://" + url.host() + url.encodedPath();
+  }
+
+}
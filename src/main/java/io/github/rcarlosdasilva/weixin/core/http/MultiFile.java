@@ -13,6 +13,7 @@ public class MultiFile {
   private String fileKey;
   private String fileName;
   private File file;
+  private UploadSource source;
 
   /**
    * 构造函数,使用通用文件类型.
@@ -50,6 +51,40 @@ public class MultiFile {
     this.file = file;
   }
 
+  /**
+   * 构造函数,使用通用文件类型.
+   * 
+   * @param fileKey
+   *          文件key
+   * @param fileName
+   *          文件名
+   * @param source
+   *          文件内容来源
+   */
+  public MultiFile(String fileKey, String fileName, UploadSource source) {
+    this(ContentType.ANY, fileKey, fileName, source);
+  }
+
+  /**
+   * 构造函数,指定文件类型.
+   * 
+   * @param contentType
+   *          Content-Type
+   * @param fileKey
+   *          文件key
+   * @param fileName
+   *          文件名
+   * @param source
+   *          文件内容来源
+   */
+  public MultiFile(ContentType contentType, String fileKey, String fileName,
+      UploadSource source) {
+    this.contentType = contentType;
+    this.fileKey = fileKey;
+    this.fileName = fileName;
+    this.source = source;
+  }
+
   public ContentType getContentType() {
     return contentType;
   }
@@ -82,4 +117,20 @@ public class MultiFile {
     this.file = file;
   }
 
+  /**
+   * 文件内容来源，未指定时使用文件.
+   * 
+   * @return UploadSource
+   */
+  public UploadSource getSource() {
+    if (source == null && file != null) {
+      return UploadSource.of(file);
+    }
+    return source;
+  }
+
+  public void setSource(UploadSource source) {
+    this.source = source;
+  }
+
 }
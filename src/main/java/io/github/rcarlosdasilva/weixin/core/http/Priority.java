@@ -0,0 +1,19 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+/**
+ * 请求优先级，见 {@link PriorityLanes}.
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum Priority {
+
+  /**
+   * 交互请求，有用户在等待结果，如客服回复、网页授权、获取用户信息。未指定优先级的请求都是交互请求
+   */
+  INTERACTIVE,
+  /**
+   * 批量请求，如群发、批量同步用户，只能使用为交互请求预留之外的名额
+   */
+  BULK
+
+}
@@ -0,0 +1,190 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
+import io.github.rcarlosdasilva.weixin.core.setting.HttpSetting;
+
+/**
+ * 请求优先级通道
+ * <p>
+ * 所有请求共用一定数量的名额，其中一部分只留给交互请求；批量请求只能使用其余的名额，并且有交互请求在等待时不再占用新的名额。
+ * 当前线程的优先级通过 {@link #enter(Priority)} 与 {@link #exit(Priority)} 指定：
+ * 
+ * <pre>
+ * Priority previous = PriorityLanes.enter(Priority.BULK);
+ * try {
+ *   Weixin.with(key).message().sendWithTemplate(...);
+ * } finally {
+ *   PriorityLanes.exit(previous);
+ * }
+ * </pre>
+ * 
+ * 同步请求在名额已满时排队等待，超过等待时间抛出 {@link ConcurrencyLimitException}；异步请求不等待，直接拒绝。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class PriorityLanes {
+
+  private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<Priority>();
+
+  private static final Lock LOCK = new ReentrantLock();
+  private static final Condition AVAILABLE = LOCK.newCondition();
+
+  private static volatile HttpSetting setting = new HttpSetting();
+  private static int inUse;
+  private static int waitingInteractive;
+
+  private PriorityLanes() {
+    throw new IllegalStateException("PriorityLanes class");
+  }
+
+  static void reload(HttpSetting setting) {
+    LOCK.lock();
+    try {
+      PriorityLanes.setting = setting;
+      AVAILABLE.signalAll();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * 指定当前线程之后请求的优先级.
+   * 
+   * @param priority
+   *          {@link Priority}
+   * @return 之前的优先级，用于 {@link #exit(Priority)}
+   */
+  public static Priority enter(Priority priority) {
+    Priority previous = CURRENT.get();
+    CURRENT.set(priority);
+    return previous;
+  }
+
+  /**
+   * 恢复之前的优先级.
+   * 
+   * @param previous
+   *          {@link #enter(Priority)} 的返回值
+   */
+  public static void exit(Priority previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * 当前线程的优先级.
+   * 
+   * @return 未指定时为 {@link Priority#INTERACTIVE}
+   */
+  public static Priority current() {
+    Priority priority = CURRENT.get();
+    return priority == null ? Priority.INTERACTIVE : priority;
+  }
+
+  /**
+   * 按当前线程的优先级占用一个名额，已满时等待.
+   * 
+   * @return 占用名额的优先级，未启用时返回null
+   */
+  static Priority acquire() {
+    HttpSetting current = setting;
+    if (!current.isPriorityLanes()) {
+      return null;
+    }
+
+    Priority priority = current();
+    long remaining = TimeUnit.MILLISECONDS.toNanos(current.getLaneMaxWait());
+    boolean interactive = priority == Priority.INTERACTIVE;
+    LOCK.lock();
+    try {
+      if (interactive) {
+        waitingInteractive++;
+      }
+      try {
+        while (!admissible(priority)) {
+          if (remaining <= 0) {
+            throw rejected(priority);
+          }
+          remaining = AVAILABLE.awaitNanos(remaining);
+        }
+      } finally {
+        if (interactive) {
+          waitingInteractive--;
+        }
+      }
+      inUse++;
+      return priority;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw rejected(priority);
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * 按指定的优先级占用一个名额，不等待.
+   * 
+   * @param priority
+   *          发起请求时的优先级
+   * @return 占用名额的优先级，未启用时返回null
+   */
+  static Priority tryAcquire(Priority priority) {
+    if (!setting.isPriorityLanes()) {
+      return null;
+    }
+
+    LOCK.lock();
+    try {
+      if (!admissible(priority)) {
+        throw rejected(priority);
+      }
+      inUse++;
+      return priority;
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * 释放名额.
+   * 
+   * @param lane
+   *          {@link #acquire()} 的返回值
+   */
+  static void release(Priority lane) {
+    if (lane == null) {
+      return;
+    }
+
+    LOCK.lock();
+    try {
+      inUse--;
+      AVAILABLE.signalAll();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private static boolean admissible(Priority priority) {
+    int capacity = setting.getLaneCapacity();
+    if (priority == Priority.INTERACTIVE) {
+      return inUse < capacity;
+    }
+    return waitingInteractive == 0
+        && inUse < Math.max(1, capacity - setting.getLaneReserved());
+  }
+
+  private static ConcurrencyLimitException rejected(Priority priority) {
+    return new ConcurrencyLimitException("Too many concurrent requests in lane " + priority);
+  }
+
+}
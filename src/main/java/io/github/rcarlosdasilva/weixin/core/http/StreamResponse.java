@@ -0,0 +1,106 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * 未读取的Http响应
+ * <p>
+ * 响应体保持在连接上，由调用方决定按JSON解析还是按二进制写出，用完必须关闭。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class StreamResponse implements Closeable {
+
+  private final Response response;
+
+  StreamResponse(Response response) {
+    this.response = response;
+  }
+
+  /**
+   * 响应的Content-Type.
+   * 
+   * @return Content-Type，未返回时为null
+   */
+  public String getContentType() {
+    MediaType mediaType = response.body().contentType();
+    return mediaType == null ? null : mediaType.toString();
+  }
+
+  /**
+   * 响应内容是否是JSON.
+   * <p>
+   * 按Content-Type判断（微信返回JSON时可能使用text/plain）；未返回Content-Type时，
+   * 查看响应体第一个非空白字符是否为 '{'，只预读不消费。
+   * 
+   * @return boolean
+   * @throws IOException
+   *           读取响应体失败
+   */
+  public boolean isJson() throws IOException {
+    MediaType mediaType = response.body().contentType();
+    if (mediaType != null) {
+      return "text".equalsIgnoreCase(mediaType.type())
+          || mediaType.subtype().toLowerCase().contains("json");
+    }
+
+    BufferedSource source = response.body().source();
+    for (long i = 0; source.request(i + 1); i++) {
+      byte b = source.buffer().getByte(i);
+      if (!Character.isWhitespace(b)) {
+        return b == '{';
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 以字符流读取响应体.
+   * 
+   * @return Reader
+   */
+  public Reader getReader() {
+    return response.body().charStream();
+  }
+
+  /**
+   * 以二进制流读取响应体.
+   * 
+   * @return InputStream
+   */
+  public InputStream getStream() {
+    return response.body().byteStream();
+  }
+
+  /**
+   * 将响应体写入输出流，不关闭输出流.
+   * 
+   * @param out
+   *          输出流
+   * @return 写入的字节数
+   * @throws IOException
+   *           读写失败
+   */
+  public long transferTo(OutputStream out) throws IOException {
+    Sink sink = Okio.sink(out);
+    long count = response.body().source().readAll(sink);
+    sink.flush();
+    return count;
+  }
+
+  @Override
+  public void close() {
+    response.close();
+  }
+
+}
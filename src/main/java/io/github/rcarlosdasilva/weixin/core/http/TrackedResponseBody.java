@@ -0,0 +1,114 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * 读完或关闭时回调一次的响应体
+ * <p>
+ * 响应头返回时响应体还没有读取，流式读取的响应要到读完或关闭时才算结束
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class TrackedResponseBody extends ResponseBody {
+
+  private final ResponseBody delegate;
+  private final Listener listener;
+  private final AtomicBoolean finished = new AtomicBoolean(false);
+  private BufferedSource source;
+  private long bytesRead;
+
+  private TrackedResponseBody(ResponseBody delegate, Listener listener) {
+    this.delegate = delegate;
+    this.listener = listener;
+  }
+
+  /**
+   * 替换响应的响应体，没有响应体时立即回调.
+   */
+  static Response wrap(Response response, Listener listener) {
+    ResponseBody body = response.body();
+    if (body == null) {
+      listener.finished(0);
+      return response;
+    }
+    return response.newBuilder().body(new TrackedResponseBody(body, listener)).build();
+  }
+
+  @Override
+  public MediaType contentType() {
+    return delegate.contentType();
+  }
+
+  @Override
+  public long contentLength() {
+    return delegate.contentLength();
+  }
+
+  @Override
+  public synchronized BufferedSource source() {
+    if (source == null) {
+      source = Okio.buffer(new ForwardingSource(delegate.source()) {
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+          long read;
+          try {
+            read = super.read(sink, byteCount);
+          } catch (IOException ex) {
+            finish();
+            throw ex;
+          }
+          if (read == -1) {
+            finish();
+          } else {
+            bytesRead += read;
+          }
+          return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            finish();
+          }
+        }
+      });
+    }
+    return source;
+  }
+
+  private void finish() {
+    if (finished.compareAndSet(false, true)) {
+      listener.finished(bytesRead);
+    }
+  }
+
+  /**
+   * 响应体结束的回调
+   * 
+   * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+   */
+  interface Listener {
+
+    /**
+     * 响应体读完、读取失败或被关闭.
+     * 
+     * @param bytesRead
+     *          已读取的字节数
+     */
+    void finished(long bytesRead);
+
+  }
+
+}
@@ -0,0 +1,307 @@
+package io.github.rcarlosdasilva.weixin.core.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Preconditions;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * 上传内容来源
+ * <p>
+ * 内容在发送请求时直接写入OkHttp的请求体，不会先落盘成临时文件，也不会整体复制一份到内存。<br>
+ * 来源可以是：文件、输入流、字节数组、ByteBuffer或文件通道中的一段（以内存映射方式读取）。
+ * <p>
+ * <b>注意：</b>输入流只能读取一次，基于输入流的来源在access_token失效重试时无法重新发送，会导致上传失败，
+ * 发送这类请求时也不会由OkHttp在连接失败后自动重发；其他来源可以重复发送。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public abstract class UploadSource {
+
+  private static final int CHUNK_SIZE = 8192;
+
+  UploadSource() {
+  }
+
+  /**
+   * 文件.
+   * 
+   * @param file
+   *          文件
+   * @return UploadSource
+   */
+  public static UploadSource of(File file) {
+    Preconditions.checkNotNull(file);
+    return new FileUploadSource(file);
+  }
+
+  /**
+   * 输入流（长度未知），只能发送一次，发送后由本方法关闭该流.
+   * 
+   * @param stream
+   *          输入流
+   * @return UploadSource
+   */
+  public static UploadSource of(InputStream stream) {
+    return of(stream, -1);
+  }
+
+  /**
+   * 输入流，只能发送一次，发送后由本方法关闭该流.
+   * 
+   * @param stream
+   *          输入流
+   * @param length
+   *          内容长度，未知时为-1（请求将以chunked方式发送）
+   * @return UploadSource
+   */
+  public static UploadSource of(InputStream stream, long length) {
+    Preconditions.checkNotNull(stream);
+    return new StreamUploadSource(stream, length);
+  }
+
+  /**
+   * 字节数组，不复制，发送前请勿修改数组内容.
+   * 
+   * @param bytes
+   *          内容
+   * @return UploadSource
+   */
+  public static UploadSource of(byte[] bytes) {
+    Preconditions.checkNotNull(bytes);
+    return of(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * ByteBuffer，发送position到limit之间的内容，不改变buffer本身的position.
+   * 
+   * @param buffer
+   *          内容
+   * @return UploadSource
+   */
+  public static UploadSource of(ByteBuffer buffer) {
+    Preconditions.checkNotNull(buffer);
+    return new BufferUploadSource(buffer.duplicate());
+  }
+
+  /**
+   * 文件通道中的一段，发送时以只读方式映射到内存，不改变通道的position，通道由调用方负责关闭.
+   * 
+   * @param channel
+   *          文件通道
+   * @param position
+   *          起始位置
+   * @param count
+   *          字节数
+   * @return UploadSource
+   */
+  public static UploadSource of(FileChannel channel, long position, long count) {
+    Preconditions.checkNotNull(channel);
+    Preconditions.checkArgument(position >= 0 && count >= 0);
+    Preconditions.checkArgument(count <= Integer.MAX_VALUE,
+        "count must not exceed Integer.MAX_VALUE, which is the limit of a memory-mapped region");
+    return new ChannelUploadSource(channel, position, count);
+  }
+
+  /**
+   * 内容长度.
+   * 
+   * @return 字节数，未知为-1
+   */
+  public abstract long length();
+
+  abstract void writeTo(BufferedSink sink) throws IOException;
+
+  /**
+   * 能否重复发送.
+   */
+  boolean isRepeatable() {
+    return true;
+  }
+
+  RequestBody toRequestBody(MediaType mediaType) {
+    return new SourceRequestBody(this, mediaType);
+  }
+
+  /**
+   * 请求体能否重复写入：包含只能读取一次的来源时不能.
+   * 
+   * @param body
+   *          请求体，可为null
+   * @return boolean
+   */
+  static boolean isRepeatable(RequestBody body) {
+    if (body instanceof SourceRequestBody) {
+      return ((SourceRequestBody) body).source.isRepeatable();
+    }
+    if (body instanceof MultipartBody) {
+      for (MultipartBody.Part part : ((MultipartBody) body).parts()) {
+        if (!isRepeatable(part.body())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static void write(ByteBuffer buffer, BufferedSink sink) throws IOException {
+    if (buffer.hasArray()) {
+      sink.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      return;
+    }
+
+    // 堆外内存（包括内存映射）只能分段拷贝进okio的缓冲区
+    byte[] chunk = new byte[Math.min(CHUNK_SIZE, buffer.remaining())];
+    while (buffer.hasRemaining()) {
+      int size = Math.min(chunk.length, buffer.remaining());
+      buffer.get(chunk, 0, size);
+      sink.write(chunk, 0, size);
+    }
+  }
+
+  private static class FileUploadSource extends UploadSource {
+
+    private final File file;
+
+    FileUploadSource(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public long length() {
+      return file.length();
+    }
+
+    @Override
+    void writeTo(BufferedSink sink) throws IOException {
+      Source source = Okio.source(file);
+      try {
+        sink.writeAll(source);
+      } finally {
+        source.close();
+      }
+    }
+
+  }
+
+  private static class StreamUploadSource extends UploadSource {
+
+    private final InputStream stream;
+    private final long length;
+    private final AtomicBoolean consumed = new AtomicBoolean(false);
+
+    StreamUploadSource(InputStream stream, long length) {
+      this.stream = stream;
+      this.length = length;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    boolean isRepeatable() {
+      return false;
+    }
+
+    @Override
+    void writeTo(BufferedSink sink) throws IOException {
+      if (!consumed.compareAndSet(false, true)) {
+        throw new IOException("Upload stream has already been consumed");
+      }
+
+      Source source = Okio.source(stream);
+      try {
+        sink.writeAll(source);
+      } finally {
+        source.close();
+      }
+    }
+
+  }
+
+  private static class BufferUploadSource extends UploadSource {
+
+    private final ByteBuffer buffer;
+
+    BufferUploadSource(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public long length() {
+      return buffer.remaining();
+    }
+
+    @Override
+    void writeTo(BufferedSink sink) throws IOException {
+      write(buffer.duplicate(), sink);
+    }
+
+  }
+
+  private static class ChannelUploadSource extends UploadSource {
+
+    private final FileChannel channel;
+    private final long position;
+    private final long count;
+
+    ChannelUploadSource(FileChannel channel, long position, long count) {
+      this.channel = channel;
+      this.position = position;
+      this.count = count;
+    }
+
+    @Override
+    public long length() {
+      return count;
+    }
+
+    @Override
+    void writeTo(BufferedSink sink) throws IOException {
+      write(channel.map(MapMode.READ_ONLY, position, count), sink);
+    }
+
+  }
+
+  private static class SourceRequestBody extends RequestBody {
+
+    private final UploadSource source;
+    private final MediaType mediaType;
+
+    SourceRequestBody(UploadSource source, MediaType mediaType) {
+      this.source = source;
+      this.mediaType = mediaType;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return mediaType;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return source.length();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      source.writeTo(sink);
+    }
+
+  }
+
+}
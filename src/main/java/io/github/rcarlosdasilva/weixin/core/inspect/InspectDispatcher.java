@@ -7,6 +7,7 @@ import com.google.common.collect.Lists;
 import io.github.lukehutch.fastclasspathscanner.FastClasspathScanner;
 import io.github.lukehutch.fastclasspathscanner.matchprocessor.ImplementingClassMatchProcessor;
 import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
 
 @SuppressWarnings("rawtypes")
 public class InspectDispatcher implements Runnable {
@@ -55,7 +56,7 @@ public class InspectDispatcher implements Runnable {
   }
 
   public static void startup() {
-    new Thread(new InspectDispatcher()).start();
+    Threads.start("weixin-inspect-dispatcher", new InspectDispatcher());
   }
 
   @SuppressWarnings("unchecked")
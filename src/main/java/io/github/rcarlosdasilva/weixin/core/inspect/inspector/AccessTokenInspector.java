@@ -2,6 +2,7 @@ package io.github.rcarlosdasilva.weixin.core.inspect.inspector;
 
 import java.util.List;
 
+import io.github.rcarlosdasilva.weixin.core.Registry;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
 import io.github.rcarlosdasilva.weixin.core.cache.Lookup;
 import io.github.rcarlosdasilva.weixin.core.inspect.Inspector;
@@ -15,7 +16,8 @@ public class AccessTokenInspector implements Inspector {
 
   @Override
   public ProblemObject<?> inspect() {
-    if (WorkSheet.isWorking(MARK)) {
+    // 开启主动刷新时，凭证在过期前已由RefreshAhead刷新，无需轮询
+    if (Registry.setting().isRefreshAhead() || WorkSheet.isWorking(MARK)) {
       return null;
     }
 
@@ -6,6 +6,7 @@ import java.util.Iterator;
 import io.github.rcarlosdasilva.weixin.common.Convention;
 import io.github.rcarlosdasilva.weixin.core.OpenPlatform;
 import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
 import io.github.rcarlosdasilva.weixin.core.inspect.ProblemObject;
 import io.github.rcarlosdasilva.weixin.core.inspect.WorkSheet;
 import io.github.rcarlosdasilva.weixin.core.inspect.Worker;
@@ -25,7 +26,7 @@ public class AcessTokenWorker implements Worker<AccessToken> {
     }
 
     WorkSheet.start(problem.getMark());
-    new Thread(new Runnable() {
+    Threads.start("weixin-access-token-worker", new Runnable() {
 
       @Override
       public void run() {
@@ -47,7 +48,7 @@ public class AcessTokenWorker implements Worker<AccessToken> {
         }
         WorkSheet.done(problem.getMark());
       }
-    }).start();
+    });
   }
 
 }
@@ -0,0 +1,79 @@
+package io.github.rcarlosdasilva.weixin.core.interceptor;
+
+import io.github.rcarlosdasilva.weixin.core.http.HttpMethod;
+import io.github.rcarlosdasilva.weixin.model.request.base.Request;
+
+/**
+ * API调用拦截器
+ * <p>
+ * 通过 {@code Setting.addInterceptor} 按顺序注册，先注册的在外层。每次 post、get、postStream、getStream、upload、
+ * download 调用都会经过拦截器链，拦截器可以查看或修改请求模型、调用 {@link Chain#proceed()} 继续执行并处理解析后的响应，
+ * 也可以不调用 proceed 直接返回（如本地缓存命中）。download 的响应为二进制时已直接写入输出流，proceed 返回null。
+ * <p>
+ * 异步调用（postAsync、getAsync、uploadAsync）不经过拦截器链：{@link Chain#proceed()} 是同步的，
+ * 拦截异步调用需要在调用线程或回调线程中等待响应，失去异步的意义。需要拦截的请求请使用同步接口，
+ * 或在异步返回的Future上自行添加处理。
+ * <p>
+ * 链的末端是库本身的处理：填充access_token、响应缓存、合并请求、限流、重试，见 {@code BasicApi}
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public interface ApiInterceptor {
+
+  /**
+   * 拦截一次API调用.
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param chain
+   *          {@link Chain}
+   * @return 响应，一般为 {@link Chain#proceed()} 的返回值
+   */
+  <T> T intercept(Chain<T> chain);
+
+  /**
+   * 拦截器链.
+   * 
+   * @param <T>
+   *          响应类型
+   */
+  interface Chain<T> {
+
+    /**
+     * 公众号key，开放平台自身的调用为null.
+     * 
+     * @return key
+     */
+    String getAccountKey();
+
+    /**
+     * 请求模型.
+     * 
+     * @return {@link Request}
+     */
+    Request getRequest();
+
+    /**
+     * 请求方式，上传为POST，下载为实际的请求方式.
+     * 
+     * @return {@link HttpMethod}
+     */
+    HttpMethod getMethod();
+
+    /**
+     * 响应类型，postStream与getStream为 {@link java.io.InputStream}，download为响应是JSON时的类型.
+     * 
+     * @return Class
+     */
+    Class<T> getTarget();
+
+    /**
+     * 交给下一个拦截器，或真正执行.
+     * 
+     * @return 解析后的响应
+     */
+    T proceed();
+
+  }
+
+}
@@ -0,0 +1,89 @@
+package io.github.rcarlosdasilva.weixin.core.interceptor;
+
+import java.util.List;
+
+import io.github.rcarlosdasilva.weixin.core.http.HttpMethod;
+import io.github.rcarlosdasilva.weixin.model.request.base.Request;
+
+/**
+ * 经过拦截器链的一次API调用
+ * <p>
+ * 子类在 {@link #execute()} 中实现真正的调用。没有注册拦截器时不应创建本类，直接执行即可
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public abstract class InterceptedCall<T> {
+
+  private final String accountKey;
+  private final Request request;
+  private final HttpMethod method;
+  private final Class<T> target;
+  private final List<ApiInterceptor> interceptors;
+
+  protected InterceptedCall(String accountKey, Request request, HttpMethod method,
+      Class<T> target, List<ApiInterceptor> interceptors) {
+    this.accountKey = accountKey;
+    this.request = request;
+    this.method = method;
+    this.target = target;
+    this.interceptors = interceptors;
+  }
+
+  /**
+   * 从第一个拦截器开始执行.
+   * 
+   * @return 响应
+   */
+  public T proceed() {
+    return new Link(0).proceed();
+  }
+
+  /**
+   * 真正执行调用.
+   * 
+   * @return 响应
+   */
+  protected abstract T execute();
+
+  /**
+   * 链上的一个位置，拦截器可以多次调用proceed（如自行重试），每次都从下一个拦截器开始.
+   */
+  private final class Link implements ApiInterceptor.Chain<T> {
+
+    private final int index;
+
+    private Link(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getAccountKey() {
+      return accountKey;
+    }
+
+    @Override
+    public Request getRequest() {
+      return request;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return method;
+    }
+
+    @Override
+    public Class<T> getTarget() {
+      return target;
+    }
+
+    @Override
+    public T proceed() {
+      if (index >= interceptors.size()) {
+        return execute();
+      }
+      return interceptors.get(index).intercept(new Link(index + 1));
+    }
+
+  }
+
+}
@@ -6,6 +6,7 @@ import com.google.gson.FieldAttributes;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 
 /**
  * JSON工具
@@ -45,4 +46,9 @@ public final class Json {
     return gson.fromJson(json, clazz);
   }
 
+  public static <T> T fromJson(JsonReader reader, Class<T> clazz) {
+    Preconditions.checkNotNull(reader);
+    return gson.fromJson(reader, clazz);
+  }
+
 }
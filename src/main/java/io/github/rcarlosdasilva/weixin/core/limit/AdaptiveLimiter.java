@@ -0,0 +1,154 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发上限
+ * <p>
+ * 梯度算法：以长期平均响应时间为基准，最近一次响应时间超过基准的 {@value #RTT_TOLERANCE} 倍时按比例降低上限，
+ * 否则每次增加约 sqrt(上限) 的余量；超时与过载（HTTP 429、503）时乘性降低。只有实际并发接近上限时才增长，
+ * 避免空闲时上限无限增大。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class AdaptiveLimiter {
+
+  private static final double RTT_TOLERANCE = 1.5;
+  private static final double LONG_RTT_WEIGHT = 0.05;
+  private static final double SMOOTHING = 0.2;
+  private static final double BACKOFF_RATIO = 0.9;
+  private static final double MIN_GRADIENT = 0.5;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final Lock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+
+  private double limit;
+  private int inFlight;
+  private double longRtt;
+
+  public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+  }
+
+  /**
+   * 不等待，尝试占用一个并发名额.
+   * 
+   * @return 是否占用成功
+   */
+  public boolean tryAcquire() {
+    lock.lock();
+    try {
+      if (inFlight < (int) limit) {
+        inFlight++;
+        return true;
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 占用一个并发名额，已满时排队等待.
+   * 
+   * @param maxWait
+   *          最长等待时间
+   * @param unit
+   *          时间单位
+   * @return 是否占用成功
+   */
+  public boolean acquire(long maxWait, TimeUnit unit) {
+    long remaining = unit.toNanos(maxWait);
+    lock.lock();
+    try {
+      while (inFlight >= (int) limit) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = available.awaitNanos(remaining);
+      }
+      inFlight++;
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 请求完成，释放名额并根据响应时间调整上限.
+   * 
+   * @param rttNanos
+   *          响应时间
+   * @param dropped
+   *          是否超时或被微信拒绝（过载）
+   */
+  public void release(long rttNanos, boolean dropped) {
+    lock.lock();
+    try {
+      int current = inFlight--;
+      if (dropped) {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+      } else if (rttNanos > 0) {
+        longRtt = longRtt == 0 ? rttNanos
+            : longRtt * (1 - LONG_RTT_WEIGHT) + rttNanos * LONG_RTT_WEIGHT;
+        if (current * 2 >= limit) {
+          double gradient = Math.max(MIN_GRADIENT,
+              Math.min(1.0, RTT_TOLERANCE * longRtt / rttNanos));
+          double target = limit * gradient + Math.sqrt(limit);
+          limit = Math.min(maxLimit,
+              Math.max(minLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+        }
+      }
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 请求被取消或结果无法用于判断（如连接失败），只释放名额.
+   */
+  public void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 当前并发上限.
+   * 
+   * @return int
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.github.rcarlosdasilva.weixin.core.setting.RetrySetting;
+
+/**
+ * 带随机抖动的指数退避
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class Backoff {
+
+  private static final int MAX_SHIFT = 30;
+
+  private Backoff() {
+    throw new IllegalStateException("Backoff class");
+  }
+
+  /**
+   * 第attempt次重试前的等待时间.
+   * <p>
+   * 在0到 min(max, base * 2^(attempt-1)) 之间随机取值
+   * 
+   * @param setting
+   *          重试配置
+   * @param attempt
+   *          第几次重试，从1开始
+   * @return 等待时间（毫秒）
+   */
+  public static long delay(RetrySetting setting, int attempt) {
+    int shift = Math.min(Math.max(attempt - 1, 0), MAX_SHIFT);
+    long ceiling = setting.getBackoffBase() << shift;
+    if (ceiling <= 0 || ceiling > setting.getBackoffMax()) {
+      ceiling = setting.getBackoffMax();
+    }
+    if (ceiling <= 0) {
+      return 0;
+    }
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+}
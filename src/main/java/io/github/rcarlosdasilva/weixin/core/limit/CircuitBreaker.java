@@ -0,0 +1,180 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.exception.CircuitOpenException;
+import io.github.rcarlosdasilva.weixin.core.setting.RetrySetting;
+
+/**
+ * 按公众号与接口熔断
+ * <p>
+ * 连续失败达到阈值后熔断（OPEN），熔断期间的调用直接抛出 {@link CircuitOpenException}；熔断时间过后进入试探（HALF_OPEN），
+ * 只放行一个请求，成功则恢复（CLOSED），失败则重新熔断。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class CircuitBreaker {
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private static final ConcurrentMap<String, Circuit> CIRCUITS = Maps.newConcurrentMap();
+
+  private CircuitBreaker() {
+    throw new IllegalStateException("CircuitBreaker class");
+  }
+
+  /**
+   * 请求前检查是否允许调用.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   * @throws CircuitOpenException
+   *           处于熔断中
+   */
+  public static void check(String account, String url) {
+    RetrySetting setting = Registry.setting().getRetrySetting();
+    if (!setting.isCircuitBreaker()) {
+      return;
+    }
+
+    Circuit circuit = CIRCUITS.get(key(account, url));
+    if (circuit != null && !circuit.allow()) {
+      throw new CircuitOpenException("Circuit open for " + account + " on " + Utils.urlPath(url));
+    }
+  }
+
+  /**
+   * 记录一次成功（微信有响应，包括业务错误）.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   */
+  public static void success(String account, String url) {
+    Circuit circuit = CIRCUITS.get(key(account, url));
+    if (circuit != null && circuit.success()) {
+      logger.info("For:{} >> 接口 [{}] 恢复调用", account, Utils.urlPath(url));
+    }
+  }
+
+  /**
+   * 记录一次失败（网络异常、系统繁忙等）.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   */
+  public static void failure(String account, String url) {
+    RetrySetting setting = Registry.setting().getRetrySetting();
+    if (!setting.isCircuitBreaker()) {
+      return;
+    }
+
+    String key = key(account, url);
+    Circuit circuit = CIRCUITS.get(key);
+    if (circuit == null) {
+      Circuit created = new Circuit();
+      circuit = CIRCUITS.putIfAbsent(key, created);
+      if (circuit == null) {
+        circuit = created;
+      }
+    }
+
+    if (circuit.failure(setting.getFailureThreshold(),
+        TimeUnit.MILLISECONDS.toNanos(setting.getOpenDuration()))) {
+      logger.warn("For:{} >> 接口 [{}] 连续失败，熔断{}毫秒", account, Utils.urlPath(url),
+          setting.getOpenDuration());
+    }
+  }
+
+  /**
+   * 接口是否处于熔断中.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   * @return boolean
+   */
+  public static boolean isOpen(String account, String url) {
+    Circuit circuit = CIRCUITS.get(key(account, url));
+    return circuit != null && circuit.isOpen();
+  }
+
+  private static String key(String account, String url) {
+    return Strings.nullToEmpty(account) + "|" + Utils.urlPath(url);
+  }
+
+  /**
+   * 单个接口的熔断状态
+   */
+  private static class Circuit {
+
+    private int failures;
+    private boolean open;
+    private boolean probing;
+    private long openNanos;
+    private long openUntil;
+
+    /**
+     * 熔断时间过后放行一个试探请求；试探请求迟迟没有结果时，每过一个熔断时间再放行一个.
+     */
+    synchronized boolean allow() {
+      if (!open) {
+        return true;
+      }
+      long now = System.nanoTime();
+      if (now - openUntil < 0) {
+        return false;
+      }
+      probing = true;
+      openUntil = now + openNanos;
+      return true;
+    }
+
+    /**
+     * @return 是否由熔断恢复
+     */
+    synchronized boolean success() {
+      boolean recovered = open;
+      failures = 0;
+      open = false;
+      probing = false;
+      return recovered;
+    }
+
+    /**
+     * @return 是否由此次失败触发熔断
+     */
+    synchronized boolean failure(int threshold, long openNanos) {
+      failures++;
+      if (probing || (!open && failures >= threshold)) {
+        open = true;
+        probing = false;
+        this.openNanos = openNanos;
+        openUntil = System.nanoTime() + openNanos;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized boolean isOpen() {
+      return open;
+    }
+
+  }
+
+}
@@ -0,0 +1,271 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.exception.QuotaExhaustedException;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+
+/**
+ * 接口调用额度限流
+ * <p>
+ * 按公众号与接口分别限流，接口的每日额度在 {@link Setting#setQuota(String, int)} 中配置，未配置额度的接口不限流。<br>
+ * 每个公众号的每个接口记录当天剩余的额度，微信每日清零调用次数时（北京时间0点）恢复；微信返回45009（接口调用超过限制）时，
+ * 剩余额度清零，直到恢复。<br>
+ * 配置了 {@link Setting#setQuotaBurst(int)} 时，剩余额度再按距离恢复的时间匀速发放，最多可连续调用burst次，
+ * 批量任务会被放慢，而不是在高峰期用完当天的额度。
+ * <p>
+ * 额度只在当前进程内统计，多个进程调用同一个公众号时，请按进程数分摊每日额度。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class QuotaLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(QuotaLimiter.class);
+
+  private static final TimeZone RESET_TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  private static final ConcurrentMap<String, DailyQuota> QUOTAS = Maps.newConcurrentMap();
+
+  private QuotaLimiter() {
+    throw new IllegalStateException("QuotaLimiter class");
+  }
+
+  /**
+   * 调用接口前获取额度.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   * @throws QuotaExhaustedException
+   *           额度不足（FAIL_FAST），或等待超时（BLOCKING）
+   */
+  public static void acquire(String account, String url) {
+    acquire(account, url, Registry.setting().getQuotaMode());
+  }
+
+  /**
+   * 调用接口前获取额度，不等待.
+   * <p>
+   * 用于异步请求，{@link QuotaMode#BLOCKING} 也按 {@link QuotaMode#FAIL_FAST} 处理，不阻塞调用线程
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   * @throws QuotaExhaustedException
+   *           额度不足
+   */
+  public static void tryAcquire(String account, String url) {
+    QuotaMode mode = Registry.setting().getQuotaMode();
+    acquire(account, url, mode == QuotaMode.BLOCKING ? QuotaMode.FAIL_FAST : mode);
+  }
+
+  private static void acquire(String account, String url, QuotaMode mode) {
+    if (mode == null || mode == QuotaMode.NONE) {
+      return;
+    }
+
+    DailyQuota quota = quota(account, Utils.urlPath(url));
+    if (quota == null || quota.tryAcquire()) {
+      return;
+    }
+
+    if (mode == QuotaMode.FAIL_FAST) {
+      throw new QuotaExhaustedException(message(account, url));
+    }
+
+    long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(Registry.setting().getQuotaMaxWaitInMill());
+    while (true) {
+      long wait = quota.nanosToNext();
+      if (wait > deadline - System.nanoTime()) {
+        throw new QuotaExhaustedException(message(account, url));
+      }
+
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new QuotaExhaustedException(message(account, url));
+      }
+
+      if (quota.tryAcquire()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * 当天剩余的额度.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   * @return 剩余次数，接口未限流时为-1
+   */
+  public static long remaining(String account, String url) {
+    QuotaMode mode = Registry.setting().getQuotaMode();
+    if (mode == null || mode == QuotaMode.NONE) {
+      return -1;
+    }
+
+    DailyQuota quota = quota(account, Utils.urlPath(url));
+    return quota == null ? -1 : quota.remaining();
+  }
+
+  /**
+   * 微信返回45009（接口调用超过限制）时，清空该接口当天的额度.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址
+   */
+  public static void exhausted(String account, String url) {
+    DailyQuota quota = QUOTAS.get(key(account, Utils.urlPath(url)));
+    if (quota != null) {
+      logger.warn("For:{} >> 接口 [{}] 调用超过限制，暂停调用直到额度恢复", account, Utils.urlPath(url));
+      quota.exhausted();
+    }
+  }
+
+  /**
+   * 接口调用次数清零后，恢复公众号所有接口的额度.
+   * 
+   * @param account
+   *          公众号key
+   */
+  public static void reset(String account) {
+    String prefix = key(account, "");
+    for (Map.Entry<String, DailyQuota> entry : QUOTAS.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        entry.getValue().reset();
+      }
+    }
+  }
+
+  private static DailyQuota quota(String account, String path) {
+    String key = key(account, path);
+    DailyQuota quota = QUOTAS.get(key);
+    if (quota != null) {
+      return quota;
+    }
+
+    Setting setting = Registry.setting();
+    Integer daily = setting.getQuotas().get(path);
+    if (daily == null || daily <= 0) {
+      return null;
+    }
+
+    quota = new DailyQuota(daily, setting.getQuotaBurst());
+    DailyQuota exists = QUOTAS.putIfAbsent(key, quota);
+    return exists == null ? quota : exists;
+  }
+
+  /**
+   * 下一次额度恢复的时间：北京时间的下一个0点.
+   */
+  static long nextReset(long now) {
+    Calendar calendar = Calendar.getInstance(RESET_TIME_ZONE);
+    calendar.setTimeInMillis(now);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    calendar.add(Calendar.DAY_OF_MONTH, 1);
+    return calendar.getTimeInMillis();
+  }
+
+  private static String key(String account, String path) {
+    return Strings.nullToEmpty(account) + "|" + path;
+  }
+
+  private static String message(String account, String url) {
+    return "Quota exhausted for " + account + " on " + Utils.urlPath(url);
+  }
+
+  /**
+   * 一个公众号的一个接口当天的额度
+   * 
+   * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+   */
+  private static final class DailyQuota {
+
+    private final long daily;
+    private final TokenBucket pacing;
+    private long remaining;
+    private long resetAt;
+
+    DailyQuota(long daily, int burst) {
+      this.daily = daily;
+      this.pacing = burst > 0 ? new TokenBucket(burst, 0) : null;
+      this.remaining = daily;
+      this.resetAt = nextReset(System.currentTimeMillis());
+    }
+
+    synchronized boolean tryAcquire() {
+      long now = System.currentTimeMillis();
+      rollover(now);
+      if (remaining <= 0) {
+        return false;
+      }
+      if (pacing != null) {
+        // 剩余额度在距离恢复的时间内匀速发放
+        pacing.setRate(remaining * 1000.0 / Math.max(1, resetAt - now));
+        if (!pacing.tryAcquire()) {
+          return false;
+        }
+      }
+      remaining--;
+      return true;
+    }
+
+    synchronized long nanosToNext() {
+      long now = System.currentTimeMillis();
+      rollover(now);
+      if (remaining <= 0) {
+        return TimeUnit.MILLISECONDS.toNanos(resetAt - now);
+      }
+      return pacing == null ? 0 : pacing.nanosToNextToken();
+    }
+
+    synchronized long remaining() {
+      rollover(System.currentTimeMillis());
+      return remaining;
+    }
+
+    synchronized void exhausted() {
+      remaining = 0;
+    }
+
+    synchronized void reset() {
+      remaining = daily;
+      if (pacing != null) {
+        pacing.fill();
+      }
+    }
+
+    private void rollover(long now) {
+      if (now >= resetAt) {
+        remaining = daily;
+        resetAt = nextReset(now);
+      }
+    }
+
+  }
+
+}
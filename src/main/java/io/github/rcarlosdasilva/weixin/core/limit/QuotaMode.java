@@ -0,0 +1,23 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+/**
+ * 接口调用额度的限流方式
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum QuotaMode {
+
+  /**
+   * 不限流.
+   */
+  NONE,
+  /**
+   * 额度不足时等待，超过最长等待时间后抛出异常；异步请求不等待，直接抛出异常.
+   */
+  BLOCKING,
+  /**
+   * 额度不足时直接抛出异常.
+   */
+  FAIL_FAST;
+
+}
@@ -0,0 +1,129 @@
+package io.github.rcarlosdasilva.weixin.core.limit;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * 令牌桶
+ * <p>
+ * 桶满时最多可连续取出capacity个令牌，之后按速率补充，速率可随时调整。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class TokenBucket {
+
+  private final double capacity;
+  private final Ticker ticker;
+  private double tokensPerNano;
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * 构造函数，初始为满桶.
+   * 
+   * @param capacity
+   *          容量
+   * @param tokensPerSecond
+   *          每秒补充的令牌数
+   */
+  public TokenBucket(long capacity, double tokensPerSecond) {
+    this(capacity, tokensPerSecond, Ticker.systemTicker());
+  }
+
+  /**
+   * 构造函数，初始为满桶.
+   * 
+   * @param capacity
+   *          容量
+   * @param tokensPerSecond
+   *          每秒补充的令牌数
+   * @param ticker
+   *          计时器
+   */
+  public TokenBucket(long capacity, double tokensPerSecond, Ticker ticker) {
+    this.capacity = capacity;
+    this.ticker = ticker;
+    this.tokensPerNano = perNano(tokensPerSecond);
+    this.tokens = capacity;
+    this.lastRefill = ticker.read();
+  }
+
+  /**
+   * 尝试取出一个令牌.
+   * 
+   * @return 是否取到
+   */
+  public synchronized boolean tryAcquire() {
+    refill();
+    if (tokens >= 1) {
+      tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * 距离下一个令牌可用的时间.
+   * 
+   * @return 纳秒，当前有可用令牌时为0
+   */
+  public synchronized long nanosToNextToken() {
+    refill();
+    if (tokens >= 1) {
+      return 0;
+    }
+    if (tokensPerNano <= 0) {
+      return Long.MAX_VALUE;
+    }
+    return (long) Math.ceil((1 - tokens) / tokensPerNano);
+  }
+
+  /**
+   * 当前可用的令牌数.
+   * 
+   * @return 数量
+   */
+  public synchronized long available() {
+    refill();
+    return (long) tokens;
+  }
+
+  /**
+   * 调整补充速率，之前的时间按原速率补充.
+   * 
+   * @param tokensPerSecond
+   *          每秒补充的令牌数
+   */
+  public synchronized void setRate(double tokensPerSecond) {
+    refill();
+    tokensPerNano = perNano(tokensPerSecond);
+  }
+
+  /**
+   * 清空令牌，之后按速率重新补充.
+   */
+  public synchronized void drain() {
+    refill();
+    tokens = 0;
+  }
+
+  /**
+   * 重新装满.
+   */
+  public synchronized void fill() {
+    tokens = capacity;
+    lastRefill = ticker.read();
+  }
+
+  private void refill() {
+    long now = ticker.read();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+
+  private static double perNano(double tokensPerSecond) {
+    return tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+  }
+
+}
@@ -0,0 +1,189 @@
+package io.github.rcarlosdasilva.weixin.core.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+
+/**
+ * 指标记录入口
+ * <p>
+ * 转发给 {@code Setting.getMetrics} 配置的 {@link Metrics}，并吞掉其抛出的异常，指标收集不能影响接口调用。
+ * <p>
+ * 另外维护当前线程正在执行的接口（{@link Scope}），HTTP层与响应解析在不知道公众号的情况下也能按公众号、接口记录
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public final class Meter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Meter.class);
+  private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<Scope>();
+
+  private Meter() {
+    throw new IllegalStateException("Meter class");
+  }
+
+  private static Metrics metrics() {
+    Metrics metrics = Registry.setting().getMetrics();
+    return metrics == null ? NoopMetrics.INSTANCE : metrics;
+  }
+
+  /**
+   * 是否需要收集指标，避免默认情况下的计时开销.
+   * 
+   * @return boolean
+   */
+  public static boolean isEnabled() {
+    return !(metrics() instanceof NoopMetrics);
+  }
+
+  /**
+   * 当前线程开始执行一个接口.
+   * 
+   * @param account
+   *          公众号key
+   * @param url
+   *          接口地址，可包含参数
+   * @return 之前的 {@link Scope}，结束时交给 {@link #exit(Scope)} 恢复
+   */
+  public static Scope enter(String account, String url) {
+    return enter(new Scope(account, Utils.urlPath(url)));
+  }
+
+  /**
+   * 当前线程开始执行一个接口（如异步回调中恢复发起请求时的接口）.
+   * 
+   * @param scope
+   *          {@link Scope}
+   * @return 之前的 {@link Scope}
+   */
+  public static Scope enter(Scope scope) {
+    Scope previous = CURRENT.get();
+    CURRENT.set(scope);
+    return previous;
+  }
+
+  /**
+   * 当前线程结束执行接口.
+   * 
+   * @param previous
+   *          {@link #enter(String, String)} 返回的值
+   */
+  public static void exit(Scope previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * 当前线程正在执行的接口.
+   * 
+   * @return {@link Scope}，没有时为null
+   */
+  public static Scope current() {
+    return CURRENT.get();
+  }
+
+  public static void request(Scope scope, String endpoint, long nanos, long bytesOut,
+      long bytesIn, boolean success) {
+    try {
+      if (scope == null) {
+        metrics().request(null, endpoint, nanos, bytesOut, bytesIn, success);
+      } else {
+        metrics().request(scope.account, scope.endpoint, nanos, bytesOut, bytesIn, success);
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void errorCode(ResultCode code) {
+    Scope scope = CURRENT.get();
+    try {
+      if (scope == null) {
+        metrics().errorCode(null, null, code);
+      } else {
+        metrics().errorCode(scope.account, scope.endpoint, code);
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void retry(String account, String url, ErrorKind kind) {
+    try {
+      metrics().retry(account, Utils.urlPath(url), kind);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void tokenRefresh(String account, long nanos, boolean success) {
+    try {
+      metrics().tokenRefresh(account, nanos, success);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void lockWait(String key, long nanos, boolean acquired) {
+    try {
+      metrics().lockWait(key, nanos, acquired);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void concurrencyLimit(String domain, int limit, int inFlight) {
+    try {
+      metrics().concurrencyLimit(domain, limit, inFlight);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void cacheAccess(String account, String url, boolean hit) {
+    try {
+      metrics().cacheAccess(account, Utils.urlPath(url), hit);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  public static void notificationStage(NotificationStage stage, long nanos) {
+    try {
+      metrics().notificationStage(stage, nanos);
+    } catch (RuntimeException ex) {
+      LOGGER.debug("weixin metrics", ex);
+    }
+  }
+
+  /**
+   * 正在执行的接口：公众号与不含参数的接口地址.
+   */
+  public static final class Scope {
+
+    private final String account;
+    private final String endpoint;
+
+    private Scope(String account, String endpoint) {
+      this.account = account;
+      this.endpoint = endpoint;
+    }
+
+    public String getAccount() {
+      return account;
+    }
+
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+  }
+
+}
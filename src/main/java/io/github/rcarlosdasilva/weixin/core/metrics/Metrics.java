@@ -0,0 +1,121 @@
+package io.github.rcarlosdasilva.weixin.core.metrics;
+
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
+
+/**
+ * 运行指标收集接口
+ * <p>
+ * 通过 {@code Setting.setMetrics} 设置，默认不收集（{@link NoopMetrics}）。实现类可以把数据转交给Micrometer、
+ * Prometheus等监控系统。所有方法都在请求线程（或OkHttp回调线程）中同步调用，实现需要线程安全并且尽量快，
+ * 抛出的异常会被忽略。
+ * <p>
+ * account为公众号注册时的key，开放平台自身的调用为null；endpoint为不含参数的接口地址，见
+ * {@link io.github.rcarlosdasilva.weixin.common.ApiAddress}
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public interface Metrics {
+
+  /**
+   * 一次HTTP请求完成（每次重试、每个对冲请求单独记录）.
+   * 
+   * @param account
+   *          公众号key
+   * @param endpoint
+   *          接口地址
+   * @param nanos
+   *          从发出请求到响应体读完或关闭的耗时（纳秒）
+   * @param bytesOut
+   *          请求体大小，未知时为-1
+   * @param bytesIn
+   *          实际读取的响应体字节数，请求失败时为-1
+   * @param success
+   *          是否收到2xx响应
+   */
+  void request(String account, String endpoint, long nanos, long bytesOut, long bytesIn,
+      boolean success);
+
+  /**
+   * 微信返回了错误码.
+   * 
+   * @param account
+   *          公众号key
+   * @param endpoint
+   *          接口地址
+   * @param code
+   *          {@link ResultCode}，未收录的错误码为 {@link ResultCode#RESULT_UNKNOW}
+   */
+  void errorCode(String account, String endpoint, ResultCode code);
+
+  /**
+   * 请求失败后重新执行.
+   * 
+   * @param account
+   *          公众号key
+   * @param endpoint
+   *          接口地址
+   * @param kind
+   *          失败类别，access_token失效为 {@link ErrorKind#TOKEN}
+   */
+  void retry(String account, String endpoint, ErrorKind kind);
+
+  /**
+   * 请求一次access_token.
+   * 
+   * @param account
+   *          公众号key
+   * @param nanos
+   *          耗时（纳秒）
+   * @param success
+   *          是否获取到
+   */
+  void tokenRefresh(String account, long nanos, boolean success);
+
+  /**
+   * 一次获取缓存锁（{@code CacheStorage.lock}）.
+   * 
+   * @param key
+   *          锁的键
+   * @param nanos
+   *          耗时（纳秒）
+   * @param acquired
+   *          是否获取到
+   */
+  void lockWait(String key, long nanos, boolean acquired);
+
+  /**
+   * 域名的自适应并发上限发生调整或拒绝了请求，见 {@code HttpSetting.setAdaptiveConcurrency}.
+   * 
+   * @param domain
+   *          域名
+   * @param limit
+   *          当前并发上限
+   * @param inFlight
+   *          正在进行的请求数
+   */
+  void concurrencyLimit(String domain, int limit, int inFlight);
+
+  /**
+   * 一次接口响应缓存查询.
+   * 
+   * @param account
+   *          公众号key
+   * @param endpoint
+   *          接口地址
+   * @param hit
+   *          是否命中
+   */
+  void cacheAccess(String account, String endpoint, boolean hit);
+
+  /**
+   * 微信推送处理的一个阶段完成.
+   * 
+   * @param stage
+   *          {@link NotificationStage}
+   * @param nanos
+   *          耗时（纳秒）
+   */
+  void notificationStage(NotificationStage stage, long nanos);
+
+}
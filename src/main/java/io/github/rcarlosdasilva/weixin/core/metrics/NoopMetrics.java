@@ -0,0 +1,56 @@
+package io.github.rcarlosdasilva.weixin.core.metrics;
+
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
+
+/**
+ * 不收集任何指标（默认）
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class NoopMetrics implements Metrics {
+
+  public static final NoopMetrics INSTANCE = new NoopMetrics();
+
+  @Override
+  public void request(String account, String endpoint, long nanos, long bytesOut, long bytesIn,
+      boolean success) {
+    // do nothing
+  }
+
+  @Override
+  public void errorCode(String account, String endpoint, ResultCode code) {
+    // do nothing
+  }
+
+  @Override
+  public void retry(String account, String endpoint, ErrorKind kind) {
+    // do nothing
+  }
+
+  @Override
+  public void tokenRefresh(String account, long nanos, boolean success) {
+    // do nothing
+  }
+
+  @Override
+  public void lockWait(String key, long nanos, boolean acquired) {
+    // do nothing
+  }
+
+  @Override
+  public void concurrencyLimit(String domain, int limit, int inFlight) {
+    // do nothing
+  }
+
+  @Override
+  public void cacheAccess(String account, String endpoint, boolean hit) {
+    // do nothing
+  }
+
+  @Override
+  public void notificationStage(NotificationStage stage, long nanos) {
+    // do nothing
+  }
+
+}
@@ -0,0 +1,27 @@
+package io.github.rcarlosdasilva.weixin.core.metrics;
+
+/**
+ * 微信推送处理阶段
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum NotificationStage {
+
+  /**
+   * 解析推送内容.
+   */
+  PARSE,
+  /**
+   * 解密.
+   */
+  DECRYPT,
+  /**
+   * 调用 {@code NotificationHandler} 处理.
+   */
+  HANDLE,
+  /**
+   * 生成并加密回复.
+   */
+  ENCRYPT
+
+}
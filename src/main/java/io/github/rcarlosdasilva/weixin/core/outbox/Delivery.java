@@ -0,0 +1,23 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+/**
+ * 消息交给发件箱后的状态.
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum Delivery {
+
+  /**
+   * 已发送
+   */
+  SENT,
+  /**
+   * 暂时无法发送（或同一接收人还有更早的消息未发送），已保存，之后自动重新发送
+   */
+  QUEUED,
+  /**
+   * 相同幂等键的消息已发送或正在等待发送，本次忽略
+   */
+  DUPLICATE
+
+}
@@ -0,0 +1,288 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonParseException;
+
+import io.github.rcarlosdasilva.weixin.core.exception.OutboxException;
+import io.github.rcarlosdasilva.weixin.core.json.Json;
+import io.github.rcarlosdasilva.weixin.core.setting.OutboxSetting;
+
+/**
+ * 本地日志文件发件箱存储
+ * <p>
+ * 只追加写入：每行一条JSON，写入消息为add，确认消息为ack。日志按大小分为多个文件，文件名为递增的序号；最早的文件中的消息全部确认后删除该文件，
+ * 只从最早的文件开始删除，保证被删除的ack所确认的消息也已被删除。
+ * <p>
+ * 写入消息后落盘，多个线程同时写入时只落盘一次；确认不等待落盘，崩溃后丢失的确认只会导致消息重新发送（至少一次）。
+ * 进程启动时读取所有文件恢复未确认的消息，最后一行不完整（写入时崩溃）时忽略，之后写入新的文件。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class FileOutboxStorage implements OutboxStorage {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileOutboxStorage.class);
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String SUFFIX = ".log";
+  private static final String OP_ADD = "add";
+  private static final String OP_ACK = "ack";
+
+  private final File directory;
+  private final long segmentSize;
+  private final boolean fsync;
+
+  private final Object writeLock = new Object();
+  private final Object syncLock = new Object();
+  private final TreeMap<Long, Integer> unacked = new TreeMap<Long, Integer>();
+  private final Map<String, Long> segmentOf = Maps.newHashMap();
+  private final List<OutboxRecord> recovered;
+  private long currentSeq;
+  private long currentSize;
+  private FileChannel current;
+  private long written;
+  private long synced;
+
+  public FileOutboxStorage(OutboxSetting setting) {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(setting.getDirectory()),
+        "Outbox directory is required");
+    this.directory = new File(setting.getDirectory());
+    this.segmentSize = setting.getSegmentSize();
+    this.fsync = setting.isFsync();
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new OutboxException("Can not create outbox directory " + directory);
+    }
+    synchronized (writeLock) {
+      this.recovered = recover();
+      roll(unacked.isEmpty() ? 1 : unacked.lastKey() + 1);
+    }
+  }
+
+  @Override
+  public List<OutboxRecord> load() {
+    return recovered;
+  }
+
+  @Override
+  public void append(OutboxRecord record) {
+    long ticket;
+    synchronized (writeLock) {
+      write(new Entry(OP_ADD, record.getId(), record));
+      segmentOf.put(record.getId(), currentSeq);
+      unacked.put(currentSeq, unacked.get(currentSeq) + 1);
+      ticket = written;
+      if (currentSize >= segmentSize) {
+        roll(currentSeq + 1);
+      }
+    }
+    sync(ticket);
+  }
+
+  @Override
+  public void ack(String id) {
+    synchronized (writeLock) {
+      Long seq = segmentOf.remove(id);
+      if (seq == null) {
+        return;
+      }
+      write(new Entry(OP_ACK, id, null));
+      unacked.put(seq, unacked.get(seq) - 1);
+      purge();
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (writeLock) {
+      try {
+        if (fsync) {
+          current.force(false);
+        }
+        current.close();
+      } catch (IOException ex) {
+        LOGGER.warn("weixin outbox close", ex);
+      }
+    }
+  }
+
+  private List<OutboxRecord> recover() {
+    File[] files = directory.listFiles(new FilenameFilter() {
+
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX)
+            && name.substring(0, name.length() - SUFFIX.length()).matches("\\d+");
+      }
+    });
+    long[] seqs = new long[files == null ? 0 : files.length];
+    for (int i = 0; i < seqs.length; i++) {
+      String name = files[i].getName();
+      seqs[i] = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+    Arrays.sort(seqs);
+
+    Map<String, OutboxRecord> pending = Maps.newLinkedHashMap();
+    for (long seq : seqs) {
+      unacked.put(seq, 0);
+      read(seq, pending);
+    }
+    purge();
+    LOGGER.info("weixin outbox recovered {} pending messages from {}", pending.size(), directory);
+    return Lists.newArrayList(pending.values());
+  }
+
+  private void read(long seq, Map<String, OutboxRecord> pending) {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file(seq)), UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Entry entry;
+        try {
+          entry = Json.fromJson(line, Entry.class);
+        } catch (JsonParseException ex) {
+          LOGGER.warn("weixin outbox ignore broken tail of {}", file(seq));
+          break;
+        }
+        if (entry == null || entry.id == null) {
+          continue;
+        }
+        if (OP_ADD.equals(entry.op) && entry.record != null) {
+          pending.put(entry.id, entry.record);
+          segmentOf.put(entry.id, seq);
+          unacked.put(seq, unacked.get(seq) + 1);
+        } else if (OP_ACK.equals(entry.op)) {
+          pending.remove(entry.id);
+          Long added = segmentOf.remove(entry.id);
+          if (added != null) {
+            unacked.put(added, unacked.get(added) - 1);
+          }
+        }
+      }
+    } catch (IOException ex) {
+      throw new OutboxException("Can not read outbox segment " + file(seq), ex);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          LOGGER.debug("weixin outbox", ex);
+        }
+      }
+    }
+  }
+
+  private void write(Entry entry) {
+    ByteBuffer buffer = ByteBuffer.wrap((Json.toJson(entry, Entry.class) + "\n").getBytes(UTF_8));
+    try {
+      while (buffer.hasRemaining()) {
+        currentSize += current.write(buffer);
+      }
+    } catch (IOException ex) {
+      throw new OutboxException("Can not write outbox segment " + file(currentSeq), ex);
+    }
+    written++;
+  }
+
+  /**
+   * 落盘到第ticket次写入为止，已被其它线程落盘时直接返回.
+   */
+  private void sync(long ticket) {
+    if (!fsync) {
+      return;
+    }
+
+    synchronized (syncLock) {
+      if (synced >= ticket) {
+        return;
+      }
+      long upTo;
+      FileChannel channel;
+      synchronized (writeLock) {
+        upTo = written;
+        channel = current;
+      }
+      try {
+        channel.force(false);
+      } catch (ClosedChannelException ex) {
+        // 已切换到新文件，旧文件在关闭前已落盘
+      } catch (IOException ex) {
+        throw new OutboxException("Can not sync outbox segment", ex);
+      }
+      synced = upTo;
+    }
+  }
+
+  private void roll(long seq) {
+    try {
+      if (current != null) {
+        if (fsync) {
+          current.force(false);
+        }
+        current.close();
+      }
+      current = new FileOutputStream(file(seq), true).getChannel();
+    } catch (IOException ex) {
+      throw new OutboxException("Can not open outbox segment " + file(seq), ex);
+    }
+    currentSeq = seq;
+    currentSize = 0;
+    unacked.put(seq, 0);
+    purge();
+  }
+
+  private void purge() {
+    while (!unacked.isEmpty() && unacked.firstKey() != currentSeq
+        && unacked.firstEntry().getValue() <= 0) {
+      long seq = unacked.pollFirstEntry().getKey();
+      if (!file(seq).delete()) {
+        LOGGER.warn("weixin outbox can not delete {}", file(seq));
+      }
+    }
+  }
+
+  private File file(long seq) {
+    return new File(directory, String.format("%012d%s", seq, SUFFIX));
+  }
+
+  private static final class Entry {
+
+    private String op;
+    private String id;
+    private OutboxRecord record;
+
+    @SuppressWarnings("unused")
+    private Entry() {
+    }
+
+    private Entry(String op, String id, OutboxRecord record) {
+      this.op = op;
+      this.id = id;
+      this.record = record;
+    }
+
+  }
+
+}
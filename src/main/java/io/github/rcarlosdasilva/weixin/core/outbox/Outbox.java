@@ -0,0 +1,577 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import io.github.rcarlosdasilva.weixin.api.BasicApi;
+import io.github.rcarlosdasilva.weixin.api.weixin.impl.MessageApiImpl;
+import io.github.rcarlosdasilva.weixin.common.Utils;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.exception.OutboxException;
+import io.github.rcarlosdasilva.weixin.core.parser.ResponseParser;
+import io.github.rcarlosdasilva.weixin.core.setting.OutboxSetting;
+import io.github.rcarlosdasilva.weixin.model.request.base.Request;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.MessageContainer;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.Template;
+
+/**
+ * 消息发件箱
+ * <p>
+ * 模板消息与客服消息先写入 {@link OutboxStorage} 再发送，发送成功后确认。微信不可用、配额用尽等暂时无法发送时，消息留在发件箱中，
+ * 由后台线程按 {@link OutboxSetting#getReplayRate()} 的速度重新发送，进程重启后继续。
+ * <ul>
+ * <li>同一接收人的消息按写入顺序发送：接收人还有未发送的消息时，新消息直接进入发件箱排在后面</li>
+ * <li>至少发送一次：发送成功但确认之前崩溃、或读取响应超时，消息会再次发送</li>
+ * <li>幂等键：相同幂等键的消息在发件箱中等待或最近已发送时，不再接收</li>
+ * </ul>
+ * 
+ * <pre>
+ * Delivery delivery = Outbox.with(key).idempotencyKey("order-10086-paid").sendWithTemplate(openId,
+ *     templateId, url, data);
+ * </pre>
+ * 
+ * 使用前需配置 {@link io.github.rcarlosdasilva.weixin.core.setting.Setting#setOutboxSetting(OutboxSetting)}，
+ * 或调用 {@link #start(OutboxSetting, OutboxStorage)} 使用其它存储。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class Outbox {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Outbox.class);
+
+  private static final int DELIVERED_HISTORY = 10000;
+
+  private static final Object LOCK = new Object();
+  private static final Map<String, OutboxRecord> PENDING = Maps.newLinkedHashMap();
+  private static final Map<String, Integer> RECIPIENTS = Maps.newHashMap();
+  private static final Set<String> SENDING = Sets.newHashSet();
+  private static final Map<String, Integer> ATTEMPTS = Maps.newHashMap();
+  private static final Map<String, Long> RETRY_AT = Maps.newHashMap();
+  private static final Set<String> DELIVERED = Collections
+      .newSetFromMap(new LinkedHashMap<String, Boolean>() {
+
+        private static final long serialVersionUID = 8861466478398720574L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > DELIVERED_HISTORY;
+        }
+      });
+
+  private static OutboxSetting setting;
+  private static OutboxStorage storage;
+  private static Relay relay;
+
+  private final String key;
+  private String idempotencyKey;
+
+  private Outbox(String key) {
+    this.key = key;
+  }
+
+  /**
+   * 使用本地日志文件 {@link FileOutboxStorage} 启动发件箱，已启动时先关闭.
+   * 
+   * @param setting
+   *          {@link OutboxSetting}
+   */
+  public static void start(OutboxSetting setting) {
+    // 先关闭，避免新的存储读取正在写入的日志文件
+    shutdown();
+    start(setting, new FileOutboxStorage(setting));
+  }
+
+  /**
+   * 使用指定的存储启动发件箱，已启动时先关闭.
+   * 
+   * @param setting
+   *          {@link OutboxSetting}
+   * @param storage
+   *          {@link OutboxStorage}
+   */
+  public static void start(OutboxSetting setting, OutboxStorage storage) {
+    Preconditions.checkNotNull(setting);
+    Preconditions.checkNotNull(storage);
+
+    shutdown();
+    synchronized (LOCK) {
+      Outbox.setting = setting;
+      Outbox.storage = storage;
+      for (OutboxRecord record : storage.load()) {
+        PENDING.put(record.getId(), record);
+        increase(record.recipientKey());
+      }
+      relay = new Relay();
+      Threads.startDaemon("weixin-outbox-relay", relay);
+    }
+  }
+
+  /**
+   * 关闭发件箱，未发送的消息留在存储中，下次启动后继续发送.
+   */
+  public static void shutdown() {
+    synchronized (LOCK) {
+      if (storage == null) {
+        return;
+      }
+      relay.running = false;
+      LOCK.notifyAll();
+      storage.close();
+      storage = null;
+      PENDING.clear();
+      RECIPIENTS.clear();
+      SENDING.clear();
+      ATTEMPTS.clear();
+      RETRY_AT.clear();
+    }
+  }
+
+  /**
+   * 发件箱中等待发送的消息数.
+   * 
+   * @return int
+   */
+  public static int pending() {
+    synchronized (LOCK) {
+      return PENDING.size();
+    }
+  }
+
+  /**
+   * 指定通过哪一个公众号发送.
+   * 
+   * @param key
+   *          公众号配置注册键
+   * @return {@link Outbox}
+   */
+  public static Outbox with(String key) {
+    return new Outbox(key);
+  }
+
+  /**
+   * 本次发送的幂等键，默认随机生成.
+   * 
+   * @param idempotencyKey
+   *          业务上唯一标识这条消息的键
+   * @return {@link Outbox}
+   */
+  public Outbox idempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+    return this;
+  }
+
+  /**
+   * 发送模板消息，参数见 {@code MessageApi#sendWithTemplate}.
+   * 
+   * @param to
+   *          接收人OpenId
+   * @param templateId
+   *          模板id
+   * @param url
+   *          跳转地址
+   * @param data
+   *          模板内容
+   * @return {@link Delivery}
+   */
+  public Delivery sendWithTemplate(String to, String templateId, String url,
+      Map<String, Template> data) {
+    return submit(to, MessageApiImpl.templateRequest(to, templateId, url, data, null, null));
+  }
+
+  /**
+   * 发送客服消息，参数见 {@code MessageApi#sendWithCustom}.
+   * 
+   * @param to
+   *          接收人OpenId
+   * @param messageContainer
+   *          消息
+   * @return {@link Delivery}
+   */
+  public Delivery sendWithCustom(String to, MessageContainer messageContainer) {
+    return submit(to, MessageApiImpl.customRequest(to, messageContainer));
+  }
+
+  /**
+   * 将通过 {@code MessageApi} 发送失败的消息写入发件箱，稍后由后台线程重新发送.
+   * <p>
+   * 仅在发件箱已启动且开启了 {@link OutboxSetting#isDeferFailedSends()} 时写入；永久失败（如接收人无效、模板不存在）不写入
+   * 
+   * @param key
+   *          公众号配置注册键
+   * @param to
+   *          接收人OpenId
+   * @param requestModel
+   *          模板消息或客服消息请求
+   * @param failure
+   *          发送失败的异常
+   * @return 是否已写入发件箱
+   */
+  public static boolean defer(String key, String to, Request requestModel,
+      RuntimeException failure) {
+    Preconditions.checkNotNull(failure);
+    if (isPermanent(failure)) {
+      return false;
+    }
+    return enqueue(key, to, requestModel, failure);
+  }
+
+  /**
+   * 接收人在发件箱中还有未发送的消息时，将通过 {@code MessageApi} 发送的消息写入发件箱排在后面，保持同一接收人的发送顺序.
+   * <p>
+   * 与 {@link #defer(String, String, Request, RuntimeException)} 一样，仅在开启了
+   * {@link OutboxSetting#isDeferFailedSends()} 时写入
+   * 
+   * @param key
+   *          公众号配置注册键
+   * @param to
+   *          接收人OpenId
+   * @param requestModel
+   *          模板消息或客服消息请求
+   * @return 是否已写入发件箱，未写入时由调用方直接发送
+   */
+  public static boolean queueBehind(String key, String to, Request requestModel) {
+    return enqueue(key, to, requestModel, null);
+  }
+
+  /**
+   * 写入发件箱，不直接发送.
+   * 
+   * @param failure
+   *          发送失败的异常，为null时表示还未发送，只在接收人有未发送的消息时写入
+   */
+  private static boolean enqueue(String key, String to, Request requestModel,
+      RuntimeException failure) {
+    OutboxRecord record = new OutboxRecord(UUID.randomUUID().toString(), key, to,
+        Utils.urlPath(requestModel.toUrl()), requestModel.toJson());
+    String id = record.getId();
+    OutboxStorage current;
+    synchronized (LOCK) {
+      if (storage == null || !setting.isDeferFailedSends()
+          || (failure == null && !RECIPIENTS.containsKey(record.recipientKey()))) {
+        return false;
+      }
+      current = storage;
+      increase(record.recipientKey());
+      PENDING.put(id, record);
+      if (failure != null) {
+        // 已经发送过一次，按第一次失败退避
+        ATTEMPTS.put(id, 1);
+        RETRY_AT.put(id, System.nanoTime() + backoff(1));
+      }
+      SENDING.add(id);
+    }
+
+    try {
+      current.append(record);
+    } catch (RuntimeException ex) {
+      LOGGER.error("For:{} >> 消息写入发件箱失败", key, ex);
+      synchronized (LOCK) {
+        PENDING.remove(id);
+        ATTEMPTS.remove(id);
+        RETRY_AT.remove(id);
+        decrease(record.recipientKey());
+      }
+      return false;
+    } finally {
+      synchronized (LOCK) {
+        SENDING.remove(id);
+      }
+    }
+    if (failure == null) {
+      LOGGER.info("For:{} >> 接收人还有未发送的消息，已写入发件箱[{}]", key, id);
+    } else {
+      LOGGER.warn("For:{} >> 消息发送失败，已写入发件箱[{}]", key, id, failure);
+    }
+    return true;
+  }
+
+  private Delivery submit(String to, Request requestModel) {
+    String id = Strings.isNullOrEmpty(idempotencyKey) ? UUID.randomUUID().toString()
+        : idempotencyKey;
+    OutboxRecord record = new OutboxRecord(id, key, to, Utils.urlPath(requestModel.toUrl()),
+        requestModel.toJson());
+
+    boolean direct;
+    OutboxStorage current;
+    synchronized (LOCK) {
+      if (storage == null) {
+        throw new OutboxException("Outbox is not started");
+      }
+      if (PENDING.containsKey(id) || DELIVERED.contains(id)) {
+        return Delivery.DUPLICATE;
+      }
+      current = storage;
+      direct = increase(record.recipientKey()) == 1;
+      PENDING.put(id, record);
+      // 持久化完成之前，不让后台线程发送
+      SENDING.add(id);
+    }
+
+    try {
+      current.append(record);
+    } catch (RuntimeException ex) {
+      synchronized (LOCK) {
+        SENDING.remove(id);
+        PENDING.remove(id);
+        decrease(record.recipientKey());
+      }
+      throw ex;
+    }
+
+    if (!direct) {
+      synchronized (LOCK) {
+        SENDING.remove(id);
+      }
+      return Delivery.QUEUED;
+    }
+
+    try {
+      Outcome outcome = attempt(record);
+      finish(record, outcome);
+      return outcome == Outcome.SENT ? Delivery.SENT : Delivery.QUEUED;
+    } catch (RuntimeException ex) {
+      finish(record, Outcome.DEAD);
+      throw ex;
+    }
+  }
+
+  private enum Outcome {
+    SENT, RETRY, SKIP, DEAD
+  }
+
+  /**
+   * 发送一条消息，永久失败时抛出原异常.
+   */
+  private static Outcome attempt(OutboxRecord record) {
+    if (!Registry.exists(record.getAccount())) {
+      return Outcome.SKIP;
+    }
+
+    try {
+      return new Sender(record.getAccount()).send(record) ? Outcome.SENT : Outcome.RETRY;
+    } catch (RuntimeException ex) {
+      if (isPermanent(ex)) {
+        throw ex;
+      }
+      // 网络异常、系统繁忙、熔断、配额用尽、并发已满等
+      LOGGER.warn("For:{} >> 发件箱消息[{}]暂时无法发送", record.getAccount(), record.getId(), ex);
+      return Outcome.RETRY;
+    }
+  }
+
+  /**
+   * 重新发送也不会成功的失败：{@link ResponseParser#classify(Throwable)} 为永久失败的错误，如接收人无效、模板不存在.
+   * 网络异常不算，请求可能未被微信处理，按至少发送一次重新发送
+   */
+  private static boolean isPermanent(RuntimeException ex) {
+    return ResponseParser.classify(ex) == ErrorKind.PERMANENT
+        && !(ex.getCause() instanceof IOException);
+  }
+
+  private static void finish(OutboxRecord record, Outcome outcome) {
+    String id = record.getId();
+    OutboxStorage current;
+    synchronized (LOCK) {
+      SENDING.remove(id);
+      if (PENDING.get(id) != record) {
+        // 发件箱已关闭或重新启动
+        return;
+      }
+      if (outcome == Outcome.RETRY) {
+        Integer attempts = ATTEMPTS.get(id);
+        attempts = attempts == null ? 1 : attempts + 1;
+        if (setting.getMaxAttempts() <= 0 || attempts < setting.getMaxAttempts()) {
+          ATTEMPTS.put(id, attempts);
+          RETRY_AT.put(id, System.nanoTime() + backoff(attempts));
+          return;
+        }
+        LOGGER.error("For:{} >> 发件箱消息[{}]已发送{}次，放弃", record.getAccount(), id, attempts);
+        outcome = Outcome.DEAD;
+      }
+      if (outcome != Outcome.SENT && outcome != Outcome.DEAD) {
+        return;
+      }
+      PENDING.remove(id);
+      ATTEMPTS.remove(id);
+      RETRY_AT.remove(id);
+      decrease(record.recipientKey());
+      DELIVERED.add(id);
+      current = storage;
+    }
+    current.ack(id);
+  }
+
+  /**
+   * 第attempts次发送失败后，到下一次发送的间隔：从 {@link OutboxSetting#getReplayInterval()} 开始翻倍，不超过
+   * {@link OutboxSetting#getMaxReplayInterval()}.
+   */
+  private static long backoff(int attempts) {
+    long interval = setting.getReplayInterval();
+    long max = Math.max(interval, setting.getMaxReplayInterval());
+    long delay = interval << Math.min(attempts - 1, 20);
+    return TimeUnit.MILLISECONDS.toNanos(delay <= 0 || delay > max ? max : delay);
+  }
+
+  private static int increase(String recipientKey) {
+    Integer count = RECIPIENTS.get(recipientKey);
+    count = count == null ? 1 : count + 1;
+    RECIPIENTS.put(recipientKey, count);
+    return count;
+  }
+
+  private static void decrease(String recipientKey) {
+    Integer count = RECIPIENTS.get(recipientKey);
+    if (count == null || count <= 1) {
+      RECIPIENTS.remove(recipientKey);
+    } else {
+      RECIPIENTS.put(recipientKey, count - 1);
+    }
+  }
+
+  /**
+   * 发送发件箱中消息的接口调用.
+   */
+  private static final class Sender extends BasicApi {
+
+    Sender(String accountKey) {
+      super(accountKey);
+    }
+
+    /**
+     * 发送，失败时总是抛出异常，以便按错误代码判断是否重新发送.
+     */
+    boolean send(OutboxRecord record) {
+      return Boolean.TRUE.equals(postOrThrow(Boolean.class, new OutboxRequest(record)));
+    }
+
+  }
+
+  /**
+   * 后台重新发送.
+   * <p>
+   * 每一轮按写入顺序遍历等待的消息，跳过正在发送的消息的接收人；一条消息暂时无法发送或还未到下次发送的时间（见
+   * {@link #backoff(int)}）时，其接收人的后续消息本轮不再发送，其他接收人的消息继续发送。本轮没有发出任何消息时，等待
+   * {@link OutboxSetting#getReplayInterval()} 后再开始下一轮。
+   */
+  private static final class Relay implements Runnable {
+
+    private volatile boolean running = true;
+    private long nextSend = System.nanoTime();
+
+    @Override
+    public void run() {
+      while (running) {
+        boolean idle;
+        try {
+          idle = replay();
+        } catch (RuntimeException ex) {
+          LOGGER.error("weixin outbox relay", ex);
+          idle = true;
+        }
+        if (idle) {
+          synchronized (LOCK) {
+            if (running) {
+              try {
+                LOCK.wait(setting.getReplayInterval());
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * 执行一轮.
+     * 
+     * @return 是否需要等待下一轮：本轮没有发出任何消息
+     */
+    private boolean replay() {
+      List<OutboxRecord> records;
+      Set<String> blocked = Sets.newHashSet();
+      synchronized (LOCK) {
+        if (PENDING.isEmpty()) {
+          return true;
+        }
+        records = Lists.newArrayList(PENDING.values());
+        for (String id : SENDING) {
+          OutboxRecord sending = PENDING.get(id);
+          if (sending != null) {
+            blocked.add(sending.recipientKey());
+          }
+        }
+      }
+
+      boolean progress = false;
+      for (OutboxRecord record : records) {
+        if (!running) {
+          return true;
+        }
+        String recipientKey = record.recipientKey();
+        if (blocked.contains(recipientKey)) {
+          continue;
+        }
+        synchronized (LOCK) {
+          Long retryAt = RETRY_AT.get(record.getId());
+          if (PENDING.get(record.getId()) != record
+              || (retryAt != null && retryAt - System.nanoTime() > 0)
+              || !SENDING.add(record.getId())) {
+            blocked.add(recipientKey);
+            continue;
+          }
+        }
+
+        pace();
+        Outcome outcome;
+        try {
+          outcome = attempt(record);
+        } catch (RuntimeException ex) {
+          LOGGER.error("For:{} >> 发件箱消息[{}]发送失败，放弃", record.getAccount(), record.getId(), ex);
+          outcome = Outcome.DEAD;
+        }
+        finish(record, outcome);
+
+        if (outcome == Outcome.SKIP || outcome == Outcome.RETRY) {
+          blocked.add(recipientKey);
+        } else {
+          progress = true;
+        }
+      }
+      return !progress;
+    }
+
+    private void pace() {
+      long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, setting.getReplayRate());
+      long wait = nextSend - System.nanoTime();
+      if (wait > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      nextSend = Math.max(nextSend, System.nanoTime()) + interval;
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+/**
+ * 发件箱中的一条消息
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class OutboxRecord {
+
+  private String id;
+  private String account;
+  private String recipient;
+  private String path;
+  private String body;
+  private long createdAt;
+
+  OutboxRecord() {
+  }
+
+  OutboxRecord(String id, String account, String recipient, String path, String body) {
+    this.id = id;
+    this.account = account;
+    this.recipient = recipient;
+    this.path = path;
+    this.body = body;
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  /**
+   * 幂等键，同一个键的消息只发送一次.
+   * 
+   * @return String
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * 公众号key.
+   * 
+   * @return String
+   */
+  public String getAccount() {
+    return account;
+  }
+
+  /**
+   * 接收人OpenId，同一接收人的消息按写入顺序发送.
+   * 
+   * @return String
+   */
+  public String getRecipient() {
+    return recipient;
+  }
+
+  /**
+   * 接口地址，不含access_token.
+   * 
+   * @return String
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * 请求内容.
+   * 
+   * @return JSON
+   */
+  public String getBody() {
+    return body;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  String recipientKey() {
+    return account + ":" + recipient;
+  }
+
+}
@@ -0,0 +1,24 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+import io.github.rcarlosdasilva.weixin.model.request.base.BasicWeixinRequest;
+
+/**
+ * 重新发送发件箱中的消息，请求内容为写入时已序列化的JSON
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class OutboxRequest extends BasicWeixinRequest {
+
+  private final String body;
+
+  OutboxRequest(OutboxRecord record) {
+    this.path = record.getPath();
+    this.body = record.getBody();
+  }
+
+  @Override
+  public String toJson() {
+    return body;
+  }
+
+}
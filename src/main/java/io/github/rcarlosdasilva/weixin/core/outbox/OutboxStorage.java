@@ -0,0 +1,42 @@
+package io.github.rcarlosdasilva.weixin.core.outbox;
+
+import java.util.List;
+
+/**
+ * 发件箱存储
+ * <p>
+ * 默认实现为本地日志文件 {@link FileOutboxStorage}。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public interface OutboxStorage {
+
+  /**
+   * 读取所有未确认的消息.
+   * 
+   * @return 按写入顺序
+   */
+  List<OutboxRecord> load();
+
+  /**
+   * 写入一条消息，返回时消息已持久化.
+   * 
+   * @param record
+   *          {@link OutboxRecord}
+   */
+  void append(OutboxRecord record);
+
+  /**
+   * 确认消息已发送（或已放弃），之后不再读取.
+   * 
+   * @param id
+   *          消息幂等键
+   */
+  void ack(String id);
+
+  /**
+   * 关闭存储.
+   */
+  void close();
+
+}
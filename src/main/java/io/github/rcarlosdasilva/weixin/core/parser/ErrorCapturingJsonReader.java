@@ -0,0 +1,151 @@
+package io.github.rcarlosdasilva.weixin.core.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * 在解析过程中顺带记录顶层errcode与errmsg的JsonReader
+ * <p>
+ * 无论目标类型是否声明了这两个字段（未声明时Gson会调用skipValue跳过），都能在同一次解析中拿到错误信息，
+ * 不需要先把响应读成字符串再匹配。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+class ErrorCapturingJsonReader extends JsonReader {
+
+  private static final String ERROR_CODE_KEY = "errcode";
+  private static final String ERROR_MESSAGE_KEY = "errmsg";
+
+  private int depth = 0;
+  private String pendingName = null;
+  private Integer errorCode = null;
+  private String errorMessage = null;
+
+  ErrorCapturingJsonReader(Reader in) {
+    super(in);
+  }
+
+  /**
+   * 响应中是否包含errcode.
+   * 
+   * @return boolean
+   */
+  boolean hasErrorCode() {
+    return errorCode != null;
+  }
+
+  Integer getErrorCode() {
+    return errorCode;
+  }
+
+  String getErrorMessage() {
+    return errorMessage;
+  }
+
+  @Override
+  public void beginObject() throws IOException {
+    pendingName = null;
+    super.beginObject();
+    depth++;
+  }
+
+  @Override
+  public void endObject() throws IOException {
+    super.endObject();
+    depth--;
+  }
+
+  @Override
+  public void beginArray() throws IOException {
+    pendingName = null;
+    super.beginArray();
+    depth++;
+  }
+
+  @Override
+  public void endArray() throws IOException {
+    super.endArray();
+    depth--;
+  }
+
+  @Override
+  public String nextName() throws IOException {
+    String name = super.nextName();
+    pendingName = depth == 1 ? name : null;
+    return name;
+  }
+
+  @Override
+  public String nextString() throws IOException {
+    return capture(super.nextString());
+  }
+
+  @Override
+  public int nextInt() throws IOException {
+    int value = super.nextInt();
+    capture(String.valueOf(value));
+    return value;
+  }
+
+  @Override
+  public long nextLong() throws IOException {
+    long value = super.nextLong();
+    capture(String.valueOf(value));
+    return value;
+  }
+
+  @Override
+  public double nextDouble() throws IOException {
+    double value = super.nextDouble();
+    capture(String.valueOf(value));
+    return value;
+  }
+
+  @Override
+  public boolean nextBoolean() throws IOException {
+    pendingName = null;
+    return super.nextBoolean();
+  }
+
+  @Override
+  public void nextNull() throws IOException {
+    pendingName = null;
+    super.nextNull();
+  }
+
+  @Override
+  public void skipValue() throws IOException {
+    if (isErrorKey(pendingName)) {
+      JsonToken token = peek();
+      if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+        // 目标类型没有对应字段，自己读出来
+        nextString();
+        return;
+      }
+    }
+    pendingName = null;
+    super.skipValue();
+  }
+
+  private static boolean isErrorKey(String name) {
+    return ERROR_CODE_KEY.equals(name) || ERROR_MESSAGE_KEY.equals(name);
+  }
+
+  private String capture(String value) {
+    if (ERROR_CODE_KEY.equals(pendingName)) {
+      try {
+        errorCode = (int) Double.parseDouble(value);
+      } catch (NumberFormatException ex) {
+        errorCode = null;
+      }
+    } else if (ERROR_MESSAGE_KEY.equals(pendingName)) {
+      errorMessage = value;
+    }
+    pendingName = null;
+    return value;
+  }
+
+}
@@ -1,13 +1,28 @@
 package io.github.rcarlosdasilva.weixin.core.parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
+
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
 import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
 import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.exception.ConcurrencyLimitException;
 import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
+import io.github.rcarlosdasilva.weixin.core.exception.HttpException;
 import io.github.rcarlosdasilva.weixin.core.exception.MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException;
+import io.github.rcarlosdasilva.weixin.core.exception.QuotaExhaustedException;
+import io.github.rcarlosdasilva.weixin.core.exception.ResponseReadException;
 import io.github.rcarlosdasilva.weixin.core.json.Json;
+import io.github.rcarlosdasilva.weixin.core.metrics.Meter;
 import io.github.rcarlosdasilva.weixin.model.response.SimplestResponse;
 
 /**
@@ -19,10 +34,49 @@ public class ResponseParser {
 
   private static final Logger logger = LoggerFactory.getLogger(ResponseParser.class);
 
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final int HTTP_UNAVAILABLE = 503;
+
+  private static final ThreadLocal<Boolean> THROWING = new ThreadLocal<Boolean>();
+
   private ResponseParser() {
     throw new IllegalStateException("ResponseParser class");
   }
 
+  /**
+   * 当前线程之后的请求失败时总是抛出异常，不论是否配置了不抛出异常，用于需要根据错误代码决定如何处理的调用方.
+   * 
+   * @return 之前的状态，用于 {@link #exitThrowing(boolean)}
+   */
+  public static boolean enterThrowing() {
+    boolean previous = Boolean.TRUE.equals(THROWING.get());
+    THROWING.set(Boolean.TRUE);
+    return previous;
+  }
+
+  /**
+   * 恢复之前的状态.
+   * 
+   * @param previous
+   *          {@link #enterThrowing()} 的返回值
+   */
+  public static void exitThrowing(boolean previous) {
+    if (previous) {
+      THROWING.set(Boolean.TRUE);
+    } else {
+      THROWING.remove();
+    }
+  }
+
+  /**
+   * 请求失败时是否抛出异常：配置了抛出异常，或当前线程在 {@link #enterThrowing()} 中.
+   * 
+   * @return boolean
+   */
+  public static boolean isThrowing() {
+    return Registry.setting().isThrowException() || Boolean.TRUE.equals(THROWING.get());
+  }
+
   /**
    * 解析并封装响应结果为一个指定类型.
    * 
@@ -38,32 +92,8 @@ public class ResponseParser {
   public static <T> T parse(Class<T> target, String json) {
     if (SimplestResponse.seemsLikeError(json)) {
       SimplestResponse errorResponse = Json.fromJson(json, SimplestResponse.class);
-      Boolean success = errorResponse.getErrorCode() == ResultCode.RESULT_0.getCode();
-
-      if (!success) {
-        ResultCode resultCode = ResultCode.byCode(errorResponse.getErrorCode());
-        if (resultCode == null) {
-          resultCode = ResultCode.RESULT_UNKNOW;
-          logger.debug("未收录的微信错误代码: code [{}]", errorResponse.getErrorCode());
-        }
-
-        if (errorResponse.isBadAccessToken()) {
-          logger.debug("微信说我access_token不大行，那我觉着是不是还可以再抢救一下，再试一遍来");
-          throw new MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException();
-        }
-
-        logger.error("微信请求错误：code [{}] -- message [{}]", errorResponse.getErrorCode(),
-            errorResponse.getErrorMessage());
-
-        if (Registry.setting().isThrowException()) {
-          throw new ExecuteException(errorResponse, resultCode);
-        }
-
-        if (target == Boolean.class) {
-          return (T) Boolean.FALSE;
-        } else {
-          return null;
-        }
+      if (errorResponse.getErrorCode() != ResultCode.RESULT_0.getCode()) {
+        return failed(target, errorResponse);
       }
     }
 
@@ -74,4 +104,125 @@ public class ResponseParser {
     }
   }
 
+  /**
+   * 以流的方式解析并封装响应结果为一个指定类型.
+   * <p>
+   * 直接从响应体中读取，只解析一遍：在构建目标对象的同时记录errcode，不再先读成字符串、匹配、再解析。
+   * 解析完成后会关闭reader；读取响应体时的网络异常抛出 {@link ResponseReadException}
+   * 
+   * @param <T>
+   *          The Type of element
+   * @param target
+   *          指定封装类型
+   * @param reader
+   *          json响应体，为null时表示请求未成功
+   * @return 封装对象
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T parse(Class<T> target, Reader reader) {
+    if (reader == null) {
+      return target == Boolean.class ? (T) Boolean.FALSE : null;
+    }
+
+    ErrorCapturingJsonReader jsonReader = new ErrorCapturingJsonReader(reader);
+    Object result = null;
+    try {
+      // Boolean类型只关心是否有错误，按最简响应解析即可
+      Class<?> clazz = target == Boolean.class ? SimplestResponse.class : target;
+      result = Json.fromJson(jsonReader, clazz);
+    } catch (JsonParseException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException && !(cause instanceof MalformedJsonException)) {
+        logger.error("weixin response parser", ex);
+        throw new ResponseReadException(cause.getMessage(), (IOException) cause);
+      }
+      if (!jsonReader.hasErrorCode()) {
+        throw ex;
+      }
+    } finally {
+      try {
+        jsonReader.close();
+      } catch (IOException ex) {
+        logger.error("weixin response parser", ex);
+      }
+    }
+
+    if (jsonReader.hasErrorCode() && jsonReader.getErrorCode() != ResultCode.RESULT_0.getCode()) {
+      return failed(target,
+          new SimplestResponse(jsonReader.getErrorCode(), jsonReader.getErrorMessage()));
+    }
+
+    if (target == Boolean.class) {
+      return (T) Boolean.TRUE;
+    } else {
+      return (T) result;
+    }
+  }
+
+  /**
+   * 判断请求失败的类别.
+   * <p>
+   * 网络异常中，只有连接未建立（连接失败、域名无法解析）、HTTP 429、503以及本地并发限制拒绝可以确定请求未被处理，归为暂时性失败；
+   * 读取超时等请求可能已被微信处理的失败不重试，避免重复发送消息；已收到响应但读取响应体时连接中断（
+   * {@link ResponseReadException}）也归为暂时性失败
+   * 
+   * @param ex
+   *          请求抛出的异常
+   * @return {@link ErrorKind}
+   */
+  public static ErrorKind classify(Throwable ex) {
+    if (ex instanceof MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException) {
+      return ErrorKind.TOKEN;
+    }
+    if (ex instanceof QuotaExhaustedException) {
+      return ErrorKind.QUOTA;
+    }
+    if (ex instanceof ConcurrencyLimitException || ex instanceof ResponseReadException) {
+      return ErrorKind.RETRYABLE;
+    }
+    if (ex instanceof ExecuteException) {
+      ResultCode code = ((ExecuteException) ex).getCode();
+      return code == null ? ErrorKind.PERMANENT : code.getKind();
+    }
+    if (ex instanceof HttpException) {
+      int status = ((HttpException) ex).getStatusCode();
+      Throwable cause = ex.getCause();
+      if (status == HTTP_TOO_MANY_REQUESTS || status == HTTP_UNAVAILABLE
+          || cause instanceof ConnectException || cause instanceof NoRouteToHostException
+          || cause instanceof UnknownHostException) {
+        return ErrorKind.RETRYABLE;
+      }
+    }
+    return ErrorKind.PERMANENT;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T failed(Class<T> target, SimplestResponse errorResponse) {
+    ResultCode resultCode = ResultCode.byCode(errorResponse.getErrorCode());
+    if (resultCode == null) {
+      resultCode = ResultCode.RESULT_UNKNOW;
+      logger.debug("未收录的微信错误代码: code [{}]", errorResponse.getErrorCode());
+    }
+    Meter.errorCode(resultCode);
+
+    if (errorResponse.isBadAccessToken()) {
+      logger.debug("微信说我access_token不大行，那我觉着是不是还可以再抢救一下，再试一遍来");
+      throw new MaydayMaydaySaveMeBecauseAccessTokenSetMeFuckUpException();
+    }
+
+    logger.error("微信请求错误：code [{}] -- message [{}]", errorResponse.getErrorCode(),
+        errorResponse.getErrorMessage());
+
+    // 暂时性错误总是抛出，交给调用方决定是否重试，重试用尽后再按throwException处理
+    if (isThrowing() || resultCode.getKind() == ErrorKind.RETRYABLE) {
+      throw new ExecuteException(errorResponse, resultCode);
+    }
+
+    if (target == Boolean.class) {
+      return (T) Boolean.FALSE;
+    } else {
+      return null;
+    }
+  }
+
 }
@@ -0,0 +1,23 @@
+package io.github.rcarlosdasilva.weixin.core.refresh;
+
+/**
+ * 需要主动刷新的凭证.
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public enum Credential {
+
+  /**
+   * 公众号access_token（含开放平台授权方的access_token）
+   */
+  ACCESS_TOKEN,
+  /**
+   * 公众号jsapi_ticket
+   */
+  JS_TICKET,
+  /**
+   * 开放平台component_access_token
+   */
+  COMPONENT_ACCESS_TOKEN
+
+}
@@ -0,0 +1,244 @@
+package io.github.rcarlosdasilva.weixin.core.refresh;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.Convention;
+import io.github.rcarlosdasilva.weixin.core.OpenPlatform;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.cache.CacheHandler;
+import io.github.rcarlosdasilva.weixin.core.cache.CacheStorage;
+import io.github.rcarlosdasilva.weixin.core.concurrent.Threads;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+import io.github.rcarlosdasilva.weixin.model.AccessToken;
+import io.github.rcarlosdasilva.weixin.model.JsTicket;
+
+/**
+ * 凭证主动刷新
+ * <p>
+ * 每个已获取的凭证按过期时间排在一个延迟队列中，后台线程在过期前 {@link Setting#getRefreshAheadMarginInMill()}
+ * 再随机提前最多 {@link Setting#getRefreshAheadJitterInMill()} 时刷新，调用方总能在缓存中取到有效的凭证。
+ * <p>
+ * 多个进程共用缓存时，刷新前先获取缓存锁并重新读取缓存，已被其它进程刷新的凭证只按新的过期时间重新排队，不重复刷新。
+ * 刷新失败时稍后重试，直到凭证真正过期，之后由调用方按原有方式获取。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class RefreshAhead {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RefreshAhead.class);
+
+  private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
+  private static final long LOCK_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+  private static final ConcurrentMap<String, Entry> TRACKED = Maps.newConcurrentMap();
+  private static final DelayQueue<Entry> QUEUE = new DelayQueue<Entry>();
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+  private static final Random RANDOM = new Random();
+
+  private RefreshAhead() {
+    throw new IllegalStateException("RefreshAhead class");
+  }
+
+  /**
+   * 记录一个有效的凭证，到期前主动刷新.
+   * <p>
+   * 已记录相同或更晚的过期时间时直接返回，可以在每次读取凭证时调用
+   * 
+   * @param credential
+   *          {@link Credential}
+   * @param account
+   *          公众号key，开放平台为null
+   * @param expireAt
+   *          过期时间
+   */
+  public static void track(Credential credential, String account, long expireAt) {
+    if (!Registry.setting().isRefreshAhead()) {
+      return;
+    }
+
+    String id = credential.name() + ":" + Strings.nullToEmpty(account);
+    Entry current = TRACKED.get(id);
+    if (current != null && current.expireAt >= expireAt) {
+      return;
+    }
+    schedule(new Entry(id, credential, account, expireAt, dueAt(expireAt)));
+  }
+
+  /**
+   * 正在跟踪的凭证数.
+   * 
+   * @return int
+   */
+  public static int tracked() {
+    return TRACKED.size();
+  }
+
+  private static long dueAt(long expireAt) {
+    Setting setting = Registry.setting();
+    long jitter = setting.getRefreshAheadJitterInMill();
+    long due = expireAt - setting.getRefreshAheadMarginInMill()
+        - (jitter > 0 ? (long) (RANDOM.nextDouble() * jitter) : 0);
+    return Math.max(System.currentTimeMillis(), due);
+  }
+
+  private static void schedule(Entry entry) {
+    Entry previous = TRACKED.put(entry.id, entry);
+    if (previous != null) {
+      previous.cancelled = true;
+    }
+    QUEUE.add(entry);
+
+    if (STARTED.compareAndSet(false, true)) {
+      Threads.startDaemon("weixin-refresh-ahead", new Runnable() {
+
+        @Override
+        public void run() {
+          loop();
+        }
+      });
+    }
+  }
+
+  private static void loop() {
+    while (true) {
+      Entry entry;
+      try {
+        entry = QUEUE.take();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        STARTED.set(false);
+        return;
+      }
+      if (entry.cancelled || TRACKED.get(entry.id) != entry) {
+        continue;
+      }
+
+      long expireAt;
+      try {
+        expireAt = refresh(entry);
+      } catch (RuntimeException ex) {
+        LOGGER.warn("For:{} >> 主动刷新{}失败", entry.account, entry.credential, ex);
+        expireAt = -1;
+      }
+
+      if (expireAt > entry.expireAt) {
+        schedule(new Entry(entry.id, entry.credential, entry.account, expireAt,
+            dueAt(expireAt)));
+      } else if (expireAt == 0 || System.currentTimeMillis() + RETRY_DELAY >= entry.expireAt) {
+        // 不再需要刷新，或来不及在过期前刷新，之后由调用方获取新凭证时重新记录
+        TRACKED.remove(entry.id, entry);
+      } else {
+        schedule(new Entry(entry.id, entry.credential, entry.account, entry.expireAt,
+            System.currentTimeMillis() + RETRY_DELAY));
+      }
+    }
+  }
+
+  /**
+   * 刷新凭证.
+   * 
+   * @return 刷新后的过期时间，失败为-1，无需再刷新（公众号已注销）为0
+   */
+  private static long refresh(Entry entry) {
+    if (entry.account != null && !Registry.exists(entry.account)) {
+      return 0;
+    }
+    if (entry.credential == Credential.JS_TICKET) {
+      return refreshJsTicket(entry);
+    }
+
+    String cacheKey = entry.credential == Credential.COMPONENT_ACCESS_TOKEN
+        ? Convention.DEFAULT_CACHE_KEY_OPEN_PLATFORM_ACCESS_TOKEN : entry.account;
+    AccessToken token = CacheHandler.of(AccessToken.class).get(cacheKey);
+    if (token != null && !token.isExpired() && token.getExpireAt() > entry.expireAt) {
+      return token.getExpireAt();
+    }
+
+    // 只在缓存中仍是当前凭证时刷新，加锁与重新检查由刷新方法完成，与调用方获取凭证时的加锁顺序一致
+    String current = token == null ? null : token.getAccessToken();
+    LOGGER.debug("For:{} >> 主动刷新{}", entry.account, entry.credential);
+    if (entry.credential == Credential.COMPONENT_ACCESS_TOKEN) {
+      OpenPlatform.certificate().refreshAccessToken(current);
+    } else {
+      Weixin.with(entry.account).certificate().refreshAccessToken(current);
+    }
+    return cachedExpireAt(entry.credential, cacheKey);
+  }
+
+  private static long refreshJsTicket(Entry entry) {
+    CacheStorage<JsTicket> storage = CacheHandler.of(JsTicket.class);
+    long cached = cachedExpireAt(entry.credential, entry.account);
+    if (cached > entry.expireAt) {
+      return cached;
+    }
+
+    String identifier = storage.lock(entry.account, LOCK_TIMEOUT, true);
+    if (Strings.isNullOrEmpty(identifier)) {
+      // 其它线程或进程正在获取
+      return -1;
+    }
+    try {
+      cached = cachedExpireAt(entry.credential, entry.account);
+      if (cached > entry.expireAt) {
+        return cached;
+      }
+
+      LOGGER.debug("For:{} >> 主动刷新{}", entry.account, entry.credential);
+      Weixin.with(entry.account).certificate().refreshJsTicket();
+    } finally {
+      storage.unlock(entry.account, identifier);
+    }
+    return cachedExpireAt(entry.credential, entry.account);
+  }
+
+  private static long cachedExpireAt(Credential credential, String cacheKey) {
+    if (credential == Credential.JS_TICKET) {
+      JsTicket ticket = CacheHandler.of(JsTicket.class).get(cacheKey);
+      return ticket == null || ticket.isExpired() ? -1 : ticket.getExpireAt();
+    }
+    AccessToken token = CacheHandler.of(AccessToken.class).get(cacheKey);
+    return token == null || token.isExpired() ? -1 : token.getExpireAt();
+  }
+
+  private static final class Entry implements Delayed {
+
+    private final String id;
+    private final Credential credential;
+    private final String account;
+    private final long expireAt;
+    private final long dueAt;
+    private volatile boolean cancelled = false;
+
+    private Entry(String id, Credential credential, String account, long expireAt, long dueAt) {
+      this.id = id;
+      this.credential = credential;
+      this.account = account;
+      this.expireAt = expireAt;
+      this.dueAt = dueAt;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(dueAt, ((Entry) other).dueAt);
+    }
+
+  }
+
+}
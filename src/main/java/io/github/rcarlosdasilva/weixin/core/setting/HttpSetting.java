@@ -0,0 +1,551 @@
+package io.github.rcarlosdasilva.weixin.core.setting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+
+/**
+ * Http传输配置
+ * <p>
+ * 默认值面向服务端高并发场景：连接池与调度器的上限远高于OkHttp的默认值（5个空闲连接，每个host同时5个请求）。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class HttpSetting {
+
+  private long connectTimeout = TimeUnit.SECONDS.toMillis(3);
+  private long readTimeout = TimeUnit.SECONDS.toMillis(10);
+  private long writeTimeout = TimeUnit.SECONDS.toMillis(10);
+  private Map<String, Long> endpointTimeouts = Maps.newConcurrentMap();
+  private int maxIdleConnections = 64;
+  private long keepAliveDuration = TimeUnit.MINUTES.toMillis(5);
+  private int maxRequests = 256;
+  private int maxRequestsPerHost = 128;
+  private boolean preferHttp2 = true;
+  private List<String> apiDomains = Lists.newArrayList(ApiAddress.URL_API_DOMAIN);
+  private long domainProbeInterval = TimeUnit.SECONDS.toMillis(30);
+  private boolean hedging = false;
+  private long hedgeDelay = 300;
+  private int hedgeBudgetPercent = 5;
+  private boolean adaptiveConcurrency = false;
+  private int concurrencyInitialLimit = 20;
+  private int concurrencyMinLimit = 2;
+  private int concurrencyMaxLimit = 200;
+  private long concurrencyMaxWait = TimeUnit.SECONDS.toMillis(1);
+  private boolean priorityLanes = false;
+  private int laneCapacity = 64;
+  private int laneReserved = 16;
+  private long laneMaxWait = TimeUnit.SECONDS.toMillis(30);
+  private boolean fairQueuing = false;
+  private int fairCapacity = 64;
+  private long fairMaxWait = TimeUnit.SECONDS.toMillis(30);
+  private int fairMaxQueued = 1000;
+  private Map<String, Integer> accountWeights = Maps.newConcurrentMap();
+
+  public long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * 连接超时时间，默认3秒.
+   * 
+   * @param connectTimeout
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setConnectTimeout(long connectTimeout) {
+    this.connectTimeout = connectTimeout;
+    return this;
+  }
+
+  public long getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * 读取超时时间，默认10秒.
+   * 
+   * @param readTimeout
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setReadTimeout(long readTimeout) {
+    this.readTimeout = readTimeout;
+    return this;
+  }
+
+  public long getWriteTimeout() {
+    return writeTimeout;
+  }
+
+  /**
+   * 写入超时时间，默认10秒.
+   * 
+   * @param writeTimeout
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setWriteTimeout(long writeTimeout) {
+    this.writeTimeout = writeTimeout;
+    return this;
+  }
+
+  public Map<String, Long> getEndpointTimeouts() {
+    return endpointTimeouts;
+  }
+
+  /**
+   * 为指定接口单独设置读取与写入超时时间，覆盖 readTimeout 与 writeTimeout.
+   * <p>
+   * 如上传、下载素材的接口（{@link ApiAddress#URL_MEDIA_TEMPORARY_ADD}、{@link ApiAddress#URL_MEDIA_TEMPORARY_GET}）
+   * 通常需要比普通接口更长的超时时间
+   * 
+   * @param url
+   *          接口地址，只按路径匹配，对域名池中的所有域名都有效
+   * @param timeout
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setEndpointTimeout(String url, long timeout) {
+    Preconditions.checkArgument(timeout > 0, "timeout must be positive");
+    endpointTimeouts.put(url, timeout);
+    return this;
+  }
+
+  public int getMaxIdleConnections() {
+    return maxIdleConnections;
+  }
+
+  /**
+   * 连接池中最多保持的空闲连接数，默认64.
+   * 
+   * @param maxIdleConnections
+   *          数量
+   * @return HttpSetting
+   */
+  public HttpSetting setMaxIdleConnections(int maxIdleConnections) {
+    this.maxIdleConnections = maxIdleConnections;
+    return this;
+  }
+
+  public long getKeepAliveDuration() {
+    return keepAliveDuration;
+  }
+
+  /**
+   * 空闲连接的保持时间，默认5分钟.
+   * 
+   * @param keepAliveDuration
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setKeepAliveDuration(long keepAliveDuration) {
+    this.keepAliveDuration = keepAliveDuration;
+    return this;
+  }
+
+  public int getMaxRequests() {
+    return maxRequests;
+  }
+
+  /**
+   * 同时执行的异步请求总数上限，默认256.
+   * 
+   * @param maxRequests
+   *          数量
+   * @return HttpSetting
+   */
+  public HttpSetting setMaxRequests(int maxRequests) {
+    this.maxRequests = maxRequests;
+    return this;
+  }
+
+  public int getMaxRequestsPerHost() {
+    return maxRequestsPerHost;
+  }
+
+  /**
+   * 对同一个host同时执行的异步请求上限，默认128.
+   * 
+   * @param maxRequestsPerHost
+   *          数量
+   * @return HttpSetting
+   */
+  public HttpSetting setMaxRequestsPerHost(int maxRequestsPerHost) {
+    this.maxRequestsPerHost = maxRequestsPerHost;
+    return this;
+  }
+
+  public boolean isPreferHttp2() {
+    return preferHttp2;
+  }
+
+  /**
+   * 是否优先使用HTTP/2，默认是.
+   * <p>
+   * 服务端或运行环境不支持ALPN时会自动退回HTTP/1.1；设置为否则只使用HTTP/1.1
+   * 
+   * @param preferHttp2
+   *          boolean
+   * @return HttpSetting
+   */
+  public HttpSetting setPreferHttp2(boolean preferHttp2) {
+    this.preferHttp2 = preferHttp2;
+    return this;
+  }
+
+  public List<String> getApiDomains() {
+    return apiDomains;
+  }
+
+  /**
+   * API域名池，默认只有api.weixin.qq.com，不切换域名也不探测.
+   * <p>
+   * 加入备用域名（如 {@link ApiAddress#URL_API_DOMAIN_BACKUP}、{@link ApiAddress#URL_API_DOMAIN_SHANGHAI}）后，
+   * 请求从中选择当前最快的可用域名发送，连接失败时自动切换到下一个域名，并按 {@link #getDomainProbeInterval()}
+   * 在后台探测各域名；域名需以"/"结尾
+   * 
+   * @param apiDomains
+   *          域名列表，第一个为首选
+   * @return HttpSetting
+   */
+  public HttpSetting setApiDomains(List<String> apiDomains) {
+    this.apiDomains = apiDomains;
+    return this;
+  }
+
+  /**
+   * 将所有API请求发送到指定地址，如本地的微信接口模拟服务，用于测试与压测.
+   * <p>
+   * 替换域名池为这一个地址，并停止域名探测
+   * 
+   * @param baseUrl
+   *          地址，如http://127.0.0.1:8080/
+   * @return HttpSetting
+   */
+  public HttpSetting setApiBaseUrl(String baseUrl) {
+    this.apiDomains = Lists.newArrayList(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+    this.domainProbeInterval = 0;
+    return this;
+  }
+
+  public long getDomainProbeInterval() {
+    return domainProbeInterval;
+  }
+
+  /**
+   * 域名健康探测的间隔时间，默认30秒，小于等于0时不探测.
+   * <p>
+   * 只在通过 {@link #setApiDomains(List)} 加入了备用域名时生效：后台定时请求各域名，测量响应时间并恢复之前失败的域名
+   * 
+   * @param domainProbeInterval
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setDomainProbeInterval(long domainProbeInterval) {
+    this.domainProbeInterval = domainProbeInterval;
+    return this;
+  }
+
+  public boolean isHedging() {
+    return hedging;
+  }
+
+  /**
+   * 是否对幂等的只读GET接口发出对冲请求，默认否.
+   * <p>
+   * 请求在接口响应时间的P95内未返回时，向备用域名再发一次相同的请求，采用先成功返回的结果并取消另一个，降低长尾延迟。
+   * 只对用户、标签、菜单、模板等查询接口生效，获取access_token、jsapi_ticket等凭证的请求从不对冲
+   * 
+   * @param hedging
+   *          boolean
+   * @return HttpSetting
+   */
+  public HttpSetting setHedging(boolean hedging) {
+    this.hedging = hedging;
+    return this;
+  }
+
+  public long getHedgeDelay() {
+    return hedgeDelay;
+  }
+
+  /**
+   * 接口响应时间样本不足时，发出对冲请求前的等待时间，默认300毫秒.
+   * 
+   * @param hedgeDelay
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setHedgeDelay(long hedgeDelay) {
+    this.hedgeDelay = hedgeDelay;
+    return this;
+  }
+
+  public int getHedgeBudgetPercent() {
+    return hedgeBudgetPercent;
+  }
+
+  /**
+   * 对冲请求占请求总数的比例上限，默认5%.
+   * 
+   * @param hedgeBudgetPercent
+   *          百分比
+   * @return HttpSetting
+   */
+  public HttpSetting setHedgeBudgetPercent(int hedgeBudgetPercent) {
+    this.hedgeBudgetPercent = hedgeBudgetPercent;
+    return this;
+  }
+
+  public boolean isAdaptiveConcurrency() {
+    return adaptiveConcurrency;
+  }
+
+  /**
+   * 是否按域名自适应限制并发请求数，默认不开启.
+   * <p>
+   * 根据响应时间与超时、过载（HTTP 429、503）情况，在最小与最大上限之间调整每个域名同时进行的请求数
+   * 
+   * @param adaptiveConcurrency
+   *          是否开启
+   * @return HttpSetting
+   */
+  public HttpSetting setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+    this.adaptiveConcurrency = adaptiveConcurrency;
+    return this;
+  }
+
+  public int getConcurrencyInitialLimit() {
+    return concurrencyInitialLimit;
+  }
+
+  /**
+   * 自适应并发的初始上限，默认20.
+   * 
+   * @param concurrencyInitialLimit
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setConcurrencyInitialLimit(int concurrencyInitialLimit) {
+    this.concurrencyInitialLimit = concurrencyInitialLimit;
+    return this;
+  }
+
+  public int getConcurrencyMinLimit() {
+    return concurrencyMinLimit;
+  }
+
+  /**
+   * 自适应并发的最小上限，默认2.
+   * 
+   * @param concurrencyMinLimit
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setConcurrencyMinLimit(int concurrencyMinLimit) {
+    this.concurrencyMinLimit = concurrencyMinLimit;
+    return this;
+  }
+
+  public int getConcurrencyMaxLimit() {
+    return concurrencyMaxLimit;
+  }
+
+  /**
+   * 自适应并发的最大上限，默认200.
+   * 
+   * @param concurrencyMaxLimit
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setConcurrencyMaxLimit(int concurrencyMaxLimit) {
+    this.concurrencyMaxLimit = concurrencyMaxLimit;
+    return this;
+  }
+
+  public long getConcurrencyMaxWait() {
+    return concurrencyMaxWait;
+  }
+
+  /**
+   * 同步请求在并发已满时的最长等待时间，默认1秒，为0时不等待直接拒绝.
+   * 
+   * @param concurrencyMaxWait
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setConcurrencyMaxWait(long concurrencyMaxWait) {
+    this.concurrencyMaxWait = concurrencyMaxWait;
+    return this;
+  }
+
+  public boolean isPriorityLanes() {
+    return priorityLanes;
+  }
+
+  /**
+   * 是否按优先级分配请求名额，默认不开启.
+   * <p>
+   * 开启后为交互请求预留一部分名额，批量请求只能使用其余的名额，见 {@code PriorityLanes}
+   * 
+   * @param priorityLanes
+   *          是否开启
+   * @return HttpSetting
+   */
+  public HttpSetting setPriorityLanes(boolean priorityLanes) {
+    this.priorityLanes = priorityLanes;
+    return this;
+  }
+
+  public int getLaneCapacity() {
+    return laneCapacity;
+  }
+
+  /**
+   * 同时进行的请求总数，默认64.
+   * 
+   * @param laneCapacity
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setLaneCapacity(int laneCapacity) {
+    this.laneCapacity = laneCapacity;
+    return this;
+  }
+
+  public int getLaneReserved() {
+    return laneReserved;
+  }
+
+  /**
+   * 只留给交互请求的名额，默认16，批量请求至少保留1个名额.
+   * 
+   * @param laneReserved
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setLaneReserved(int laneReserved) {
+    this.laneReserved = laneReserved;
+    return this;
+  }
+
+  public long getLaneMaxWait() {
+    return laneMaxWait;
+  }
+
+  /**
+   * 同步请求在名额已满时的最长等待时间，默认30秒.
+   * 
+   * @param laneMaxWait
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setLaneMaxWait(long laneMaxWait) {
+    this.laneMaxWait = laneMaxWait;
+    return this;
+  }
+
+  public boolean isFairQueuing() {
+    return fairQueuing;
+  }
+
+  /**
+   * 是否按公众号公平分配请求名额，默认不开启.
+   * <p>
+   * 开启后所有公众号共用 fairCapacity 个名额，名额已满时按权重公平排队，避免一个公众号的大量请求拖慢其它公众号，见
+   * {@code FairQueue}
+   * 
+   * @param fairQueuing
+   *          是否开启
+   * @return HttpSetting
+   */
+  public HttpSetting setFairQueuing(boolean fairQueuing) {
+    this.fairQueuing = fairQueuing;
+    return this;
+  }
+
+  public int getFairCapacity() {
+    return fairCapacity;
+  }
+
+  /**
+   * 公平排队时同时进行的请求总数，默认64.
+   * 
+   * @param fairCapacity
+   *          并发请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setFairCapacity(int fairCapacity) {
+    this.fairCapacity = fairCapacity;
+    return this;
+  }
+
+  public long getFairMaxWait() {
+    return fairMaxWait;
+  }
+
+  /**
+   * 同步请求公平排队的最长等待时间，默认30秒.
+   * 
+   * @param fairMaxWait
+   *          单位毫秒
+   * @return HttpSetting
+   */
+  public HttpSetting setFairMaxWait(long fairMaxWait) {
+    this.fairMaxWait = fairMaxWait;
+    return this;
+  }
+
+  public int getFairMaxQueued() {
+    return fairMaxQueued;
+  }
+
+  /**
+   * 公平排队时每个公众号排队中的异步请求数上限，默认1000，超过时直接拒绝.
+   * 
+   * @param fairMaxQueued
+   *          请求数
+   * @return HttpSetting
+   */
+  public HttpSetting setFairMaxQueued(int fairMaxQueued) {
+    this.fairMaxQueued = fairMaxQueued;
+    return this;
+  }
+
+  /**
+   * 公众号的排队权重.
+   * 
+   * @param key
+   *          公众号key
+   * @return 权重，未设置时为1
+   */
+  public int getAccountWeight(String key) {
+    Integer weight = accountWeights.get(key);
+    return weight == null ? 1 : weight;
+  }
+
+  /**
+   * 设置公众号的排队权重，默认1.
+   * <p>
+   * 名额紧张时，各公众号得到的名额与权重成正比
+   * 
+   * @param key
+   *          公众号key
+   * @param weight
+   *          权重，大于0
+   * @return HttpSetting
+   */
+  public HttpSetting setAccountWeight(String key, int weight) {
+    Preconditions.checkArgument(weight > 0, "weight must be positive");
+    accountWeights.put(key, weight);
+    return this;
+  }
+
+}
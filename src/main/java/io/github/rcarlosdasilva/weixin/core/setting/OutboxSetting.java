@@ -0,0 +1,158 @@
+package io.github.rcarlosdasilva.weixin.core.setting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息发件箱配置
+ * <p>
+ * 发件箱将模板消息与客服消息先写入本地日志再发送，微信不可用或接口配额用尽时，消息留在日志中，恢复后按限定的速度重新发送，见
+ * {@code Outbox}。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class OutboxSetting {
+
+  private String directory;
+  private long segmentSize = 16 * 1024 * 1024;
+  private boolean fsync = true;
+  private int replayRate = 20;
+  private long replayInterval = TimeUnit.SECONDS.toMillis(5);
+  private long maxReplayInterval = TimeUnit.MINUTES.toMillis(10);
+  private int maxAttempts = 20;
+  private boolean deferFailedSends = false;
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * 日志文件所在目录，必须设置.
+   * 
+   * @param directory
+   *          目录，不存在时自动创建
+   * @return OutboxSetting
+   */
+  public OutboxSetting setDirectory(String directory) {
+    this.directory = directory;
+    return this;
+  }
+
+  public long getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * 单个日志文件的大小上限，默认16MB，超过后写入新文件；文件中的消息全部发送后删除.
+   * 
+   * @param segmentSize
+   *          单位字节
+   * @return OutboxSetting
+   */
+  public OutboxSetting setSegmentSize(long segmentSize) {
+    this.segmentSize = segmentSize;
+    return this;
+  }
+
+  public boolean isFsync() {
+    return fsync;
+  }
+
+  /**
+   * 写入消息后是否等待落盘，默认是.
+   * <p>
+   * 同时写入的多条消息合并为一次落盘；关闭后由操作系统决定何时落盘，进程崩溃不会丢失，但断电可能丢失最近的消息
+   * 
+   * @param fsync
+   *          是否落盘
+   * @return OutboxSetting
+   */
+  public OutboxSetting setFsync(boolean fsync) {
+    this.fsync = fsync;
+    return this;
+  }
+
+  public int getReplayRate() {
+    return replayRate;
+  }
+
+  /**
+   * 重新发送的速度，默认每秒20条.
+   * 
+   * @param replayRate
+   *          每秒条数
+   * @return OutboxSetting
+   */
+  public OutboxSetting setReplayRate(int replayRate) {
+    this.replayRate = replayRate;
+    return this;
+  }
+
+  public long getReplayInterval() {
+    return replayInterval;
+  }
+
+  /**
+   * 重新发送失败后，到下一次重新发送的间隔，默认5秒，之后每次失败翻倍，见 {@link #setMaxReplayInterval(long)}.
+   * 
+   * @param replayInterval
+   *          单位毫秒
+   * @return OutboxSetting
+   */
+  public OutboxSetting setReplayInterval(long replayInterval) {
+    this.replayInterval = replayInterval;
+    return this;
+  }
+
+  public long getMaxReplayInterval() {
+    return maxReplayInterval;
+  }
+
+  /**
+   * 一条消息两次重新发送之间的最大间隔，默认10分钟.
+   * 
+   * @param maxReplayInterval
+   *          单位毫秒
+   * @return OutboxSetting
+   */
+  public OutboxSetting setMaxReplayInterval(long maxReplayInterval) {
+    this.maxReplayInterval = maxReplayInterval;
+    return this;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * 一条消息最多发送的次数，默认20次（按默认的间隔约2小时），超过后放弃；0为不限.
+   * <p>
+   * 在不抛出异常的配置（{@link Setting#setThrowException(boolean)}）下，无法区分暂时性失败与永久失败，不建议设置为不限
+   * 
+   * @param maxAttempts
+   *          次数
+   * @return OutboxSetting
+   */
+  public OutboxSetting setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  public boolean isDeferFailedSends() {
+    return deferFailedSends;
+  }
+
+  /**
+   * 通过 {@code MessageApi} 发送模板消息与客服消息暂时失败时，是否写入发件箱稍后重新发送，默认否.
+   * <p>
+   * 写入发件箱后接口返回发送失败的结果且不再抛出异常，调用方不要再自行重试，否则消息会重复发送
+   * 
+   * @param deferFailedSends
+   *          是否写入
+   * @return OutboxSetting
+   */
+  public OutboxSetting setDeferFailedSends(boolean deferFailedSends) {
+    this.deferFailedSends = deferFailedSends;
+    return this;
+  }
+
+}
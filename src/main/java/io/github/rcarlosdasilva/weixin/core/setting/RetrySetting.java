@@ -0,0 +1,121 @@
+package io.github.rcarlosdasilva.weixin.core.setting;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 暂时性失败的重试与熔断配置
+ * <p>
+ * 暂时性失败指微信返回系统繁忙（-1）、连接失败等，见 {@code ResponseParser.classify}。
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class RetrySetting {
+
+  private int retries = 2;
+  private long backoffBase = 200;
+  private long backoffMax = TimeUnit.SECONDS.toMillis(5);
+  private boolean circuitBreaker = true;
+  private int failureThreshold = 5;
+  private long openDuration = TimeUnit.SECONDS.toMillis(30);
+
+  public int getRetries() {
+    return retries;
+  }
+
+  /**
+   * 暂时性失败的重试次数，默认2次，0为不重试.
+   * 
+   * @param retries
+   *          次数
+   * @return RetrySetting
+   */
+  public RetrySetting setRetries(int retries) {
+    this.retries = retries;
+    return this;
+  }
+
+  public long getBackoffBase() {
+    return backoffBase;
+  }
+
+  /**
+   * 重试的基础等待时间，默认200毫秒.
+   * <p>
+   * 第n次重试前随机等待0到 base * 2^(n-1) 毫秒（不超过最长等待时间），避免大量线程同时重试
+   * 
+   * @param backoffBase
+   *          单位毫秒
+   * @return RetrySetting
+   */
+  public RetrySetting setBackoffBase(long backoffBase) {
+    this.backoffBase = backoffBase;
+    return this;
+  }
+
+  public long getBackoffMax() {
+    return backoffMax;
+  }
+
+  /**
+   * 重试的最长等待时间，默认5秒.
+   * 
+   * @param backoffMax
+   *          单位毫秒
+   * @return RetrySetting
+   */
+  public RetrySetting setBackoffMax(long backoffMax) {
+    this.backoffMax = backoffMax;
+    return this;
+  }
+
+  public boolean isCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * 是否开启熔断，默认是.
+   * <p>
+   * 同一公众号的同一接口连续失败达到阈值后，在熔断时间内直接失败，不再请求微信；熔断时间过后放行一个请求试探，成功则恢复
+   * 
+   * @param circuitBreaker
+   *          boolean
+   * @return RetrySetting
+   */
+  public RetrySetting setCircuitBreaker(boolean circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+    return this;
+  }
+
+  public int getFailureThreshold() {
+    return failureThreshold;
+  }
+
+  /**
+   * 触发熔断的连续失败次数，默认5次.
+   * 
+   * @param failureThreshold
+   *          次数
+   * @return RetrySetting
+   */
+  public RetrySetting setFailureThreshold(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+    return this;
+  }
+
+  public long getOpenDuration() {
+    return openDuration;
+  }
+
+  /**
+   * 熔断时间，默认30秒.
+   * 
+   * @param openDuration
+   *          单位毫秒
+   * @return RetrySetting
+   */
+  public RetrySetting setOpenDuration(long openDuration) {
+    this.openDuration = openDuration;
+    return this;
+  }
+
+}
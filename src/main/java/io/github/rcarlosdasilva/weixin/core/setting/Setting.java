@@ -1,11 +1,30 @@
 package io.github.rcarlosdasilva.weixin.core.setting;
 
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.core.bulk.Bulk;
 import io.github.rcarlosdasilva.weixin.core.cache.CacheType;
 import io.github.rcarlosdasilva.weixin.core.inspect.InspectDispatcher;
+import io.github.rcarlosdasilva.weixin.core.interceptor.ApiInterceptor;
+import io.github.rcarlosdasilva.weixin.core.limit.QuotaMode;
+import io.github.rcarlosdasilva.weixin.core.metrics.Metrics;
+import io.github.rcarlosdasilva.weixin.core.metrics.NoopMetrics;
 
 public class Setting {
 
   private static final long DEFAULT_INSPECT_DISPATCH_INTERVAL_TIME = 10000;
+  private static final long DEFAULT_QUOTA_MAX_WAIT_TIME = 60000;
+  private static final int DEFAULT_BULK_MAX_CONCURRENCY = 64;
+  private static final int DEFAULT_BULK_MAX_CONCURRENCY_PER_ACCOUNT = 8;
+  private static final long DEFAULT_REFRESH_AHEAD_MARGIN = 300000;
+  private static final long DEFAULT_REFRESH_AHEAD_JITTER = 60000;
+  private static final int DEFAULT_NEAR_CACHE_MAX_SIZE = 10000;
+  private static final long DEFAULT_NEAR_CACHE_TTL = 60000;
 
   private int retries = 2;
   private boolean strictUseOpenPlatform = false;
@@ -14,6 +33,57 @@ public class Setting {
   private boolean autoLoadAuthorizedWeixinData = true;
   private long inspectDispatchIntervalInMill = DEFAULT_INSPECT_DISPATCH_INTERVAL_TIME;
   private RedisSetting redisSetting = null;
+  private HttpSetting httpSetting = new HttpSetting();
+  private RetrySetting retrySetting = new RetrySetting();
+  private boolean singleFlight = true;
+  private boolean responseCache = false;
+  private Map<String, Integer> responseCacheTtls = defaultResponseCacheTtls();
+  private QuotaMode quotaMode = QuotaMode.NONE;
+  private long quotaMaxWaitInMill = DEFAULT_QUOTA_MAX_WAIT_TIME;
+  private int quotaBurst = 0;
+  private Map<String, Integer> quotas = defaultQuotas();
+  private boolean virtualThreads = false;
+  private Metrics metrics = NoopMetrics.INSTANCE;
+  private List<ApiInterceptor> interceptors = Lists.newArrayList();
+  private int bulkMaxConcurrency = DEFAULT_BULK_MAX_CONCURRENCY;
+  private int bulkMaxConcurrencyPerAccount = DEFAULT_BULK_MAX_CONCURRENCY_PER_ACCOUNT;
+  private OutboxSetting outboxSetting = null;
+  private boolean refreshAhead = false;
+  private long refreshAheadMarginInMill = DEFAULT_REFRESH_AHEAD_MARGIN;
+  private long refreshAheadJitterInMill = DEFAULT_REFRESH_AHEAD_JITTER;
+  private boolean nearCache = false;
+  private int nearCacheMaxSize = DEFAULT_NEAR_CACHE_MAX_SIZE;
+  private long nearCacheTtlInMill = DEFAULT_NEAR_CACHE_TTL;
+
+  private static Map<String, Integer> defaultResponseCacheTtls() {
+    Map<String, Integer> ttls = Maps.newHashMap();
+    ttls.put(ApiAddress.URL_CERTIFICATE_SERVER_IP, 3600);
+    ttls.put(ApiAddress.URL_MENU_QUERY, 300);
+    ttls.put(ApiAddress.URL_MENU_QUERY_COMPLETE, 300);
+    ttls.put(ApiAddress.URL_TEMPLATE_INDUSTRY_GET, 3600);
+    ttls.put(ApiAddress.URL_TEMPLATE_QUERY, 600);
+    ttls.put(ApiAddress.URL_USER_TAG_LIST, 300);
+    ttls.put(ApiAddress.URL_CUSTOM_ACCOUNT_LIST, 300);
+    return ttls;
+  }
+
+  private static Map<String, Integer> defaultQuotas() {
+    Map<String, Integer> quotas = Maps.newHashMap();
+    quotas.put(ApiAddress.URL_CERTIFICATE_TOKEN, 2000);
+    quotas.put(ApiAddress.URL_MENU_CREATE, 1000);
+    quotas.put(ApiAddress.URL_MENU_QUERY, 10000);
+    quotas.put(ApiAddress.URL_MENU_DELETE, 1000);
+    quotas.put(ApiAddress.URL_USER_INFO, 5000000);
+    quotas.put(ApiAddress.URL_USER_ALL_OPENID_LIST, 500);
+    quotas.put(ApiAddress.URL_USER_REMARK_NAME, 10000);
+    quotas.put(ApiAddress.URL_MESSAGE_SEND_WITH_CUSTOM, 500000);
+    quotas.put(ApiAddress.URL_MESSAGE_SEND_WITH_TEMPLATE, 100000);
+    quotas.put(ApiAddress.URL_MESSAGE_SEND_WITH_MASS_FOR_TAG, 100);
+    quotas.put(ApiAddress.URL_MEDIA_TEMPORARY_ADD, 100000);
+    quotas.put(ApiAddress.URL_MEDIA_TEMPORARY_GET, 200000);
+    quotas.put(ApiAddress.URL_COMMON_QR_CREATE, 100000);
+    return quotas;
+  }
 
   public int getRetries() {
     return retries;
@@ -132,4 +202,336 @@ public class Setting {
     this.redisSetting = redisSetting;
   }
 
+  public HttpSetting getHttpSetting() {
+    return httpSetting;
+  }
+
+  /**
+   * 设置Http传输配置（连接池、并发请求数、HTTP/2、超时时间）.
+   * <p>
+   * 在 {@code Registry.withSetting} 时生效
+   * 
+   * @param httpSetting
+   *          config
+   */
+  public void setHttpSetting(HttpSetting httpSetting) {
+    this.httpSetting = httpSetting;
+  }
+
+  public RetrySetting getRetrySetting() {
+    return retrySetting;
+  }
+
+  /**
+   * 设置暂时性失败（系统繁忙、连接失败）的退避重试与熔断配置.
+   * <p>
+   * 与 {@link #setRetries(int)} 不同，后者是access_token失效时的重试次数
+   * 
+   * @param retrySetting
+   *          config
+   */
+  public void setRetrySetting(RetrySetting retrySetting) {
+    this.retrySetting = retrySetting;
+  }
+
+  public boolean isSingleFlight() {
+    return singleFlight;
+  }
+
+  /**
+   * 是否合并同时发出的相同只读请求（如查询菜单、用户信息），默认是.
+   * <p>
+   * 同一公众号对同一接口以相同参数同时发出的请求，只有一个会真正请求微信，其他调用等待并共享同一个响应，
+   * 各自解析出自己的响应对象
+   * 
+   * @param singleFlight
+   *          boolean
+   */
+  public void setSingleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+  }
+
+  public boolean isResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * 是否缓存只读接口（菜单、模板、行业、标签、客服列表、微信服务器IP）的响应，默认否.
+   * <p>
+   * 缓存使用 {@link #getCacheType()} 指定的缓存方式；同一公众号调用修改数据的接口后（如创建菜单），相关缓存会自动清除，
+   * 但在微信后台直接修改的数据，需要等缓存过期后才能获取到
+   * 
+   * @param responseCache
+   *          boolean
+   */
+  public void setResponseCache(boolean responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  public Map<String, Integer> getResponseCacheTtls() {
+    return responseCacheTtls;
+  }
+
+  /**
+   * 设置接口响应的缓存时间.
+   * <p>
+   * 默认：微信服务器IP、行业信息1小时，模板列表10分钟，菜单、标签列表、客服列表5分钟
+   * 
+   * @param url
+   *          接口地址，不含参数，见 {@link ApiAddress}
+   * @param seconds
+   *          缓存时间（单位：秒），小于等于0时不缓存该接口
+   */
+  public void setResponseCacheTtl(String url, int seconds) {
+    this.responseCacheTtls.put(url, seconds);
+  }
+
+  public QuotaMode getQuotaMode() {
+    return quotaMode;
+  }
+
+  /**
+   * 接口调用额度的限流方式，默认不限流.
+   * <p>
+   * 开启后按 {@link #getQuotas()} 中的每日额度，对每个公众号的每个接口分别记录当天剩余的额度，用完后不再请求微信，
+   * 直到北京时间0点恢复。额度只在当前进程内统计；异步请求不会等待额度
+   * 
+   * @param quotaMode
+   *          {@link QuotaMode}
+   */
+  public void setQuotaMode(QuotaMode quotaMode) {
+    this.quotaMode = quotaMode;
+  }
+
+  public long getQuotaMaxWaitInMill() {
+    return quotaMaxWaitInMill;
+  }
+
+  /**
+   * 限流方式为 {@link QuotaMode#BLOCKING} 时，等待额度的最长时间，默认1分钟.
+   * 
+   * @param quotaMaxWaitInMill
+   *          毫秒
+   */
+  public void setQuotaMaxWaitInMill(long quotaMaxWaitInMill) {
+    this.quotaMaxWaitInMill = quotaMaxWaitInMill;
+  }
+
+  public int getQuotaBurst() {
+    return quotaBurst;
+  }
+
+  /**
+   * 接口调用额度的最大连续调用次数，默认0，不限制.
+   * <p>
+   * 大于0时，当天剩余的额度按距离恢复的时间匀速发放，最多可连续调用quotaBurst次，避免批量任务在高峰期用完当天的额度
+   * 
+   * @param quotaBurst
+   *          次数
+   */
+  public void setQuotaBurst(int quotaBurst) {
+    this.quotaBurst = quotaBurst;
+  }
+
+  public Map<String, Integer> getQuotas() {
+    return quotas;
+  }
+
+  /**
+   * 设置接口的每日调用额度.
+   * <p>
+   * 默认值为微信文档中公布的额度（如获取access_token每日2000次，群发每日100次），公众号额度有调整时可覆盖
+   * 
+   * @param url
+   *          接口地址，不含参数，见 {@link ApiAddress}
+   * @param daily
+   *          每日额度，小于等于0时不限流该接口
+   */
+  public void setQuota(String url, int daily) {
+    this.quotas.put(url, daily);
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * 是否使用虚拟线程，默认否.
+   * <p>
+   * 开启后异步接口、access_token巡检与刷新在虚拟线程上执行，同步接口可以直接在大量虚拟线程中并发调用。
+   * 需要运行在JDK 21及以上，并使用 -Pjdk21 构建的多版本jar，否则继续使用平台线程。
+   * 异步接口的并发数仍受 {@link HttpSetting#setMaxRequests(int)} 限制，可按需调大。在 {@code Registry.withSetting} 时生效
+   * 
+   * @param virtualThreads
+   *          boolean
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * 设置运行指标收集，默认不收集.
+   * <p>
+   * 包括每个公众号每个接口的请求耗时与流量、微信错误码、重试次数、access_token刷新耗时、缓存锁等待时间、响应缓存命中情况、
+   * 微信推送各处理阶段耗时，见 {@link Metrics}
+   * 
+   * @param metrics
+   *          {@link Metrics}
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public List<ApiInterceptor> getInterceptors() {
+    return interceptors;
+  }
+
+  /**
+   * 添加API调用拦截器，按添加顺序执行，先添加的在外层.
+   * <p>
+   * 需在 {@code Registry.withSetting} 之前添加完毕，见 {@link ApiInterceptor}
+   * 
+   * @param interceptor
+   *          {@link ApiInterceptor}
+   */
+  public void addInterceptor(ApiInterceptor interceptor) {
+    this.interceptors.add(interceptor);
+  }
+
+  public int getBulkMaxConcurrency() {
+    return bulkMaxConcurrency;
+  }
+
+  /**
+   * 所有批量执行（{@link Bulk}）合计的最大并发调用数，默认64.
+   * 
+   * @param bulkMaxConcurrency
+   *          并发数
+   */
+  public void setBulkMaxConcurrency(int bulkMaxConcurrency) {
+    this.bulkMaxConcurrency = bulkMaxConcurrency;
+  }
+
+  public int getBulkMaxConcurrencyPerAccount() {
+    return bulkMaxConcurrencyPerAccount;
+  }
+
+  /**
+   * 同一公众号所有批量执行（{@link Bulk}）合计的最大并发调用数，也是单次批量执行的默认并发数，默认8.
+   * 
+   * @param bulkMaxConcurrencyPerAccount
+   *          并发数
+   */
+  public void setBulkMaxConcurrencyPerAccount(int bulkMaxConcurrencyPerAccount) {
+    this.bulkMaxConcurrencyPerAccount = bulkMaxConcurrencyPerAccount;
+  }
+
+  public OutboxSetting getOutboxSetting() {
+    return outboxSetting;
+  }
+
+  /**
+   * 设置消息发件箱配置，默认不使用发件箱.
+   * <p>
+   * 在 {@code Registry.withSetting} 时启动发件箱，并开始重新发送上次未发送的消息
+   * 
+   * @param outboxSetting
+   *          config
+   */
+  public void setOutboxSetting(OutboxSetting outboxSetting) {
+    this.outboxSetting = outboxSetting;
+  }
+
+  public boolean isRefreshAhead() {
+    return refreshAhead;
+  }
+
+  /**
+   * 是否在access_token、jsapi_ticket与开放平台component_access_token过期前主动刷新，默认否.
+   * <p>
+   * 开启后，由后台线程按过期时间顺序在过期前刷新，调用方不再等待刷新；同时不再需要 {@link InspectDispatcher}
+   * 
+   * @param refreshAhead
+   *          是否开启
+   */
+  public void setRefreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  public long getRefreshAheadMarginInMill() {
+    return refreshAheadMarginInMill;
+  }
+
+  /**
+   * 主动刷新距离过期的提前量，默认5分钟.
+   * 
+   * @param refreshAheadMarginInMill
+   *          单位毫秒
+   */
+  public void setRefreshAheadMarginInMill(long refreshAheadMarginInMill) {
+    this.refreshAheadMarginInMill = refreshAheadMarginInMill;
+  }
+
+  public long getRefreshAheadJitterInMill() {
+    return refreshAheadJitterInMill;
+  }
+
+  /**
+   * 主动刷新时间的随机提前量上限，默认1分钟，避免大量公众号同时刷新.
+   * 
+   * @param refreshAheadJitterInMill
+   *          单位毫秒
+   */
+  public void setRefreshAheadJitterInMill(long refreshAheadJitterInMill) {
+    this.refreshAheadJitterInMill = refreshAheadJitterInMill;
+  }
+
+  public boolean isNearCache() {
+    return nearCache;
+  }
+
+  /**
+   * 使用Redis缓存时，是否在进程内增加一级本地缓存，默认否.
+   * <p>
+   * 开启后access_token等凭证的读取通常只访问本地缓存。写入与删除通过Redis发布订阅通知其它节点，集群仍共用同一份凭证
+   * 
+   * @param nearCache
+   *          是否开启
+   */
+  public void setNearCache(boolean nearCache) {
+    this.nearCache = nearCache;
+  }
+
+  public int getNearCacheMaxSize() {
+    return nearCacheMaxSize;
+  }
+
+  /**
+   * 每种缓存对象在本地缓存的最大数量，默认10000.
+   * 
+   * @param nearCacheMaxSize
+   *          数量
+   */
+  public void setNearCacheMaxSize(int nearCacheMaxSize) {
+    this.nearCacheMaxSize = nearCacheMaxSize;
+  }
+
+  public long getNearCacheTtlInMill() {
+    return nearCacheTtlInMill;
+  }
+
+  /**
+   * 本地缓存的最长保留时间，默认1分钟，丢失失效通知时，本地缓存最多比Redis旧这么久.
+   * 
+   * @param nearCacheTtlInMill
+   *          单位毫秒
+   */
+  public void setNearCacheTtlInMill(long nearCacheTtlInMill) {
+    this.nearCacheTtlInMill = nearCacheTtlInMill;
+  }
+
 }
@@ -80,6 +80,15 @@ public abstract class AccessToken implements Serializable, Cacheable {
         + System.currentTimeMillis();
   }
 
+  /**
+   * 过期时间，已按 {@link Convention#AHEAD_OF_EXPIRED_SECONDS} 提前.
+   * 
+   * @return 毫秒时间戳
+   */
+  public long getExpireAt() {
+    return expireAt;
+  }
+
   /**
    * 是否过期或无用.
    * 
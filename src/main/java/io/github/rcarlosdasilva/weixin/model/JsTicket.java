@@ -42,6 +42,15 @@ public class JsTicket implements Serializable, Cacheable {
     this.expireAt = (this.expiresIn - 30) * 1000 + System.currentTimeMillis();
   }
 
+  /**
+   * 过期时间，已提前30秒.
+   * 
+   * @return 毫秒时间戳
+   */
+  public long getExpireAt() {
+    return expireAt;
+  }
+
   /**
    * 是否过期.
    * 
@@ -20,6 +20,15 @@ public abstract class BasicRequest implements Request {
     this.accessToken = accessToken;
   }
 
+  /**
+   * 当前使用的access_token.
+   * 
+   * @return access_token，未设置时为null
+   */
+  public String getAccessToken() {
+    return this.accessToken;
+  }
+
   @Override
   public String toJson() {
     return Json.toJson(this, this.getClass());
@@ -21,6 +21,14 @@ public class SimplestResponse {
   @SerializedName("errmsg")
   private String errorMessage;
 
+  public SimplestResponse() {
+  }
+
+  public SimplestResponse(int errorCode, String errorMessage) {
+    this.errorCode = errorCode;
+    this.errorMessage = errorMessage;
+  }
+
   /**
    * 响应数据类似错误代码，只包含errcode和errmsg.
    * 
@@ -0,0 +1,29 @@
+package io.github.rcarlosdasilva.weixin.core.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程实现（JDK 21）
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {
+    throw new IllegalStateException("VirtualThreads class");
+  }
+
+  static boolean isSupported() {
+    return true;
+  }
+
+  static Thread newThread(String name, Runnable task) {
+    return Thread.ofVirtual().name(name).unstarted(task);
+  }
+
+  static ExecutorService newExecutor(String prefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 0).factory());
+  }
+
+}
@@ -0,0 +1,64 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.github.rcarlosdasilva.weixin.core.limit.Backoff;
+import io.github.rcarlosdasilva.weixin.core.setting.RetrySetting;
+
+/**
+ * 退避时间的抖动范围
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class BackoffTest {
+
+  private static final int SAMPLES = 2000;
+
+  @Test
+  public void testDelayWithinExponentialCeiling() {
+    RetrySetting setting = new RetrySetting().setBackoffBase(100).setBackoffMax(10000);
+    for (int attempt = 1; attempt <= 5; attempt++) {
+      long ceiling = 100L << (attempt - 1);
+      long max = 0;
+      for (int i = 0; i < SAMPLES; i++) {
+        long delay = Backoff.delay(setting, attempt);
+        Assert.assertTrue(delay >= 0 && delay <= ceiling);
+        max = Math.max(max, delay);
+      }
+      // 随机取值，不是固定的上限
+      Assert.assertTrue(max > ceiling / 2);
+    }
+  }
+
+  @Test
+  public void testDelayCappedAtMax() {
+    RetrySetting setting = new RetrySetting().setBackoffBase(100).setBackoffMax(1000);
+    for (int i = 0; i < SAMPLES; i++) {
+      Assert.assertTrue(Backoff.delay(setting, 10) <= 1000);
+      // 移位溢出时也按上限计算
+      Assert.assertTrue(Backoff.delay(setting, 100) <= 1000);
+    }
+  }
+
+  @Test
+  public void testJitterIsSpread() {
+    RetrySetting setting = new RetrySetting().setBackoffBase(1000).setBackoffMax(1000);
+    long min = Long.MAX_VALUE;
+    long max = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      long delay = Backoff.delay(setting, 1);
+      min = Math.min(min, delay);
+      max = Math.max(max, delay);
+    }
+    Assert.assertTrue(min < 100);
+    Assert.assertTrue(max > 900);
+  }
+
+  @Test
+  public void testZeroBaseMeansNoDelay() {
+    RetrySetting setting = new RetrySetting().setBackoffBase(0).setBackoffMax(0);
+    Assert.assertEquals(0, Backoff.delay(setting, 3));
+  }
+
+}
@@ -0,0 +1,95 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.exception.CircuitOpenException;
+import io.github.rcarlosdasilva.weixin.core.limit.CircuitBreaker;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+
+/**
+ * 熔断、试探与恢复
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class CircuitBreakerTest {
+
+  private static final long OPEN_DURATION = 50;
+  private static final String URL = "https://api.weixin.qq.com/cgi-bin/user/info?openid=x";
+
+  private String account;
+
+  @Before
+  public void setUp() {
+    Setting setting = new Setting();
+    setting.getRetrySetting().setFailureThreshold(2).setOpenDuration(OPEN_DURATION);
+    Registry.withSetting(setting);
+    // 熔断状态按公众号记录，每个用例使用不同的公众号
+    account = "circuit-" + System.nanoTime();
+  }
+
+  @Test
+  public void testOpensAfterThreshold() {
+    CircuitBreaker.failure(account, URL);
+    CircuitBreaker.check(account, URL);
+    CircuitBreaker.failure(account, URL);
+
+    Assert.assertTrue(CircuitBreaker.isOpen(account, URL));
+    assertRejected();
+    // 其他接口不受影响
+    CircuitBreaker.check(account, "https://api.weixin.qq.com/cgi-bin/tags/get");
+  }
+
+  @Test
+  public void testHalfOpenAllowsSingleProbe() throws InterruptedException {
+    open();
+    Thread.sleep(OPEN_DURATION * 2);
+
+    CircuitBreaker.check(account, URL);
+    assertRejected();
+  }
+
+  @Test
+  public void testProbeFailureReopens() throws InterruptedException {
+    open();
+    Thread.sleep(OPEN_DURATION * 2);
+    CircuitBreaker.check(account, URL);
+
+    CircuitBreaker.failure(account, URL);
+    Assert.assertTrue(CircuitBreaker.isOpen(account, URL));
+    assertRejected();
+  }
+
+  @Test
+  public void testProbeSuccessCloses() throws InterruptedException {
+    open();
+    Thread.sleep(OPEN_DURATION * 2);
+    CircuitBreaker.check(account, URL);
+
+    CircuitBreaker.success(account, URL);
+    Assert.assertFalse(CircuitBreaker.isOpen(account, URL));
+    CircuitBreaker.check(account, URL);
+    CircuitBreaker.check(account, URL);
+    // 恢复后重新计数，一次失败不会熔断
+    CircuitBreaker.failure(account, URL);
+    Assert.assertFalse(CircuitBreaker.isOpen(account, URL));
+  }
+
+  private void open() {
+    CircuitBreaker.failure(account, URL);
+    CircuitBreaker.failure(account, URL);
+    Assert.assertTrue(CircuitBreaker.isOpen(account, URL));
+  }
+
+  private void assertRejected() {
+    try {
+      CircuitBreaker.check(account, URL);
+      Assert.fail();
+    } catch (CircuitOpenException ex) {
+      Assert.assertTrue(ex.getMessage().contains(account));
+    }
+  }
+
+}
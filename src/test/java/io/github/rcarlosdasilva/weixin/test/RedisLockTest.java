@@ -0,0 +1,105 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.cache.storage.redis.RedisLock;
+import io.github.rcarlosdasilva.weixin.core.setting.RedisSetting;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+import io.github.rcarlosdasilva.weixin.test.simulator.RedisSimulator;
+
+/**
+ * Redis分布式锁的交接、过期与按锁标识写入
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class RedisLockTest {
+
+  private static RedisSimulator redis;
+
+  @BeforeClass
+  public static void startRedis() throws IOException {
+    redis = new RedisSimulator().start();
+    Setting setting = new Setting();
+    setting.setRedisSetting(new RedisSetting().setPort(redis.getPort()));
+    Registry.withSetting(setting);
+  }
+
+  @AfterClass
+  public static void stopRedis() {
+    redis.stop();
+  }
+
+  @Test
+  public void testUnlockHandsOverToWaiter() throws InterruptedException {
+    final String key = "lock-handoff";
+    String first = RedisLock.lock(key, 10000, false);
+    Assert.assertNotNull(first);
+    Assert.assertNull(RedisLock.lock(key, 10000, true));
+
+    final String[] second = new String[1];
+    Thread waiter = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        second[0] = RedisLock.lock(key, 10000, false);
+      }
+    });
+    waiter.start();
+    while (waiter.getState() != Thread.State.TIMED_WAITING) {
+      Thread.sleep(1);
+    }
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(RedisLock.unlock(key, first));
+    waiter.join(5000);
+    // 解锁后立即交给等待者，不等到锁的时效结束
+    Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    Assert.assertTrue(Long.parseLong(second[0]) > Long.parseLong(first));
+    Assert.assertTrue(RedisLock.unlock(key, second[0]));
+  }
+
+  @Test
+  public void testExpiredLockIsTakenOver() {
+    String key = "lock-expiry";
+    String stale = RedisLock.lock(key, 200, false);
+    Assert.assertNotNull(stale);
+
+    long start = System.currentTimeMillis();
+    String current = RedisLock.lock(key, 2000, false);
+    Assert.assertNotNull(current);
+    Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+
+    // 过期的持有者不能释放别人的锁
+    Assert.assertFalse(RedisLock.unlock(key, stale));
+    Assert.assertTrue(RedisLock.unlock(key, current));
+  }
+
+  @Test
+  public void testStaleHolderCannotOverwrite() {
+    String key = "lock-fencing";
+    String stale = RedisLock.lock(key, 100, false);
+    String current = RedisLock.lock(key, 2000, false);
+    Assert.assertTrue(Long.parseLong(current) > Long.parseLong(stale));
+
+    Assert.assertTrue(RedisLock.fencedSet(key, bytes("fenced-value"), bytes("new"), 0, current));
+    Assert.assertFalse(RedisLock.fencedSet(key, bytes("fenced-value"), bytes("old"), 0, stale));
+    Assert.assertEquals("new", redis.get("fenced-value"));
+
+    // 同一持有者可以再次写入
+    Assert.assertTrue(RedisLock.fencedSet(key, bytes("fenced-value"), bytes("newer"), 0, current));
+    Assert.assertEquals("newer", redis.get("fenced-value"));
+    Assert.assertTrue(RedisLock.unlock(key, current));
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,97 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.github.rcarlosdasilva.weixin.common.dictionary.ErrorKind;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
+import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
+import io.github.rcarlosdasilva.weixin.core.exception.ResponseReadException;
+import io.github.rcarlosdasilva.weixin.core.parser.ResponseParser;
+
+/**
+ * 以流的方式解析响应时对errcode的记录
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class ResponseParserTest {
+
+  @Test
+  public void testErrorCodeAfterNestedObjects() {
+    String json = "{\"name\":\"a\",\"data\":{\"errcode\":0,\"list\":[{\"errcode\":1},[2,3]]},"
+        + "\"errcode\":40003,\"errmsg\":\"invalid openid\"}";
+    try {
+      ResponseParser.parse(Sample.class, new StringReader(json));
+      Assert.fail();
+    } catch (ExecuteException ex) {
+      Assert.assertEquals(ResultCode.RESULT_40003, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testNestedErrorCodeIsIgnored() {
+    String json = "{\"data\":{\"errcode\":40003,\"errmsg\":\"nested\"},\"name\":\"a\"}";
+    Sample sample = ResponseParser.parse(Sample.class, new StringReader(json));
+    Assert.assertEquals("a", sample.name);
+  }
+
+  @Test
+  public void testErrorCodeConsumedThroughSkipValue() {
+    // Sample没有errcode与errmsg字段，Gson通过skipValue跳过，errcode为字符串形式的数字也要记录
+    String json = "{\"errmsg\":\"invalid openid\",\"errcode\":\"40003\",\"name\":\"a\"}";
+    try {
+      ResponseParser.parse(Sample.class, new StringReader(json));
+      Assert.fail();
+    } catch (ExecuteException ex) {
+      Assert.assertEquals(ResultCode.RESULT_40003, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testSuccessfulErrorCode() {
+    Assert.assertTrue(ResponseParser.parse(Boolean.class,
+        new StringReader("{\"errcode\":0,\"errmsg\":\"ok\"}")));
+    Sample sample = ResponseParser.parse(Sample.class,
+        new StringReader("{\"errcode\":0,\"errmsg\":\"ok\",\"name\":\"a\"}"));
+    Assert.assertEquals("a", sample.name);
+  }
+
+  @Test
+  public void testReadFailureIsRetryable() {
+    Reader broken = new Reader() {
+
+      private final Reader head = new StringReader("{\"name\":\"a\",\"data\":{\"list\":[1,");
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = head.read(cbuf, off, len);
+        if (count < 0) {
+          throw new IOException("connection reset");
+        }
+        return count;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+
+    try {
+      ResponseParser.parse(Sample.class, broken);
+      Assert.fail();
+    } catch (ResponseReadException ex) {
+      Assert.assertEquals(ErrorKind.RETRYABLE, ResponseParser.classify(ex));
+    }
+  }
+
+  static class Sample {
+
+    String name;
+
+  }
+
+}
@@ -0,0 +1,201 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import io.github.rcarlosdasilva.weixin.common.ApiAddress;
+import io.github.rcarlosdasilva.weixin.common.Convention;
+import io.github.rcarlosdasilva.weixin.common.dictionary.MediaType;
+import io.github.rcarlosdasilva.weixin.common.dictionary.ResultCode;
+import io.github.rcarlosdasilva.weixin.core.Registry;
+import io.github.rcarlosdasilva.weixin.core.Weixin;
+import io.github.rcarlosdasilva.weixin.core.cache.CacheType;
+import io.github.rcarlosdasilva.weixin.core.exception.ExecuteException;
+import io.github.rcarlosdasilva.weixin.core.exception.HttpException;
+import io.github.rcarlosdasilva.weixin.core.http.UploadSource;
+import io.github.rcarlosdasilva.weixin.core.outbox.Outbox;
+import io.github.rcarlosdasilva.weixin.core.setting.OutboxSetting;
+import io.github.rcarlosdasilva.weixin.core.setting.RetrySetting;
+import io.github.rcarlosdasilva.weixin.core.setting.Setting;
+import io.github.rcarlosdasilva.weixin.model.WeixinAccount;
+import io.github.rcarlosdasilva.weixin.model.request.message.bean.Template;
+import io.github.rcarlosdasilva.weixin.model.response.media.MediaAddTemporaryResponse;
+import io.github.rcarlosdasilva.weixin.model.response.user.bean.User;
+import io.github.rcarlosdasilva.weixin.model.response.user.tag.bean.UserTag;
+import io.github.rcarlosdasilva.weixin.test.simulator.WeixinSimulator;
+
+/**
+ * 使用 {@link WeixinSimulator} 离线验证接口调用、重试与额度
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class SimulatorTest {
+
+  private static final String KEY = "simulator";
+
+  private static WeixinSimulator simulator;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws IOException {
+    simulator = new WeixinSimulator().start();
+
+    Setting setting = new Setting();
+    setting.setCacheType(CacheType.JDK_MAP);
+    setting.getHttpSetting().setApiBaseUrl(simulator.getBaseUrl());
+    setting.setRetrySetting(new RetrySetting().setBackoffBase(1).setBackoffMax(10));
+    Registry.withSetting(setting);
+    Registry.checkin(
+        WeixinAccount.create(WeixinSimulator.APP_ID, WeixinSimulator.APP_SECRET).withKey(KEY));
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() {
+    simulator.stop();
+  }
+
+  @Before
+  public void setUp() {
+    simulator.reset();
+  }
+
+  @Test
+  public void testUsers() {
+    List<String> openIds = Weixin.with(KEY).user().listAllUsersOpenId().getOpenIds().getList();
+    Assert.assertEquals(WeixinSimulator.OPEN_IDS, openIds);
+
+    User user = Weixin.with(KEY).user().getUserInfo(openIds.get(0));
+    Assert.assertEquals(openIds.get(0), user.getOpenId());
+
+    List<User> users = Weixin.with(KEY).user().getUsersInfo(openIds);
+    Assert.assertEquals(openIds.size(), users.size());
+  }
+
+  @Test
+  public void testTagsAndMessages() {
+    int id = Weixin.with(KEY).userTag().create("simulator-tag");
+    List<Integer> ids = Lists.newArrayList();
+    for (UserTag tag : Weixin.with(KEY).userTag().list()) {
+      ids.add(tag.getId());
+    }
+    Assert.assertTrue(ids.contains(id));
+
+    Map<String, Template> data = Maps.newHashMap();
+    data.put("first", new Template("hello", "#173177"));
+    long messageId = Weixin.with(KEY).message()
+        .sendWithTemplate(WeixinSimulator.OPEN_IDS.get(0), "template", null, data);
+    Assert.assertTrue(messageId > 0);
+  }
+
+  @Test
+  public void testMedia() {
+    MediaAddTemporaryResponse media = Weixin.with(KEY).material().addTemporaryMedia(
+        MediaType.IMAGE, "simulator.jpg", UploadSource.of(new byte[] { 1, 2, 3 }));
+    Assert.assertNotNull(media.getMediaId());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long size = Weixin.with(KEY).material().getTemporaryMedia(media.getMediaId(), out);
+    Assert.assertTrue(size > 0);
+    Assert.assertEquals(size, out.size());
+  }
+
+  @Test
+  public void testInterruptedDownloadDeletesFile() throws IOException {
+    MediaAddTemporaryResponse media = Weixin.with(KEY).material().addTemporaryMedia(
+        MediaType.IMAGE, "simulator.jpg", UploadSource.of(new byte[] { 1, 2, 3 }));
+    Path path = Files.createTempFile("simulator", ".jpg");
+    simulator.truncateNext(1);
+
+    try {
+      Weixin.with(KEY).material().getTemporaryMedia(media.getMediaId(), path);
+      Assert.fail();
+    } catch (HttpException ex) {
+      Assert.assertFalse(Files.exists(path));
+    }
+  }
+
+  @Test
+  public void testSystemBusyIsRetried() {
+    Weixin.with(KEY).certificate().askAccessToken();
+    simulator.failNext(2);
+
+    User user = Weixin.with(KEY).user().getUserInfo(WeixinSimulator.OPEN_IDS.get(1));
+    Assert.assertNotNull(user);
+    Assert.assertEquals(3, simulator.calls(ApiAddress.URL_USER_INFO));
+  }
+
+  @Test
+  public void testQuotaExhausted() {
+    simulator.quota(ApiAddress.URL_USER_TAG_LIST, 1);
+    Weixin.with(KEY).userTag().list();
+
+    try {
+      Weixin.with(KEY).userTag().list();
+      Assert.fail();
+    } catch (ExecuteException ex) {
+      Assert.assertEquals(ResultCode.RESULT_45009, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testCredentialRequestsAreNotHedged() throws InterruptedException {
+    Registry.setting().getHttpSetting().setHedging(true).setHedgeDelay(20)
+        .setHedgeBudgetPercent(100);
+    try {
+      simulator.latency(200);
+      Weixin.with(KEY).certificate().refreshAccessToken();
+      Weixin.with(KEY).user().listAllUsersOpenId();
+      // 模拟服务在延迟之后计数，等待被放弃的请求也处理完
+      Thread.sleep(300);
+
+      Assert.assertEquals(1, simulator.calls(ApiAddress.URL_CERTIFICATE_TOKEN));
+      Assert.assertEquals(2, simulator.calls(ApiAddress.URL_USER_ALL_OPENID_LIST));
+    } finally {
+      Registry.setting().getHttpSetting().setHedging(false);
+    }
+  }
+
+  @Test
+  public void testOnlyTransientSendFailuresAreDeferred() throws IOException {
+    Outbox.start(new OutboxSetting()
+        .setDirectory(Files.createTempDirectory("outbox").toString()).setReplayInterval(60000)
+        .setDeferFailedSends(true));
+    Registry.setting().setThrowException(false);
+    try {
+      Map<String, Template> data = Maps.newHashMap();
+      data.put("first", new Template("hello", "#173177"));
+
+      // 接收人无效，重新发送也不会成功
+      Assert.assertEquals(Convention.GLOBAL_FAIL_ID,
+          Weixin.with(KEY).message().sendWithTemplate("oUnknownUser", "template", null, data));
+      Assert.assertEquals(0, Outbox.pending());
+
+      // 系统繁忙，重试用尽后写入发件箱；同一接收人的下一条消息排在后面，不直接发送
+      simulator.failNext(3);
+      String to = WeixinSimulator.OPEN_IDS.get(0);
+      Assert.assertEquals(Convention.GLOBAL_FAIL_ID,
+          Weixin.with(KEY).message().sendWithTemplate(to, "template", null, data));
+      Assert.assertEquals(1, Outbox.pending());
+      Assert.assertEquals(Convention.GLOBAL_FAIL_ID,
+          Weixin.with(KEY).message().sendWithTemplate(to, "template", null, data));
+      Assert.assertEquals(2, Outbox.pending());
+      Assert.assertEquals(4, simulator.calls(ApiAddress.URL_MESSAGE_SEND_WITH_TEMPLATE));
+    } finally {
+      Registry.setting().setThrowException(true);
+      Outbox.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.github.rcarlosdasilva.weixin.core.concurrent.SingleFlight;
+
+/**
+ * 相同调用的合并执行
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  @Test
+  public void testConcurrentCallsShareOneExecution() throws InterruptedException {
+    final SingleFlight flight = new SingleFlight();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Object[] results = new Object[CALLERS];
+
+    List<Thread> threads = start(new Caller() {
+
+      @Override
+      public void call(int index) {
+        results[index] = flight.execute("key", new Callable<Object>() {
+
+          @Override
+          public Object call() throws InterruptedException {
+            executions.incrementAndGet();
+            release.await();
+            return new Object();
+          }
+        });
+      }
+    });
+    awaitWaiting(threads);
+    Assert.assertEquals(1, flight.inFlight());
+    release.countDown();
+    join(threads);
+
+    Assert.assertEquals(1, executions.get());
+    for (Object result : results) {
+      Assert.assertSame(results[0], result);
+    }
+    Assert.assertEquals(0, flight.inFlight());
+  }
+
+  @Test
+  public void testExceptionIsPropagatedToAllCallers() throws InterruptedException {
+    final SingleFlight flight = new SingleFlight();
+    final CountDownLatch release = new CountDownLatch(1);
+    final RuntimeException failure = new IllegalArgumentException("loader failed");
+    final Throwable[] errors = new Throwable[CALLERS];
+
+    List<Thread> threads = start(new Caller() {
+
+      @Override
+      public void call(int index) {
+        try {
+          flight.execute("key", new Callable<Object>() {
+
+            @Override
+            public Object call() throws InterruptedException {
+              release.await();
+              throw failure;
+            }
+          });
+        } catch (RuntimeException ex) {
+          errors[index] = ex;
+        }
+      }
+    });
+    awaitWaiting(threads);
+    release.countDown();
+    join(threads);
+
+    for (Throwable error : errors) {
+      Assert.assertSame(failure, error);
+    }
+  }
+
+  @Test
+  public void testFinishedCallIsNotCached() {
+    SingleFlight flight = new SingleFlight();
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<Integer> loader = new Callable<Integer>() {
+
+      @Override
+      public Integer call() {
+        return executions.incrementAndGet();
+      }
+    };
+
+    Assert.assertEquals(1, (int) flight.execute("key", loader));
+    Assert.assertEquals(2, (int) flight.execute("key", loader));
+    Assert.assertEquals(0, flight.inFlight());
+  }
+
+  private static List<Thread> start(final Caller caller) {
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < CALLERS; i++) {
+      final int index = i;
+      Thread thread = new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+          caller.call(index);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    return threads;
+  }
+
+  /**
+   * 等到所有调用都在等待：一个在执行中阻塞，其他在等待它的结果.
+   */
+  private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+    for (Thread thread : threads) {
+      while (thread.getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+    }
+  }
+
+  private static void join(List<Thread> threads) throws InterruptedException {
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private interface Caller {
+
+    void call(int index);
+
+  }
+
+}
@@ -0,0 +1,89 @@
+package io.github.rcarlosdasilva.weixin.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+import io.github.rcarlosdasilva.weixin.core.limit.TokenBucket;
+
+/**
+ * 令牌桶的连续取出与补充
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class TokenBucketTest {
+
+  @Test
+  public void testBurstUpToCapacity() {
+    TokenBucket bucket = new TokenBucket(3, 1, new FakeTicker());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(bucket.tryAcquire());
+    }
+    Assert.assertFalse(bucket.tryAcquire());
+    Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.nanosToNextToken());
+  }
+
+  @Test
+  public void testRefillIsCappedAtCapacity() {
+    FakeTicker ticker = new FakeTicker();
+    TokenBucket bucket = new TokenBucket(3, 2, ticker);
+    bucket.drain();
+    ticker.advance(500);
+    Assert.assertEquals(1, bucket.available());
+    ticker.advance(60000);
+    Assert.assertEquals(3, bucket.available());
+  }
+
+  @Test
+  public void testSetRateKeepsTokensRefilledAtOldRate() {
+    FakeTicker ticker = new FakeTicker();
+    TokenBucket bucket = new TokenBucket(10, 1, ticker);
+    bucket.drain();
+    ticker.advance(2000);
+    bucket.setRate(0.5);
+    Assert.assertEquals(2, bucket.available());
+    ticker.advance(2000);
+    Assert.assertEquals(3, bucket.available());
+  }
+
+  @Test
+  public void testZeroRateNeverRefills() {
+    FakeTicker ticker = new FakeTicker();
+    TokenBucket bucket = new TokenBucket(1, 0, ticker);
+    Assert.assertTrue(bucket.tryAcquire());
+    ticker.advance(60000);
+    Assert.assertFalse(bucket.tryAcquire());
+    Assert.assertEquals(Long.MAX_VALUE, bucket.nanosToNextToken());
+  }
+
+  @Test
+  public void testDrainAndFill() {
+    FakeTicker ticker = new FakeTicker();
+    TokenBucket bucket = new TokenBucket(5, 1, ticker);
+    bucket.drain();
+    Assert.assertEquals(0, bucket.available());
+    ticker.advance(1000);
+    Assert.assertEquals(1, bucket.available());
+    bucket.fill();
+    Assert.assertEquals(5, bucket.available());
+  }
+
+  private static class FakeTicker extends Ticker {
+
+    private long nanos;
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+  }
+
+}
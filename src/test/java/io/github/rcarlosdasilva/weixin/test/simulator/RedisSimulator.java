@@ -0,0 +1,386 @@
+package io.github.rcarlosdasilva.weixin.test.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * 进程内的Redis模拟服务
+ * <p>
+ * 实现缓存与分布式锁用到的命令：GET、SET（PX、EX）、SETEX、DEL、EXISTS、PTTL、PUBLISH、SUBSCRIBE与EVAL。没有Lua环境，
+ * EVAL按脚本中调用的命令识别 {@code RedisLock} 的加锁、解锁与按锁标识写入三个脚本，以与脚本相同的语义原子地执行。
+ *
+ * <pre>
+ * RedisSimulator redis = new RedisSimulator().start();
+ * setting.setRedisSetting(new RedisSetting().setPort(redis.getPort()));
+ * </pre>
+ *
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class RedisSimulator {
+
+  private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final ServerSocket server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private final Object lock = new Object();
+  private final Map<String, byte[]> values = Maps.newHashMap();
+  private final Map<String, Long> expireAt = Maps.newHashMap();
+  private final Map<String, Set<Connection>> subscribers = Maps.newHashMap();
+
+  public RedisSimulator() throws IOException {
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+  }
+
+  public RedisSimulator start() {
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        while (!server.isClosed()) {
+          try {
+            final Connection connection = new Connection(server.accept());
+            executor.execute(new Runnable() {
+
+              @Override
+              public void run() {
+                connection.serve();
+              }
+            });
+          } catch (IOException ex) {
+            // 已关闭
+          }
+        }
+      }
+    });
+    return this;
+  }
+
+  public void stop() {
+    try {
+      server.close();
+    } catch (IOException ex) {
+      // 忽略
+    }
+    executor.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * 读取值.
+   *
+   * @param key
+   *          键
+   * @return 值，不存在或已过期时为null
+   */
+  public String get(String key) {
+    synchronized (lock) {
+      byte[] value = alive(key) ? values.get(key) : null;
+      return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  private boolean alive(String key) {
+    Long at = expireAt.get(key);
+    if (at != null && at <= System.currentTimeMillis()) {
+      values.remove(key);
+      expireAt.remove(key);
+    }
+    return values.containsKey(key);
+  }
+
+  private void set(String key, byte[] value, long millis) {
+    values.put(key, value);
+    if (millis > 0) {
+      expireAt.put(key, System.currentTimeMillis() + millis);
+    } else {
+      expireAt.remove(key);
+    }
+  }
+
+  private boolean delete(String key) {
+    boolean existed = alive(key);
+    values.remove(key);
+    expireAt.remove(key);
+    return existed;
+  }
+
+  private int publish(String channel, byte[] message) {
+    Set<Connection> connections = subscribers.get(channel);
+    if (connections == null) {
+      return 0;
+    }
+    for (Connection connection : connections) {
+      connection.write(array(bulk("message"), bulk(channel), bulk(message)));
+    }
+    return connections.size();
+  }
+
+  /**
+   * 执行脚本，返回整数结果.
+   */
+  private long eval(String script, List<String> keys, List<byte[]> args) {
+    if (script.contains("'incr'")) {
+      // 加锁：锁不存在时递增序号并以序号加锁，否则返回负的剩余毫秒数
+      long px = Long.parseLong(string(args.get(0)));
+      if (!alive(keys.get(0))) {
+        byte[] fence = values.get(keys.get(1));
+        long token = (fence == null ? 0 : Long.parseLong(string(fence))) + 1;
+        set(keys.get(1), bytes(Long.toString(token)), 0);
+        set(keys.get(0), bytes(Long.toString(token)), px);
+        return token;
+      }
+      Long at = expireAt.get(keys.get(0));
+      if (at == null) {
+        expireAt.put(keys.get(0), System.currentTimeMillis() + px);
+        return -px;
+      }
+      return -(at - System.currentTimeMillis());
+    }
+    if (script.contains("'publish'")) {
+      // 解锁：标识一致时删除并发布通知
+      if (alive(keys.get(0)) && Arrays.equals(values.get(keys.get(0)), args.get(0))) {
+        delete(keys.get(0));
+        publish(string(args.get(1)), bytes(keys.get(0)));
+        return 1;
+      }
+      return 0;
+    }
+    if (script.contains("'EX'")) {
+      // 按锁标识写入：标识小于已写入的标识时不写入
+      long identifier = Long.parseLong(string(args.get(0)));
+      byte[] last = alive(keys.get(1)) ? values.get(keys.get(1)) : null;
+      if (last != null && identifier < Long.parseLong(string(last))) {
+        return 0;
+      }
+      set(keys.get(1), args.get(0), 0);
+      set(keys.get(0), args.get(1), Long.parseLong(string(args.get(2))) * 1000);
+      return 1;
+    }
+    throw new IllegalArgumentException("unsupported script");
+  }
+
+  private byte[] execute(Connection connection, List<byte[]> command) {
+    String name = string(command.get(0)).toUpperCase();
+    synchronized (lock) {
+      switch (name) {
+        case "GET":
+          return alive(string(command.get(1))) ? bulk(values.get(string(command.get(1))))
+              : bulk((byte[]) null);
+        case "SET":
+          long millis = 0;
+          for (int i = 3; i + 1 < command.size(); i += 2) {
+            String option = string(command.get(i)).toUpperCase();
+            long amount = Long.parseLong(string(command.get(i + 1)));
+            millis = "EX".equals(option) ? amount * 1000 : amount;
+          }
+          set(string(command.get(1)), command.get(2), millis);
+          return OK;
+        case "SETEX":
+          set(string(command.get(1)), command.get(3),
+              Long.parseLong(string(command.get(2))) * 1000);
+          return OK;
+        case "DEL":
+          int deleted = 0;
+          for (byte[] key : command.subList(1, command.size())) {
+            deleted += delete(string(key)) ? 1 : 0;
+          }
+          return integer(deleted);
+        case "EXISTS":
+          return integer(alive(string(command.get(1))) ? 1 : 0);
+        case "PTTL":
+          String key = string(command.get(1));
+          if (!alive(key)) {
+            return integer(-2);
+          }
+          Long at = expireAt.get(key);
+          return integer(at == null ? -1 : at - System.currentTimeMillis());
+        case "PUBLISH":
+          return integer(publish(string(command.get(1)), command.get(2)));
+        case "SUBSCRIBE":
+          String channel = string(command.get(1));
+          Set<Connection> connections = subscribers.get(channel);
+          if (connections == null) {
+            connections = Sets.newConcurrentHashSet();
+            subscribers.put(channel, connections);
+          }
+          connections.add(connection);
+          return array(bulk("subscribe"), bulk(channel), integer(1));
+        case "EVAL":
+          int count = Integer.parseInt(string(command.get(2)));
+          List<String> keys = Lists.newArrayList();
+          for (byte[] raw : command.subList(3, 3 + count)) {
+            keys.add(string(raw));
+          }
+          return integer(eval(string(command.get(1)), keys,
+              command.subList(3 + count, command.size())));
+        case "PING":
+          return "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+        case "QUIT":
+        case "SELECT":
+        case "AUTH":
+          return OK;
+        default:
+          return ("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.UTF_8);
+      }
+    }
+  }
+
+  private void unsubscribe(Connection connection) {
+    synchronized (lock) {
+      for (Set<Connection> connections : subscribers.values()) {
+        connections.remove(connection);
+      }
+    }
+  }
+
+  private static String string(byte[] value) {
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] bulk(String value) {
+    return bulk(bytes(value));
+  }
+
+  private static byte[] bulk(byte[] value) {
+    if (value == null) {
+      return "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] head = bytes("$" + value.length + "\r\n");
+    out.write(head, 0, head.length);
+    out.write(value, 0, value.length);
+    out.write('\r');
+    out.write('\n');
+    return out.toByteArray();
+  }
+
+  private static byte[] integer(long value) {
+    return bytes(":" + value + "\r\n");
+  }
+
+  private static byte[] array(byte[]... items) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] head = bytes("*" + items.length + "\r\n");
+    out.write(head, 0, head.length);
+    for (byte[] item : items) {
+      out.write(item, 0, item.length);
+    }
+    return out.toByteArray();
+  }
+
+  private final class Connection {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = socket.getOutputStream();
+    }
+
+    private void serve() {
+      try {
+        while (true) {
+          List<byte[]> command = read();
+          if (command == null) {
+            break;
+          }
+          byte[] reply;
+          try {
+            reply = execute(this, command);
+          } catch (RuntimeException ex) {
+            reply = bytes("-ERR " + ex.getMessage() + "\r\n");
+          }
+          write(reply);
+        }
+      } catch (IOException ex) {
+        // 连接断开
+      } finally {
+        unsubscribe(this);
+        try {
+          socket.close();
+        } catch (IOException ex) {
+          // 忽略
+        }
+      }
+    }
+
+    private List<byte[]> read() throws IOException {
+      String head = line();
+      if (head == null) {
+        return null;
+      }
+      int count = Integer.parseInt(head.substring(1));
+      List<byte[]> command = Lists.newArrayListWithCapacity(count);
+      for (int i = 0; i < count; i++) {
+        int length = Integer.parseInt(line().substring(1));
+        byte[] value = new byte[length];
+        int read = 0;
+        while (read < length) {
+          int n = in.read(value, read, length - read);
+          if (n < 0) {
+            throw new IOException("closed");
+          }
+          read += n;
+        }
+        line();
+        command.add(value);
+      }
+      return command;
+    }
+
+    private String line() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = in.read()) != '\n') {
+        if (c < 0) {
+          return null;
+        }
+        if (c != '\r') {
+          sb.append((char) c);
+        }
+      }
+      return sb.toString();
+    }
+
+    private void write(byte[] reply) {
+      synchronized (out) {
+        try {
+          out.write(reply);
+          out.flush();
+        } catch (IOException ex) {
+          // 连接断开，由读取线程清理
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,605 @@
+package io.github.rcarlosdasilva.weixin.test.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 进程内的微信接口模拟服务
+ * <p>
+ * 实现access_token、用户、标签、消息、素材与菜单接口，返回与微信一致的响应结构与错误代码，用于离线测试与压测。
+ * 可设置响应延迟、注入系统繁忙错误（-1）、限定接口的调用额度（超出后返回45009），以及让已发放的access_token失效（42001）。
+ * 
+ * <pre>
+ * WeixinSimulator simulator = new WeixinSimulator().start();
+ * setting.getHttpSetting().setApiBaseUrl(simulator.getBaseUrl());
+ * Registry.checkin(WeixinAccount.create(WeixinSimulator.APP_ID, WeixinSimulator.APP_SECRET));
+ * </pre>
+ * 
+ * @author <a href="mailto:rcarlosdasilva@qq.com">Dean Zhao</a>
+ */
+public class WeixinSimulator {
+
+  public static final String APP_ID = "wx0000000000simulator";
+  public static final String APP_SECRET = "simulator-app-secret";
+  public static final List<String> OPEN_IDS = Arrays.asList("oSimulatorUser0000000000001",
+      "oSimulatorUser0000000000002", "oSimulatorUser0000000000003");
+
+  private static final int MEDIA_SIZE = 16 * 1024;
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final Map<String, Endpoint> endpoints = Maps.newHashMap();
+
+  private final ConcurrentMap<String, AtomicInteger> calls = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Integer> quotas = Maps.newConcurrentMap();
+  private final Set<String> tokens = Sets.newConcurrentHashSet();
+  private final Set<String> expiredTokens = Sets.newConcurrentHashSet();
+  private final ConcurrentMap<Integer, String> tags = Maps.newConcurrentMap();
+  private final Set<String> medias = Sets.newConcurrentHashSet();
+  private final AtomicLong sequence = new AtomicLong(100);
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger truncations = new AtomicInteger();
+
+  private volatile long latency;
+  private volatile double errorRate;
+  private volatile String menu;
+
+  public WeixinSimulator() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        dispatch(exchange);
+      }
+    });
+
+    tags.put(2, "星标组");
+    register();
+  }
+
+  public WeixinSimulator start() {
+    server.start();
+    return this;
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * 模拟服务地址，用于 {@code HttpSetting.setApiBaseUrl}.
+   * 
+   * @return 地址，以"/"结尾
+   */
+  public String getBaseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  /**
+   * 每个请求的响应延迟.
+   * 
+   * @param millis
+   *          毫秒
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator latency(long millis) {
+    this.latency = millis;
+    return this;
+  }
+
+  /**
+   * 随机返回系统繁忙（-1）的比例.
+   * 
+   * @param errorRate
+   *          0到1
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator errorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * 接下来的若干个请求返回系统繁忙（-1）.
+   * 
+   * @param count
+   *          请求数
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator failNext(int count) {
+    failures.set(count);
+    return this;
+  }
+
+  /**
+   * 接下来的若干个二进制响应只发送一半内容就断开连接.
+   * 
+   * @param count
+   *          响应数
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator truncateNext(int count) {
+    truncations.set(count);
+    return this;
+  }
+
+  /**
+   * 限定接口的调用额度，超出后返回45009.
+   * 
+   * @param url
+   *          接口地址，见 {@code ApiAddress}
+   * @param limit
+   *          可调用次数
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator quota(String url, int limit) {
+    quotas.put(path(url), limit);
+    return this;
+  }
+
+  /**
+   * 已发放的access_token全部失效，之后使用它们的请求返回42001.
+   * 
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator expireTokens() {
+    expiredTokens.addAll(tokens);
+    tokens.clear();
+    return this;
+  }
+
+  /**
+   * 接口被调用的次数（包括返回错误的调用）.
+   * 
+   * @param url
+   *          接口地址，见 {@code ApiAddress}
+   * @return 次数
+   */
+  public int calls(String url) {
+    AtomicInteger counter = calls.get(path(url));
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * 清空调用次数与额度.
+   * 
+   * @return WeixinSimulator
+   */
+  public WeixinSimulator reset() {
+    calls.clear();
+    quotas.clear();
+    failures.set(0);
+    truncations.set(0);
+    errorRate = 0;
+    latency = 0;
+    return this;
+  }
+
+  private static String path(String url) {
+    String path = url.replaceFirst("^https?://[^/]+/", "");
+    int index = path.indexOf('?');
+    return index < 0 ? path : path.substring(0, index);
+  }
+
+  private void dispatch(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath().substring(1);
+      Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+      byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+
+      if (latency > 0) {
+        TimeUnit.MILLISECONDS.sleep(latency);
+      }
+
+      AtomicInteger counter = calls.get(path);
+      if (counter == null) {
+        AtomicInteger created = new AtomicInteger();
+        counter = calls.putIfAbsent(path, created);
+        counter = counter == null ? created : counter;
+      }
+      int count = counter.incrementAndGet();
+
+      Endpoint endpoint = endpoints.get(path);
+      Reply reply;
+      if (endpoint == null) {
+        reply = Reply.error(48001, "api unauthorized");
+      } else if (quotas.containsKey(path) && count > quotas.get(path)) {
+        reply = Reply.error(45009, "reach max api daily quota limit");
+      } else if (takeFailure() || Math.random() < errorRate) {
+        reply = Reply.error(-1, "system error");
+      } else if (endpoint.needToken() && !tokens.contains(query.get("access_token"))) {
+        reply = expiredTokens.contains(query.get("access_token"))
+            ? Reply.error(42001, "access_token expired")
+            : Reply.error(40001, "invalid credential, access_token is invalid or not latest");
+      } else {
+        reply = endpoint.handle(query, body);
+      }
+
+      exchange.getResponseHeaders().set("Content-Type", reply.contentType);
+      exchange.sendResponseHeaders(200, reply.content.length);
+      OutputStream out = exchange.getResponseBody();
+      if (!reply.isJson() && take(truncations)) {
+        out.write(reply.content, 0, reply.content.length / 2);
+        out.flush();
+        // 声明的长度未写完就关闭，连接随之断开
+        return;
+      }
+      out.write(reply.content);
+      out.close();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private boolean takeFailure() {
+    return take(failures);
+  }
+
+  private static boolean take(AtomicInteger remainder) {
+    while (true) {
+      int remaining = remainder.get();
+      if (remaining <= 0) {
+        return false;
+      }
+      if (remainder.compareAndSet(remaining, remaining - 1)) {
+        return true;
+      }
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+    Map<String, String> query = Maps.newHashMap();
+    if (rawQuery == null) {
+      return query;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int index = pair.indexOf('=');
+      if (index > 0) {
+        query.put(pair.substring(0, index), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+      }
+    }
+    return query;
+  }
+
+  private static JsonObject json(byte[] body) {
+    return new JsonParser().parse(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+  }
+
+  private JsonObject user(String openId) {
+    JsonObject user = new JsonObject();
+    user.addProperty("subscribe", 1);
+    user.addProperty("openid", openId);
+    user.addProperty("nickname", "Simulator " + openId.substring(openId.length() - 4));
+    user.addProperty("sex", 1);
+    user.addProperty("language", "zh_CN");
+    user.addProperty("city", "广州");
+    user.addProperty("province", "广东");
+    user.addProperty("country", "中国");
+    user.addProperty("headimgurl", "http://thirdwx.qlogo.cn/mmopen/simulator/0");
+    user.addProperty("subscribe_time", 1382694957);
+    user.addProperty("remark", "");
+    user.addProperty("groupid", 0);
+    JsonArray tagIds = new JsonArray();
+    tagIds.add(new JsonPrimitive(2));
+    user.add("tagid_list", tagIds);
+    return user;
+  }
+
+  private void register() {
+    endpoints.put("cgi-bin/token", new Endpoint(false) {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        if (!APP_ID.equals(query.get("appid"))) {
+          return Reply.error(40013, "invalid appid");
+        }
+        if (!APP_SECRET.equals(query.get("secret"))) {
+          return Reply.error(40001, "invalid credential, access_token is invalid or not latest");
+        }
+        String token = "SIMULATOR_ACCESS_TOKEN_" + sequence.incrementAndGet();
+        tokens.add(token);
+        JsonObject result = new JsonObject();
+        result.addProperty("access_token", token);
+        result.addProperty("expires_in", 7200);
+        return Reply.json(result);
+      }
+    });
+    endpoints.put("cgi-bin/getcallbackip", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        return Reply.json("{\"ip_list\":[\"127.0.0.1\"]}");
+      }
+    });
+
+    endpoints.put("cgi-bin/user/info", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        String openId = query.get("openid");
+        if (!OPEN_IDS.contains(openId)) {
+          return Reply.error(40003, "invalid openid");
+        }
+        return Reply.json(user(openId));
+      }
+    });
+    endpoints.put("cgi-bin/user/info/batchget", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        JsonArray users = new JsonArray();
+        for (JsonElement element : json(body).getAsJsonArray("user_list")) {
+          String openId = element.getAsJsonObject().get("openid").getAsString();
+          if (!OPEN_IDS.contains(openId)) {
+            return Reply.error(40003, "invalid openid");
+          }
+          users.add(user(openId));
+        }
+        JsonObject result = new JsonObject();
+        result.add("user_info_list", users);
+        return Reply.json(result);
+      }
+    });
+    endpoints.put("cgi-bin/user/get", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        JsonArray openIds = new JsonArray();
+        for (String openId : OPEN_IDS) {
+          openIds.add(new JsonPrimitive(openId));
+        }
+        JsonObject data = new JsonObject();
+        data.add("openid", openIds);
+        JsonObject result = new JsonObject();
+        result.addProperty("total", OPEN_IDS.size());
+        result.addProperty("count", OPEN_IDS.size());
+        result.add("data", data);
+        result.addProperty("next_openid", OPEN_IDS.get(OPEN_IDS.size() - 1));
+        return Reply.json(result);
+      }
+    });
+    endpoints.put("cgi-bin/user/info/updateremark", Endpoint.OK);
+
+    endpoints.put("cgi-bin/tags/get", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        JsonArray list = new JsonArray();
+        for (Map.Entry<Integer, String> entry : tags.entrySet()) {
+          JsonObject tag = new JsonObject();
+          tag.addProperty("id", entry.getKey());
+          tag.addProperty("name", entry.getValue());
+          tag.addProperty("count", 0);
+          list.add(tag);
+        }
+        JsonObject result = new JsonObject();
+        result.add("tags", list);
+        return Reply.json(result);
+      }
+    });
+    endpoints.put("cgi-bin/tags/create", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        String name = json(body).getAsJsonObject("tag").get("name").getAsString();
+        if (tags.containsValue(name)) {
+          return Reply.error(45157, "invalid tag name");
+        }
+        int id = (int) sequence.incrementAndGet();
+        tags.put(id, name);
+        JsonObject tag = new JsonObject();
+        tag.addProperty("id", id);
+        tag.addProperty("name", name);
+        JsonObject result = new JsonObject();
+        result.add("tag", tag);
+        return Reply.json(result);
+      }
+    });
+    endpoints.put("cgi-bin/tags/update", Endpoint.OK);
+    endpoints.put("cgi-bin/tags/delete", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        int id = json(body).getAsJsonObject("tag").get("id").getAsInt();
+        return tags.remove(id) == null ? Reply.error(45058, "can't modify sys tag") : Reply.ok();
+      }
+    });
+
+    endpoints.put("cgi-bin/message/custom/send", Endpoint.OK);
+    endpoints.put("cgi-bin/message/template/send", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        if (!OPEN_IDS.contains(json(body).get("touser").getAsString())) {
+          return Reply.error(40003, "invalid openid");
+        }
+        return Reply.json(
+            "{\"errcode\":0,\"errmsg\":\"ok\",\"msgid\":" + sequence.incrementAndGet() + "}");
+      }
+    });
+    endpoints.put("cgi-bin/message/mass/sendall", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        long id = sequence.incrementAndGet();
+        return Reply.json("{\"errcode\":0,\"errmsg\":\"send job submission success\",\"msg_id\":"
+            + id + ",\"msg_data_id\":" + id + "}");
+      }
+    });
+
+    endpoints.put("cgi-bin/media/upload", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        String mediaId = "SIMULATOR_MEDIA_" + sequence.incrementAndGet();
+        medias.add(mediaId);
+        String type = query.get("type") == null ? "image" : query.get("type");
+        return Reply.json("{\"type\":\"" + type + "\",\"media_id\":\"" + mediaId
+            + "\",\"created_at\":" + System.currentTimeMillis() / 1000 + "}");
+      }
+    });
+    endpoints.put("cgi-bin/media/get", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        if (!medias.contains(query.get("media_id"))) {
+          return Reply.error(40007, "invalid media_id");
+        }
+        return Reply.binary(MEDIA_SIZE);
+      }
+    });
+    endpoints.put("cgi-bin/material/add_material", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        String mediaId = "SIMULATOR_MATERIAL_" + sequence.incrementAndGet();
+        medias.add(mediaId);
+        return Reply.json("{\"media_id\":\"" + mediaId
+            + "\",\"url\":\"http://mmbiz.qpic.cn/simulator/" + mediaId + "\"}");
+      }
+    });
+    endpoints.put("cgi-bin/material/get_material", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        if (!medias.contains(json(body).get("media_id").getAsString())) {
+          return Reply.error(40007, "invalid media_id");
+        }
+        return Reply.binary(MEDIA_SIZE);
+      }
+    });
+
+    endpoints.put("cgi-bin/menu/create", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        if (!json(body).has("button")) {
+          return Reply.error(40016, "invalid button size");
+        }
+        menu = new String(body, StandardCharsets.UTF_8);
+        return Reply.ok();
+      }
+    });
+    endpoints.put("cgi-bin/menu/get", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        String current = menu;
+        if (current == null) {
+          return Reply.error(46003, "menu no exist");
+        }
+        return Reply.json("{\"menu\":" + current + "}");
+      }
+    });
+    endpoints.put("cgi-bin/menu/delete", new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        menu = null;
+        return Reply.ok();
+      }
+    });
+  }
+
+  /**
+   * 模拟的接口
+   */
+  private abstract static class Endpoint {
+
+    static final Endpoint OK = new Endpoint() {
+
+      @Override
+      Reply handle(Map<String, String> query, byte[] body) {
+        return Reply.ok();
+      }
+    };
+
+    private final boolean needToken;
+
+    Endpoint() {
+      this(true);
+    }
+
+    Endpoint(boolean needToken) {
+      this.needToken = needToken;
+    }
+
+    boolean needToken() {
+      return needToken;
+    }
+
+    abstract Reply handle(Map<String, String> query, byte[] body);
+
+  }
+
+  /**
+   * 模拟的响应
+   */
+  private static class Reply {
+
+    private final String contentType;
+    private final byte[] content;
+
+    private Reply(String contentType, byte[] content) {
+      this.contentType = contentType;
+      this.content = content;
+    }
+
+    static Reply json(Object json) {
+      return new Reply("application/json; encoding=utf-8",
+          json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    boolean isJson() {
+      return contentType.startsWith("application/json");
+    }
+
+    static Reply ok() {
+      return error(0, "ok");
+    }
+
+    static Reply error(int code, String message) {
+      return json("{\"errcode\":" + code + ",\"errmsg\":\"" + message + "\"}");
+    }
+
+    static Reply binary(int size) {
+      byte[] content = new byte[size];
+      for (int i = 0; i < size; i++) {
+        content[i] = (byte) i;
+      }
+      return new Reply("image/jpeg", content);
+    }
+
+  }
+
+}